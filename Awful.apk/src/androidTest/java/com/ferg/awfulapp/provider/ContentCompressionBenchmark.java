@@ -0,0 +1,171 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.ferg.awfulapp.thread.AwfulPost;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POSTS;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the size of the database, and the time to load and render-ready a page of posts, with
+ * post content stored as plain text and compressed.
+ * <p>
+ * Like {@link PostIndexBenchmark}, results are logged under the AwfulBenchmark tag and this only
+ * runs when asked:
+ * <pre>./gradlew connectedDebugAndroidTest -Pandroid.testInstrumentationRunnerArguments.awfulBenchmark=true</pre>
+ */
+public class ContentCompressionBenchmark {
+
+    private static final String TAG = "AwfulBenchmark";
+    private static final String DATABASE_NAME = "compression-benchmark.db";
+    private static final int POST_COUNT = 20_000;
+    private static final int POSTS_PER_THREAD = 400;
+    private static final int POSTS_PER_PAGE = 40;
+    private static final int PAGE_READS = 100;
+
+    private static final List<String> WORDS = Arrays.asList(
+            "thread", "post", "goons", "phone", "app", "really", "update", "version", "people", "actually",
+            "never", "because", "something", "build", "release", "probably", "think", "still", "going", "lol");
+
+    private Context context;
+    private final Random random = new Random(15);
+
+
+    @Before
+    public void setUp() {
+        assumeTrue("Benchmarks are disabled - pass awfulBenchmark=true as an instrumentation argument",
+                "true".equals(InstrumentationRegistry.getArguments().getString("awfulBenchmark")));
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        Log.i(TAG, "posts\tcompressed\tdb_size_kb\tpage_read_median_ms\tpage_read_p99_ms");
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+
+    @Test
+    public void plainVersusCompressed() {
+        run(false);
+        run(true);
+    }
+
+
+    private void run(boolean compressed) {
+        DatabaseHelper helper = new DatabaseHelper(context, DATABASE_NAME);
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            populate(db, compressed);
+            // checkpoint the write-ahead log, so the main file holds everything
+            db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null).close();
+            File file = context.getDatabasePath(DATABASE_NAME);
+
+            double[] reads = new double[PAGE_READS];
+            for (int i = 0; i < reads.length; i++) {
+                long start = System.nanoTime();
+                readPage(db, random.nextInt(POST_COUNT / POSTS_PER_THREAD), random.nextInt(POSTS_PER_THREAD / POSTS_PER_PAGE));
+                reads[i] = (System.nanoTime() - start) / 1_000_000.0;
+            }
+            Arrays.sort(reads);
+            Log.i(TAG, String.format(Locale.US, "%d\t%b\t%d\t%.2f\t%.2f", POST_COUNT, compressed,
+                    file.length() / 1024, reads[reads.length / 2], reads[(int) Math.ceil(reads.length * 0.99) - 1]));
+        } finally {
+            helper.close();
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+
+    /**
+     * Fill the posts table through the same writer the provider uses, with or without compression.
+     */
+    private void populate(SQLiteDatabase db, boolean compressed) {
+        db.beginTransaction();
+        try (BulkWriter writer = new BulkWriter(db, TABLE_POSTS, BulkWriter.getColumns(db, TABLE_POSTS),
+                null, compressed ? AwfulPost.CONTENT : null)) {
+            for (int i = 0; i < POST_COUNT; i++) {
+                ContentValues post = new ContentValues();
+                post.put(AwfulPost.ID, i);
+                post.put(AwfulPost.THREAD_ID, i / POSTS_PER_THREAD);
+                post.put(AwfulPost.POST_INDEX, i % POSTS_PER_THREAD + 1);
+                post.put(AwfulPost.USERNAME, "poster" + (i % 500));
+                post.put(AwfulPost.CONTENT, postContent(i));
+                post.put(DatabaseHelper.UPDATED_TIMESTAMP, "2026-10-18 12:00:00.0");
+                writer.write(post);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Load a page of posts and get their content, like the thread display does.
+     */
+    private void readPage(SQLiteDatabase db, int threadId, int page) {
+        int startIndex = page * POSTS_PER_PAGE + 1;
+        try (Cursor cursor = db.query(TABLE_POSTS, AwfulProvider.PostProjection,
+                AwfulPost.THREAD_ID + "=? AND " + AwfulPost.POST_INDEX + ">=? AND " + AwfulPost.POST_INDEX + "<?",
+                AwfulProvider.int2StrArray(threadId, startIndex, startIndex + POSTS_PER_PAGE),
+                null, null, AwfulPost.POST_INDEX + " ASC")) {
+            for (AwfulPost post : AwfulPost.fromCursor(context, cursor)) {
+                post.getContent();
+            }
+        }
+    }
+
+    /**
+     * Some post HTML - a mix of plain replies, quotes of earlier posts, and images.
+     */
+    private String postContent(int postId) {
+        StringBuilder content = new StringBuilder();
+        int quotes = random.nextInt(4) == 0 ? 1 + random.nextInt(3) : 0;
+        for (int i = 0; i < quotes; i++) {
+            content.append("<div class=\"bbc-block\"><h4><a class=\"quote_link\" href=\"/showthread.php?goto=post&amp;postid=")
+                    .append(postId - i - 1).append("#post").append(postId - i - 1)
+                    .append("\" rel=\"nofollow\">poster").append(random.nextInt(500)).append(" posted:</a></h4><blockquote>\n");
+            appendSentences(content, 1 + random.nextInt(3));
+        }
+        for (int i = 0; i < quotes; i++) {
+            content.append("</blockquote></div>\n");
+            appendSentences(content, 1 + random.nextInt(2));
+        }
+        appendSentences(content, 1 + random.nextInt(5));
+        if (random.nextInt(3) == 0) {
+            content.append("<img src=\"https://i.imgur.com/").append(Integer.toHexString(random.nextInt()))
+                    .append(".jpg\" alt=\"\" class=\"timg\" border=\"0\">\n");
+        }
+        return content.toString();
+    }
+
+    private void appendSentences(StringBuilder content, int count) {
+        for (int i = 0; i < count; i++) {
+            int words = 8 + random.nextInt(16);
+            for (int w = 0; w < words; w++) {
+                content.append(w == 0 ? "" : " ").append(WORDS.get(random.nextInt(WORDS.size())));
+            }
+            content.append(".<br>\n");
+        }
+    }
+}
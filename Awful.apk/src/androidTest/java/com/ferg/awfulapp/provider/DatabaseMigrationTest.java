@@ -0,0 +1,284 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.ferg.awfulapp.thread.AwfulEmote;
+import com.ferg.awfulapp.thread.AwfulForum;
+import com.ferg.awfulapp.thread.AwfulMessage;
+import com.ferg.awfulapp.thread.AwfulPost;
+import com.ferg.awfulapp.thread.AwfulThread;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.INDEX_POSTS_THREAD_POSITION;
+import static com.ferg.awfulapp.provider.DatabaseHelper.INDEX_THREADS_FORUM_POSITION;
+import static com.ferg.awfulapp.provider.DatabaseHelper.INDEX_UCP_THREADS_POSITION;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_DRAFTS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_EMOTES;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_FORUM;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_PM;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POSTS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POST_SEARCH;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_THREADS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_THREAD_ACCESS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_UCP_THREADS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TRIGGER_POST_SEARCH_DELETE;
+import static com.ferg.awfulapp.provider.DatabaseHelper.UPDATED_TIMESTAMP;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Upgrades a fixture database from each earlier schema version, and checks it ends up with the
+ * same schema as a new install while keeping its cached rows.
+ * <p>
+ * Each fixture starts from the current schema and undoes the changes made since its version, so
+ * when a version adds something, add the matching step to {@link #createFixture(int)}. Fixtures
+ * go back as far as the schemas are known - older databases are still migrated, but aren't covered
+ * here.
+ * <pre>./gradlew connectedDebugAndroidTest</pre>
+ */
+public class DatabaseMigrationTest {
+
+    private static final String DATABASE_NAME = "migration-test.db";
+    private static final String REFERENCE_NAME = "migration-reference.db";
+    private static final int OLDEST_FIXTURE_VERSION = 36;
+    private static final int CURRENT_VERSION = 41;
+
+    private static final String[] TABLES = {TABLE_FORUM, TABLE_THREADS, TABLE_UCP_THREADS, TABLE_POSTS,
+            TABLE_EMOTES, TABLE_PM, TABLE_DRAFTS, TABLE_THREAD_ACCESS};
+
+    private static final int FORUM_ID = 44;
+    private static final int THREAD_ID = 3_500_000;
+    private static final int POST_COUNT = 40;
+
+    private Context context;
+
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        context.deleteDatabase(REFERENCE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DATABASE_NAME);
+        context.deleteDatabase(REFERENCE_NAME);
+    }
+
+
+    @Test
+    public void upgradesFromEachVersionKeepTheCache() {
+        for (int version = OLDEST_FIXTURE_VERSION; version < CURRENT_VERSION; version++) {
+            createFixture(version);
+            DatabaseHelper helper = new DatabaseHelper(context, DATABASE_NAME);
+            try {
+                SQLiteDatabase db = helper.getWritableDatabase();
+                String from = "from version " + version;
+                assertSchemaIsCurrent(from, db);
+
+                assertEquals(from, 1, count(db, TABLE_FORUM));
+                assertEquals(from, 1, count(db, TABLE_THREADS));
+                assertEquals(from, 1, count(db, TABLE_UCP_THREADS));
+                assertEquals(from, 1, count(db, TABLE_EMOTES));
+                assertEquals(from, 1, count(db, TABLE_PM));
+                assertEquals(from, 1, count(db, TABLE_DRAFTS));
+                // posts stored before version 38 had display settings applied, so they can't be kept
+                int expectedPosts = version < 38 ? 0 : POST_COUNT;
+                assertEquals(from, expectedPosts, count(db, TABLE_POSTS));
+                if (version < 40) {
+                    assertEquals(from, 0, count(db, TABLE_POSTS + " WHERE " + AwfulPost.FINGERPRINT + " IS NOT NULL"));
+                }
+                assertEquals(from, expectedPosts > 0 ? 1 : 0, count(db, TABLE_THREAD_ACCESS));
+            } finally {
+                helper.close();
+                context.deleteDatabase(DATABASE_NAME);
+            }
+        }
+    }
+
+    @Test
+    public void downgradeKeepsTheCache() {
+        createFixture(CURRENT_VERSION);
+        SQLiteDatabase fixture = context.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        try {
+            // a newer version with an extra column
+            fixture.execSQL("ALTER TABLE " + TABLE_THREADS + " ADD COLUMN from_the_future INTEGER;");
+            fixture.setVersion(CURRENT_VERSION + 1);
+        } finally {
+            fixture.close();
+        }
+
+        DatabaseHelper helper = new DatabaseHelper(context, DATABASE_NAME);
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            assertSchemaIsCurrent("from a newer version", db);
+            assertEquals(1, count(db, TABLE_THREADS));
+            assertEquals(POST_COUNT, count(db, TABLE_POSTS));
+        } finally {
+            helper.close();
+        }
+    }
+
+
+    /**
+     * Create a database with the schema from a particular version, and fill it with some cached data.
+     */
+    private void createFixture(int version) {
+        context.deleteDatabase(DATABASE_NAME);
+        SQLiteDatabase db = context.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        try {
+            new DatabaseHelper(context, DATABASE_NAME).onCreate(db);
+            // undo each version's changes, newest first
+            if (version < 41) {
+                db.execSQL("DROP TABLE " + TABLE_THREAD_ACCESS + ";");
+            }
+            if (version < 40) {
+                db.execSQL("DROP TRIGGER " + TRIGGER_POST_SEARCH_DELETE + ";");
+                db.execSQL("DROP TABLE " + TABLE_POST_SEARCH + ";");
+            }
+            if (version < 39) {
+                db.execSQL("DROP INDEX " + INDEX_POSTS_THREAD_POSITION + ";");
+                db.execSQL("DROP INDEX " + INDEX_THREADS_FORUM_POSITION + ";");
+                db.execSQL("DROP INDEX " + INDEX_UCP_THREADS_POSITION + ";");
+            }
+            if (version < 37) {
+                db.execSQL("DROP TABLE " + TABLE_POSTS + ";");
+                db.execSQL("CREATE TABLE " + TABLE_POSTS + " (" +
+                        AwfulPost.ID + " INTEGER UNIQUE," +
+                        AwfulPost.THREAD_ID + " INTEGER," +
+                        AwfulPost.POST_INDEX + " INTEGER," +
+                        AwfulPost.DATE + " VARCHAR," +
+                        AwfulPost.REGDATE + " VARCHAR," +
+                        AwfulPost.USER_ID + " INTEGER," +
+                        AwfulPost.USERNAME + " VARCHAR," +
+                        AwfulPost.IS_IGNORED + " INTEGER," +
+                        AwfulPost.PREVIOUSLY_READ + " INTEGER," +
+                        AwfulPost.EDITABLE + " INTEGER," +
+                        AwfulPost.IS_OP + " INTEGER," +
+                        AwfulPost.IS_PLAT + " INTEGER," +
+                        AwfulPost.ROLE + " VARCHAR," +
+                        AwfulPost.AVATAR + " VARCHAR," +
+                        AwfulPost.AVATAR_SECOND + " VARCHAR," +
+                        AwfulPost.AVATAR_TEXT + " VARCHAR," +
+                        AwfulPost.CONTENT + " VARCHAR," +
+                        AwfulPost.EDITED + " VARCHAR," +
+                        UPDATED_TIMESTAMP + " DATETIME);");
+            }
+            populate(db, version);
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+
+    private void populate(SQLiteDatabase db, int version) {
+        String timestamp = "2026-10-18 12:00:00.0";
+
+        ContentValues forum = new ContentValues();
+        forum.put(AwfulForum.ID, FORUM_ID);
+        forum.put(AwfulForum.TITLE, "Some forum");
+        forum.put(UPDATED_TIMESTAMP, timestamp);
+        db.insertOrThrow(TABLE_FORUM, null, forum);
+
+        ContentValues thread = new ContentValues();
+        thread.put(AwfulThread.ID, THREAD_ID);
+        thread.put(AwfulThread.FORUM_ID, FORUM_ID);
+        thread.put(AwfulThread.INDEX, 1);
+        thread.put(AwfulThread.TITLE, "Some thread");
+        thread.put(AwfulThread.BOOKMARKED, 1);
+        thread.put(UPDATED_TIMESTAMP, timestamp);
+        db.insertOrThrow(TABLE_THREADS, null, thread);
+
+        ContentValues bookmark = new ContentValues();
+        bookmark.put(AwfulThread.ID, THREAD_ID);
+        bookmark.put(AwfulThread.INDEX, 1);
+        bookmark.put(UPDATED_TIMESTAMP, timestamp);
+        db.insertOrThrow(TABLE_UCP_THREADS, null, bookmark);
+
+        for (int i = 0; i < POST_COUNT; i++) {
+            ContentValues post = new ContentValues();
+            post.put(AwfulPost.ID, THREAD_ID * 10L + i);
+            post.put(AwfulPost.THREAD_ID, THREAD_ID);
+            post.put(AwfulPost.POST_INDEX, i + 1);
+            post.put(AwfulPost.USERNAME, "poster" + i);
+            post.put(AwfulPost.CONTENT, "post number " + i);
+            if (version >= 37) {
+                post.put(AwfulPost.FINGERPRINT, i);
+            }
+            post.put(UPDATED_TIMESTAMP, timestamp);
+            db.insertOrThrow(TABLE_POSTS, null, post);
+        }
+
+        ContentValues emote = new ContentValues();
+        emote.put(AwfulEmote.ID, 1);
+        emote.put(AwfulEmote.TEXT, ":v:");
+        emote.put(UPDATED_TIMESTAMP, timestamp);
+        db.insertOrThrow(TABLE_EMOTES, null, emote);
+
+        ContentValues message = new ContentValues();
+        message.put(AwfulMessage.ID, 1);
+        message.put(AwfulMessage.TITLE, "Some message");
+        message.put(UPDATED_TIMESTAMP, timestamp);
+        db.insertOrThrow(TABLE_PM, null, message);
+
+        ContentValues draft = new ContentValues();
+        draft.put(AwfulMessage.ID, THREAD_ID);
+        draft.put(AwfulMessage.REPLY_CONTENT, "an unsent reply");
+        draft.put(UPDATED_TIMESTAMP, timestamp);
+        db.insertOrThrow(TABLE_DRAFTS, null, draft);
+
+        if (version >= 41) {
+            ContentCache.recordAccess(db, THREAD_ID, System.currentTimeMillis());
+        }
+    }
+
+
+    /**
+     * Check a database has the same tables, columns, indexes and triggers as a fresh install.
+     */
+    private void assertSchemaIsCurrent(String message, SQLiteDatabase db) {
+        DatabaseHelper referenceHelper = new DatabaseHelper(context, REFERENCE_NAME);
+        try {
+            SQLiteDatabase reference = referenceHelper.getReadableDatabase();
+            for (String table : TABLES) {
+                // migrated tables can have their columns in a different order
+                assertEquals(message + ", table " + table, new HashSet<>(SchemaMigrator.getSchema(reference, table)),
+                        new HashSet<>(SchemaMigrator.getSchema(db, table)));
+            }
+            assertEquals(message, getSchemaObjects(reference), getSchemaObjects(db));
+        } finally {
+            referenceHelper.close();
+        }
+    }
+
+    /**
+     * The names of everything in a database's schema apart from the automatic indexes.
+     */
+    private static List<String> getSchemaObjects(SQLiteDatabase db) {
+        List<String> names = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT type || ' ' || name FROM sqlite_master" +
+                " WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata' ORDER BY type, name", null)) {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        }
+        return names;
+    }
+
+    private static long count(SQLiteDatabase db, String tableAndWhere) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + tableAndWhere, null);
+    }
+}
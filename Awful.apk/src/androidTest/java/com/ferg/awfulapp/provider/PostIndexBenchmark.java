@@ -0,0 +1,189 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.ferg.awfulapp.thread.AwfulPost;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POSTS;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures writing and loading a page of posts with and without the posts table's thread position
+ * index, with 10k, 100k and 1M posts cached.
+ * <p>
+ * The unindexed runs use the old write path (delete whatever's at each post's position, then
+ * replace), and the indexed runs use the current one (just replace). Results are logged under the
+ * AwfulBenchmark tag. This takes a while, so it only runs when asked:
+ * <pre>./gradlew connectedDebugAndroidTest -Pandroid.testInstrumentationRunnerArguments.awfulBenchmark=true</pre>
+ */
+public class PostIndexBenchmark {
+
+    private static final String TAG = "AwfulBenchmark";
+    private static final String DATABASE_NAME = "index-benchmark.db";
+    private static final int POSTS_PER_THREAD = 400;
+    private static final int POSTS_PER_PAGE = 40;
+    private static final int PAGE_WRITES = 20;
+    private static final int PAGE_READS = 100;
+
+    private Context context;
+    private final Random random = new Random(39);
+
+
+    @Before
+    public void setUp() {
+        assumeTrue("Benchmarks are disabled - pass awfulBenchmark=true as an instrumentation argument",
+                "true".equals(InstrumentationRegistry.getArguments().getString("awfulBenchmark")));
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        Log.i(TAG, "posts\tindexed\tpage_write_median_ms\tpage_read_median_ms");
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+
+    @Test
+    public void tenThousandPosts() {
+        compare(10_000);
+    }
+
+    @Test
+    public void hundredThousandPosts() {
+        compare(100_000);
+    }
+
+    @Test
+    public void oneMillionPosts() {
+        compare(1_000_000);
+    }
+
+
+    private void compare(int postCount) {
+        run(postCount, false);
+        run(postCount, true);
+    }
+
+    private void run(int postCount, boolean indexed) {
+        DatabaseHelper helper = new DatabaseHelper(context, DATABASE_NAME);
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            if (!indexed) {
+                db.execSQL("DROP INDEX " + DatabaseHelper.INDEX_POSTS_THREAD_POSITION);
+            }
+            populate(db, postCount);
+            int threadCount = postCount / POSTS_PER_THREAD;
+
+            double[] writes = new double[PAGE_WRITES];
+            for (int i = 0; i < writes.length; i++) {
+                long start = System.nanoTime();
+                writePage(db, random.nextInt(threadCount), random.nextInt(POSTS_PER_THREAD / POSTS_PER_PAGE), indexed);
+                writes[i] = (System.nanoTime() - start) / 1_000_000.0;
+            }
+
+            double[] reads = new double[PAGE_READS];
+            for (int i = 0; i < reads.length; i++) {
+                long start = System.nanoTime();
+                readPage(db, random.nextInt(threadCount), random.nextInt(POSTS_PER_THREAD / POSTS_PER_PAGE));
+                reads[i] = (System.nanoTime() - start) / 1_000_000.0;
+            }
+
+            Log.i(TAG, String.format(Locale.US, "%d\t%b\t%.2f\t%.2f", postCount, indexed, median(writes), median(reads)));
+        } finally {
+            helper.close();
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+
+    /**
+     * Fill the posts table with full threads of fake posts.
+     */
+    private void populate(SQLiteDatabase db, int postCount) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_POSTS + " (" +
+                AwfulPost.ID + ", " + AwfulPost.THREAD_ID + ", " + AwfulPost.POST_INDEX + ", " +
+                AwfulPost.USERNAME + ", " + AwfulPost.CONTENT + ", " + DatabaseHelper.UPDATED_TIMESTAMP +
+                ") VALUES (?, ?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < postCount; i++) {
+                bindPost(insert, i, i / POSTS_PER_THREAD, i % POSTS_PER_THREAD + 1);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * Replace a page of posts in a thread, the way the provider's bulk insert does.
+     */
+    private void writePage(SQLiteDatabase db, int threadId, int page, boolean indexed) {
+        SQLiteStatement replace = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_POSTS + " (" +
+                AwfulPost.ID + ", " + AwfulPost.THREAD_ID + ", " + AwfulPost.POST_INDEX + ", " +
+                AwfulPost.USERNAME + ", " + AwfulPost.CONTENT + ", " + DatabaseHelper.UPDATED_TIMESTAMP +
+                ") VALUES (?, ?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < POSTS_PER_PAGE; i++) {
+                int postIndex = page * POSTS_PER_PAGE + i + 1;
+                if (!indexed) {
+                    db.delete(TABLE_POSTS, AwfulPost.POST_INDEX + "=? AND " + AwfulPost.THREAD_ID + "=?",
+                            AwfulProvider.int2StrArray(postIndex, threadId));
+                }
+                bindPost(replace, threadId * POSTS_PER_THREAD + postIndex - 1, threadId, postIndex);
+                replace.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            replace.close();
+        }
+    }
+
+    /**
+     * Load a page of posts, with the same query ThreadDisplayFragment uses.
+     */
+    private void readPage(SQLiteDatabase db, int threadId, int page) {
+        int startIndex = page * POSTS_PER_PAGE + 1;
+        try (Cursor cursor = PostQueryPlanTest.queryPage(db, threadId, startIndex, startIndex + POSTS_PER_PAGE)) {
+            while (cursor.moveToNext()) {
+                cursor.getString(cursor.getColumnIndexOrThrow(AwfulPost.CONTENT));
+            }
+        }
+    }
+
+    private static void bindPost(SQLiteStatement statement, long postId, int threadId, int postIndex) {
+        statement.bindLong(1, postId);
+        statement.bindLong(2, threadId);
+        statement.bindLong(3, postIndex);
+        statement.bindString(4, "poster" + (postId % 500));
+        statement.bindString(5, "<p>Post " + postId + " in thread " + threadId + ", with enough text to look like a short reply.</p>");
+        statement.bindString(6, "2026-10-18 12:00:00.0");
+    }
+
+    private static double median(double[] samples) {
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,77 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.ferg.awfulapp.thread.AwfulPost;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POSTS;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the thread page query is answered from the posts table's thread position index, without
+ * scanning the table or sorting the results.
+ */
+public class PostQueryPlanTest {
+
+    private static final String DATABASE_NAME = "query-plan-test.db";
+
+    private Context context;
+    private DatabaseHelper helper;
+
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        helper = new DatabaseHelper(context, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+
+    @Test
+    public void pageQueryUsesThePositionIndex() {
+        SQLiteDatabase db = helper.getReadableDatabase();
+        String sql = pageQueryBuilder().buildQuery(null, AwfulPost.PAGE_SELECTION, null, null, AwfulPost.PAGE_SORT_ORDER, null);
+
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, AwfulProvider.int2StrArray(1, 1, 41))) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        }
+        assertTrue(plan.toString(), plan.indexOf(DatabaseHelper.INDEX_POSTS_THREAD_POSITION) >= 0);
+        assertFalse(plan.toString(), plan.indexOf("TEMP B-TREE") >= 0);
+    }
+
+
+    /**
+     * Query a page of posts the way the provider does for {@link AwfulPost#getThreadUri(int)}.
+     */
+    static Cursor queryPage(SQLiteDatabase db, int threadId, int startIndex, int endIndex) {
+        return pageQueryBuilder().query(db, null, AwfulPost.PAGE_SELECTION,
+                AwfulProvider.int2StrArray(threadId, startIndex, endIndex), null, null, AwfulPost.PAGE_SORT_ORDER);
+    }
+
+    private static SQLiteQueryBuilder pageQueryBuilder() {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(TABLE_POSTS);
+        builder.appendWhere(AwfulPost.THREAD_ID + "=?");
+        return builder;
+    }
+}
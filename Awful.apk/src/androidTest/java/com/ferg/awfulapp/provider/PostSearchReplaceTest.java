@@ -0,0 +1,88 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.ferg.awfulapp.thread.AwfulPost;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POSTS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POST_SEARCH;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks a post that's replaced by a different post at the same thread position doesn't leave its
+ * search entry behind - the replace deletes the old row without firing the search delete trigger.
+ */
+public class PostSearchReplaceTest {
+
+    private static final String DATABASE_NAME = "search-replace-test.db";
+
+    private Context context;
+    private DatabaseHelper helper;
+
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        helper = new DatabaseHelper(context, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+
+    @Test
+    public void displacedPostsAreUnindexed() {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        try (PostSearchIndex.Writer writer = new PostSearchIndex.Writer(db)) {
+            write(db, writer, post(1, "the original post"));
+            assertEquals(1, indexed(db, 1));
+
+            // a different post turns up at the same position, e.g. after the original was deleted
+            write(db, writer, post(2, "the post that replaced it"));
+            assertEquals(0, indexed(db, 1));
+            assertEquals(1, indexed(db, 2));
+
+            // writing the same post again keeps its entry, even without new search text
+            write(db, writer, post(2, null));
+            assertEquals(1, indexed(db, 2));
+        }
+    }
+
+
+    private static void write(SQLiteDatabase db, PostSearchIndex.Writer writer, ContentValues post) {
+        writer.removeDisplaced(post);
+        ContentValues row = new ContentValues(post);
+        row.remove(AwfulPost.SEARCH_TEXT);
+        db.insertWithOnConflict(TABLE_POSTS, null, row, SQLiteDatabase.CONFLICT_REPLACE);
+        writer.index(post);
+    }
+
+    private static ContentValues post(long id, String text) {
+        ContentValues post = new ContentValues();
+        post.put(AwfulPost.ID, id);
+        post.put(AwfulPost.THREAD_ID, 10);
+        post.put(AwfulPost.POST_INDEX, 1);
+        post.put(AwfulPost.USERNAME, "poster");
+        if (text != null) {
+            post.put(AwfulPost.SEARCH_TEXT, text);
+        }
+        return post;
+    }
+
+    private static long indexed(SQLiteDatabase db, long postId) {
+        return DatabaseUtils.queryNumEntries(db, TABLE_POST_SEARCH, "docid=?", new String[]{String.valueOf(postId)});
+    }
+}
@@ -0,0 +1,196 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.ferg.awfulapp.thread.AwfulPost;
+import com.ferg.awfulapp.thread.AwfulThread;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POSTS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_THREADS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the per-query cost of reading through the ContentProvider (Uri matching, the query
+ * builder and its projection maps, the cursor wrapping) against reading through the
+ * {@link AwfulDatabase} stores, for a page of posts and for a single thread.
+ * <p>
+ * The provider is tied to the app's database, so this stores its test threads there, with IDs
+ * well out of the range the site uses, and removes them afterwards. Results are logged under the
+ * AwfulBenchmark tag. This only runs when asked:
+ * <pre>./gradlew connectedDebugAndroidTest -Pandroid.testInstrumentationRunnerArguments.awfulBenchmark=true</pre>
+ */
+public class RepositoryBenchmark {
+
+    private static final String TAG = "AwfulBenchmark";
+    private static final int FIRST_THREAD_ID = 2_000_000_000;
+    private static final int THREADS = 20;
+    private static final int POSTS_PER_THREAD = 400;
+    private static final int POSTS_PER_PAGE = 40;
+    private static final int WARMUP_READS = 50;
+    private static final int READS = 500;
+
+    private Context context;
+    private AwfulDatabase database;
+    private final Random random = new Random(20);
+
+
+    @Before
+    public void setUp() {
+        assumeTrue("Benchmarks are disabled - pass awfulBenchmark=true as an instrumentation argument",
+                "true".equals(InstrumentationRegistry.getArguments().getString("awfulBenchmark")));
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = AwfulDatabase.getInstance(context);
+        populate();
+        Log.i(TAG, "query\tpath\tmedian_us\tmean_us");
+    }
+
+    @After
+    public void tearDown() {
+        if (database != null) {
+            String[] range = AwfulProvider.int2StrArray(FIRST_THREAD_ID);
+            database.writer.write(db -> {
+                db.delete(TABLE_POSTS, AwfulPost.THREAD_ID + ">=?", range);
+                return db.delete(TABLE_THREADS, AwfulThread.ID + ">=?", range);
+            }, Collections.emptyList());
+        }
+    }
+
+
+    @Test
+    public void postPages() {
+        ContentResolver resolver = context.getContentResolver();
+        // same as ThreadDisplayFragment's posts loader, including turning the rows into posts
+        Query viaProvider = (threadId, page) -> {
+            int start = page * POSTS_PER_PAGE + 1;
+            try (Cursor cursor = resolver.query(AwfulPost.getThreadUri(threadId), AwfulProvider.PostProjection, AwfulPost.PAGE_SELECTION,
+                    AwfulProvider.int2StrArray(start, start + POSTS_PER_PAGE), AwfulPost.PAGE_SORT_ORDER)) {
+                return AwfulPost.fromCursor(context, cursor).size();
+            }
+        };
+        Query viaStore = (threadId, page) ->
+                database.posts().getPosts(threadId, page * POSTS_PER_PAGE + 1, POSTS_PER_PAGE).size();
+
+        assertEquals(POSTS_PER_PAGE, viaProvider.run(FIRST_THREAD_ID, 0));
+        assertEquals(POSTS_PER_PAGE, viaStore.run(FIRST_THREAD_ID, 0));
+        compare("post_page", viaProvider, viaStore);
+    }
+
+    @Test
+    public void singleThread() {
+        ContentResolver resolver = context.getContentResolver();
+        Query viaProvider = (threadId, page) -> {
+            try (Cursor cursor = resolver.query(ContentUris.withAppendedId(AwfulThread.CONTENT_URI, threadId),
+                    AwfulProvider.ThreadProjection, null, null, null)) {
+                return cursor != null && cursor.moveToFirst() ? new AwfulThread.Mapper().read(cursor).id : 0;
+            }
+        };
+        Query viaStore = (threadId, page) -> {
+            AwfulThread thread = database.threads().getThread(threadId);
+            return thread == null ? 0 : thread.id;
+        };
+
+        assertEquals(FIRST_THREAD_ID, viaProvider.run(FIRST_THREAD_ID, 0));
+        assertEquals(FIRST_THREAD_ID, viaStore.run(FIRST_THREAD_ID, 0));
+        compare("thread", viaProvider, viaStore);
+    }
+
+
+    private interface Query {
+        int run(int threadId, int page);
+    }
+
+    private void compare(String name, Query viaProvider, Query viaStore) {
+        // alternate the paths, so neither gets an unfair share of a warm cache
+        for (int i = 0; i < WARMUP_READS; i++) {
+            runRandom(viaProvider);
+            runRandom(viaStore);
+        }
+        double[] providerTimes = new double[READS];
+        double[] storeTimes = new double[READS];
+        for (int i = 0; i < READS; i++) {
+            providerTimes[i] = runRandom(viaProvider);
+            storeTimes[i] = runRandom(viaStore);
+        }
+        Log.i(TAG, String.format(Locale.US, "%s\tprovider\t%.1f\t%.1f", name, median(providerTimes), mean(providerTimes)));
+        Log.i(TAG, String.format(Locale.US, "%s\tstore\t%.1f\t%.1f", name, median(storeTimes), mean(storeTimes)));
+    }
+
+    /**
+     * Run a query against a random page of a random thread, returning how long it took in microseconds.
+     */
+    private double runRandom(Query query) {
+        int threadId = FIRST_THREAD_ID + random.nextInt(THREADS);
+        int page = random.nextInt(POSTS_PER_THREAD / POSTS_PER_PAGE);
+        long start = System.nanoTime();
+        query.run(threadId, page);
+        return (System.nanoTime() - start) / 1000.0;
+    }
+
+
+    /**
+     * Store some full threads of fake posts.
+     */
+    private void populate() {
+        String updateTime = "2026-10-18 12:00:00.0";
+        ContentValues[] threads = new ContentValues[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int threadId = FIRST_THREAD_ID + t;
+            ContentValues thread = new ContentValues();
+            thread.put(AwfulThread.ID, threadId);
+            thread.put(AwfulThread.FORUM_ID, 1);
+            thread.put(AwfulThread.INDEX, t);
+            thread.put(AwfulThread.TITLE, "Benchmark thread " + t);
+            thread.put(AwfulThread.POSTCOUNT, POSTS_PER_THREAD);
+            thread.put(DatabaseHelper.UPDATED_TIMESTAMP, updateTime);
+            threads[t] = thread;
+
+            List<ContentValues> posts = new ArrayList<>(POSTS_PER_THREAD);
+            for (int i = 0; i < POSTS_PER_THREAD; i++) {
+                long postId = (long) t * POSTS_PER_THREAD + i + FIRST_THREAD_ID;
+                ContentValues post = new ContentValues();
+                post.put(AwfulPost.ID, postId);
+                post.put(AwfulPost.THREAD_ID, threadId);
+                post.put(AwfulPost.POST_INDEX, i + 1);
+                post.put(AwfulPost.USERNAME, "poster" + (postId % 500));
+                post.put(AwfulPost.CONTENT, "<p>Post " + postId + " in thread " + threadId + ", with enough text to look like a short reply.</p>");
+                post.put(DatabaseHelper.UPDATED_TIMESTAMP, updateTime);
+                posts.add(post);
+            }
+            database.posts().storePosts(posts.toArray(new ContentValues[0]));
+        }
+        database.threads().storeThreads(threads);
+    }
+
+    private static double median(double[] samples) {
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static double mean(double[] samples) {
+        double total = 0;
+        for (double sample : samples) {
+            total += sample;
+        }
+        return total / samples.length;
+    }
+}
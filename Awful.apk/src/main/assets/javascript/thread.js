@@ -71,8 +71,8 @@ function containerInit() {
             document.addEventListener('touchcancel', handleTouchLeave);
 		}
 	}, {passive: true});
-	// Auto-starting of videos
-	if (listener.getPreference('inlineWebm') === 'true' && listener.getPreference('autostartWebm') === 'true') {
+	// Auto-starting of videos - this is handled by an IntersectionObserver where they're supported (see activatePost)
+	if (listener.getPreference('inlineWebm') === 'true' && listener.getPreference('autostartWebm') === 'true' && !('IntersectionObserver' in window)) {
 		var debouncedVideosScrollListener = debounce(pauseVideosOutOfView, 250);
 
 		window.addEventListener('scroll', function containerScroll() {
@@ -106,23 +106,90 @@ function findInPath(event, cssClass, returnElement) {
 }
 
 /**
- * Loads the current thread html into the body container
+ * How many posts are added to the page in each animation frame while it's loading
+ */
+var POSTS_PER_CHUNK = 5;
+
+/**
+ * Loads the current thread html into the body container.
+ *
+ * Instead of assigning the whole page to innerHTML at once, the html is parsed into an inert
+ * template (so nothing is laid out or fetched yet) and its posts are moved into the page a chunk at
+ * a time, one chunk per frame. The chunk holding the post we're going to scroll to goes in first,
+ * then the posts below it, then the ones above it. Each chunk is processed as it's added, so no
+ * single frame has to lay out and process the whole page.
  */
 function loadPageHtml() {
 	if (window.topScrollTimeout) {
 		window.clearTimeout(window.topScrollTimeout);
 		window.cancelAnimationFrame(window.topScrollID);
 	}
+	// stop adding anything from a page that's still loading
+	window.cancelAnimationFrame(window.pageChunkID);
+	// the whole page is being replaced, so any changes waiting to be patched in are out of date
+	listener.clearPagePatches();
 
 	window.topScrollItem = null;
 	window.topScrollPos = 0;
 	window.topScrollCount = 0;
+	var container = document.getElementById('container');
 	var html = listener.getBodyHtml();
-	document.getElementById('container').innerHTML = html;
+	window.pageLoading = !!html;
 	if (!html) {
+		container.innerHTML = '';
 		return;
 	}
+
+	var template = document.createElement('template');
+	template.innerHTML = html;
+	// pages are usually wrapped in a single content div - if so, that's where the posts go
+	var root = template.content;
+	var wrapper = root.firstElementChild;
+	if (root.childElementCount === 1 && wrapper.classList.contains('content')) {
+		root = wrapper;
+	}
+	var nodes = Array.prototype.filter.call(root.childNodes, function isContent(node) {
+		return node.nodeType === Node.ELEMENT_NODE || node.textContent.trim() !== '';
+	});
+	var parent = container;
+	if (root === wrapper) {
+		parent = document.importNode(wrapper, false);
+	}
+	container.textContent = '';
+	if (parent !== container) {
+		container.appendChild(parent);
+	}
+
 	pageInit();
+	var hideRead = root.querySelector('.toggleread') !== null;
+	var first = Math.max(0, Math.min(findTargetIndex(nodes), nodes.length - POSTS_PER_CHUNK));
+	var above = first;
+	var below = first;
+
+	/**
+	 * Adds the next chunk of posts - the ones below the target first, then the ones above it
+	 */
+	function addChunk() {
+		if (below < nodes.length) {
+			var end = Math.min(below + POSTS_PER_CHUNK, nodes.length);
+			insertPostNodes(parent, nodes.slice(below, end), null, hideRead);
+			below = end;
+		} else if (above > 0) {
+			var start = Math.max(above - POSTS_PER_CHUNK, 0);
+			insertPostNodes(parent, nodes.slice(start, above), nodes[above], hideRead);
+			above = start;
+		}
+		if (below < nodes.length || above > 0) {
+			window.pageChunkID = window.requestAnimationFrame(addChunk);
+			return;
+		}
+		window.pageLoading = false;
+		if (window.twttr && !window.twttr.init) {
+			window.twttr.insertTag();
+		}
+	}
+	addChunk();
+
 	window.topScrollTimeout = window.setTimeout(function hello() {
 		window.dispatchEvent(new Event('awful-scroll-post'));
 	}, 1000);
@@ -132,36 +199,182 @@ function loadPageHtml() {
 }
 
 /**
- * Initializes the newly added posts that have just been added to the container
+ * Applies the changes the app has made to the page's html (see AwfulWebView#setBodyHtml), replacing
+ * changed posts and adding new ones without reloading the rest of the page. Every queued patch is
+ * applied in order, so a burst of updates only needs one call.
+ *
+ * The first post at the top of the screen is used as a scroll anchor - if posts above it change
+ * size, the page is scrolled to keep it in the same place.
+ */
+function applyPagePatch() {
+	var patch = listener.getPagePatch();
+	if (!patch) {
+		return;
+	}
+	// the page being loaded might be older than the patch, so load the current html instead
+	if (window.pageLoading) {
+		loadPageHtml();
+		return;
+	}
+	var anchor = findScrollAnchor();
+	var anchorId = anchor ? anchor.id : null;
+	var anchorTop = anchor ? anchor.getBoundingClientRect().top : 0;
+	var hideRead = document.body.querySelector('.toggleread') !== null;
+
+	for (; patch; patch = listener.getPagePatch()) {
+		if (!patchPosts(JSON.parse(patch), hideRead)) {
+			// the page isn't what the patch expects, so it's out of date
+			loadPageHtml();
+			return;
+		}
+	}
+	if (window.twttr && !window.twttr.init) {
+		window.twttr.insertTag();
+	}
+
+	var newAnchor = anchorId ? document.getElementById(anchorId) : null;
+	if (newAnchor) {
+		window.scrollBy(0, newAnchor.getBoundingClientRect().top - anchorTop);
+	}
+}
+
+/**
+ * Replaces and inserts the posts from one page patch
+ * @param {Array} changes The patch's changed posts, in page order
+ * @param {boolean} hideRead Whether read posts are being hidden
+ * @returns {boolean} false if the page doesn't have the posts the patch expects
+ */
+function patchPosts(changes, hideRead) {
+	for (var i = 0; i < changes.length; i++) {
+		var change = changes[i];
+		var existing = document.getElementById(change.id);
+		var previous = change.after ? document.getElementById(change.after) : null;
+		if (!existing && !previous) {
+			return false;
+		}
+		var template = document.createElement('template');
+		template.innerHTML = change.html;
+		var post = template.content.firstElementChild;
+		if (existing) {
+			insertPostNodes(existing.parentNode, [post], null, hideRead);
+		} else {
+			insertPostNodes(previous.parentNode, [post], previous.nextSibling, hideRead);
+		}
+	}
+	return true;
+}
+
+/**
+ * Finds the first post that's showing at the top of the screen
+ * @returns {Element|null} The post, or null if there isn't one
+ */
+function findScrollAnchor() {
+	var posts = document.querySelectorAll('#container article[id]');
+	for (var i = 0; i < posts.length; i++) {
+		if (posts[i].getBoundingClientRect().bottom > 0) {
+			return posts[i];
+		}
+	}
+	return null;
+}
+
+/**
+ * Finds the position of the post the page will scroll to when it loads - the post being jumped to,
+ * or the first unread post
+ * @param {Array} nodes The top-level nodes of the page being loaded
+ * @returns {Number} The index of the post in the nodes, or 0 if there isn't one
+ */
+function findTargetIndex(nodes) {
+	var postjump = typeof listener.getPostJump === 'function' ? listener.getPostJump() : '';
+	var unreadIndex = -1;
+	for (var i = 0; i < nodes.length; i++) {
+		if (nodes[i].nodeType !== Node.ELEMENT_NODE) {
+			continue;
+		}
+		if (postjump !== '' && nodes[i].id === postjump) {
+			return i;
+		}
+		if (unreadIndex === -1 && nodes[i].classList.contains('unread')) {
+			unreadIndex = i;
+		}
+	}
+	return Math.max(unreadIndex, 0);
+}
+
+/**
+ * Adds posts to the page, replacing any that are already there with the same ID, and processes them
+ * @param {Element} parent The element the posts belong in
+ * @param {Array} nodes The posts to add, in page order - these are moved into the page
+ * @param {Node} before The node to insert new posts in front of, or null to add them at the end
+ * @param {Boolean} hideRead Whether previously read posts should be hidden
+ */
+function insertPostNodes(parent, nodes, before, hideRead) {
+	var fragment = document.createDocumentFragment();
+	var deferImages = getPostObserver() !== null;
+	nodes.forEach(function add(node) {
+		// the nodes are still inert here, so nothing has started loading yet
+		if (deferImages && node.nodeType === Node.ELEMENT_NODE) {
+			deferPostImages(node);
+		}
+		var post = document.adoptNode(node);
+		var existing = post.id ? document.getElementById(post.id) : null;
+		if (existing) {
+			if (deferImages) {
+				getPostObserver().unobserve(existing);
+			}
+			existing.parentNode.replaceChild(post, existing);
+		} else {
+			fragment.appendChild(post);
+		}
+	});
+	parent.insertBefore(fragment, before && before.parentNode === parent ? before : null);
+	nodes.forEach(function each(post) {
+		if (post.nodeType !== Node.ELEMENT_NODE) {
+			return;
+		}
+		if (hideRead && post.classList.contains('read')) {
+			post.style.display = 'none';
+		}
+		initPostSpoilers(post);
+		processPosts(post);
+	});
+}
+
+/**
+ * Clears out anything left over from the previous page before new posts are added
  */
 function pageInit() {
 	document.head.querySelectorAll('.JSONP').forEach(function removeScripts(script) {
 		script.remove();
 	});
-	var spoilers = document.body.querySelectorAll('.bbc-spoiler');
-	spoilers.forEach(function each(spoiler) {
+}
+
+/**
+ * Sets up the spoilers in some newly added posts
+ * @param {Element} scopeElement The element containing the spoilers
+ */
+function initPostSpoilers(scopeElement) {
+	scopeElement.querySelectorAll('.bbc-spoiler').forEach(function each(spoiler) {
 		spoiler.removeAttribute('onmouseover');
 		spoiler.removeAttribute('onmouseout');
 		if (listener.getPreference('showSpoilers') === 'true') {
 			spoiler.classList.remove('bbc-spoiler');
 		}
 	});
-	// hide-old posts
-	if (document.body.querySelector('.toggleread') !== null) {
-		document.body.querySelectorAll('.read').forEach(function each(post) {
-			post.style.display = 'none';
-		});
-	}
-
-	processPosts();
-	if (window.twttr && !window.twttr.init) {
-		window.twttr.insertTag();
-	}
-
 }
 
 /**
- * Processes posts
+ * How far outside the screen posts get activated (see activatePost), so they're ready by the time
+ * they scroll into view
+ */
+var POST_ACTIVATION_MARGIN = '100% 0px';
+
+/**
+ * Processes posts.
+ *
+ * The cheap processing happens straight away. The expensive part - loading images, embeds and
+ * videos - is left until a post gets near the screen, if it's a single post and the WebView can
+ * tell us when that happens (see getPostObserver). Otherwise everything is activated immediately.
  * @param {Element} scopeElement The element containing posts to process
  */
 function processPosts(scopeElement) {
@@ -175,12 +388,6 @@ function processPosts(scopeElement) {
 		});
 	}
 
-	processThreadEmbeds(scopeElement);
-
-	if (listener.getPreference('inlineWebm') === 'true' && listener.getPreference('autostartWebm') === 'true') {
-		pauseVideosOutOfView(scopeElement);
-	}
-
 	if (listener.getPreference('highlightUsername') === 'true') {
 		highlightOwnUsername(scopeElement);
 	}
@@ -209,16 +416,119 @@ function processPosts(scopeElement) {
             prepareFreezeGif(this);
         }
     }
+
+	var observer = getPostObserver();
+	if (observer && scopeElement.tagName === 'ARTICLE' && scopeElement.id) {
+		observer.observe(scopeElement);
+	} else {
+		activatePost(scopeElement);
+	}
+}
+
+/**
+ * Gets the observer that activates posts as they get near the screen
+ * @returns {IntersectionObserver|null} The observer, or null if the WebView doesn't support them
+ */
+function getPostObserver() {
+	if (!('IntersectionObserver' in window)) {
+		return null;
+	}
+	if (!window.postObserver) {
+		window.postObserver = new IntersectionObserver(function onPostsVisible(entries, observer) {
+			entries.forEach(function each(entry) {
+				if (entry.isIntersecting) {
+					observer.unobserve(entry.target);
+					activatePost(entry.target);
+				}
+			});
+		}, {rootMargin: POST_ACTIVATION_MARGIN});
+	}
+	return window.postObserver;
+}
+
+/**
+ * Moves the sources of a post's content images aside, so they don't load until the post is activated.
+ * GIFs that get frozen are left alone, since they need to load to be frozen.
+ * @param {Element} post The post, before it's added to the page
+ */
+function deferPostImages(post) {
+	var freezeGifs = listener.getPreference('disableGifs') === 'true';
+	post.querySelectorAll('.postcontent img[src]:not(.avatar)').forEach(function each(image) {
+		var src = image.getAttribute('src');
+		if (freezeGifs && image.hasAttribute('title') && src.endsWith('.gif')) {
+			return;
+		}
+		image.dataset.deferredSrc = src;
+		image.removeAttribute('src');
+	});
 }
 
 /**
- * Eventhandler that pauses all videos that have been scrolled out of the viewport and starts all videos currently in the viewport
+ * Loads the heavy parts of some posts - their images, embeds and videos
+ * @param {Element} scopeElement The element containing posts to activate
+ */
+function activatePost(scopeElement) {
+	scopeElement.querySelectorAll('img[data-deferred-src]').forEach(function each(image) {
+		image.setAttribute('src', image.dataset.deferredSrc);
+		delete image.dataset.deferredSrc;
+	});
+
+	processThreadEmbeds(scopeElement);
+	resolveEmbedPlaceholders(scopeElement);
+
+	if (listener.getPreference('inlineWebm') === 'true' && listener.getPreference('autostartWebm') === 'true') {
+		var observer = getVideoObserver();
+		if (observer) {
+			scopeElement.querySelectorAll('video').forEach(function each(video) {
+				observer.observe(video);
+			});
+		} else {
+			pauseVideosOutOfView(scopeElement);
+		}
+	}
+}
+
+/**
+ * Gets the observer that plays videos while they're fully on screen, and pauses them otherwise
+ * @returns {IntersectionObserver|null} The observer, or null if the WebView doesn't support them
+ */
+function getVideoObserver() {
+	if (!('IntersectionObserver' in window)) {
+		return null;
+	}
+	if (!window.videoObserver) {
+		window.videoObserver = new IntersectionObserver(function onVideosMoved(entries) {
+			entries.forEach(function each(entry) {
+				var video = entry.target;
+				if (entry.intersectionRatio >= 1 && canAutoplay(video)) {
+					video.play();
+				} else {
+					video.pause();
+				}
+			});
+		}, {threshold: [0, 1]});
+	}
+	return window.videoObserver;
+}
+
+/**
+ * Checks whether a video can be started automatically when it's on screen
+ * @param {Element} video The video element
+ * @returns {Boolean} True if it can autoplay
+ */
+function canAutoplay(video) {
+	return video.parentElement.parentElement.tagName !== 'BLOCKQUOTE' && video.firstElementChild.src.indexOf('webm') === -1;
+}
+
+/**
+ * Eventhandler that pauses all videos that have been scrolled out of the viewport and starts all videos currently in the viewport.
+ * Only used where IntersectionObservers aren't supported.
  * @param {Element} scopeElement The element containing videos to pause
  */
 function pauseVideosOutOfView(scopeElement) {
     scopeElement = scopeElement || document;
 	scopeElement.querySelectorAll('video').forEach(function eachVideo(video) {
-		if (isElementInViewport(video) && video.parentElement.parentElement.tagName !== 'BLOCKQUOTE' && video.firstElementChild.src.indexOf('webm') === -1) {
+		if (isElementInViewport(video) && canAutoplay(video)) {
 			video.play();
 		} else {
 			video.pause();
@@ -578,6 +888,35 @@ function insertIgnoredPost(id) {
 	processPosts(ignoredPost);
 }
 
+/**
+ * Asks the app to look up the details for any placeholder embeds (e.g. Vimeo videos), which are
+ * filled in by fillEmbedPlaceholder when they're available
+ * @param {Element} scopeElement The element containing placeholders to resolve
+ */
+function resolveEmbedPlaceholders(scopeElement) {
+	// not every page's listener can resolve embeds - the placeholders are still usable links though
+	if (typeof listener.requestEmbed !== 'function') {
+		return;
+	}
+	scopeElement.querySelectorAll('a.embed-placeholder').forEach(function each(link) {
+		listener.requestEmbed(link.dataset.embedProvider, link.dataset.embedId);
+	});
+}
+
+/**
+ * Replaces the placeholder links for an embed with its resolved URL
+ * @param {String} provider The embed provider, e.g. vimeo
+ * @param {String} id The provider's ID for the embedded item
+ * @param {String} url The resolved URL
+ */
+function fillEmbedPlaceholder(provider, id, url) {
+	document.querySelectorAll('a.embed-placeholder[data-embed-provider="' + provider + '"][data-embed-id="' + id + '"]').forEach(function each(link) {
+		link.href = url;
+		link.textContent = url;
+		link.classList.remove('embed-placeholder');
+	});
+}
+
 /**
  * Removes the timg class from a timg to turn it into a normal image
  * @param {Element} tImg The HTMLElement of the timg
@@ -728,4 +1067,43 @@ function showAvatar(avatarUrl) {
     document.querySelectorAll('[src="' + avatarUrl + '"]').forEach(function(avatarTag) {
         avatarTag.classList.remove('hide-avatar');
     });
-}
\ No newline at end of file
+}
+
+/**
+ * Records how long each frame takes for a while, then logs a summary through the listener. Run this
+ * from the WebView's remote debugger while scrolling through a heavy page (like a long image thread)
+ * to compare rendering changes.
+ * @param {Number} duration How long to record for, in ms
+ */
+function measureFrames(duration) {
+	var frameTimes = [];
+	var lastFrame = null;
+	var end = window.performance.now() + duration;
+
+	/**
+	 * Records a single frame
+	 * @param {Number} now The time this frame started
+	 */
+	function recordFrame(now) {
+		if (lastFrame !== null) {
+			frameTimes.push(now - lastFrame);
+		}
+		lastFrame = now;
+		if (now < end) {
+			window.requestAnimationFrame(recordFrame);
+			return;
+		}
+		frameTimes.sort(function compare(a, b) {
+			return a - b;
+		});
+		var percentile = function percentile(fraction) {
+			return frameTimes[Math.min(Math.floor(frameTimes.length * fraction), frameTimes.length - 1)].toFixed(1);
+		};
+		var dropped = frameTimes.filter(function isSlow(time) {
+			return time > 25;
+		}).length;
+		listener.debugMessage('Frame timing: ' + frameTimes.length + ' frames, median ' + percentile(0.5) + 'ms, 95th ' +
+			percentile(0.95) + 'ms, 99th ' + percentile(0.99) + 'ms, ' + dropped + ' over 25ms');
+	}
+	window.requestAnimationFrame(recordFrame);
+}
@@ -13,6 +13,7 @@ import com.ferg.awfulapp.constants.Constants;
 import com.ferg.awfulapp.network.NetworkUtils;
 import com.ferg.awfulapp.preferences.AwfulPreferences;
 import com.ferg.awfulapp.sync.SyncManager;
+import com.ferg.awfulapp.thread.RenderedPageCache;
 import com.jakewharton.threetenabp.AndroidThreeTen;
 
 import java.io.File;
@@ -65,6 +66,7 @@ public class AwfulApplication extends Application {
         appStatePrefs = this.getSharedPreferences(APP_STATE_PREFERENCES, MODE_PRIVATE);
 
         NetworkUtils.init(this);
+        RenderedPageCache.init(this);
         AndroidThreeTen.init(this);
         AnnouncementsManager.init();
         FontManager.createInstance(mPref, getAssets());
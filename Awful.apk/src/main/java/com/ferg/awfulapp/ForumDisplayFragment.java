@@ -539,7 +539,7 @@ public class ForumDisplayFragment extends AwfulFragment implements SwipyRefreshL
             public void success(Void result) {
             	ContentValues cv = new ContentValues();
                 cv.put(AwfulThread.BOOKMARKED, ((bookmarkStatus==6)?bookmarkStatus+2:bookmarkStatus+1)%7);
-                cr.update(AwfulThread.CONTENT_URI, cv, AwfulThread.ID+"=?", AwfulProvider.int2StrArray(id));
+                cr.update(ContentUris.withAppendedId(AwfulThread.CONTENT_URI, id), cv, null, null);
             	refreshInfo();
             }
 
@@ -567,7 +567,8 @@ public class ForumDisplayFragment extends AwfulFragment implements SwipyRefreshL
             int nextPageIndex = AwfulPagedItem.forumPageToIndex(getPage() + 1);
 
             // set up some cursor query stuff, depending on whether this is a normal forum or the bookmarks one
-            Uri contentUri = isBookmarks ? AwfulThread.CONTENT_URI_UCP : AwfulThread.CONTENT_URI;
+            // a forum's own Uri, so syncing other forums doesn't reload this one
+            Uri contentUri = isBookmarks ? AwfulThread.CONTENT_URI_UCP : AwfulThread.getForumUri(getForumId());
 
             String selection;
             String[] selectionArgs;
@@ -576,9 +577,8 @@ public class ForumDisplayFragment extends AwfulFragment implements SwipyRefreshL
                         DatabaseHelper.TABLE_UCP_THREADS, AwfulThread.INDEX, DatabaseHelper.TABLE_UCP_THREADS, AwfulThread.INDEX);
                 selectionArgs = AwfulProvider.int2StrArray(thisPageIndex, nextPageIndex);
             } else {
-                selection = String.format("%s=? AND %s>=? AND %s<?",
-                        AwfulThread.FORUM_ID, AwfulThread.INDEX, AwfulThread.INDEX);
-                selectionArgs = AwfulProvider.int2StrArray(getForumId(), thisPageIndex, nextPageIndex);
+                selection = String.format("%s>=? AND %s<?", AwfulThread.INDEX, AwfulThread.INDEX);
+                selectionArgs = AwfulProvider.int2StrArray(thisPageIndex, nextPageIndex);
             }
 
             boolean sortNewFirst = (isBookmarks && getPrefs().newThreadsFirstUCP) || (!isBookmarks && getPrefs().newThreadsFirstForum);
@@ -606,6 +606,7 @@ public class ForumDisplayFragment extends AwfulFragment implements SwipyRefreshL
 
 
 	private class ForumDataCallback implements LoaderManager.LoaderCallbacks<Cursor> {
+        private final AwfulForum.Mapper forumMapper = new AwfulForum.Mapper();
 
 		@NonNull
         public Loader<Cursor> onCreateLoader(int aId, Bundle aArgs) {
@@ -618,8 +619,9 @@ public class ForumDisplayFragment extends AwfulFragment implements SwipyRefreshL
         public void onLoadFinished(@NonNull Loader<Cursor> aLoader, Cursor aData) {
             if (aData != null && !aData.isClosed() && aData.moveToFirst()) {
                 Timber.i("Forum title finished, populating: " + aData.getCount());
-                mTitle = aData.getString(aData.getColumnIndex(AwfulForum.TITLE));
-                mLastPage = aData.getInt(aData.getColumnIndex(AwfulForum.PAGE_COUNT));
+                AwfulForum forum = forumMapper.read(aData);
+                mTitle = forum.title;
+                mLastPage = forum.pageCount;
                 ForumsIndexActivity activity = ((ForumsIndexActivity) getActivity());
                 if (activity != null) {
                     activity.onPageContentChanged();
@@ -37,6 +37,7 @@ import com.ferg.awfulapp.task.PMRequest;
 import com.ferg.awfulapp.task.SendPrivateMessageRequest;
 import com.ferg.awfulapp.thread.AwfulHtmlPage;
 import com.ferg.awfulapp.thread.AwfulMessage;
+import com.ferg.awfulapp.util.ContentCompression;
 import com.ferg.awfulapp.webview.AwfulWebView;
 import com.ferg.awfulapp.webview.WebViewJsInterface;
 import com.ferg.awfulapp.widget.ThreadIconPicker;
@@ -381,7 +382,7 @@ public class MessageFragment extends AwfulFragment implements OnClickListener {
     			}
         		String title = aData.getString(aData.getColumnIndex(AwfulMessage.TITLE));
         		mTitle.setText(title);
-				messageWebView.setBodyHtml(AwfulMessage.getMessageHtml(aData.getString(aData.getColumnIndex(AwfulMessage.CONTENT))));
+				messageWebView.setBodyHtml(AwfulMessage.getMessageHtml(ContentCompression.getString(aData, aData.getColumnIndex(AwfulMessage.CONTENT))));
 				mPostdate.setText(aData.getString(aData.getColumnIndex(AwfulMessage.DATE)));
         		String replyTitle = aData.getString(aData.getColumnIndex(AwfulMessage.REPLY_TITLE));
         		String replyContent = aData.getString(aData.getColumnIndex(AwfulMessage.REPLY_CONTENT));
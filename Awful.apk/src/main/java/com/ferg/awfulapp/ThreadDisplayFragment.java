@@ -33,19 +33,19 @@ import android.app.AlertDialog;
 import android.app.DownloadManager;
 import android.app.DownloadManager.Request;
 import android.content.ActivityNotFoundException;
-import android.content.ContentUris;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.CursorWrapper;
 import android.graphics.Color;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
 import android.text.format.Formatter;
 import android.view.InflateException;
@@ -67,14 +67,17 @@ import android.widget.Toast;
 import com.android.volley.VolleyError;
 import com.ferg.awfulapp.constants.Constants;
 import com.ferg.awfulapp.network.CookieController;
+import com.ferg.awfulapp.network.EmbedResolver;
 import com.ferg.awfulapp.network.NetworkUtils;
 import com.ferg.awfulapp.popupmenu.PostContextMenu;
 import com.ferg.awfulapp.popupmenu.UrlContextMenu;
 import com.ferg.awfulapp.preferences.AwfulPreferences;
 import com.ferg.awfulapp.preferences.Keys;
+import com.ferg.awfulapp.provider.AwfulDatabase;
 import com.ferg.awfulapp.provider.AwfulProvider;
 import com.ferg.awfulapp.provider.AwfulTheme;
 import com.ferg.awfulapp.provider.ColorProvider;
+import com.ferg.awfulapp.provider.ContentCache;
 import com.ferg.awfulapp.search.SearchFilter;
 import com.ferg.awfulapp.task.AwfulRequest;
 import com.ferg.awfulapp.task.BookmarkRequest;
@@ -95,6 +98,8 @@ import com.ferg.awfulapp.thread.AwfulPost;
 import com.ferg.awfulapp.thread.AwfulThread;
 import com.ferg.awfulapp.thread.AwfulURL;
 import com.ferg.awfulapp.thread.AwfulURL.TYPE;
+import com.ferg.awfulapp.thread.PostContentRenderer;
+import com.ferg.awfulapp.thread.RenderedPageCache;
 import com.ferg.awfulapp.util.AwfulError;
 import com.ferg.awfulapp.util.AwfulUtils;
 import com.ferg.awfulapp.webview.AwfulWebView;
@@ -109,12 +114,14 @@ import com.orangegangsters.github.swipyrefreshlayout.library.SwipyRefreshLayoutD
 
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
+import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -127,6 +134,7 @@ import androidx.core.content.ContextCompat;
 import androidx.core.view.MenuItemCompat;
 import androidx.fragment.app.FragmentManager;
 import androidx.loader.app.LoaderManager;
+import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
 import timber.log.Timber;
@@ -194,6 +202,9 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
 	private int savedScrollPosition = 0;
 	/** Whether the currently displayed page represents a full page of posts */
 	private boolean displayingFullPage = false;
+	/** the display settings the current posts were rendered with */
+	@Nullable
+	private PostContentRenderer.RenderSettings renderSettings = null;
 
 	private ShareActionProvider shareProvider;
 
@@ -209,7 +220,6 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
     private AsyncTask<Void, Void, String> redirect = null;
 	private Uri downloadLink;
 
-	private final ThreadContentObserver mThreadObserver = new ThreadContentObserver(getHandler());
 
 
 
@@ -425,7 +435,6 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
 		if(mThreadView != null){
 			mThreadView.onResume();
 		}
-        getActivity().getContentResolver().registerContentObserver(AwfulThread.CONTENT_URI, true, mThreadObserver);
         refreshInfo();
     }
 
@@ -449,7 +458,6 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
     @Override
     public void onPause() {
         super.onPause();
-        getActivity().getContentResolver().unregisterContentObserver(mThreadObserver);
         getLoaderManager().destroyLoader(Constants.THREAD_INFO_LOADER_ID);
 		if (mThreadView != null) {
 			mThreadView.onPause();
@@ -827,9 +835,11 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
 			// cancel pending post loading requests
 			NetworkUtils.cancelRequests(ThreadPageRequest.Companion.getREQUEST_TAG());
 			// call this with cancelOnDestroy=false to retain the request's specific type tag
+			final int threadId = getThreadId();
 			final int pageNumber = getPageNumber();
 			int userId = postFilterUserId == null ? BLANK_USER_ID : postFilterUserId;
-			queueRequest(new ThreadPageRequest(activity, getThreadId(), pageNumber, userId)
+			// show the first posts as soon as they're stored - the rest of the page follows when the request finishes
+			queueRequest(new ThreadPageRequest(activity, threadId, pageNumber, userId, () -> showFirstPosts(threadId, pageNumber))
 					.build(this, new AwfulRequest.AwfulResultCallback<Void>() {
 				@Override
 				public void success(Void result) {
@@ -850,6 +860,27 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
     }
 
 
+	/**
+	 * Display the first batch of posts from a page that's still being parsed.
+	 * <p>
+	 * This is called from the parsing thread - if the user has moved to another page in the
+	 * meantime, the posts are ignored.
+	 */
+	private void showFirstPosts(int threadId, int pageNumber) {
+		Activity activity = getActivity();
+		if (activity == null) {
+			return;
+		}
+		activity.runOnUiThread(() -> {
+			if (getActivity() != null && threadId == getThreadId() && pageNumber == getPageNumber()) {
+				Timber.d("First posts stored for page %d, displaying them while the rest are parsed", pageNumber);
+				setProgress(60);
+				refreshPosts();
+			}
+		});
+	}
+
+
 	/**
 	 * Mark a post as the last read in this thread.
 	 * <p/>
@@ -1077,7 +1108,13 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
 		}));
 	}
 
-	private void populateThreadView(ArrayList<AwfulPost> aPosts) {
+	/**
+	 * Display a page of posts, using the cached render of the page if there's a valid one.
+	 *
+	 * @param page the posts loaded by a {@link PostsLoader}, which has already rendered them, or
+	 *             found their page in the cache
+	 */
+	private void populateThreadView(PostsCursor page) {
 		if (mThreadView == null) {
 			Timber.w("populateThreadView called with null WebView");
 			return;
@@ -1085,8 +1122,31 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
 		updateUiElements();
 
         try {
+            List<AwfulPost> aPosts = page.posts;
             Timber.d("populateThreadView: displaying %d posts", aPosts.size());
-            String html = AwfulHtmlPage.getThreadHtml(aPosts, AwfulPreferences.getInstance(getActivity()), getPageNumber(), mLastPage);
+            AwfulPreferences prefs = AwfulPreferences.getInstance(getActivity());
+            RenderedPageCache.PageKey pageKey = aPosts.isEmpty() ? null : getRenderedPageKey(prefs, mLastPage);
+            String html = null;
+            if (pageKey != null) {
+                // the last page might have changed since the loader looked the page up
+                html = pageKey.equals(page.pageKey) ? page.pageHtml : RenderedPageCache.getInstance().getCached(pageKey);
+            }
+            if (html == null && page.postsHtml == null) {
+                // the loader found a cached page that doesn't fit any more - load again rather than render here
+                Timber.d("populateThreadView: cached page is out of date, reloading");
+                mThreadView.post(this::refreshPosts);
+                return;
+            }
+            if (html == null) {
+                // the posts were rendered by the loader, so this just adds the page's own markup
+                html = AwfulHtmlPage.getThreadHtml(aPosts, page.postsHtml, prefs, getPageNumber(), mLastPage);
+                if (pageKey != null) {
+                    RenderedPageCache.getInstance().put(pageKey, page.contentVersion, html);
+                }
+            } else {
+                Timber.d("populateThreadView: using cached render of page");
+            }
+            renderSettings = PostContentRenderer.RenderSettings.from(prefs);
             refreshSessionCookie();
 			mThreadView.setBodyHtml(html);
 			displayingFullPage = aPosts.size() >= getPrefs().postPerPage; // shouldn't ever be > but just to be safe
@@ -1221,6 +1281,27 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
 		public void openUrlMenu(String url) {
 			showUrlMenu(url);
 		}
+
+		/**
+		 * Look up the details for a placeholder embed - thread.js calls this for any it finds in
+		 * the posts, and gets the result passed to its fillEmbedPlaceholder function.
+		 */
+		@JavascriptInterface
+		public void requestEmbed(final String provider, final String videoId) {
+			if (getActivity() == null) {
+				return;
+			}
+			EmbedResolver.getInstance(getActivity()).resolve(provider, videoId, url -> {
+				if (url != null && mThreadView != null) {
+					mThreadView.post(() -> {
+						if (mThreadView != null) {
+							mThreadView.runJavascript(String.format("fillEmbedPlaceholder(%s, %s, %s)",
+									JSONObject.quote(provider), JSONObject.quote(videoId), JSONObject.quote(url)));
+						}
+					});
+				}
+			});
+		}
     }
 
 	
@@ -1356,6 +1437,10 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
 			}
 		}
 		clickInterface.updatePreferences();
+		// post content is rewritten for the display settings when it's rendered, so we can just redisplay what we have
+		if (renderSettings != null && !renderSettings.equals(PostContentRenderer.RenderSettings.from(mPrefs))) {
+			refreshPosts();
+		}
 		if(mFAB != null) {
 			if (mPrefs.noFAB) {
 				mFAB.hide();
@@ -1469,6 +1554,21 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
 	}
 
 
+	/**
+	 * Get the key for the current page in the {@link RenderedPageCache}, or null if it shouldn't be cached.
+	 */
+	@Nullable
+	private RenderedPageCache.PageKey getRenderedPageKey(AwfulPreferences prefs, int lastPage) {
+		// a filtered view shows a different set of posts for the same page
+		if (postFilterUserId != null || getThreadId() == 0) {
+			return null;
+		}
+		int firstIndex = AwfulPagedItem.pageToIndex(getPageNumber(), prefs.postPerPage, 0);
+		return new RenderedPageCache.PageKey(getThreadId(), firstIndex, prefs.postPerPage,
+				getPageNumber() == lastPage, AwfulHtmlPage.getRenderSettingsHash(prefs));
+	}
+
+
 	/**
 	 * Clear the thread display, e.g. to show a blank page before loading new content
 	 */
@@ -1480,18 +1580,17 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
 
 
     private class PostLoaderManager implements LoaderManager.LoaderCallbacks<Cursor> {
-        private final static String sortOrder = AwfulPost.POST_INDEX + " ASC";
-        private final static String selection = AwfulPost.THREAD_ID + "=? AND " + AwfulPost.POST_INDEX + ">=? AND " + AwfulPost.POST_INDEX + "<?";
         public Loader<Cursor> onCreateLoader(int aId, Bundle aArgs) {
             int index = AwfulPagedItem.pageToIndex(getPageNumber(), getPrefs().postPerPage, 0);
             Timber.i("Loading page %d of thread %d from database\nStart index is %d with %d posts per page",
                     getPageNumber(), getThreadId(), index, getPrefs().postPerPage);
-            return new CursorLoader(getActivity(),
-            						AwfulPost.CONTENT_URI,
+            // the thread's own Uri, so posts being stored for other threads don't reload this one
+            return new PostsLoader(getActivity(), getThreadId(), getPrefs(), getRenderedPageKey(getPrefs(), mLastPage),
+            						AwfulPost.getThreadUri(getThreadId()),
             						AwfulProvider.PostProjection,
-            						selection,
-            						AwfulProvider.int2StrArray(getThreadId(), index, index+ getPrefs().postPerPage),
-            						sortOrder);
+            						AwfulPost.PAGE_SELECTION,
+            						AwfulProvider.int2StrArray(index, index+ getPrefs().postPerPage),
+            						AwfulPost.PAGE_SORT_ORDER);
         }
 
         public void onLoadFinished(Loader<Cursor> aLoader, Cursor aData) {
@@ -1500,8 +1599,12 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
         		return;
         	}
         	if(mThreadView != null){
-        		populateThreadView(AwfulPost.fromCursor(getActivity(), aData));
+        		populateThreadView((PostsCursor) aData);
         	}
+			if (aData.getCount() > 0) {
+				// keeps this thread at the fresh end of the cache
+				ContentCache.recordAccess(getActivity().getContentResolver(), getThreadId());
+			}
 			// TODO: 04/05/2017 sometimes you don't want this resetting, e.g. restoring fragment state
 			savedScrollPosition = 0;
         }
@@ -1512,23 +1615,153 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
     }
 
 
-    private class ThreadDataCallback implements LoaderManager.LoaderCallbacks<Cursor> {
+    /**
+     * Loads posts and renders them, so none of the rendering work happens on the main thread. If
+     * the page is in the {@link RenderedPageCache} (which might mean reading it from disk) that's
+     * used instead, and the posts aren't rendered.
+     * <p>
+     * This also notes the thread's {@link RenderedPageCache} version before reading the posts - if
+     * they change while they're being rendered, the page won't be cached.
+     */
+    private static class PostsLoader extends CursorLoader {
+        private final int threadId;
+        private final AwfulPreferences prefs;
+        @Nullable
+        private final RenderedPageCache.PageKey pageKey;
+
+        PostsLoader(Context context, int threadId, AwfulPreferences prefs, @Nullable RenderedPageCache.PageKey pageKey,
+                    Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            super(context, uri, projection, selection, selectionArgs, sortOrder);
+            this.threadId = threadId;
+            this.prefs = prefs;
+            this.pageKey = pageKey;
+        }
 
-        public Loader<Cursor> onCreateLoader(int aId, Bundle aArgs) {
-            return new CursorLoader(getActivity(), ContentUris.withAppendedId(AwfulThread.CONTENT_URI, getThreadId()), 
-            		AwfulProvider.ThreadProjection, null, null, null);
+        @Override
+        public Cursor loadInBackground() {
+            RenderedPageCache cache = RenderedPageCache.getInstance();
+            int contentVersion = cache.getVersion(threadId);
+            Cursor cursor = super.loadInBackground();
+            if (cursor == null) {
+                return null;
+            }
+            ArrayList<AwfulPost> posts = AwfulPost.fromCursor(getContext(), cursor);
+            String pageHtml = pageKey == null || posts.isEmpty() ? null : cache.get(pageKey);
+            String postsHtml = pageHtml == null ? AwfulHtmlPage.getPostsHtml(posts, prefs) : null;
+            return new PostsCursor(cursor, posts, postsHtml, pageKey, pageHtml, contentVersion);
         }
+    }
 
-        public void onLoadFinished(Loader<Cursor> aLoader, Cursor aData) {
+
+    /**
+     * A cursor of posts, along with the posts it holds and either their rendered HTML or the
+     * cached render of their whole page.
+     */
+    private static class PostsCursor extends CursorWrapper {
+        final List<AwfulPost> posts;
+        /** the rendered posts - null if the page was found in the cache */
+        @Nullable
+        final String postsHtml;
+        /** the page the loader looked up in the {@link RenderedPageCache}, and what it found */
+        @Nullable
+        final RenderedPageCache.PageKey pageKey;
+        @Nullable
+        final String pageHtml;
+        /** the thread's {@link RenderedPageCache} version from before the posts were read */
+        final int contentVersion;
+
+        PostsCursor(Cursor cursor, List<AwfulPost> posts, @Nullable String postsHtml,
+                    @Nullable RenderedPageCache.PageKey pageKey, @Nullable String pageHtml, int contentVersion) {
+            super(cursor);
+            this.posts = posts;
+            this.postsHtml = postsHtml;
+            this.pageKey = pageKey;
+            this.pageHtml = pageHtml;
+            this.contentVersion = contentVersion;
+        }
+    }
+
+
+    /**
+     * Loads a thread's data straight from the {@link AwfulDatabase}, and loads it again whenever
+     * the thread changes. The change subscription is held while the loader is started, like a
+     * CursorLoader's ContentObserver.
+     */
+    private static class ThreadInfoLoader extends AsyncTaskLoader<AwfulThread> {
+        private final int threadId;
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+        @Nullable
+        private AwfulDatabase.Subscription subscription;
+        @Nullable
+        private AwfulThread thread;
+
+        ThreadInfoLoader(Context context, int threadId) {
+            super(context);
+            this.threadId = threadId;
+        }
+
+        @Override
+        public AwfulThread loadInBackground() {
+            return AwfulDatabase.getInstance(getContext()).threads().getThread(threadId);
+        }
+
+        @Override
+        public void deliverResult(@Nullable AwfulThread data) {
+            thread = data;
+            if (isStarted()) {
+                super.deliverResult(data);
+            }
+        }
+
+        @Override
+        protected void onStartLoading() {
+            if (subscription == null) {
+                // changes come in on the notifier's thread, but loaders have to be told on the main one
+                subscription = AwfulDatabase.getInstance(getContext()).threads()
+                        .observeThread(threadId, uri -> mainHandler.post(this::onContentChanged));
+            }
+            if (thread != null) {
+                deliverResult(thread);
+            }
+            if (takeContentChanged() || thread == null) {
+                forceLoad();
+            }
+        }
+
+        @Override
+        protected void onStopLoading() {
+            cancelLoad();
+        }
+
+        @Override
+        protected void onReset() {
+            onStopLoading();
+            if (subscription != null) {
+                subscription.cancel();
+                subscription = null;
+            }
+            mainHandler.removeCallbacksAndMessages(null);
+            thread = null;
+        }
+    }
+
+
+    private class ThreadDataCallback implements LoaderManager.LoaderCallbacks<AwfulThread> {
+
+        public Loader<AwfulThread> onCreateLoader(int aId, Bundle aArgs) {
+            return new ThreadInfoLoader(getActivity(), getThreadId());
+        }
+
+        public void onLoadFinished(Loader<AwfulThread> aLoader, AwfulThread thread) {
         	Timber.i("Loaded thread metadata, updating fragment state and UI");
-        	if(aData.getCount() >0 && aData.moveToFirst()){
-        		mLastPage = AwfulPagedItem.indexToPage(aData.getInt(aData.getColumnIndex(AwfulThread.POSTCOUNT)), getPrefs().postPerPage);
-				threadLocked = aData.getInt(aData.getColumnIndex(AwfulThread.LOCKED))>0;
-				threadLockableUnlockable = aData.getInt(aData.getColumnIndex(AwfulThread.CAN_OPEN_CLOSE))>0;
-        		threadBookmarked = aData.getInt(aData.getColumnIndex(AwfulThread.BOOKMARKED))>0;
-				threadArchived = aData.getInt(aData.getColumnIndex(AwfulThread.ARCHIVED))>0;
-				mTitle = aData.getString(aData.getColumnIndex(AwfulThread.TITLE));
-        		mParentForumId = aData.getInt(aData.getColumnIndex(AwfulThread.FORUM_ID));
+        	if(thread != null){
+        		mLastPage = AwfulPagedItem.indexToPage(thread.postCount, getPrefs().postPerPage);
+				threadLocked = thread.isLocked;
+				threadLockableUnlockable = thread.canOpenClose;
+        		threadBookmarked = thread.bookmarkType > 0;
+				threadArchived = thread.archived;
+				mTitle = thread.title;
+        		mParentForumId = thread.forumId;
 				if(mParentForumId != 0 && mThreadView != null){
 					mThreadView.runJavascript(String.format("changeCSS('%s')", AwfulTheme.forForum(mParentForumId).getCssPath()));
 				}
@@ -1561,17 +1794,7 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
         }
         
         @Override
-        public void onLoaderReset(Loader<Cursor> aLoader) {
-        }
-    }
-    private class ThreadContentObserver extends ContentObserver {
-        public ThreadContentObserver(Handler aHandler) {
-            super(aHandler);
-        }
-        @Override
-        public void onChange (boolean selfChange){
-        	Timber.i("Thread metadata has been updated - forcing refresh");
-        	refreshInfo();
+        public void onLoaderReset(Loader<AwfulThread> aLoader) {
         }
     }
 
@@ -1697,22 +1920,42 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
 	 * Load the thread represented in an AwfulStackEntry
 	 */
 	private void loadThread(@NonNull AwfulStackEntry thread) {
-		loadThread(thread.id, thread.page, null, false);
+		// the last page has to be known before the loaders start, since it's part of the posts loader's cache key
+		loadThread(thread.id, thread.page, thread.lastPage, null, false);
+		// show the page as it was left if it's still in memory - the loaders will pick up anything
+		// that's changed, and the posts loader checks the disk cache
+		RenderedPageCache.PageKey pageKey = getRenderedPageKey(getPrefs(), mLastPage);
+		String html = pageKey == null ? null : RenderedPageCache.getInstance().getCached(pageKey);
+		if (html != null && mThreadView != null) {
+			mThreadView.setBodyHtml(html);
+		}
 	}
 
 
 	/**
-	 * Actually load the new thread
+	 * Actually load the new thread, before we know how many pages it has
 	 * @param id		The thread's ID
 	 * @param page		The number of the page to display
 	 * @param postJump	An optional URL fragment representing the post ID to jump to
      */
 	private void loadThread(int id, int page, @Nullable String postJump, boolean fullSync) {
+		loadThread(id, page, FIRST_PAGE, postJump, fullSync);
+	}
+
+
+	/**
+	 * Actually load the new thread
+	 * @param id		The thread's ID
+	 * @param page		The number of the page to display
+	 * @param lastPage	The thread's last page, as far as we know
+	 * @param postJump	An optional URL fragment representing the post ID to jump to
+     */
+	private void loadThread(int id, int page, int lastPage, @Nullable String postJump, boolean fullSync) {
 		setThreadId(id);
 		setPageNumber(page);
 		this.setPostJump(postJump != null ? postJump : "");
 		setPostFiltering(null, null);
-		mLastPage = FIRST_PAGE;
+		mLastPage = lastPage;
 		updateUiElements();
 		showBlankPage();
 		if(getActivity() != null){
@@ -1732,14 +1975,15 @@ public class ThreadDisplayFragment extends AwfulFragment implements NavigationEv
 		public final int id;
 		public final int page;
 		public final int scrollPos;
-		public AwfulStackEntry(int threadId, int pageNum, int scrollPosition){
-			id = threadId; page = pageNum; scrollPos = scrollPosition;
+		public final int lastPage;
+		public AwfulStackEntry(int threadId, int pageNum, int scrollPosition, int lastPageNum){
+			id = threadId; page = pageNum; scrollPos = scrollPosition; lastPage = lastPageNum;
 		}
 	}
 	
 	private void pushThread(int id, int page, String postJump){
 		if(mThreadView != null && getThreadId() != 0){
-			backStack.addFirst(new AwfulStackEntry(getThreadId(), getPageNumber(), mThreadView.getScrollY()));
+			backStack.addFirst(new AwfulStackEntry(getThreadId(), getPageNumber(), mThreadView.getScrollY(), mLastPage));
 		}
 		loadThread(id, page, postJump, true);
 	}
@@ -15,6 +15,7 @@ import com.ferg.awfulapp.constants.Constants;
 import com.ferg.awfulapp.network.NetworkUtils;
 import com.ferg.awfulapp.task.AwfulRequest;
 import com.ferg.awfulapp.task.ThreadListRequest;
+import com.ferg.awfulapp.thread.ParsePriority;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -266,7 +267,7 @@ public class AnnouncementsManager {
      */
     public static void updateAnnouncements(@NonNull Context context) {
         // loading any forum will trigger an announcement parse - SH/SC is *probably* a stable ID, unlike say GBS
-        NetworkUtils.queueRequest(new ThreadListRequest(context, Constants.FORUM_ID_SHSC, 1).build(null, new AwfulRequest.AwfulResultCallback<Void>() {
+        NetworkUtils.queueRequest(new ThreadListRequest(context, Constants.FORUM_ID_SHSC, 1, ParsePriority.BACKGROUND).build(null, new AwfulRequest.AwfulResultCallback<Void>() {
             @Override
             public void success(Void result) {
 
@@ -177,6 +177,7 @@ public class Constants {
 	public static final int THREAD_INFO_LOADER_ID = 891;
 	public static final int POST_LOADER_ID = 892;
 	public static final int FORUM_INDEX_LOADER_ID = 893;
+	public static final int LOCAL_SEARCH_LOADER_ID = 894;
 
 	public static final String ACTION_DOSEND = "dosend";
 	public static final String DESTINATION_TOUSER = "touser";
@@ -201,6 +202,8 @@ public class Constants {
     public static final int DEFAULT_FIXED_FONT_SIZE_SP = 13;
     public static final int MINIMUM_FONT_SIZE_SP = 5;
 
+	public static final int DEFAULT_CACHE_SIZE_MB = 100;
+
 	public static final double TABLET_MIN_SIZE = 7; //everything above this is considered tablet layout
 
     public static final String REPLY_POST_ID = "reply_post_id";
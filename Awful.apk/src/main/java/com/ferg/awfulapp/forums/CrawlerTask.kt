@@ -42,15 +42,15 @@ internal class CrawlerTask(context: Context, priority: Priority) : UpdateTask(co
      */
     private fun parseMainSections(document: Document) {
         // look for section links on the main page - fail immediately if we can't find them!
-        val sections = document.getElementsByClass("category")
+        val sections = parseSectionLinks(document)
         if (sections.isEmpty()) {
             fail("unable to parse main forum page - 0 links found!")
             return
         }
 
-        // parse each section to get its data, and add a 'forum' to the top level list
-        sections.map { it.selectFirst("a") }.forEach { link ->
-            forumSections.addForum(parentId = ForumRepository.TOP_LEVEL_PARENT_ID, url = link!!.attr("abs:href"), title = link.text())
+        // add a 'forum' to the top level list for each section
+        sections.forEach { link ->
+            forumSections.addForum(parentId = ForumRepository.TOP_LEVEL_PARENT_ID, url = link.url, title = link.title)
         }
     }
 
@@ -63,14 +63,12 @@ internal class CrawlerTask(context: Context, priority: Priority) : UpdateTask(co
      * have its subforums updated as appropriate.
      */
     private fun parseSubforums(forum: Forum, document: Document) {
-        val subforumElements = document.select("tr.subforum")
-        if (DEBUG) Timber.d("Parsed forum ${forum.title} - found ${subforumElements.size} subforums")
-
-        // parse details and create subforum objects, and add them to this forum's subforum list
-        for (element in subforumElements) {
-            val link = element.selectFirst("a")
-            val subtitle = element.select("dd").text().removePrefix("- ") // strip leading junk on subtitles
-            forum.subforums.addForum(parentId = forum.id, url = link!!.attr("abs:href"), title = link.text(), subtitle = subtitle)
+        val subforumLinks = parseSubforumLinks(document)
+        if (DEBUG) Timber.d("Parsed forum ${forum.title} - found ${subforumLinks.size} subforums")
+
+        // create subforum objects, and add them to this forum's subforum list
+        for (link in subforumLinks) {
+            forum.subforums.addForum(parentId = forum.id, url = link.url, title = link.title, subtitle = link.subtitle)
         }
     }
 
@@ -142,6 +140,33 @@ internal class CrawlerTask(context: Context, priority: Priority) : UpdateTask(co
         }
     }
 
+    /**
+     * A link to a forum, as scraped from a page.
+     */
+    data class ForumLink(val url: String, val title: String, val subtitle: String = "")
+
+    companion object {
+
+        /**
+         * Get the category links (Main, Discussion etc) from the main forum page [document].
+         */
+        @JvmStatic
+        fun parseSectionLinks(document: Document): List<ForumLink> =
+                document.getElementsByClass("category").mapNotNull { it.selectFirst("a") }
+                        .map { link -> ForumLink(link.attr("abs:href"), link.text()) }
+
+        /**
+         * Get the subforum links from a forum or category page [document].
+         */
+        @JvmStatic
+        fun parseSubforumLinks(document: Document): List<ForumLink> =
+                document.select("tr.subforum").mapNotNull { element ->
+                    val link = element.selectFirst("a") ?: return@mapNotNull null
+                    val subtitle = element.select("dd").text().removePrefix("- ") // strip leading junk on subtitles
+                    ForumLink(link.attr("abs:href"), link.text(), subtitle)
+                }
+    }
+
     /**
      * Priority used to throttle update tasks with a given delay
      */
@@ -1,12 +1,8 @@
 package com.ferg.awfulapp.forums;
 
-import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.database.Cursor;
-import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
@@ -17,8 +13,9 @@ import com.ferg.awfulapp.constants.Constants;
 import com.ferg.awfulapp.network.NetworkUtils;
 import com.ferg.awfulapp.preferences.AwfulPreferences;
 import com.ferg.awfulapp.preferences.Keys;
-import com.ferg.awfulapp.provider.AwfulProvider;
+import com.ferg.awfulapp.provider.AwfulDatabase;
 import com.ferg.awfulapp.provider.DatabaseHelper;
+import com.ferg.awfulapp.provider.ForumStore;
 import com.ferg.awfulapp.task.AwfulRequest;
 import com.ferg.awfulapp.task.IndexIconRequest;
 import com.ferg.awfulapp.thread.AwfulForum;
@@ -225,12 +222,7 @@ public class ForumRepository implements UpdateTask.ResultListener {
      * This is a quick way of determining if an update needs to run (e.g. after data wipe)
      */
     public boolean hasForumData() {
-        Cursor cursor = getForumsCursor(null);
-        int numForums = (cursor == null) ? 0 : cursor.getCount();
-        if (cursor != null) {
-            cursor.close();
-        }
-        return numForums > 0;
+        return getForumStore().getForumCount() > 0;
     }
 
 
@@ -261,7 +253,7 @@ public class ForumRepository implements UpdateTask.ResultListener {
 
     @NonNull
     public ForumStructure getAllForums() {
-        return ForumStructure.buildFromOrderedList(loadForumData(getForumsCursor(null)), TOP_LEVEL_PARENT_ID);
+        return ForumStructure.buildFromOrderedList(loadForumData(getForumStore().getForums(null)), TOP_LEVEL_PARENT_ID);
     }
 
 
@@ -295,7 +287,7 @@ public class ForumRepository implements UpdateTask.ResultListener {
      * These are ordered by stored index, i.e. in order of appearance in the full forum list.
      */
     public ForumStructure getFavouriteForums() {
-        List<Forum> favourites = loadForumData(getForumsCursor(getFavouriteForumIds()));
+        List<Forum> favourites = loadForumData(getForumStore().getForums(getFavouriteForumIds()));
         return ForumStructure.buildFromOrderedList(favourites, null);
     }
 
@@ -328,38 +320,18 @@ public class ForumRepository implements UpdateTask.ResultListener {
     ///////////////////////////////////////////////////////////////////////////
 
 
-    /**
-     * Remove all cached forum data from the DB.
-     */
-    public void clearForumData() {
-        ContentResolver contentResolver = context.getContentResolver();
-        contentResolver.delete(AwfulForum.CONTENT_URI, null, null);
-        setLastRefreshTime(0);
+    @NonNull
+    private ForumStore getForumStore() {
+        return AwfulDatabase.getInstance(context).forums();
     }
 
 
     /**
-     * Get Forum records, ordered by {@link AwfulForum#INDEX} as stored.
-     *
-     * @param forumIds the IDs of the forums you want, or null to return all forums
-     * @see #storeForumData(ForumStructure)
+     * Remove all cached forum data from the DB.
      */
-    @Nullable
-    private Cursor getForumsCursor(@Nullable String[] forumIds) {
-        ContentResolver contentResolver = context.getContentResolver();
-        // if we have some IDs we need to build a WHERE query, otherwise leave both null to get everything
-        String where = null;
-        if (forumIds != null) {
-            String placeholders = StringUtils.repeat("?", ",", forumIds.length);
-            where = AwfulForum.ID + " IN (" + placeholders + ")";
-        }
-
-        // get the required forums, ordered by index (the order they were added to the DB)
-        return contentResolver.query(AwfulForum.CONTENT_URI,
-                AwfulProvider.ForumProjection,
-                where,
-                forumIds,
-                AwfulForum.INDEX);
+    public void clearForumData() {
+        getForumStore().clear();
+        setLastRefreshTime(0);
     }
 
 
@@ -373,9 +345,7 @@ public class ForumRepository implements UpdateTask.ResultListener {
         forumData.put(AwfulForum.PAGE_COUNT, pageCount);
         forumData.put(DatabaseHelper.UPDATED_TIMESTAMP, getTimestamp());
 
-        ContentResolver contentResolver = context.getContentResolver();
-        Uri uri = ContentUris.withAppendedId(AwfulForum.CONTENT_URI, forumId);
-        if (contentResolver.update(uri, forumData, null, null) < 1) {
+        if (getForumStore().updateForum(forumId, forumData) < 1) {
             Log.w(TAG, "Unknown forum ID " + forumId + " while trying to update page count");
         }
     }
@@ -385,28 +355,18 @@ public class ForumRepository implements UpdateTask.ResultListener {
      * Build a list of Forum objects from a list of forum records, ordered by index.
      * See {@link #storeForumData(ForumStructure)} for details on index ordering.
      *
-     * @param cursor a cursor over the required forum records
+     * @param records the required forum records
      * @return The resulting list of Forums
      */
     @NonNull
-    private List<Forum> loadForumData(@Nullable Cursor cursor) {
-        List<Forum> forumList = new ArrayList<>();
-        if (cursor == null) {
-            return forumList;
-        }
-
+    private List<Forum> loadForumData(@NonNull List<AwfulForum> records) {
+        List<Forum> forumList = new ArrayList<>(records.size());
         Forum forum;
         List<String> favouriteForumIds = Arrays.asList(getFavouriteForumIds());
-        while (cursor.moveToNext()) {
-            forum = new Forum(
-                    cursor.getInt(cursor.getColumnIndex(AwfulForum.ID)),
-                    cursor.getInt(cursor.getColumnIndex(AwfulForum.PARENT_ID)),
-                    cursor.getString(cursor.getColumnIndex(AwfulForum.TITLE)),
-                    cursor.getString(cursor.getColumnIndex(AwfulForum.SUBTEXT))
-            );
+        for (AwfulForum row : records) {
+            forum = new Forum(row.id, row.parentId, row.title, row.subtext);
             // the forum might have an image tag too
-            String tagUrl = cursor.getString(cursor.getColumnIndex(AwfulForum.TAG_URL));
-            forum.setTagUrl(tagUrl);
+            forum.setTagUrl(row.tagUrl);
 
             // set favourite status by checking the favourites list
             forum.setFavourite(favouriteForumIds.contains(Integer.toString(forum.id)));
@@ -419,7 +379,6 @@ public class ForumRepository implements UpdateTask.ResultListener {
             }
             forumList.add(forum);
         }
-        cursor.close();
         return forumList;
     }
 
@@ -433,8 +392,6 @@ public class ForumRepository implements UpdateTask.ResultListener {
      * @param parsedStructure The forum hierarchy
      */
     private void storeForumData(@NonNull ForumStructure parsedStructure) {
-        // we're replacing all the forums, so wipe them
-        clearForumData();
         long timestamp = System.currentTimeMillis();
         setLastRefreshTime(timestamp);
         String updateTime = new Timestamp(timestamp).toString();
@@ -447,8 +404,8 @@ public class ForumRepository implements UpdateTask.ResultListener {
         // get all the parsed forums in an ordered list, so we can store them in this order using the INDEX field
         allForums.addAll(parsedStructure.getAsList().includeSections(true).formatAs(FLAT).build());
 
-        ContentResolver contentResolver = context.getContentResolver();
-        contentResolver.bulkInsert(AwfulForum.CONTENT_URI, getAsContentValues(allForums, updateTime));
+        // the old forums are replaced in the same write, so nothing sees an empty list in between
+        getForumStore().replaceForums(getAsContentValues(allForums, updateTime));
     }
 
     // TODO: 06/02/2017 a way to push a forum in (for updates, esp page counts - aren't implemented in Forum yet)
@@ -6,6 +6,7 @@ import com.ferg.awfulapp.constants.Constants.DEBUG
 import com.ferg.awfulapp.forums.UpdateTask.ResultListener
 import com.ferg.awfulapp.network.NetworkUtils
 import com.ferg.awfulapp.task.AwfulRequest
+import com.ferg.awfulapp.thread.ParsePriority
 import com.ferg.awfulapp.util.AwfulError
 import org.jsoup.nodes.Document
 import timber.log.Timber
@@ -217,6 +218,9 @@ internal abstract class UpdateTask(protected val context: Context, private val t
     @WorkerThread
     protected abstract inner class ForumParseTask(url: String) : AwfulRequest<Void?>(context, url) {
 
+        // forum structure updates run in the background, so don't hold up anything the user is waiting on
+        override val parsePriority: ParsePriority get() = ParsePriority.BACKGROUND
+
         /**
          * The url of the page to retrieve, which is returned in the handle* methods
          */
@@ -8,6 +8,7 @@ import android.util.Log;
 import com.ferg.awfulapp.constants.Constants;
 import com.ferg.awfulapp.network.NetworkUtils;
 import com.ferg.awfulapp.task.ThreadListRequest;
+import com.ferg.awfulapp.thread.ParsePriority;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
@@ -79,7 +80,8 @@ public class PmManager {
      */
     public static void updatePms(@NonNull Context context) {
         // just need to load the user's bookmarks page to trigger a parse
-        NetworkUtils.queueRequest(new ThreadListRequest(context, Constants.USERCP_ID, 1).build());
+        // nobody's waiting on this, but they'll probably look at their bookmarks soon
+        NetworkUtils.queueRequest(new ThreadListRequest(context, Constants.USERCP_ID, 1, ParsePriority.PREFETCH).build());
     }
 
 
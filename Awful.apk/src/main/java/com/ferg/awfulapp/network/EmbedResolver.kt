@@ -0,0 +1,159 @@
+package com.ferg.awfulapp.network
+
+import android.content.Context
+import androidx.annotation.WorkerThread
+import org.jsoup.Jsoup
+import org.jsoup.parser.Parser
+import timber.log.Timber
+import java.net.HttpURLConnection
+import java.net.URL
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
+/**
+ * Looks up metadata (currently just the playable URL) for embedded videos, off the parsing path.
+ *
+ * Post parsing never waits on the network - when it finds an embed that needs a lookup, it writes
+ * a placeholder link instead (see [PLACEHOLDER_CLASS]), and thread.js asks for it to be resolved
+ * once the post is on screen. Results are stored in a persistent [Cache], keyed by provider and
+ * video ID, so each video only gets looked up once.
+ *
+ * @param cache         where resolved URLs are stored
+ * @param executor      runs the network lookups
+ * @param vimeoApiBase  the base URL for Vimeo's video API (settable so tests can use a local server)
+ */
+class EmbedResolver(
+    private val cache: Cache,
+    private val executor: Executor,
+    private val vimeoApiBase: String = VIMEO_API_BASE
+) {
+
+    /**
+     * A simple persistent key-value store for resolved URLs.
+     */
+    interface Cache {
+        fun get(key: String): String?
+        fun put(key: String, value: String)
+    }
+
+    /** Receives the result of a lookup - [url] is null if it failed */
+    fun interface Callback {
+        fun onResolved(url: String?)
+    }
+
+    /** callbacks waiting on lookups that are in progress, by cache key */
+    private val pending = HashMap<String, MutableList<Callback>>()
+
+
+    /**
+     * Get the resolved URL for a video, if we already have it.
+     */
+    fun cached(provider: String, videoId: String): String? = cache.get(cacheKey(provider, videoId))
+
+    /**
+     * Resolve a video's URL in the background, passing the result to [callback] (on the executor's
+     * thread) when it's available - this will be null if the lookup failed. Cached results are
+     * passed back immediately, on the calling thread.
+     */
+    fun resolve(provider: String, videoId: String, callback: Callback) {
+        val key = cacheKey(provider, videoId)
+        cache.get(key)?.let { return callback.onResolved(it) }
+
+        synchronized(pending) {
+            // if there's already a lookup running for this video, just wait for that one
+            pending[key]?.let { it.add(callback); return }
+            pending[key] = mutableListOf(callback)
+        }
+        executor.execute {
+            val result = try {
+                resolveBlocking(provider, videoId)
+            } catch (e: Exception) {
+                Timber.w(e, "Failed to resolve %s video %s", provider, videoId)
+                null
+            }
+            val callbacks = synchronized(pending) { pending.remove(key) }.orEmpty()
+            callbacks.forEach { it.onResolved(result) }
+        }
+    }
+
+    /**
+     * Resolve a video's URL, blocking until it's done. The result is cached if successful.
+     *
+     * @return the resolved URL, or null if the provider isn't supported or the video has no URL
+     */
+    @WorkerThread
+    @Throws(Exception::class)
+    fun resolveBlocking(provider: String, videoId: String): String? {
+        val key = cacheKey(provider, videoId)
+        cache.get(key)?.let { return it }
+
+        val url = when (provider) {
+            VIMEO -> fetchVimeoUrl(videoId)
+            else -> null
+        }
+        url?.let { cache.put(key, it) }
+        return url
+    }
+
+    private fun fetchVimeoUrl(videoId: String): String? {
+        Timber.i("Fetching Vimeo metadata for video %s", videoId)
+        val connection = URL("$vimeoApiBase$videoId.xml").openConnection() as HttpURLConnection
+        connection.connectTimeout = TIMEOUT_MILLIS
+        connection.readTimeout = TIMEOUT_MILLIS
+        try {
+            val xml = connection.inputStream.use { Jsoup.parse(it, "UTF-8", vimeoApiBase, Parser.xmlParser()) }
+            // prefer the mobile version if there is one
+            return (xml.selectFirst("mobile_url") ?: xml.selectFirst("url"))?.text()?.takeIf(String::isNotBlank)
+        } finally {
+            connection.disconnect()
+        }
+    }
+
+
+    /**
+     * Stores resolved URLs in a SharedPreferences file. This is only ever a few short strings per
+     * video, but if it gets too big it's just cleared - anything we need can be looked up again.
+     */
+    private class PreferencesCache(context: Context) : Cache {
+        private val prefs = context.getSharedPreferences(CACHE_PREFERENCES, Context.MODE_PRIVATE)
+
+        override fun get(key: String): String? = prefs.getString(key, null)
+
+        override fun put(key: String, value: String) {
+            with(prefs.edit()) {
+                if (prefs.all.size >= MAX_CACHE_ENTRIES) clear()
+                putString(key, value)
+                apply()
+            }
+        }
+    }
+
+
+    companion object {
+        /** provider name for Vimeo embeds */
+        const val VIMEO = "vimeo"
+
+        /** the class added to placeholder links, which also have data-embed-provider and data-embed-id attributes */
+        const val PLACEHOLDER_CLASS = "embed-placeholder"
+
+        private const val VIMEO_API_BASE = "https://vimeo.com/api/v2/video/"
+        private const val CACHE_PREFERENCES = "embed_metadata"
+        private const val MAX_CACHE_ENTRIES = 1000
+        private const val TIMEOUT_MILLIS = 10_000
+
+        private fun cacheKey(provider: String, videoId: String) = "$provider:$videoId"
+
+        @Volatile
+        private var instance: EmbedResolver? = null
+
+        /** Get the app's shared resolver, which uses a persistent cache and a small background thread pool */
+        @JvmStatic
+        fun getInstance(context: Context): EmbedResolver =
+            instance ?: synchronized(this) {
+                instance ?: EmbedResolver(
+                    PreferencesCache(context.applicationContext),
+                    Executors.newFixedThreadPool(2)
+                ).also { instance = it }
+            }
+    }
+}
@@ -35,9 +35,9 @@ import com.android.volley.RequestQueue;
 import com.android.volley.toolbox.ImageLoader;
 import com.android.volley.toolbox.Volley;
 import com.ferg.awfulapp.constants.Constants;
+import com.ferg.awfulapp.util.HtmlEntities;
 import com.ferg.awfulapp.util.LRUImageCache;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
@@ -48,16 +48,12 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import timber.log.Timber;
 
 public class NetworkUtils {
     private static final String CHARSET = "windows-1252";
 
-    private static final Pattern unencodeCharactersPattern = Pattern.compile("&#(\\d+);");
-    private static final Pattern encodeCharactersPattern = Pattern.compile("([^\\x00-\\x7F])");
 
     private static RequestQueue mNetworkQueue;
     private static LRUImageCache mImageCache;
@@ -190,19 +186,10 @@ public class NetworkUtils {
      *
      * @param html
      * @return unencoded text.
+     * @see HtmlEntities#decode(String)
      */
     public static String unencodeHtml(String html) {
-        if (html == null) {
-            return "";
-        }
-        String processed = StringEscapeUtils.unescapeHtml4(html);
-        StringBuffer unencodedContent = new StringBuffer(processed.length());
-        Matcher fixCharMatch = unencodeCharactersPattern.matcher(processed);
-        while (fixCharMatch.find()) {
-            fixCharMatch.appendReplacement(unencodedContent, Character.toString((char) Integer.parseInt(fixCharMatch.group(1))));
-        }
-        fixCharMatch.appendTail(unencodedContent);
-        return unencodedContent.toString();
+        return HtmlEntities.decode(html);
     }
 
     /**
@@ -210,14 +197,9 @@ public class NetworkUtils {
      *
      * @param str String to process
      * @return unencoded text.
+     * @see HtmlEntities#encode(String)
      */
     public static String encodeHtml(String str) {
-        StringBuffer unencodedContent = new StringBuffer(str.length());
-        Matcher fixCharMatch = encodeCharactersPattern.matcher(str);
-        while (fixCharMatch.find()) {
-            fixCharMatch.appendReplacement(unencodedContent, "&#" + fixCharMatch.group(1).codePointAt(0) + ";");
-        }
-        fixCharMatch.appendTail(unencodedContent);
-        return unencodedContent.toString();
+        return HtmlEntities.encode(str);
     }
 }
@@ -44,6 +44,7 @@ import android.util.TypedValue;
 
 import com.ferg.awfulapp.R;
 import com.ferg.awfulapp.constants.Constants;
+import com.ferg.awfulapp.util.AwfulUtils;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
@@ -145,6 +146,10 @@ public class AwfulPreferences implements OnSharedPreferenceChangeListener {
 	public boolean forumIndexShowSubtitles;
 	public boolean forumIndexHideSubforums;
 
+    //STORAGE STUFF
+    /** the size the thread cache is trimmed to, see {@link com.ferg.awfulapp.provider.ContentCache} */
+    public int cacheSizeMb;
+
     //EXPERIMENTAL STUFF
     public boolean inlineYoutube;
     public boolean inlineTweets;
@@ -312,6 +317,7 @@ public class AwfulPreferences implements OnSharedPreferenceChangeListener {
 		forumIndexShowSections	 = getPreference(Keys.FORUM_INDEX_SHOW_SECTIONS, true);
 		forumIndexShowSubtitles	 = getPreference(Keys.FORUM_INDEX_SHOW_SUBTITLES, true);
 		forumIndexHideSubforums	 = getPreference(Keys.FORUM_INDEX_HIDE_SUBFORUMS, true);
+		cacheSizeMb				 = AwfulUtils.safeParseInt(getPreference(Keys.CACHE_SIZE, (String) null), Constants.DEFAULT_CACHE_SIZE_MB);
 
         //I have never seen this before oh god
     }
@@ -38,7 +38,8 @@ public abstract class Keys {
             RECENT_EMOTES,
             IMGUR_ACCOUNT,
             IMGUR_ACCOUNT_TOKEN,
-            IMGUR_REFRESH_TOKEN
+            IMGUR_REFRESH_TOKEN,
+            CACHE_SIZE
     })
     @Retention(RetentionPolicy.SOURCE)
     public @interface StringPreference {
@@ -157,6 +158,7 @@ public abstract class Keys {
     public static final int ORIENTATION = R.string.pref_key_orientation;
     public static final int PAGE_LAYOUT = R.string.pref_key_page_layout;
     public static final int TRANSFORMER = R.string.pref_key_transformer;
+    public static final int CACHE_SIZE = R.string.pref_key_cache_size;
 
     public static final int POST_FONT_SIZE_SP = R.string.pref_key_post_font_size_sp;
     public static final int POST_FIXED_FONT_SIZE_SP = R.string.pref_key_post_fixed_font_size_sp;
@@ -1,10 +1,14 @@
 package com.ferg.awfulapp.preferences.fragments;
 
 import android.app.Dialog;
+import android.content.Context;
+import android.os.AsyncTask;
 import android.preference.ListPreference;
 import android.preference.Preference;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import android.text.format.Formatter;
 import android.view.View;
 import android.widget.Button;
 import android.widget.SeekBar;
@@ -12,8 +16,11 @@ import android.widget.TextView;
 
 import com.ferg.awfulapp.R;
 import com.ferg.awfulapp.preferences.Keys;
+import com.ferg.awfulapp.provider.ContentCache;
 import com.ferg.awfulapp.util.AwfulUtils;
 
+import java.lang.ref.WeakReference;
+
 /**
  * Created by baka kaba on 04/05/2015.
  */
@@ -43,6 +50,7 @@ public class MiscSettings extends SettingsFragment {
         boolean tab = AwfulUtils.isTablet(getActivity(), true);
         findPrefById(R.string.pref_key_page_layout).setEnabled(tab);
         findPrefById(R.string.pref_key_transformer).setEnabled(!tab);
+        new CacheUsageLoader(this).execute();
     }
 
 
@@ -65,6 +73,38 @@ public class MiscSettings extends SettingsFragment {
 
 
 
+    /** Shows how much is in the thread cache - this has to read the whole thing, so it's done in the background */
+    private static class CacheUsageLoader extends AsyncTask<Void, Void, ContentCache.Stats> {
+
+        private final Context appContext;
+        private final WeakReference<MiscSettings> fragment;
+
+        CacheUsageLoader(@NonNull MiscSettings fragment) {
+            appContext = fragment.getActivity().getApplicationContext();
+            this.fragment = new WeakReference<>(fragment);
+        }
+
+        @Override
+        protected ContentCache.Stats doInBackground(Void... params) {
+            return ContentCache.getStats(appContext.getContentResolver());
+        }
+
+        @Override
+        protected void onPostExecute(@Nullable ContentCache.Stats stats) {
+            MiscSettings settings = fragment.get();
+            if (stats == null || settings == null || settings.getActivity() == null) {
+                return;
+            }
+            settings.findPrefById(R.string.pref_key_cache_usage_menu_item).setSummary(settings.getString(R.string.cache_usage_summary,
+                    Formatter.formatShortFileSize(appContext, stats.contentBytes),
+                    stats.threads,
+                    stats.pinnedThreads,
+                    Formatter.formatShortFileSize(appContext, stats.databaseBytes),
+                    Formatter.formatShortFileSize(appContext, stats.renderedPageBytes)));
+        }
+    }
+
+
     /** Listener for the 'Pull-to-refresh distance' option */
     private class P2RDistanceListener implements Preference.OnPreferenceClickListener {
         @Override
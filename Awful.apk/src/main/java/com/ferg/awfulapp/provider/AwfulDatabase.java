@@ -0,0 +1,381 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ferg.awfulapp.thread.AwfulEmote;
+import com.ferg.awfulapp.thread.AwfulMessage;
+import com.ferg.awfulapp.thread.AwfulPost;
+import com.ferg.awfulapp.thread.AwfulThread;
+import com.ferg.awfulapp.util.ContentCompression;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_EMOTES;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_PM;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POSTS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_THREADS;
+
+/**
+ * The app's database, for code in the app's own process.
+ * <p>
+ * Everything used to go through {@link AwfulProvider}, which means matching a Uri, building a
+ * query through a projection map and wrapping the result, for every read and write - even though
+ * nothing outside the app uses it. The stores here ({@link #posts()}, {@link #threads()} etc.)
+ * talk to the database directly, with typed queries and batched writes. The provider is still
+ * there for the loaders, but it's a thin layer over this class, and writes from either side take
+ * the same path - through the {@link DatabaseWriter}, with the same change notifications.
+ * <p>
+ * Changes can be watched with the stores' observe methods, which get the same (batched)
+ * notifications the provider's loaders do.
+ */
+public final class AwfulDatabase {
+
+    private static final String TAG = "AwfulDatabase";
+
+    private static volatile AwfulDatabase instance;
+
+    final DatabaseHelper helper;
+    /** All writes go through this, so they're serialised on one thread */
+    final DatabaseWriter<Uri> writer;
+    private final ChangeNotifier notifier;
+    /** The columns in each table, for {@link BulkWriter} - these don't change once the database is open */
+    private final Map<String, String[]> tableColumns = new ConcurrentHashMap<>();
+
+    private final PostStore posts;
+    private final ThreadStore threads;
+    private final ForumStore forums;
+    private final MessageStore messages;
+    private final DraftStore drafts;
+    private final EmoteStore emotes;
+
+
+    /**
+     * Get the app's database. There's only one, so the provider and everything else share a
+     * single connection pool and writer.
+     */
+    @NonNull
+    public static AwfulDatabase getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (AwfulDatabase.class) {
+                if (instance == null) {
+                    instance = new AwfulDatabase(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private AwfulDatabase(@NonNull Context context) {
+        helper = new DatabaseHelper(context);
+        notifier = new ChangeNotifier(context.getContentResolver());
+        writer = new DatabaseWriter<>(helper, notifier);
+        posts = new PostStore(this);
+        threads = new ThreadStore(this);
+        forums = new ForumStore(this);
+        messages = new MessageStore(this);
+        drafts = new DraftStore(this);
+        emotes = new EmoteStore(this);
+    }
+
+
+    @NonNull
+    public PostStore posts() {
+        return posts;
+    }
+
+    @NonNull
+    public ThreadStore threads() {
+        return threads;
+    }
+
+    @NonNull
+    public ForumStore forums() {
+        return forums;
+    }
+
+    @NonNull
+    public MessageStore messages() {
+        return messages;
+    }
+
+    @NonNull
+    public DraftStore drafts() {
+        return drafts;
+    }
+
+    @NonNull
+    public EmoteStore emotes() {
+        return emotes;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Watching for changes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Something that wants to hear about changes to the database.
+     */
+    public interface ChangeListener {
+        /**
+         * Called on a background thread once a change has been committed.
+         *
+         * @param uri the Uri for the data that changed, e.g. the thread whose posts were stored
+         */
+        void onChange(@NonNull Uri uri);
+    }
+
+    /**
+     * A registered {@link ChangeListener}. Cancel it when you're done, or it'll keep being called.
+     */
+    public interface Subscription {
+        void cancel();
+    }
+
+    /**
+     * Watch for changes to some data, identified by the same Uris the provider uses.
+     */
+    @NonNull
+    Subscription observe(@NonNull Uri uri, @NonNull ChangeListener listener) {
+        return notifier.observe(uri, listener);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Writing - the provider and the stores both use these
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Write a set of rows to a table in one go, replacing any rows they conflict with. Posts are
+     * added to the search index in the same transaction.
+     *
+     * @param notifyUris the Uris to notify once the rows are committed
+     * @return the number of rows written
+     */
+    int insertAll(@NonNull String table, @NonNull ContentValues[] values, @NonNull Collection<Uri> notifyUris) {
+        // avoid DB operations and update notifications when there's nothing to do
+        if (values.length == 0) {
+            return 0;
+        }
+        // posts don't need deleting first - the unique index on their thread position means the
+        // replace removes whatever post was there before (and insertAll drops its search entry). Emotes are identified by their text though
+        String deleteKey = TABLE_EMOTES.equals(table) ? AwfulEmote.TEXT : null;
+        // the writer runs this in a transaction, possibly along with other writes
+        return writer.write(db -> insertAll(db, table, values, deleteKey), notifyUris);
+    }
+
+    /**
+     * Write a set of rows as part of a write that's already running on the writer thread.
+     */
+    int insertAll(@NonNull SQLiteDatabase db, @NonNull String table, @NonNull ContentValues[] values, @Nullable String deleteKey) {
+        if (TABLE_POSTS.equals(table)) {
+            unindexDisplacedPosts(db, values);
+        }
+        long start = System.nanoTime();
+        try (BulkWriter bulkWriter = new BulkWriter(db, table, getColumns(db, table), deleteKey, getCompressedColumn(table))) {
+            bulkWriter.writeAll(values);
+            logWriteRate(table, bulkWriter.getRowsWritten(), System.nanoTime() - start);
+            if (TABLE_POSTS.equals(table)) {
+                indexPosts(db, values);
+            }
+            return bulkWriter.getRowsWritten();
+        }
+    }
+
+    /**
+     * Insert a single row.
+     *
+     * @return the new row's ID, or -1 if it couldn't be inserted
+     */
+    long insert(@NonNull String table, @NonNull ContentValues values, @NonNull Collection<Uri> notifyUris) {
+        ContentValues compressed = compressContent(table, values);
+        return writer.write(db -> db.insert(table, "", compressed), notifyUris);
+    }
+
+    /**
+     * Update the rows in a table matching a Where clause.
+     *
+     * @return the number of rows updated
+     */
+    int update(@NonNull String table, @NonNull ContentValues values, @Nullable String where,
+               @Nullable String[] whereArgs, @NonNull Collection<Uri> notifyUris) {
+        ContentValues compressed = compressContent(table, values);
+        return writer.write(db -> db.update(table, compressed, where, whereArgs), notifyUris);
+    }
+
+    /**
+     * Delete the rows in a table matching a Where clause - if there isn't one, that's all of them!
+     *
+     * @return the number of rows deleted
+     */
+    int delete(@NonNull String table, @Nullable String where, @Nullable String[] whereArgs, @NonNull Collection<Uri> notifyUris) {
+        return writer.write(db -> db.delete(table, where, whereArgs), notifyUris);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Notification Uris
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Get the Uris to notify about a change to a thread - the thread itself, and the forum it's
+     * listed in, rather than every thread in the database.
+     */
+    @NonNull
+    Collection<Uri> getThreadUris(long threadId) {
+        List<Uri> uris = new ArrayList<>(2);
+        uris.add(ContentUris.withAppendedId(AwfulThread.CONTENT_URI, threadId));
+        try (Cursor cursor = helper.getReadableDatabase().rawQuery("SELECT " + AwfulThread.FORUM_ID +
+                " FROM " + TABLE_THREADS + " WHERE " + AwfulThread.ID + "=?", new String[]{Long.toString(threadId)})) {
+            if (cursor.moveToFirst()) {
+                uris.add(AwfulThread.getForumUri(cursor.getInt(0)));
+            }
+        }
+        return uris;
+    }
+
+    /**
+     * Get the Uris to notify about some stored threads - each thread itself, so anything showing
+     * one of them sees its new data, and the forums they're listed in.
+     */
+    @NonNull
+    static Collection<Uri> getStoredThreadUris(@NonNull ContentValues[] threads) {
+        Collection<Uri> forumUris = getParentUris(threads, AwfulThread.FORUM_ID, AwfulThread.CONTENT_URI_FORUM, AwfulThread.CONTENT_URI);
+        Collection<Uri> threadUris = getParentUris(threads, AwfulThread.ID, AwfulThread.CONTENT_URI, AwfulThread.CONTENT_URI);
+        Set<Uri> uris = new LinkedHashSet<>(forumUris);
+        uris.addAll(threadUris);
+        return uris;
+    }
+
+    /**
+     * Get the Uris to notify about some stored rows, one for each parent they belong to - posts
+     * notify the threads they're in, threads notify the forums they're listed in.
+     *
+     * @param key      the column holding each row's parent ID
+     * @param parent   the Uri to append each parent ID to
+     * @param fallback the Uri to notify if any of the rows don't have a parent
+     */
+    @NonNull
+    static Collection<Uri> getParentUris(@NonNull ContentValues[] values, @NonNull String key,
+                                         @NonNull Uri parent, @NonNull Uri fallback) {
+        Set<Uri> uris = new LinkedHashSet<>();
+        for (ContentValues value : values) {
+            Long id = value.getAsLong(key);
+            if (id == null) {
+                // can't tell where this one goes, so notify everything
+                return Collections.singletonList(fallback);
+            }
+            uris.add(ContentUris.withAppendedId(parent, id));
+        }
+        return uris;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Internals
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Drop the search entries for posts that are about to be replaced by a different post at the
+     * same thread position - the replace won't fire the search table's delete trigger.
+     */
+    private static void unindexDisplacedPosts(@NonNull SQLiteDatabase db, @NonNull ContentValues[] posts) {
+        try (PostSearchIndex.Writer indexWriter = new PostSearchIndex.Writer(db)) {
+            for (ContentValues post : posts) {
+                try {
+                    indexWriter.removeDisplaced(post);
+                } catch (SQLException e) {
+                    Log.w(TAG, "Failed to unindex displaced post: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add posts to the search index - this is done in the same transaction as storing them.
+     */
+    private static void indexPosts(@NonNull SQLiteDatabase db, @NonNull ContentValues[] posts) {
+        long start = System.nanoTime();
+        try (PostSearchIndex.Writer indexWriter = new PostSearchIndex.Writer(db)) {
+            for (ContentValues post : posts) {
+                try {
+                    indexWriter.index(post);
+                } catch (SQLException e) {
+                    // the post's still stored, it just won't turn up in searches
+                    Log.w(TAG, "Failed to index post: " + e);
+                }
+            }
+            Log.d(TAG, String.format(Locale.US, "Indexed %d posts for search in %.1fms",
+                    indexWriter.getIndexed(), (System.nanoTime() - start) / 1_000_000.0));
+        }
+    }
+
+    /**
+     * Get the column in a table whose content is compressed, if it has one - see {@link ContentCompression}.
+     */
+    @Nullable
+    private static String getCompressedColumn(@NonNull String table) {
+        switch (table) {
+            case TABLE_POSTS:
+                return AwfulPost.CONTENT;
+            case TABLE_PM:
+                return AwfulMessage.CONTENT;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get a copy of some values with their content compressed, if they're for a table that
+     * compresses it and there's any to compress. Otherwise returns the original values.
+     */
+    private static ContentValues compressContent(@NonNull String table, ContentValues values) {
+        String column = getCompressedColumn(table);
+        if (column == null || values == null || !(values.get(column) instanceof String)) {
+            return values;
+        }
+        Object stored = ContentCompression.forStorage(values.getAsString(column));
+        if (!(stored instanceof byte[])) {
+            return values;
+        }
+        ContentValues compressed = new ContentValues(values);
+        compressed.put(column, (byte[]) stored);
+        return compressed;
+    }
+
+    /**
+     * Get the columns in one of our tables, looking them up the first time.
+     */
+    @NonNull
+    private String[] getColumns(@NonNull SQLiteDatabase db, @NonNull String table) {
+        String[] columns = tableColumns.get(table);
+        if (columns == null) {
+            columns = BulkWriter.getColumns(db, table);
+            tableColumns.put(table, columns);
+        }
+        return columns;
+    }
+
+    private static void logWriteRate(@NonNull String table, int rows, long elapsedNanos) {
+        double millis = elapsedNanos / 1_000_000.0;
+        Log.d(TAG, String.format(Locale.US, "Wrote %d rows to %s in %.1fms (%.0f rows/sec)",
+                rows, table, millis, millis > 0 ? rows * 1000 / millis : 0));
+    }
+}
@@ -35,10 +35,11 @@ import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.SQLException;
-import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.text.TextUtils;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
@@ -50,11 +51,16 @@ import com.ferg.awfulapp.thread.AwfulForum;
 import com.ferg.awfulapp.thread.AwfulMessage;
 import com.ferg.awfulapp.thread.AwfulPost;
 import com.ferg.awfulapp.thread.AwfulThread;
+import com.ferg.awfulapp.thread.RenderedPageCache;
 import com.google.firebase.crashlytics.FirebaseCrashlytics;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -69,7 +75,8 @@ import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_UCP_THREADS;
 public class AwfulProvider extends ContentProvider {
     private static final String TAG = "AwfulProvider";
 
-    private DatabaseHelper mDbHelper;
+    /** The app's database - this provider is just an adapter over it, for the loaders */
+    private AwfulDatabase database;
     /** Set in #onCreate, so it should never be null when methods come to use it*/
     private Context context;
 
@@ -92,6 +99,9 @@ public class AwfulProvider extends ContentProvider {
     private static final int URI_DRAFT_ID = 11;
     private static final int URI_EMOTE = 12;
     private static final int URI_EMOTE_ID = 13;
+    private static final int URI_POST_SEARCH = 14;
+    private static final int URI_POST_THREAD = 15;
+    private static final int URI_THREAD_FORUM = 16;
     /** This just holds the Uri types that directly refer to tables, not IDs */
 	private static final Set<Integer> TABLE_URIS = new HashSet<>(Arrays.asList(URI_FORUM, URI_POST, URI_THREAD, URI_UCP_THREAD, URI_PM, URI_DRAFT, URI_EMOTE));
 
@@ -111,6 +121,9 @@ public class AwfulProvider extends ContentProvider {
         sUriMatcher.addURI(Constants.AUTHORITY, "draftreplies/#", URI_DRAFT_ID);
         sUriMatcher.addURI(Constants.AUTHORITY, "emote", URI_EMOTE);
         sUriMatcher.addURI(Constants.AUTHORITY, "emote/#", URI_EMOTE_ID);
+        sUriMatcher.addURI(Constants.AUTHORITY, "postsearch", URI_POST_SEARCH);
+        sUriMatcher.addURI(Constants.AUTHORITY, "post/thread/#", URI_POST_THREAD);
+        sUriMatcher.addURI(Constants.AUTHORITY, "thread/forum/#", URI_THREAD_FORUM);
     }
 
 
@@ -190,6 +203,7 @@ public class AwfulProvider extends ContentProvider {
         sPostProjectionMap.put(AwfulPost.AVATAR_TEXT, AwfulPost.AVATAR_TEXT);
         sPostProjectionMap.put(AwfulPost.CONTENT, AwfulPost.CONTENT);
         sPostProjectionMap.put(AwfulPost.EDITED, AwfulPost.EDITED);
+        sPostProjectionMap.put(AwfulPost.FINGERPRINT, AwfulPost.FINGERPRINT);
     }
     public static final String[] PostProjection = arrayOfKeys(sPostProjectionMap);
 
@@ -323,7 +337,7 @@ public class AwfulProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         context = getContext();
-        mDbHelper = new DatabaseHelper(context);
+        database = AwfulDatabase.getInstance(context);
         return true;
     }
 
@@ -334,20 +348,17 @@ public class AwfulProvider extends ContentProvider {
 
     @Override
     public int delete(@NonNull Uri aUri, String aWhere, String[] aWhereArgs) {
-        SQLiteDatabase db = mDbHelper.getWritableDatabase();
         final int uriType = matchUri(aUri, true);
         assertIsTableUri(uriType);
         String table = getTableForUriType(uriType);
 
         // if there's no Where clause, this will delete everything in the table!
-        return db.delete(table, aWhere, aWhereArgs);
+        return database.delete(table, aWhere, aWhereArgs, Collections.emptyList());
     }
 
 
     @Override
     public int update(@NonNull Uri aUri, ContentValues aValues, String aWhere, String[] aWhereArgs) {
-        SQLiteDatabase db = mDbHelper.getWritableDatabase();
-
         final int uriType = matchUri(aUri, true);
         String table = getTableForUriType(uriType);
         String whereClause;
@@ -371,29 +382,32 @@ public class AwfulProvider extends ContentProvider {
             case URI_EMOTE_ID:
                 whereClause = AwfulEmote.ID;
                 break;
+            case URI_POST_THREAD:
+                whereClause = AwfulPost.THREAD_ID;
+                break;
+            case URI_THREAD_FORUM:
+                whereClause = AwfulThread.FORUM_ID;
+                break;
             default:
                 whereClause = null;
         }
         if (whereClause != null) {
-            aWhere = whereClause + "=?";
+            // the scoped Uris can narrow things down further with their own Where clause
+            aWhere = whereClause + "=?" + (TextUtils.isEmpty(aWhere) ? "" : " AND (" + aWhere + ")");
             aWhereArgs = insertSelectionArg(aWhereArgs, aUri.getLastPathSegment());
         }
 
-        int result = db.update(table, aValues, aWhere, aWhereArgs);
-        context.getContentResolver().notifyChange(aUri, null);
-        return result;
+        return database.update(table, aValues, aWhere, aWhereArgs, getUpdatedUris(uriType, aUri));
     }
 
 
     @Override
     public Uri insert(@NonNull Uri aUri, ContentValues aValues) {
-        SQLiteDatabase db = mDbHelper.getWritableDatabase();
-
         final int uriType = matchUri(aUri, true);
         assertIsTableUri(uriType);
         String table = getTableForUriType(uriType);
 
-        long rowId = db.insert(table, "", aValues);
+        long rowId = database.insert(table, aValues, Collections.emptyList());
         if (rowId > -1) {
             return ContentUris.withAppendedId(aUri, rowId);
         }
@@ -407,35 +421,95 @@ public class AwfulProvider extends ContentProvider {
         if (aValues.length == 0) {
             return 0;
         }
-        SQLiteDatabase db = mDbHelper.getWritableDatabase();
-
         final int uriType = matchUri(aUri, true);
         assertIsTableUri(uriType);
         String table = getTableForUriType(uriType);
+        return database.insertAll(table, aValues, getInsertedUris(uriType, aUri, aValues));
+    }
 
-        db.beginTransaction();
-        try {
-            for (ContentValues value : aValues) {
-                if (uriType == URI_POST) {
-                    db.delete(table, AwfulPost.POST_INDEX + "=? AND " + AwfulPost.THREAD_ID + "=?",
-                            int2StrArray(value.getAsInteger(AwfulPost.POST_INDEX), value.getAsInteger(AwfulPost.THREAD_ID)));
-                } else if (uriType == URI_EMOTE) {
-                    db.delete(table, AwfulEmote.TEXT + "=?", new String[]{value.getAsString(AwfulEmote.TEXT)});
-                }
-                db.replace(table, "", value);
-            }
 
-            db.setTransactionSuccessful();
-            context.getContentResolver().notifyChange(aUri, null);
-        } catch (SQLiteConstraintException e) {
-            Log.w(TAG, e.toString());
-            // transaction failed (exception throws before #setTransactionSuccessful), no rows inserted
-            return 0;
-        } finally {
-            db.endTransaction();
+    /**
+     * Get the narrowest Uris to notify about an update - an update to a thread notifies that
+     * thread and the forum it's listed in, rather than every thread in the database.
+     */
+    @NonNull
+    private Collection<Uri> getUpdatedUris(int uriType, @NonNull Uri aUri) {
+        if (uriType != URI_THREAD_ID) {
+            return Collections.singletonList(aUri);
+        }
+        return database.getThreadUris(ContentUris.parseId(aUri));
+    }
+
+    /**
+     * Get the narrowest Uris to notify about a bulk insert - posts notify the threads they're in,
+     * and threads notify themselves and the forums they're listed in. A background sync storing a
+     * page of a thread or forum won't wake up loaders watching anything else.
+     */
+    @NonNull
+    private static Collection<Uri> getInsertedUris(int uriType, @NonNull Uri aUri, @NonNull ContentValues[] values) {
+        if (uriType == URI_POST) {
+            return AwfulDatabase.getParentUris(values, AwfulPost.THREAD_ID, AwfulPost.CONTENT_URI_THREAD, aUri);
+        } else if (uriType == URI_THREAD) {
+            return AwfulDatabase.getStoredThreadUris(values);
         }
-        // transaction succeeded, all rows inserted
-        return aValues.length;
+        return Collections.singletonList(aUri);
+    }
+
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        switch (method) {
+            case ContentCache.METHOD_RECORD_ACCESS:
+                long threadId = Long.parseLong(arg);
+                long time = System.currentTimeMillis();
+                database.writer.writeAsync(db -> {
+                    ContentCache.recordAccess(db, threadId, time);
+                    return null;
+                }, null);
+                return null;
+            case ContentCache.METHOD_TRIM:
+                long budgetBytes = extras.getLong(ContentCache.EXTRA_BUDGET_BYTES);
+                database.writer.writeAsync(db -> {
+                    long start = System.currentTimeMillis();
+                    int listingRows = ContentCache.trimListings(db);
+                    // the rendered pages on disk get a small share of the budget, and the posts get the rest
+                    long renderedBytes = RenderedPageCache.getInstance().trimDisk(budgetBytes / ContentCache.RENDERED_PAGE_SHARE);
+                    List<ContentCache.ThreadUsage> usage = ContentCache.getThreadUsage(db);
+                    List<Long> evict = ContentCache.selectForEviction(usage, budgetBytes - renderedBytes, start - ContentCache.MIN_EVICTION_AGE_MILLIS);
+                    Log.i(TAG, String.format(Locale.US, "Trimming cache - removed %d old listings, evicting %d of %d cached threads, keeping %d bytes of rendered pages",
+                            listingRows, evict.size(), usage.size(), renderedBytes));
+                    if (!evict.isEmpty()) {
+                        runEviction(new ContentCache.Eviction(evict, start));
+                    }
+                    return null;
+                }, null);
+                return null;
+            case ContentCache.METHOD_GET_STATS:
+                return ContentCache.getStats(database.helper.getReadableDatabase()).toBundle();
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    /**
+     * Run an eviction one step at a time, with each step queued behind any other writes.
+     * Evicted threads haven't been read for a while, so nothing should be loading their posts and
+     * this doesn't send change notifications - but their rendered pages could still be shown from
+     * the page cache, so those are thrown away as each step is committed.
+     */
+    private void runEviction(@NonNull ContentCache.Eviction eviction) {
+        database.writer.writeAsync(db -> {
+            List<Long> evicted = eviction.step(db);
+            if (!eviction.isDone()) {
+                runEviction(eviction);
+            }
+            return evicted;
+        }, null, evicted -> {
+            for (long threadId : evicted) {
+                RenderedPageCache.getInstance().invalidateThread((int) threadId);
+            }
+        });
     }
 
 
@@ -447,7 +521,7 @@ public class AwfulProvider extends ContentProvider {
         SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
         // Typically this should fetch a readable database but we're querying before
         // we actually add anything, so make it writable.
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        SQLiteDatabase db = database.helper.getReadableDatabase();
 
         final int uriType = matchUri(aUri, false);
         // check for non-match, return null since an unrecognised/malformed Uri gives us nothing useful to do
@@ -464,6 +538,14 @@ public class AwfulProvider extends ContentProvider {
             return null;
         }
 
+        // searches aren't a simple table query, the index handles those itself
+        if (uriType == URI_POST_SEARCH) {
+            Cursor result = PostSearchIndex.query(db, aUri);
+            // results can change whenever posts are stored
+            result.setNotificationUri(context.getContentResolver(), AwfulPost.CONTENT_URI);
+            return result;
+        }
+
         // get the basic table name for this Uri - some will need to replace this with something more complex below
         String table = getTableForUriType(uriType);
         String whereClause = null;
@@ -481,6 +563,11 @@ public class AwfulProvider extends ContentProvider {
                 builder.setProjectionMap(sPostProjectionMap);
                 break;
 
+            case URI_POST_THREAD:
+                whereClause = AwfulPost.THREAD_ID;
+                builder.setProjectionMap(sPostProjectionMap);
+                break;
+
             case URI_THREAD_ID:
                 whereClause = TABLE_THREADS+"."+AwfulThread.ID;
             case URI_THREAD:
@@ -488,6 +575,12 @@ public class AwfulProvider extends ContentProvider {
                 builder.setProjectionMap(sThreadProjectionMap);
                 break;
 
+            case URI_THREAD_FORUM:
+                whereClause = TABLE_THREADS+"."+AwfulThread.FORUM_ID;
+                table = TABLE_THREADS+" LEFT OUTER JOIN "+ TABLE_FORUM+" ON "+ TABLE_THREADS+"."+AwfulThread.FORUM_ID+"="+ TABLE_FORUM+"."+AwfulForum.ID;
+                builder.setProjectionMap(sThreadProjectionMap);
+                break;
+
             case URI_UCP_THREAD_ID:
                 whereClause = AwfulThread.ID;
             case URI_UCP_THREAD:
@@ -564,9 +657,11 @@ public class AwfulProvider extends ContentProvider {
 				return TABLE_FORUM;
 			case URI_POST_ID:
 			case URI_POST:
+			case URI_POST_THREAD:
 				return TABLE_POSTS;
 			case URI_THREAD_ID:
 			case URI_THREAD:
+			case URI_THREAD_FORUM:
 				return TABLE_THREADS;
 			case URI_UCP_THREAD_ID:
 			case URI_UCP_THREAD:
@@ -0,0 +1,276 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.ferg.awfulapp.util.ContentCompression;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes batches of rows to a table through a single compiled INSERT OR REPLACE statement, instead
+ * of building and compiling the SQL for every row like {@link SQLiteDatabase#replace} does.
+ * <p>
+ * The statement covers every column in the table, and each row's values are bound straight from
+ * its {@link ContentValues} - columns a row doesn't have are bound as null, which is what a replace
+ * leaves in them anyway. Keys that aren't columns in the table are ignored. A content column can
+ * be compressed on the way in, see {@link ContentCompression}.
+ * <p>
+ * Rows that fail to write (e.g. because they break a constraint) are skipped, like
+ * {@link SQLiteDatabase#replace} does, without affecting the rest of the batch.
+ * <p>
+ * This doesn't manage transactions, the caller should wrap a batch in one.
+ */
+class BulkWriter implements Closeable {
+
+    private static final String TAG = "BulkWriter";
+
+    private final String table;
+    private final String[] columns;
+    private final Statement replace;
+    @Nullable
+    private final Statement delete;
+    @Nullable
+    private final String deleteKey;
+    /** the index of the column to compress, or -1 */
+    private final int compressedColumn;
+
+    private int rowsWritten = 0;
+
+
+    /**
+     * @param columns the table's columns, see {@link #getColumns(SQLiteDatabase, String)}
+     */
+    BulkWriter(@NonNull SQLiteDatabase db, @NonNull String table, @NonNull String[] columns) {
+        this(db, table, columns, null, null);
+    }
+
+    /**
+     * @param columns   the table's columns, see {@link #getColumns(SQLiteDatabase, String)}
+     * @param deleteKey a column to delete existing rows by before each row is written, for tables
+     *                  where it identifies a row but isn't unique in the schema
+     * @param compressedColumn a column whose text should be compressed, if any
+     */
+    BulkWriter(@NonNull SQLiteDatabase db, @NonNull String table, @NonNull String[] columns,
+               @Nullable String deleteKey, @Nullable String compressedColumn) {
+        this(sql -> new CompiledStatement(db.compileStatement(sql)), table, columns, deleteKey, compressedColumn);
+    }
+
+    @VisibleForTesting
+    BulkWriter(@NonNull StatementCompiler compiler, @NonNull String table, @NonNull String[] columns,
+               @Nullable String deleteKey, @Nullable String compressedColumn) {
+        this.table = table;
+        this.columns = columns;
+        this.deleteKey = deleteKey;
+        int compressedIndex = -1;
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(compressedColumn)) {
+                compressedIndex = i;
+            }
+        }
+        this.compressedColumn = compressedIndex;
+
+        StringBuilder sql = new StringBuilder("INSERT OR REPLACE INTO ").append(table).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "" : ",").append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        replace = compiler.compile(sql.append(')').toString());
+        delete = deleteKey == null ? null : compiler.compile("DELETE FROM " + table + " WHERE " + deleteKey + "=?");
+    }
+
+
+    /**
+     * Write a batch of rows, skipping any that fail.
+     *
+     * @return the number of rows written
+     */
+    int writeAll(@NonNull ContentValues[] rows) {
+        Row[] values = new Row[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            values[i] = rows[i]::get;
+        }
+        return writeAll(values);
+    }
+
+    @VisibleForTesting
+    int writeAll(@NonNull Row[] rows) {
+        int before = rowsWritten;
+        for (Row row : rows) {
+            try {
+                write(row);
+            } catch (SQLException e) {
+                // skip the row and carry on, like SQLiteDatabase#replace does
+                Log.w(TAG, "Failed to write row to " + table + ": " + e);
+            }
+        }
+        return rowsWritten - before;
+    }
+
+    /**
+     * Write a row, replacing any rows it conflicts with.
+     *
+     * @return the new row's ID
+     */
+    private long write(@NonNull Row values) {
+        if (delete != null) {
+            bind(delete, 1, values.get(deleteKey));
+            delete.executeUpdateDelete();
+        }
+        for (int i = 0; i < columns.length; i++) {
+            Object value = values.get(columns[i]);
+            if (i == compressedColumn && value instanceof String) {
+                value = ContentCompression.forStorage((String) value);
+            }
+            bind(replace, i + 1, value);
+        }
+        long rowId = replace.executeInsert();
+        rowsWritten++;
+        return rowId;
+    }
+
+    int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    @Override
+    public void close() {
+        replace.close();
+        if (delete != null) {
+            delete.close();
+        }
+    }
+
+
+    /**
+     * Bind a value to a statement according to its type, the same way {@link SQLiteDatabase#replace}
+     * binds ContentValues.
+     */
+    private static void bind(Statement statement, int index, @Nullable Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+
+    /**
+     * A row's values, looked up by column name - null if the row doesn't have one.
+     */
+    interface Row {
+        @Nullable
+        Object get(@NonNull String column);
+    }
+
+    /**
+     * The parts of {@link SQLiteStatement} the writer uses.
+     */
+    interface Statement {
+        void bindNull(int index);
+
+        void bindLong(int index, long value);
+
+        void bindDouble(int index, double value);
+
+        void bindString(int index, @NonNull String value);
+
+        void bindBlob(int index, @NonNull byte[] value);
+
+        long executeInsert();
+
+        int executeUpdateDelete();
+
+        void close();
+    }
+
+    interface StatementCompiler {
+        @NonNull
+        Statement compile(@NonNull String sql);
+    }
+
+    private static class CompiledStatement implements Statement {
+        private final SQLiteStatement statement;
+
+        CompiledStatement(SQLiteStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public void bindNull(int index) {
+            statement.bindNull(index);
+        }
+
+        @Override
+        public void bindLong(int index, long value) {
+            statement.bindLong(index, value);
+        }
+
+        @Override
+        public void bindDouble(int index, double value) {
+            statement.bindDouble(index, value);
+        }
+
+        @Override
+        public void bindString(int index, @NonNull String value) {
+            statement.bindString(index, value);
+        }
+
+        @Override
+        public void bindBlob(int index, @NonNull byte[] value) {
+            statement.bindBlob(index, value);
+        }
+
+        @Override
+        public long executeInsert() {
+            return statement.executeInsert();
+        }
+
+        @Override
+        public int executeUpdateDelete() {
+            return statement.executeUpdateDelete();
+        }
+
+        @Override
+        public void close() {
+            statement.close();
+        }
+    }
+
+
+    /**
+     * Look up the names of a table's columns.
+     */
+    @NonNull
+    static String[] getColumns(@NonNull SQLiteDatabase db, @NonNull String table) {
+        List<String> columns = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null)) {
+            int nameColumn = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(nameColumn));
+            }
+        }
+        return columns.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,133 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the provider's change notifications in batches - the first Uri queued opens a window of
+ * about a frame, and every Uri notified before it closes is collected and sent once at the end, so
+ * a burst of writes (like a thread page being stored in batches) wakes each loader once instead of
+ * once per write. The window isn't pushed back by later changes, so a steady stream of writes still
+ * sends its notifications every frame.
+ * <p>
+ * Notifying a Uri also notifies everything under it, so if a Uri and one of its descendants are
+ * both pending, only the ancestor is sent.
+ * <p>
+ * As well as notifying the ContentResolver, this sends each change to any listeners registered
+ * with {@link #observe(Uri, AwfulDatabase.ChangeListener)}, so code reading the database directly
+ * can watch it without going through a ContentObserver.
+ */
+class ChangeNotifier implements DatabaseWriter.ChangeSink<Uri> {
+
+    /** about a frame - long enough to catch a burst of writes, short enough not to be noticed */
+    private static final long BATCH_WINDOW_MILLIS = 16;
+
+    private final ContentResolver resolver;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "AwfulDbNotifier"));
+    /** the pending Uris, as strings */
+    private final Set<String> pending = new LinkedHashSet<>();
+    private final List<Registration> listeners = new CopyOnWriteArrayList<>();
+
+
+    ChangeNotifier(@NonNull ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+
+    /**
+     * Queue a change notification for a Uri, which will be sent when the current batch window
+     * closes - opening a new window if this is the first pending change.
+     */
+    @Override
+    public void notifyChange(@NonNull Uri uri) {
+        synchronized (pending) {
+            boolean scheduled = !pending.isEmpty();
+            pending.add(uri.toString());
+            if (!scheduled) {
+                executor.schedule(this::flush, BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Start sending a listener the changes to a Uri - like a ContentObserver watching descendants,
+     * that's any change to the Uri itself, to anything under it, or to any of its ancestors.
+     * Listeners are called on the notifier's own thread.
+     */
+    @NonNull
+    AwfulDatabase.Subscription observe(@NonNull Uri uri, @NonNull AwfulDatabase.ChangeListener listener) {
+        Registration registration = new Registration(uri.toString(), listener);
+        listeners.add(registration);
+        return () -> listeners.remove(registration);
+    }
+
+    private void flush() {
+        List<String> uris;
+        synchronized (pending) {
+            uris = removeCovered(pending);
+            pending.clear();
+        }
+        for (String uri : uris) {
+            Uri changed = Uri.parse(uri);
+            resolver.notifyChange(changed, null);
+            for (Registration registration : listeners) {
+                if (affects(uri, registration.uri)) {
+                    registration.listener.onChange(changed);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Drop any Uris whose ancestors are also in the set, since notifying the ancestor covers them.
+     */
+    @NonNull
+    static List<String> removeCovered(@NonNull Set<String> uris) {
+        List<String> result = new ArrayList<>(uris.size());
+        for (String uri : uris) {
+            if (!hasAncestorIn(uri, uris)) {
+                result.add(uri);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check if a change to one Uri should be sent to something watching another.
+     */
+    static boolean affects(@NonNull String changed, @NonNull String watched) {
+        return changed.equals(watched) || changed.startsWith(watched + "/") || watched.startsWith(changed + "/");
+    }
+
+    private static boolean hasAncestorIn(@NonNull String uri, @NonNull Set<String> uris) {
+        for (String other : uris) {
+            if (uri.startsWith(other + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static class Registration {
+        final String uri;
+        final AwfulDatabase.ChangeListener listener;
+
+        Registration(String uri, AwfulDatabase.ChangeListener listener) {
+            this.uri = uri;
+            this.listener = listener;
+        }
+    }
+}
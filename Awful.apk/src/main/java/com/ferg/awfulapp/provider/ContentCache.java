@@ -0,0 +1,340 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ferg.awfulapp.thread.AwfulPost;
+import com.ferg.awfulapp.thread.AwfulThread;
+import com.ferg.awfulapp.thread.RenderedPageCache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_EMOTES;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POSTS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_THREADS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_THREAD_ACCESS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_UCP_THREADS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.UPDATED_TIMESTAMP;
+
+/**
+ * Keeps the cached threads within a size budget.
+ * <p>
+ * Every time a thread is displayed its access time is recorded (see {@link #recordAccess(ContentResolver, int)}).
+ * When the cache is trimmed, the posts in the least recently read threads are removed until the
+ * cache fits the budget again. Bookmarked threads are never removed, and neither is anything read
+ * in the last hour, so the thread you're in doesn't disappear from under you.
+ * <p>
+ * The rendered pages saved on disk (see {@link RenderedPageCache}) count towards the budget too -
+ * they're trimmed to a small share of it first, and the posts get what's left.
+ * <p>
+ * Eviction runs on the provider's writer thread in small steps, each in its own short transaction,
+ * so it never holds up other writes for long. The thread listings, bookmarks list and emotes are
+ * small and get refreshed whenever they're shown, so those are still just dropped after a week.
+ */
+public final class ContentCache {
+
+    private static final String TAG = "ContentCache";
+
+    // provider methods, see AwfulProvider#call
+    static final String METHOD_RECORD_ACCESS = "recordThreadAccess";
+    static final String METHOD_TRIM = "trimCache";
+    static final String METHOD_GET_STATS = "getCacheStats";
+    static final String EXTRA_BUDGET_BYTES = "budgetBytes";
+
+    /** the thread access table's timestamp column, in epoch millis */
+    static final String LAST_ACCESS = "last_access";
+
+    /**
+     * A rough size for everything stored with a post besides its content - the other columns, and
+     * its entry in the search index.
+     */
+    static final int POST_OVERHEAD_BYTES = 512;
+    /** the most posts to delete in one step */
+    private static final int MAX_POSTS_PER_STEP = 250;
+    /** threads read more recently than this are never evicted */
+    static final long MIN_EVICTION_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final String LISTING_MAX_AGE = "-7 days";
+    /** the rendered page cache can use up to 1/this of the budget */
+    static final int RENDERED_PAGE_SHARE = 5;
+
+    private ContentCache() {
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Client methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Record that a thread's just been read. This doesn't wait for the write to happen.
+     */
+    public static void recordAccess(@NonNull ContentResolver resolver, int threadId) {
+        resolver.call(AwfulThread.CONTENT_URI, METHOD_RECORD_ACCESS, Integer.toString(threadId), null);
+    }
+
+    /**
+     * Start trimming the cache to a size budget. This runs in the background.
+     */
+    public static void trim(@NonNull ContentResolver resolver, long budgetBytes) {
+        Bundle extras = new Bundle();
+        extras.putLong(EXTRA_BUDGET_BYTES, budgetBytes);
+        resolver.call(AwfulThread.CONTENT_URI, METHOD_TRIM, null, extras);
+    }
+
+    /**
+     * Get the current size of the cache. This reads the whole posts table, so don't call it from
+     * the main thread.
+     */
+    @Nullable
+    public static Stats getStats(@NonNull ContentResolver resolver) {
+        Bundle result = resolver.call(AwfulThread.CONTENT_URI, METHOD_GET_STATS, null, null);
+        return result == null ? null : Stats.fromBundle(result);
+    }
+
+
+    /**
+     * How much is in the cache.
+     */
+    public static class Stats {
+        private static final String DATABASE_BYTES = "databaseBytes";
+        private static final String CONTENT_BYTES = "contentBytes";
+        private static final String THREADS = "threads";
+        private static final String POSTS = "posts";
+        private static final String PINNED_THREADS = "pinnedThreads";
+        private static final String RENDERED_PAGE_BYTES = "renderedPageBytes";
+
+        /** the space used in the database file */
+        public long databaseBytes;
+        /** the estimated size of the cached posts, which is what the budget applies to */
+        public long contentBytes;
+        public int threads;
+        public int posts;
+        /** the number of cached threads that can't be evicted because they're bookmarked */
+        public int pinnedThreads;
+        /** the space used by rendered pages saved on disk, which also counts towards the budget */
+        public long renderedPageBytes;
+
+        @NonNull
+        Bundle toBundle() {
+            Bundle bundle = new Bundle();
+            bundle.putLong(DATABASE_BYTES, databaseBytes);
+            bundle.putLong(CONTENT_BYTES, contentBytes);
+            bundle.putInt(THREADS, threads);
+            bundle.putInt(POSTS, posts);
+            bundle.putInt(PINNED_THREADS, pinnedThreads);
+            bundle.putLong(RENDERED_PAGE_BYTES, renderedPageBytes);
+            return bundle;
+        }
+
+        @NonNull
+        static Stats fromBundle(@NonNull Bundle bundle) {
+            Stats stats = new Stats();
+            stats.databaseBytes = bundle.getLong(DATABASE_BYTES);
+            stats.contentBytes = bundle.getLong(CONTENT_BYTES);
+            stats.threads = bundle.getInt(THREADS);
+            stats.posts = bundle.getInt(POSTS);
+            stats.pinnedThreads = bundle.getInt(PINNED_THREADS);
+            stats.renderedPageBytes = bundle.getLong(RENDERED_PAGE_BYTES);
+            return stats;
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Provider methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    static void recordAccess(@NonNull SQLiteDatabase db, long threadId, long time) {
+        db.execSQL("INSERT OR REPLACE INTO " + TABLE_THREAD_ACCESS + " (" + AwfulThread.ID + ", " + LAST_ACCESS + ") VALUES (?, ?)",
+                new Object[]{threadId, time});
+    }
+
+    /**
+     * The size and last access time of a thread in the cache.
+     */
+    static class ThreadUsage {
+        final long threadId;
+        final int posts;
+        final long bytes;
+        /** when the thread was last read, or 0 if it's never been recorded */
+        final long lastAccess;
+        /** true if it's bookmarked, and shouldn't be evicted */
+        final boolean pinned;
+
+        ThreadUsage(long threadId, int posts, long bytes, long lastAccess, boolean pinned) {
+            this.threadId = threadId;
+            this.posts = posts;
+            this.bytes = bytes;
+            this.lastAccess = lastAccess;
+            this.pinned = pinned;
+        }
+    }
+
+    /**
+     * Get the usage of every thread with posts in the cache, least recently read first.
+     */
+    @NonNull
+    static List<ThreadUsage> getThreadUsage(@NonNull SQLiteDatabase db) {
+        String sql = "SELECT usage." + AwfulPost.THREAD_ID + ", usage.posts, usage.bytes, " +
+                "IFNULL(" + TABLE_THREAD_ACCESS + "." + LAST_ACCESS + ", 0) AS " + LAST_ACCESS + ", " +
+                "(IFNULL(" + TABLE_THREADS + "." + AwfulThread.BOOKMARKED + ", 0) > 0 OR " + TABLE_UCP_THREADS + "." + AwfulThread.ID + " IS NOT NULL) AS pinned" +
+                " FROM (SELECT " + AwfulPost.THREAD_ID + ", COUNT(*) AS posts, " +
+                "SUM(IFNULL(length(" + AwfulPost.CONTENT + "), 0) + " + POST_OVERHEAD_BYTES + ") AS bytes" +
+                " FROM " + TABLE_POSTS + " GROUP BY " + AwfulPost.THREAD_ID + ") AS usage" +
+                " LEFT OUTER JOIN " + TABLE_THREAD_ACCESS + " ON " + TABLE_THREAD_ACCESS + "." + AwfulThread.ID + "=usage." + AwfulPost.THREAD_ID +
+                " LEFT OUTER JOIN " + TABLE_THREADS + " ON " + TABLE_THREADS + "." + AwfulThread.ID + "=usage." + AwfulPost.THREAD_ID +
+                " LEFT OUTER JOIN " + TABLE_UCP_THREADS + " ON " + TABLE_UCP_THREADS + "." + AwfulThread.ID + "=usage." + AwfulPost.THREAD_ID +
+                " ORDER BY " + LAST_ACCESS + " ASC";
+        List<ThreadUsage> usage = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            while (cursor.moveToNext()) {
+                usage.add(new ThreadUsage(cursor.getLong(0), cursor.getInt(1), cursor.getLong(2), cursor.getLong(3), cursor.getInt(4) > 0));
+            }
+        }
+        return usage;
+    }
+
+    @NonNull
+    static Stats getStats(@NonNull SQLiteDatabase db) {
+        Stats stats = new Stats();
+        for (ThreadUsage thread : getThreadUsage(db)) {
+            stats.threads++;
+            stats.posts += thread.posts;
+            stats.contentBytes += thread.bytes;
+            if (thread.pinned) {
+                stats.pinnedThreads++;
+            }
+        }
+        long usedPages = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null) - DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        stats.databaseBytes = usedPages * DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+        stats.renderedPageBytes = RenderedPageCache.getInstance().getDiskUsage();
+        return stats;
+    }
+
+
+    /**
+     * Pick the threads to evict to get the cache within a budget - the least recently read ones,
+     * skipping anything pinned or read too recently.
+     *
+     * @param usage     every thread in the cache, least recently read first
+     * @param readAfter threads read at or after this time are kept
+     * @return the IDs of the threads to evict, in the order they should go
+     */
+    @NonNull
+    static List<Long> selectForEviction(@NonNull List<ThreadUsage> usage, long budgetBytes, long readAfter) {
+        long total = 0;
+        for (ThreadUsage thread : usage) {
+            total += thread.bytes;
+        }
+        if (total <= budgetBytes) {
+            return Collections.emptyList();
+        }
+        List<Long> evict = new ArrayList<>();
+        for (ThreadUsage thread : usage) {
+            if (total <= budgetBytes) {
+                break;
+            }
+            if (!thread.pinned && thread.lastAccess < readAfter) {
+                evict.add(thread.threadId);
+                total -= thread.bytes;
+            }
+        }
+        return evict;
+    }
+
+
+    /**
+     * Remove the old thread listings, bookmarks and emotes - they're refreshed whenever they're
+     * shown anyway. Threads with cached posts are left alone, since those are handled by eviction.
+     *
+     * @return the number of rows deleted
+     */
+    static int trimListings(@NonNull SQLiteDatabase db) {
+        String olderThan = UPDATED_TIMESTAMP + " < datetime('now','" + LISTING_MAX_AGE + "')";
+        int rows = db.delete(TABLE_THREADS, olderThan +
+                " AND IFNULL(" + AwfulThread.BOOKMARKED + ", 0) = 0" +
+                " AND NOT EXISTS (SELECT 1 FROM " + TABLE_POSTS + " WHERE " + TABLE_POSTS + "." + AwfulPost.THREAD_ID + "=" + TABLE_THREADS + "." + AwfulThread.ID + ")", null);
+        rows += db.delete(TABLE_UCP_THREADS, olderThan, null);
+        rows += db.delete(TABLE_EMOTES, olderThan, null);
+        return rows;
+    }
+
+
+    /**
+     * An eviction in progress - call {@link #step(SQLiteDatabase)} until it {@link #isDone()}.
+     */
+    static class Eviction {
+        private final Deque<Long> threads;
+        private final long startTime;
+        private int threadsEvicted = 0;
+        private int postsEvicted = 0;
+
+        Eviction(@NonNull List<Long> threadIds, long startTime) {
+            threads = new ArrayDeque<>(threadIds);
+            this.startTime = startTime;
+        }
+
+        /**
+         * Delete the next few posts.
+         *
+         * @return the IDs of the threads that had posts deleted
+         */
+        @NonNull
+        List<Long> step(@NonNull SQLiteDatabase db) {
+            List<Long> evicted = new ArrayList<>();
+            int deleted = 0;
+            while (!threads.isEmpty() && deleted < MAX_POSTS_PER_STEP) {
+                String threadId = Long.toString(threads.peek());
+                if (isProtected(db, threadId)) {
+                    // the thread's been read or bookmarked since the eviction started
+                    threads.remove();
+                    continue;
+                }
+                int limit = MAX_POSTS_PER_STEP - deleted;
+                int count = db.delete(TABLE_POSTS, "rowid IN (SELECT rowid FROM " + TABLE_POSTS +
+                        " WHERE " + AwfulPost.THREAD_ID + "=? LIMIT " + limit + ")", new String[]{threadId});
+                deleted += count;
+                postsEvicted += count;
+                if (count > 0) {
+                    evicted.add(threads.peek());
+                }
+                if (count < limit) {
+                    db.delete(TABLE_THREAD_ACCESS, AwfulThread.ID + "=?", new String[]{threadId});
+                    threads.remove();
+                    threadsEvicted++;
+                }
+            }
+            if (threads.isEmpty()) {
+                Log.i(TAG, String.format(Locale.US, "Evicted %d posts from %d threads", postsEvicted, threadsEvicted));
+            }
+            return evicted;
+        }
+
+        /**
+         * @return true if there's nothing left to evict
+         */
+        boolean isDone() {
+            return threads.isEmpty();
+        }
+
+        private boolean isProtected(@NonNull SQLiteDatabase db, @NonNull String threadId) {
+            return DatabaseUtils.longForQuery(db, "SELECT" +
+                    " EXISTS (SELECT 1 FROM " + TABLE_THREAD_ACCESS + " WHERE " + AwfulThread.ID + "=? AND " + LAST_ACCESS + ">=?)" +
+                    " OR EXISTS (SELECT 1 FROM " + TABLE_THREADS + " WHERE " + AwfulThread.ID + "=? AND " + AwfulThread.BOOKMARKED + ">0)" +
+                    " OR EXISTS (SELECT 1 FROM " + TABLE_UCP_THREADS + " WHERE " + AwfulThread.ID + "=?)",
+                    new String[]{threadId, Long.toString(startTime), threadId, threadId}) > 0;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.ferg.awfulapp.provider;
 
 import android.content.Context;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.util.Log;
 
 import com.ferg.awfulapp.thread.AwfulEmote;
 import com.ferg.awfulapp.thread.AwfulForum;
@@ -20,7 +23,10 @@ import com.ferg.awfulapp.thread.AwfulThread;
 public class DatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "awful.db";
-    private static final int DATABASE_VERSION = 36;
+    private static final int DATABASE_VERSION = 41;
+    /** anything older than this is too different to migrate, and gets wiped */
+    private static final int OLDEST_MIGRATABLE_VERSION = 23;
+    private static final String TAG = "DatabaseHelper";
 
     static final String TABLE_FORUM    = "forum";
     static final String TABLE_THREADS    = "threads";
@@ -30,173 +36,275 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     static final String TABLE_EMOTES    = "emotes";
     static final String TABLE_PM    = "private_messages";
     static final String TABLE_DRAFTS    = "draft_messages";
+    static final String TABLE_POST_SEARCH    = "post_search";
+    static final String TABLE_THREAD_ACCESS    = "thread_access";
 
     public static final String UPDATED_TIMESTAMP    = "timestamp_row_update";
 
+    static final String INDEX_POSTS_THREAD_POSITION = "posts_thread_position";
+    static final String INDEX_THREADS_FORUM_POSITION = "threads_forum_position";
+    static final String INDEX_UCP_THREADS_POSITION = "ucp_thread_position";
+    static final String TRIGGER_POST_SEARCH_DELETE = "post_search_delete";
+
     DatabaseHelper(Context aContext) {
-        super(aContext, DATABASE_NAME, null, DATABASE_VERSION);
+        this(aContext, DATABASE_NAME);
+    }
+
+    /**
+     * Create a helper for a database other than the app's main one, e.g. for tests and benchmarks.
+     *
+     * @param name the database file name, or null for an in-memory database
+     */
+    DatabaseHelper(Context aContext, @Nullable String name) {
+        super(aContext, name, null, DATABASE_VERSION);
+        // lets the loaders keep reading while a sync is writing - writes are serialised by DatabaseWriter
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase aDb) {
-        createForumTable(aDb);
-        createThreadTable(aDb);
-        createUCPTable(aDb);
-        createPostTable(aDb);
-        createEmoteTable(aDb);
-        createPMTable(aDb);
-        createDraftTable(aDb);
+        for (String[] table : TABLES) {
+            aDb.execSQL("CREATE TABLE " + table[0] + " " + table[1] + ";");
+        }
+        createIndexes(aDb);
+        createPostSearchTable(aDb);
     }
 
 
-    private void createForumTable(SQLiteDatabase aDb) {
-        aDb.execSQL("CREATE TABLE " + TABLE_FORUM + " (" +
-                AwfulForum.ID + " INTEGER UNIQUE," +
-                AwfulForum.PARENT_ID + " INTEGER," + //subforums list parent forum id, primary forums list 0 (index)
-                AwfulForum.INDEX + " INTEGER," +
-                AwfulForum.TITLE + " VARCHAR," +
-                AwfulForum.SUBTEXT + " VARCHAR," +
-                AwfulForum.PAGE_COUNT + " INTEGER," +
-                AwfulForum.TAG_URL + " VARCHAR," +
-                AwfulForum.TAG_CACHEFILE + " VARCHAR," +
-                UPDATED_TIMESTAMP + " DATETIME);");
-    }
+    private static final String FORUM_COLUMNS = "(" +
+            AwfulForum.ID + " INTEGER UNIQUE," +
+            AwfulForum.PARENT_ID + " INTEGER," + //subforums list parent forum id, primary forums list 0 (index)
+            AwfulForum.INDEX + " INTEGER," +
+            AwfulForum.TITLE + " VARCHAR," +
+            AwfulForum.SUBTEXT + " VARCHAR," +
+            AwfulForum.PAGE_COUNT + " INTEGER," +
+            AwfulForum.TAG_URL + " VARCHAR," +
+            AwfulForum.TAG_CACHEFILE + " VARCHAR," +
+            UPDATED_TIMESTAMP + " DATETIME)";
 
-    private void createThreadTable(SQLiteDatabase aDb) {
-        aDb.execSQL("CREATE TABLE " + TABLE_THREADS + " (" +
-                AwfulThread.ID + " INTEGER UNIQUE," +
-                AwfulThread.FORUM_ID + " INTEGER," +
-                AwfulThread.INDEX + " INTEGER," +
-                AwfulThread.TITLE + " VARCHAR," +
-                AwfulThread.POSTCOUNT + " INTEGER," +
-                AwfulThread.UNREADCOUNT + " INTEGER," +
-                AwfulThread.AUTHOR + " VARCHAR," +
-                AwfulThread.AUTHOR_ID + " INTEGER," +
-                AwfulThread.LOCKED + " INTEGER," +
-                AwfulThread.CAN_OPEN_CLOSE + " INTEGER," +
-                AwfulThread.BOOKMARKED + " INTEGER," +
-                AwfulThread.STICKY + " INTEGER," +
-                AwfulThread.CATEGORY + " INTEGER," +
-                AwfulThread.LASTPOSTER + " VARCHAR," +
-                AwfulThread.TAG_URL + " VARCHAR," +
-                AwfulThread.TAG_CACHEFILE + " VARCHAR," +
-                AwfulThread.TAG_EXTRA + " INTEGER, " +
-                AwfulThread.HAS_VIEWED_THREAD + " INTEGER, " +
-                AwfulThread.ARCHIVED + " INTEGER, " +
-                AwfulThread.RATING + " INTEGER, " +
-                UPDATED_TIMESTAMP + " DATETIME);");
-    }
+    private static final String THREAD_COLUMNS = "(" +
+            AwfulThread.ID + " INTEGER UNIQUE," +
+            AwfulThread.FORUM_ID + " INTEGER," +
+            AwfulThread.INDEX + " INTEGER," +
+            AwfulThread.TITLE + " VARCHAR," +
+            AwfulThread.POSTCOUNT + " INTEGER," +
+            AwfulThread.UNREADCOUNT + " INTEGER," +
+            AwfulThread.AUTHOR + " VARCHAR," +
+            AwfulThread.AUTHOR_ID + " INTEGER," +
+            AwfulThread.LOCKED + " INTEGER," +
+            AwfulThread.CAN_OPEN_CLOSE + " INTEGER," +
+            AwfulThread.BOOKMARKED + " INTEGER," +
+            AwfulThread.STICKY + " INTEGER," +
+            AwfulThread.CATEGORY + " INTEGER," +
+            AwfulThread.LASTPOSTER + " VARCHAR," +
+            AwfulThread.TAG_URL + " VARCHAR," +
+            AwfulThread.TAG_CACHEFILE + " VARCHAR," +
+            AwfulThread.TAG_EXTRA + " INTEGER, " +
+            AwfulThread.HAS_VIEWED_THREAD + " INTEGER, " +
+            AwfulThread.ARCHIVED + " INTEGER, " +
+            AwfulThread.RATING + " INTEGER, " +
+            UPDATED_TIMESTAMP + " DATETIME)";
 
-    private void createUCPTable(SQLiteDatabase aDb) {
-        aDb.execSQL("CREATE TABLE " + TABLE_UCP_THREADS + " (" +
-                AwfulThread.ID + " INTEGER UNIQUE," + //to be joined with thread table
-                AwfulThread.INDEX + " INTEGER," +
-                UPDATED_TIMESTAMP + " DATETIME);");
-    }
+    private static final String UCP_THREAD_COLUMNS = "(" +
+            AwfulThread.ID + " INTEGER UNIQUE," + //to be joined with thread table
+            AwfulThread.INDEX + " INTEGER," +
+            UPDATED_TIMESTAMP + " DATETIME)";
 
-    private void createPostTable(SQLiteDatabase aDb) {
-        aDb.execSQL("CREATE TABLE " + TABLE_POSTS + " (" +
-                AwfulPost.ID + " INTEGER UNIQUE," +
-                AwfulPost.THREAD_ID + " INTEGER," +
-                AwfulPost.POST_INDEX + " INTEGER," +
-                AwfulPost.DATE + " VARCHAR," +
-                AwfulPost.REGDATE + " VARCHAR," +
-                AwfulPost.USER_ID + " INTEGER," +
-                AwfulPost.USERNAME + " VARCHAR," +
-                AwfulPost.IS_IGNORED + " INTEGER," +
-                AwfulPost.PREVIOUSLY_READ + " INTEGER," +
-                AwfulPost.EDITABLE + " INTEGER," +
-                AwfulPost.IS_OP + " INTEGER," +
-                AwfulPost.IS_PLAT + " INTEGER," +
-                AwfulPost.ROLE + " VARCHAR," +
-                AwfulPost.AVATAR + " VARCHAR," +
-                AwfulPost.AVATAR_SECOND + " VARCHAR," +
-                AwfulPost.AVATAR_TEXT + " VARCHAR," +
-                AwfulPost.CONTENT + " VARCHAR," +
-                AwfulPost.EDITED + " VARCHAR," +
-                UPDATED_TIMESTAMP + " DATETIME);");
-    }
+    private static final String POST_COLUMNS = "(" +
+            AwfulPost.ID + " INTEGER UNIQUE," +
+            AwfulPost.THREAD_ID + " INTEGER," +
+            AwfulPost.POST_INDEX + " INTEGER," +
+            AwfulPost.DATE + " VARCHAR," +
+            AwfulPost.REGDATE + " VARCHAR," +
+            AwfulPost.USER_ID + " INTEGER," +
+            AwfulPost.USERNAME + " VARCHAR," +
+            AwfulPost.IS_IGNORED + " INTEGER," +
+            AwfulPost.PREVIOUSLY_READ + " INTEGER," +
+            AwfulPost.EDITABLE + " INTEGER," +
+            AwfulPost.IS_OP + " INTEGER," +
+            AwfulPost.IS_PLAT + " INTEGER," +
+            AwfulPost.ROLE + " VARCHAR," +
+            AwfulPost.AVATAR + " VARCHAR," +
+            AwfulPost.AVATAR_SECOND + " VARCHAR," +
+            AwfulPost.AVATAR_TEXT + " VARCHAR," +
+            AwfulPost.CONTENT + " VARCHAR," +
+            AwfulPost.EDITED + " VARCHAR," +
+            AwfulPost.FINGERPRINT + " INTEGER," +
+            UPDATED_TIMESTAMP + " DATETIME)";
 
-    private void createEmoteTable(SQLiteDatabase aDb) {
-        aDb.execSQL("CREATE TABLE " + TABLE_EMOTES + " (" +
-                AwfulEmote.ID + " INTEGER UNIQUE," +
-                AwfulEmote.TEXT + " VARCHAR," +
-                AwfulEmote.SUBTEXT + " VARCHAR," +
-                AwfulEmote.URL + " VARCHAR," +
-                AwfulEmote.INDEX + " INTEGER," +
-                UPDATED_TIMESTAMP + " DATETIME);");
-    }
+    private static final String EMOTE_COLUMNS = "(" +
+            AwfulEmote.ID + " INTEGER UNIQUE," +
+            AwfulEmote.TEXT + " VARCHAR," +
+            AwfulEmote.SUBTEXT + " VARCHAR," +
+            AwfulEmote.URL + " VARCHAR," +
+            AwfulEmote.INDEX + " INTEGER," +
+            UPDATED_TIMESTAMP + " DATETIME)";
+
+    private static final String PM_COLUMNS = "(" +
+            AwfulMessage.ID + " INTEGER UNIQUE," +
+            AwfulMessage.TITLE + " VARCHAR," +
+            AwfulMessage.AUTHOR + " VARCHAR," +
+            AwfulMessage.CONTENT + " VARCHAR," +
+            AwfulMessage.UNREAD + " INTEGER," +
+            AwfulMessage.FOLDER + " INTEGER," +
+            AwfulMessage.ICON + " VARCHAR," +
+            AwfulMessage.DATE + " VARCHAR," +
+            UPDATED_TIMESTAMP + " DATETIME)";
+
+    private static final String DRAFT_COLUMNS = "(" +
+            AwfulMessage.ID + " INTEGER UNIQUE," +
+            AwfulMessage.TYPE + " INTEGER," +
+            AwfulMessage.TITLE + " VARCHAR," +
+            AwfulPost.FORM_KEY + " VARCHAR," +
+            AwfulPost.FORM_COOKIE + " VARCHAR," +
+            AwfulPost.EDIT_POST_ID + " INTEGER," +
+            AwfulMessage.RECIPIENT      + " VARCHAR,"   +
+            AwfulMessage.REPLY_CONTENT      + " VARCHAR," +
+            AwfulMessage.REPLY_ICON      + " VARCHAR," +
+            AwfulPost.REPLY_ORIGINAL_CONTENT + " VARCHAR," +
+            AwfulPost.FORM_BOOKMARK + " VARCHAR," +
+            AwfulMessage.REPLY_ATTACHMENT + " VARCHAR," +
+            AwfulMessage.EPOC_TIMESTAMP + " INTEGER, " +
+            UPDATED_TIMESTAMP + " DATETIME)";
+
+    /**
+     * The table that records when each thread was last read, so {@link ContentCache} can evict the
+     * least recently read ones. This is separate from the threads table since rows there are
+     * replaced whenever a forum page is loaded.
+     */
+    private static final String THREAD_ACCESS_COLUMNS = "(" +
+            AwfulThread.ID + " INTEGER PRIMARY KEY," +
+            ContentCache.LAST_ACCESS + " INTEGER)";
+
+    /**
+     * The regular tables and their column definitions. When the version changes each one is
+     * migrated to match its definition here, keeping its rows (see {@link SchemaMigrator}) - so
+     * adding a column just means adding it here and bumping the version.
+     */
+    private static final String[][] TABLES = {
+            {TABLE_FORUM, FORUM_COLUMNS},
+            {TABLE_THREADS, THREAD_COLUMNS},
+            {TABLE_UCP_THREADS, UCP_THREAD_COLUMNS},
+            {TABLE_POSTS, POST_COLUMNS},
+            {TABLE_EMOTES, EMOTE_COLUMNS},
+            {TABLE_PM, PM_COLUMNS},
+            {TABLE_DRAFTS, DRAFT_COLUMNS},
+            {TABLE_THREAD_ACCESS, THREAD_ACCESS_COLUMNS}
+    };
 
-    private void createPMTable(SQLiteDatabase aDb) {
-        aDb.execSQL("CREATE TABLE " + TABLE_PM + " (" +
-                AwfulMessage.ID + " INTEGER UNIQUE," +
-                AwfulMessage.TITLE + " VARCHAR," +
-                AwfulMessage.AUTHOR + " VARCHAR," +
-                AwfulMessage.CONTENT + " VARCHAR," +
-                AwfulMessage.UNREAD + " INTEGER," +
-                AwfulMessage.FOLDER + " INTEGER," +
-                AwfulMessage.ICON + " VARCHAR," +
-                AwfulMessage.DATE + " VARCHAR," +
-                UPDATED_TIMESTAMP + " DATETIME);");
-    }
 
-    private void createDraftTable(SQLiteDatabase aDb) {
-        aDb.execSQL("CREATE TABLE " + TABLE_DRAFTS + " (" +
-                AwfulMessage.ID + " INTEGER UNIQUE," +
-                AwfulMessage.TYPE + " INTEGER," +
-                AwfulMessage.TITLE + " VARCHAR," +
-                AwfulPost.FORM_KEY + " VARCHAR," +
-                AwfulPost.FORM_COOKIE + " VARCHAR," +
-                AwfulPost.EDIT_POST_ID + " INTEGER," +
-                AwfulMessage.RECIPIENT      + " VARCHAR,"   +
-                AwfulMessage.REPLY_CONTENT      + " VARCHAR," +
-                AwfulMessage.REPLY_ICON      + " VARCHAR," +
-                AwfulPost.REPLY_ORIGINAL_CONTENT + " VARCHAR," +
-                AwfulPost.FORM_BOOKMARK + " VARCHAR," +
-                AwfulMessage.REPLY_ATTACHMENT + " VARCHAR," +
-                AwfulMessage.EPOC_TIMESTAMP + " INTEGER, " +
-                UPDATED_TIMESTAMP + " DATETIME);");
+    /**
+     * Create the indexes for the lookups we do all the time - loading and replacing a page of posts,
+     * and loading a page of a forum or the bookmarks.
+     * <p>
+     * A post's position in its thread is unique, which lets bulk inserts replace the old post at
+     * that position with a plain INSERT OR REPLACE. Since this can be added to an existing table,
+     * any duplicates are removed first (keeping the most recent).
+     */
+    private void createIndexes(SQLiteDatabase aDb) {
+        aDb.execSQL("DELETE FROM " + TABLE_POSTS + " WHERE rowid NOT IN (SELECT MAX(rowid) FROM " + TABLE_POSTS +
+                " GROUP BY " + AwfulPost.THREAD_ID + ", " + AwfulPost.POST_INDEX + ");");
+        aDb.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_POSTS_THREAD_POSITION + " ON " + TABLE_POSTS +
+                " (" + AwfulPost.THREAD_ID + ", " + AwfulPost.POST_INDEX + ");");
+        aDb.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_THREADS_FORUM_POSITION + " ON " + TABLE_THREADS +
+                " (" + AwfulThread.FORUM_ID + ", " + AwfulThread.INDEX + ");");
+        aDb.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_UCP_THREADS_POSITION + " ON " + TABLE_UCP_THREADS +
+                " (" + AwfulThread.INDEX + ");");
     }
 
+    /**
+     * Create the full-text index of cached posts (see {@link PostSearchIndex}), and a trigger that
+     * removes posts from it when they're deleted.
+     * <p>
+     * Only the post text is indexed - the other columns are there for filtering, and the post ID is
+     * the docid.
+     */
+    private void createPostSearchTable(SQLiteDatabase aDb) {
+        aDb.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_POST_SEARCH + " USING fts4(" +
+                PostSearchIndex.BODY + ", " +
+                PostSearchIndex.USERNAME + ", " +
+                PostSearchIndex.POST_TIME + ", " +
+                "notindexed=" + PostSearchIndex.USERNAME + ", " +
+                "notindexed=" + PostSearchIndex.POST_TIME + ", " +
+                "tokenize=porter);");
+        aDb.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRIGGER_POST_SEARCH_DELETE + " AFTER DELETE ON " + TABLE_POSTS +
+                " BEGIN DELETE FROM " + TABLE_POST_SEARCH + " WHERE docid=old." + AwfulPost.ID + "; END;");
+    }
 
+    /**
+     * Upgrade the database, keeping everything that's cached so the first launch after an update
+     * doesn't have to load every forum and thread again.
+     * <p>
+     * The tables are migrated to their current definitions first - new columns stay empty until
+     * their rows are next synced. After that, the switch below handles the versions whose stored
+     * data has to change as well.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase aDb, int aOldVersion, int aNewVersion) {
+        if (aOldVersion < OLDEST_MIGRATABLE_VERSION || !migrateTables(aDb)) {
+            wipeRecreateTables(aDb);
+            return;
+        }
         switch (aOldVersion) {//this switch intentionally falls through!
             case 23:
             case 24:
             case 25:
             case 26:
-                dropTables(aDb, TABLE_DRAFTS);
-                createDraftTable(aDb);
             case 27:
             case 28:
             case 29:
-                dropTables(aDb, TABLE_PM, TABLE_POSTS);
-                createPMTable(aDb);
-                createPostTable(aDb);
             case 30:
-                dropTables(aDb, TABLE_FORUM);
-                createForumTable(aDb);
             case 31:
-                dropTables(aDb, TABLE_THREADS);
-                createThreadTable(aDb);
             case 32:
-                dropTables(aDb, TABLE_DRAFTS);
-                createDraftTable(aDb);
             case 33:
             case 34:
             case 35:
-                dropTables(aDb, TABLE_POSTS);
-                createPostTable(aDb);
+            case 36:
+            case 37:
+                // posts used to be stored with the display settings already applied, so they'd get rewritten twice
+                aDb.execSQL("DELETE FROM " + TABLE_POSTS + ";");
+            case 38:
+            case 39:
+                // unchanged posts aren't parsed again, so clear the fingerprints to get the cached ones indexed as they're seen
+                aDb.execSQL("UPDATE " + TABLE_POSTS + " SET " + AwfulPost.FINGERPRINT + "=NULL;");
+            case 40:
+                // go by when the cached threads were last loaded - the timestamps are local time, but they only need to be in order
+                aDb.execSQL("INSERT OR REPLACE INTO " + TABLE_THREAD_ACCESS + " (" + AwfulThread.ID + ", " + ContentCache.LAST_ACCESS + ")" +
+                        " SELECT " + AwfulPost.THREAD_ID + ", CAST(strftime('%s', MAX(" + UPDATED_TIMESTAMP + ")) AS INTEGER) * 1000" +
+                        " FROM " + TABLE_POSTS + " GROUP BY " + AwfulPost.THREAD_ID + ";");
                 break;//make sure to keep this break statement on the last case of this switch
-            default:
-                wipeRecreateTables(aDb);
         }
     }
 
+    /**
+     * Going back to an older version works the same way - anything the newer one added is dropped,
+     * and everything else is kept.
+     */
     @Override
     public void onDowngrade(SQLiteDatabase aDb, int oldVersion, int newVersion) {
-        wipeRecreateTables(aDb);
+        if (!migrateTables(aDb)) {
+            wipeRecreateTables(aDb);
+        }
+    }
+
+    /**
+     * Migrate every table to its current definition, and recreate the indexes and triggers.
+     *
+     * @return false if the migration failed, and the tables should be wiped instead
+     */
+    private boolean migrateTables(SQLiteDatabase aDb) {
+        try {
+            for (String[] table : TABLES) {
+                SchemaMigrator.Plan plan = SchemaMigrator.migrateTable(aDb, table[0], table[1]);
+                Log.i(TAG, "Migrating table " + table[0] + ": " + plan);
+            }
+            createIndexes(aDb);
+            createPostSearchTable(aDb);
+            return true;
+        } catch (SQLException e) {
+            Log.w(TAG, "Couldn't migrate the database, wiping it", e);
+            return false;
+        }
     }
 
     /**
@@ -209,7 +317,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     private void wipeRecreateTables(SQLiteDatabase aDb) {
-        String[] allTables = {TABLE_FORUM, TABLE_THREADS, TABLE_POSTS, TABLE_EMOTES, TABLE_UCP_THREADS, TABLE_PM, TABLE_DRAFTS};
+        String[] allTables = {TABLE_FORUM, TABLE_THREADS, TABLE_POSTS, TABLE_EMOTES, TABLE_UCP_THREADS, TABLE_PM, TABLE_DRAFTS, TABLE_POST_SEARCH, TABLE_THREAD_ACCESS};
         dropTables(aDb, allTables);
         onCreate(aDb);
     }
@@ -0,0 +1,396 @@
+package com.ferg.awfulapp.provider;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs all the provider's writes on a single thread, so writers never contend with each other for
+ * the database lock. With write-ahead logging on, reads don't wait for writes at all.
+ * <p>
+ * Writes that queue up while another batch is running get coalesced into one transaction - when
+ * a bookmarks sync and a thread page come back at the same time, they're committed together. Each
+ * write in a batch runs inside its own savepoint, so if one fails only its changes are rolled back
+ * and the rest of the batch still commits. Nothing is ever run twice - a write that queues another
+ * one (like a cache eviction step) can't end up queueing it again.
+ * <p>
+ * Change notifications are sent once a write has been committed, so anything reloading in
+ * response will see the new data. That includes writes made from inside another write, which
+ * become part of its batch - their notifications wait for the outer transaction too. They go
+ * through a {@link ChangeNotifier}, so a burst of writes to the same place only notifies it once.
+ *
+ * @param <K> the keys change notifications are sent for - Uris in the app
+ */
+class DatabaseWriter<K> {
+
+    private static final String TAG = "DatabaseWriter";
+    /** the most writes to put in one transaction, so a flood of them doesn't hold a transaction open forever */
+    private static final int MAX_BATCH_SIZE = 32;
+
+    /**
+     * A unit of work that writes to the database.
+     */
+    interface Work<T> {
+        T run(@NonNull SQLiteDatabase db);
+    }
+
+    /**
+     * Called with a write's result once it's been committed.
+     */
+    interface Committed<T> {
+        void onCommitted(T result);
+    }
+
+    /**
+     * Something that gets told about changes once they're committed.
+     */
+    interface ChangeSink<K> {
+        void notifyChange(@NonNull K key);
+    }
+
+    /**
+     * The database transactions the writer runs its batches in.
+     */
+    @VisibleForTesting
+    interface Transactions {
+        /** the database to hand to each write */
+        SQLiteDatabase getDatabase();
+
+        void begin();
+
+        void setSuccessful();
+
+        void end();
+
+        /** start a savepoint inside the current transaction */
+        void savepoint();
+
+        /** commit the most recent savepoint into the transaction */
+        void release();
+
+        /** undo everything since the most recent savepoint, and end it */
+        void rollback();
+    }
+
+    private final Transactions transactions;
+    private final ChangeSink<K> notifier;
+    private final LinkedBlockingQueue<PendingWrite<?, K>> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService executor;
+    private volatile Thread writerThread;
+    /** the write currently running on the writer thread, which any inline writes become part of */
+    @Nullable
+    private PendingWrite<?, K> running;
+
+
+    DatabaseWriter(@NonNull SQLiteOpenHelper helper, @NonNull ChangeSink<K> notifier) {
+        this(new HelperTransactions(helper), notifier);
+    }
+
+    @VisibleForTesting
+    DatabaseWriter(@NonNull Transactions transactions, @NonNull ChangeSink<K> notifier) {
+        this.transactions = transactions;
+        this.notifier = notifier;
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AwfulDbWriter");
+            writerThread = thread;
+            return thread;
+        });
+    }
+
+
+    /**
+     * Run some work on the writer thread, waiting for it to be committed.
+     *
+     * @param notifyUris the Uris to notify of changes once the work is committed
+     * @return the work's result
+     */
+    <T> T write(@NonNull Work<T> work, @NonNull Collection<K> notifyUris) {
+        PendingWrite<T, K> pending = new PendingWrite<>(work, notifyUris);
+        if (Thread.currentThread() == writerThread) {
+            if (running == null) {
+                // not part of a batch, e.g. called while sending notifications - this is a batch of its own
+                runBatch(Collections.singletonList(pending));
+            } else {
+                runInline(pending);
+            }
+            return pending.getResult();
+        }
+        queue.add(pending);
+        executor.execute(this::drainQueue);
+        return pending.await();
+    }
+
+    /**
+     * Queue some work to run on the writer thread, without waiting for it. Unlike {@link #write},
+     * this is never run inline - if it's called from the writer thread, the work goes in a later
+     * batch, so a long job can be split into steps that each queue the next one.
+     *
+     * @param notifyUri a Uri to notify of changes once the work is committed, if any
+     */
+    void writeAsync(@NonNull Work<?> work, @Nullable K notifyUri) {
+        writeAsync(work, notifyUri, null);
+    }
+
+    /**
+     * Queue some work to run on the writer thread, like {@link #writeAsync(Work, Object)}, with
+     * something to do once it's committed.
+     *
+     * @param onCommitted called with the work's result once it's committed (on the writer thread,
+     *                    so keep it short) - this isn't called if the work fails
+     */
+    <T> void writeAsync(@NonNull Work<T> work, @Nullable K notifyUri, @Nullable Committed<T> onCommitted) {
+        PendingWrite<T, K> pending = new PendingWrite<>(work,
+                notifyUri == null ? Collections.<K>emptyList() : Collections.singletonList(notifyUri));
+        pending.async = true;
+        pending.onCommitted = onCommitted;
+        queue.add(pending);
+        executor.execute(this::drainQueue);
+    }
+
+
+    /**
+     * Run everything waiting in the queue, in batches. If an earlier drain already took this
+     * call's writes, there's nothing to do.
+     */
+    private void drainQueue() {
+        List<PendingWrite<?, K>> batch = new ArrayList<>();
+        while (queue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+            runBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Run some writes in a single transaction, completing them and sending their notifications
+     * once it's committed.
+     * <p>
+     * Anything thrown by a write (including Errors like running out of memory) rolls back its
+     * savepoint and is handed to its caller. If the transaction itself fails, every write in it
+     * fails. Either way, a caller waiting on a write is always released.
+     */
+    private void runBatch(List<? extends PendingWrite<?, K>> batch) {
+        boolean committed = false;
+        try {
+            transactions.begin();
+            try {
+                for (PendingWrite<?, K> write : batch) {
+                    running = write;
+                    try {
+                        runInSavepoint(write);
+                    } catch (Throwable e) {
+                        Log.w(TAG, "Write failed in a batch of " + batch.size() + ", rolled it back", e);
+                        write.fail(e);
+                    } finally {
+                        running = null;
+                    }
+                }
+                transactions.setSuccessful();
+            } finally {
+                transactions.end();
+            }
+            committed = true;
+
+            for (PendingWrite<?, K> write : batch) {
+                if (write.error == null) {
+                    write.committed();
+                }
+            }
+            Set<K> notifyUris = new LinkedHashSet<>();
+            for (PendingWrite<?, K> write : batch) {
+                if (write.error == null) {
+                    notifyUris.addAll(write.notifyUris);
+                    notifyUris.addAll(write.inlineNotifyUris);
+                }
+            }
+            for (K uri : notifyUris) {
+                notifier.notifyChange(uri);
+            }
+        } catch (Throwable e) {
+            if (committed) {
+                // the data's written, it's just the notifications that failed
+                Log.w(TAG, "Couldn't send change notifications", e);
+            } else {
+                // the transaction couldn't be started or committed, so none of it was written
+                for (PendingWrite<?, K> write : batch) {
+                    write.fail(e);
+                }
+            }
+        } finally {
+            for (PendingWrite<?, K> write : batch) {
+                write.done.countDown();
+            }
+        }
+    }
+
+    /**
+     * Run a write made from inside another one - it's part of the outer write, so its
+     * notifications are held back until the outer write's transaction commits.
+     */
+    private void runInline(@NonNull PendingWrite<?, K> write) {
+        PendingWrite<?, K> outer = running;
+        running = write;
+        try {
+            runInSavepoint(write);
+        } catch (Throwable e) {
+            // the outer write decides what to do about this, see getResult
+            write.fail(e);
+            return;
+        } finally {
+            running = outer;
+        }
+        outer.inlineNotifyUris.addAll(write.notifyUris);
+        outer.inlineNotifyUris.addAll(write.inlineNotifyUris);
+    }
+
+    private void runInSavepoint(@NonNull PendingWrite<?, K> write) {
+        transactions.savepoint();
+        try {
+            write.run(transactions.getDatabase());
+        } catch (Throwable e) {
+            transactions.rollback();
+            throw e;
+        }
+        transactions.release();
+    }
+
+
+    /**
+     * Runs transactions on the app's database, with savepoints for the individual writes.
+     */
+    private static class HelperTransactions implements Transactions {
+
+        private static final String SAVEPOINT = "awful_write";
+
+        private final SQLiteOpenHelper helper;
+
+        HelperTransactions(@NonNull SQLiteOpenHelper helper) {
+            this.helper = helper;
+        }
+
+        @Override
+        public SQLiteDatabase getDatabase() {
+            return helper.getWritableDatabase();
+        }
+
+        @Override
+        public void begin() {
+            getDatabase().beginTransaction();
+        }
+
+        @Override
+        public void setSuccessful() {
+            getDatabase().setTransactionSuccessful();
+        }
+
+        @Override
+        public void end() {
+            getDatabase().endTransaction();
+        }
+
+        @Override
+        public void savepoint() {
+            getDatabase().execSQL("SAVEPOINT " + SAVEPOINT);
+        }
+
+        @Override
+        public void release() {
+            getDatabase().execSQL("RELEASE " + SAVEPOINT);
+        }
+
+        @Override
+        public void rollback() {
+            // rolling back to a savepoint leaves it open, so it has to be released as well
+            getDatabase().execSQL("ROLLBACK TO " + SAVEPOINT);
+            getDatabase().execSQL("RELEASE " + SAVEPOINT);
+        }
+    }
+
+
+    /**
+     * A write waiting to be run, and its result once it has.
+     */
+    private static class PendingWrite<T, K> {
+        final Work<T> work;
+        final Collection<K> notifyUris;
+        /** the notifications for any writes made from inside this one */
+        final Set<K> inlineNotifyUris = new LinkedHashSet<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        T result;
+        Throwable error;
+        /** true if nothing is waiting for the result */
+        boolean async = false;
+        @Nullable
+        Committed<T> onCommitted;
+
+        PendingWrite(Work<T> work, Collection<K> notifyUris) {
+            this.work = work;
+            this.notifyUris = notifyUris;
+        }
+
+        void run(SQLiteDatabase db) {
+            result = work.run(db);
+        }
+
+        void committed() {
+            if (onCommitted == null) {
+                return;
+            }
+            try {
+                onCommitted.onCommitted(result);
+            } catch (RuntimeException e) {
+                // the write's done, so this doesn't fail it
+                Log.w(TAG, "Post-commit action failed", e);
+            }
+        }
+
+        void fail(Throwable e) {
+            error = e;
+            if (async) {
+                // nobody's waiting on this one to see the error
+                Log.w(TAG, "Async write failed", e);
+            }
+        }
+
+        T await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    // the write will still happen, so wait for it rather than leaving the caller guessing
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return getResult();
+        }
+
+        T getResult() {
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw new RuntimeException(error);
+            }
+            return result;
+        }
+    }
+}
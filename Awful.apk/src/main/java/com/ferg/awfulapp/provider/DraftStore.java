@@ -0,0 +1,81 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ferg.awfulapp.thread.AwfulMessage;
+
+import java.util.Collections;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_DRAFTS;
+
+/**
+ * The saved reply drafts, for posts and private messages - see {@link AwfulDatabase}.
+ */
+public final class DraftStore {
+
+    private static final String SELECT_DRAFT = "SELECT * FROM " + TABLE_DRAFTS + " WHERE " + AwfulMessage.ID + "=?";
+
+    private final AwfulDatabase database;
+
+
+    DraftStore(@NonNull AwfulDatabase database) {
+        this.database = database;
+    }
+
+
+    /**
+     * Get a draft, if there's one saved.
+     */
+    @Nullable
+    public AwfulMessage getDraft(int draftId) {
+        try (Cursor cursor = database.helper.getReadableDatabase().rawQuery(SELECT_DRAFT, AwfulProvider.int2StrArray(draftId))) {
+            return cursor.moveToFirst() ? new AwfulMessage.DraftMapper().read(cursor) : null;
+        }
+    }
+
+
+    /**
+     * Update a draft, or create it if it doesn't exist yet, in a single write.
+     *
+     * @param update the values to set on an existing draft
+     * @param insert the values for a new draft
+     */
+    public void saveDraft(int draftId, @NonNull ContentValues update, @NonNull ContentValues insert) {
+        String[] args = AwfulProvider.int2StrArray(draftId);
+        database.writer.write(db -> {
+            if (db.update(TABLE_DRAFTS, update, AwfulMessage.ID + "=?", args) < 1) {
+                db.insert(TABLE_DRAFTS, "", insert);
+            }
+            return null;
+        }, Collections.singletonList(getDraftUri(draftId)));
+    }
+
+    /**
+     * Remove a draft.
+     *
+     * @return the number of drafts removed - 0 if there wasn't one
+     */
+    public int deleteDraft(int draftId) {
+        return database.delete(TABLE_DRAFTS, AwfulMessage.ID + "=?", AwfulProvider.int2StrArray(draftId),
+                Collections.singletonList(getDraftUri(draftId)));
+    }
+
+
+    /**
+     * Watch for changes to a draft.
+     */
+    @NonNull
+    public AwfulDatabase.Subscription observeDraft(int draftId, @NonNull AwfulDatabase.ChangeListener listener) {
+        return database.observe(getDraftUri(draftId), listener);
+    }
+
+    @NonNull
+    private static Uri getDraftUri(int draftId) {
+        return ContentUris.withAppendedId(AwfulMessage.CONTENT_URI_REPLY, draftId);
+    }
+}
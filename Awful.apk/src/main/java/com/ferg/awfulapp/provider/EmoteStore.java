@@ -0,0 +1,57 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import androidx.annotation.NonNull;
+
+import com.ferg.awfulapp.thread.AwfulEmote;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_EMOTES;
+
+/**
+ * The site's emotes - see {@link AwfulDatabase}.
+ */
+public final class EmoteStore {
+
+    private static final String SELECT_EMOTES = "SELECT * FROM " + TABLE_EMOTES + " ORDER BY " + AwfulEmote.INDEX;
+
+    private final AwfulDatabase database;
+
+
+    EmoteStore(@NonNull AwfulDatabase database) {
+        this.database = database;
+    }
+
+
+    /**
+     * Get all the emotes, in the order the site lists them.
+     */
+    @NonNull
+    public List<AwfulEmote> getEmotes() {
+        try (Cursor cursor = database.helper.getReadableDatabase().rawQuery(SELECT_EMOTES, null)) {
+            return new AwfulEmote.Mapper().readAll(cursor);
+        }
+    }
+
+
+    /**
+     * Store a set of emotes in a single write, replacing any with the same text.
+     *
+     * @return the number of emotes stored
+     */
+    public int storeEmotes(@NonNull ContentValues[] emotes) {
+        return database.insertAll(TABLE_EMOTES, emotes, Collections.singletonList(AwfulEmote.CONTENT_URI));
+    }
+
+
+    /**
+     * Watch for changes to the emotes.
+     */
+    @NonNull
+    public AwfulDatabase.Subscription observe(@NonNull AwfulDatabase.ChangeListener listener) {
+        return database.observe(AwfulEmote.CONTENT_URI, listener);
+    }
+}
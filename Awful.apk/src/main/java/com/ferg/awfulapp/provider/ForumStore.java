@@ -0,0 +1,99 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.text.TextUtils;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ferg.awfulapp.thread.AwfulForum;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_FORUM;
+
+/**
+ * The cached forum hierarchy - see {@link AwfulDatabase}.
+ */
+public final class ForumStore {
+
+    private static final String SELECT_FORUMS = "SELECT * FROM " + TABLE_FORUM;
+    private static final String ORDER_BY_INDEX = " ORDER BY " + AwfulForum.INDEX;
+
+    private final AwfulDatabase database;
+
+
+    ForumStore(@NonNull AwfulDatabase database) {
+        this.database = database;
+    }
+
+
+    /**
+     * Get stored forums, ordered by their {@link AwfulForum#INDEX}.
+     *
+     * @param forumIds the IDs of the forums you want, or null for all of them
+     */
+    @NonNull
+    public List<AwfulForum> getForums(@Nullable String[] forumIds) {
+        String query = SELECT_FORUMS + ORDER_BY_INDEX;
+        if (forumIds != null) {
+            if (forumIds.length == 0) {
+                return Collections.emptyList();
+            }
+            String placeholders = TextUtils.join(",", Collections.nCopies(forumIds.length, "?"));
+            query = SELECT_FORUMS + " WHERE " + AwfulForum.ID + " IN (" + placeholders + ")" + ORDER_BY_INDEX;
+        }
+        try (Cursor cursor = database.helper.getReadableDatabase().rawQuery(query, forumIds)) {
+            return new AwfulForum.Mapper().readAll(cursor);
+        }
+    }
+
+    /**
+     * Get the number of stored forums.
+     */
+    public long getForumCount() {
+        return DatabaseUtils.queryNumEntries(database.helper.getReadableDatabase(), TABLE_FORUM);
+    }
+
+
+    /**
+     * Replace all the stored forums, in a single write - nothing reading the forums will see
+     * the table empty in between.
+     *
+     * @return the number of forums stored
+     */
+    public int replaceForums(@NonNull ContentValues[] forums) {
+        return database.writer.write(db -> {
+            db.delete(TABLE_FORUM, null, null);
+            return database.insertAll(db, TABLE_FORUM, forums, null);
+        }, Collections.singletonList(AwfulForum.CONTENT_URI));
+    }
+
+    /**
+     * Update some of a forum's data.
+     *
+     * @return the number of forums updated - 0 if it isn't stored
+     */
+    public int updateForum(int forumId, @NonNull ContentValues values) {
+        return database.update(TABLE_FORUM, values, AwfulForum.ID + "=?", AwfulProvider.int2StrArray(forumId),
+                Collections.singletonList(AwfulForum.CONTENT_URI));
+    }
+
+    /**
+     * Remove all the stored forums.
+     */
+    public void clear() {
+        database.delete(TABLE_FORUM, null, null, Collections.singletonList(AwfulForum.CONTENT_URI));
+    }
+
+
+    /**
+     * Watch for changes to the forums.
+     */
+    @NonNull
+    public AwfulDatabase.Subscription observe(@NonNull AwfulDatabase.ChangeListener listener) {
+        return database.observe(AwfulForum.CONTENT_URI, listener);
+    }
+}
@@ -0,0 +1,68 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import androidx.annotation.NonNull;
+
+import com.ferg.awfulapp.thread.AwfulMessage;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_PM;
+
+/**
+ * The cached private messages - see {@link AwfulDatabase}. Reply drafts are in the {@link DraftStore}.
+ */
+public final class MessageStore {
+
+    private static final String SELECT_FOLDER = "SELECT * FROM " + TABLE_PM + " WHERE " + AwfulMessage.FOLDER +
+            "=? ORDER BY " + AwfulMessage.ID + " DESC";
+
+    private final AwfulDatabase database;
+
+
+    MessageStore(@NonNull AwfulDatabase database) {
+        this.database = database;
+    }
+
+
+    /**
+     * Get the messages in a folder, newest first.
+     */
+    @NonNull
+    public List<AwfulMessage> getMessages(int folder) {
+        try (Cursor cursor = database.helper.getReadableDatabase().rawQuery(SELECT_FOLDER, AwfulProvider.int2StrArray(folder))) {
+            return new AwfulMessage.Mapper().readAll(cursor);
+        }
+    }
+
+
+    /**
+     * Store a set of messages in a single write, replacing any that are already stored.
+     *
+     * @return the number of messages stored
+     */
+    public int storeMessages(@NonNull ContentValues[] messages) {
+        return database.insertAll(TABLE_PM, messages, Collections.singletonList(AwfulMessage.CONTENT_URI));
+    }
+
+    /**
+     * Remove a message.
+     *
+     * @return the number of messages removed - 0 if it wasn't stored
+     */
+    public int deleteMessage(int messageId) {
+        return database.delete(TABLE_PM, AwfulMessage.ID + "=?", AwfulProvider.int2StrArray(messageId),
+                Collections.singletonList(AwfulMessage.CONTENT_URI));
+    }
+
+
+    /**
+     * Watch for changes to the messages.
+     */
+    @NonNull
+    public AwfulDatabase.Subscription observe(@NonNull AwfulDatabase.ChangeListener listener) {
+        return database.observe(AwfulMessage.CONTENT_URI, listener);
+    }
+}
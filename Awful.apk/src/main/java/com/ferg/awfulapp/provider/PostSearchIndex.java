@@ -0,0 +1,289 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.text.TextUtils;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ferg.awfulapp.thread.AwfulForum;
+import com.ferg.awfulapp.thread.AwfulPost;
+import com.ferg.awfulapp.thread.AwfulThread;
+
+import java.io.Closeable;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_FORUM;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POSTS;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POST_SEARCH;
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_THREADS;
+
+/**
+ * A full-text index of the posts in the cache, so they can be searched without going to the site.
+ * <p>
+ * Posts are added to the index as they're stored, using the plain text that {@link
+ * com.ferg.awfulapp.thread.PostParseTask} extracts into {@link AwfulPost#SEARCH_TEXT}. A trigger on
+ * the posts table removes them again when they're deleted (e.g. when the cache is trimmed).
+ * <p>
+ * Searches are made by querying {@link AwfulPost#CONTENT_URI_SEARCH} with the search terms and
+ * filters as query parameters (see the PARAM constants), which returns the matching posts, newest
+ * first, with the columns listed in {@link #COLUMNS}.
+ */
+public final class PostSearchIndex {
+
+    /** the text to search for - words are matched separately, "quoted phrases" together */
+    public static final String PARAM_TEXT = "text";
+    /** only posts by this user, matched case-insensitively */
+    public static final String PARAM_USERNAME = "username";
+    public static final String PARAM_USER_ID = "userid";
+    /** only posts quoting this user */
+    public static final String PARAM_QUOTING = "quoting";
+    public static final String PARAM_THREAD_ID = "threadid";
+    /** only posts in threads with this in their title */
+    public static final String PARAM_TITLE = "intitle";
+    /** only posts made at or after this time, in epoch millis */
+    public static final String PARAM_AFTER = "after";
+    /** only posts made before this time, in epoch millis */
+    public static final String PARAM_BEFORE = "before";
+
+    /** the title of the thread the post is in, if it's been cached */
+    public static final String THREAD_TITLE = "thread_title";
+    public static final String FORUM_ID = "forum_id";
+    public static final String FORUM_TITLE = "forum_title";
+    /**
+     * a plain text extract of the post's text, with the matched terms between {@link #MATCH_START}
+     * and {@link #MATCH_END} - the post's text can contain anything, so it needs escaping before
+     * it's shown as HTML
+     */
+    public static final String SNIPPET = "snippet";
+    /** marks the start of a matched term in a snippet - a control character, so it never turns up in a post's text */
+    public static final char MATCH_START = '\u0002';
+    /** marks the end of a matched term in a snippet */
+    public static final char MATCH_END = '\u0003';
+
+    /** the columns in a search result */
+    public static final String[] COLUMNS = {
+            AwfulPost.ID, AwfulPost.THREAD_ID, AwfulPost.POST_INDEX, AwfulPost.USERNAME, AwfulPost.DATE,
+            THREAD_TITLE, FORUM_ID, FORUM_TITLE, SNIPPET
+    };
+
+    // the index's columns - the post ID is its docid
+    static final String BODY = "body";
+    static final String USERNAME = "username";
+    static final String POST_TIME = "post_time";
+
+    /** the most results a search returns */
+    private static final int MAX_RESULTS = 200;
+    private static final int SNIPPET_TOKENS = 24;
+    /** how a post's date appears on the site, once {@link com.ferg.awfulapp.thread.PostParseTask} has cleaned it up */
+    private static final String POST_DATE_FORMAT = "MMM d, yyyy HH:mm";
+
+    private PostSearchIndex() {
+    }
+
+
+    /**
+     * Run a search, using the parameters in a {@link AwfulPost#CONTENT_URI_SEARCH} Uri.
+     */
+    @NonNull
+    static Cursor query(@NonNull SQLiteDatabase db, @NonNull Uri uri) {
+        String matchExpression = toMatchExpression(uri.getQueryParameter(PARAM_TEXT), uri.getQueryParameter(PARAM_QUOTING));
+        List<String> where = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+
+        if (matchExpression != null) {
+            where.add(TABLE_POST_SEARCH + " MATCH ?");
+            args.add(matchExpression);
+        }
+        addFilter(where, args, TABLE_POST_SEARCH + "." + USERNAME + "=? COLLATE NOCASE", uri.getQueryParameter(PARAM_USERNAME));
+        addFilter(where, args, TABLE_POSTS + "." + AwfulPost.USER_ID + "=?", uri.getQueryParameter(PARAM_USER_ID));
+        addFilter(where, args, TABLE_POSTS + "." + AwfulPost.THREAD_ID + "=?", uri.getQueryParameter(PARAM_THREAD_ID));
+        addFilter(where, args, TABLE_THREADS + "." + AwfulThread.TITLE + " LIKE '%' || ? || '%'", uri.getQueryParameter(PARAM_TITLE));
+        addFilter(where, args, TABLE_POST_SEARCH + "." + POST_TIME + ">=CAST(? AS INTEGER)", uri.getQueryParameter(PARAM_AFTER));
+        addFilter(where, args, TABLE_POST_SEARCH + "." + POST_TIME + "<CAST(? AS INTEGER)", uri.getQueryParameter(PARAM_BEFORE));
+
+        // snippets only work with a full-text match, otherwise just show the start of the post
+        String snippet = matchExpression != null
+                ? "snippet(" + TABLE_POST_SEARCH + ", '" + MATCH_START + "', '" + MATCH_END + "', '\u2026', 0, " + SNIPPET_TOKENS + ")"
+                : "substr(" + TABLE_POST_SEARCH + "." + BODY + ", 1, 200)";
+        String sql = "SELECT " +
+                TABLE_POSTS + "." + AwfulPost.ID + " AS " + AwfulPost.ID + ", " +
+                TABLE_POSTS + "." + AwfulPost.THREAD_ID + " AS " + AwfulPost.THREAD_ID + ", " +
+                TABLE_POSTS + "." + AwfulPost.POST_INDEX + " AS " + AwfulPost.POST_INDEX + ", " +
+                TABLE_POSTS + "." + AwfulPost.USERNAME + " AS " + AwfulPost.USERNAME + ", " +
+                TABLE_POSTS + "." + AwfulPost.DATE + " AS " + AwfulPost.DATE + ", " +
+                TABLE_THREADS + "." + AwfulThread.TITLE + " AS " + THREAD_TITLE + ", " +
+                TABLE_THREADS + "." + AwfulThread.FORUM_ID + " AS " + FORUM_ID + ", " +
+                TABLE_FORUM + "." + AwfulForum.TITLE + " AS " + FORUM_TITLE + ", " +
+                snippet + " AS " + SNIPPET +
+                " FROM " + TABLE_POST_SEARCH +
+                " JOIN " + TABLE_POSTS + " ON " + TABLE_POSTS + "." + AwfulPost.ID + "=" + TABLE_POST_SEARCH + ".docid" +
+                " LEFT OUTER JOIN " + TABLE_THREADS + " ON " + TABLE_THREADS + "." + AwfulThread.ID + "=" + TABLE_POSTS + "." + AwfulPost.THREAD_ID +
+                " LEFT OUTER JOIN " + TABLE_FORUM + " ON " + TABLE_FORUM + "." + AwfulForum.ID + "=" + TABLE_THREADS + "." + AwfulThread.FORUM_ID +
+                (where.isEmpty() ? "" : " WHERE " + TextUtils.join(" AND ", where)) +
+                " ORDER BY " + TABLE_POST_SEARCH + "." + POST_TIME + " DESC" +
+                " LIMIT " + MAX_RESULTS;
+        return db.rawQuery(sql, args.toArray(new String[0]));
+    }
+
+    private static void addFilter(List<String> where, List<String> args, String clause, @Nullable String value) {
+        if (value != null && !value.trim().isEmpty()) {
+            where.add(clause);
+            args.add(value.trim());
+        }
+    }
+
+
+    /**
+     * Turn some search text into a full-text match expression. Each word has to appear somewhere
+     * in the post, and "quoted phrases" have to appear as written - anything else that means
+     * something in the match syntax is treated as plain text.
+     *
+     * @param text    the search text
+     * @param quoting the name of a user the posts should be quoting, if any
+     * @return the expression, or null if there's nothing to match
+     */
+    @Nullable
+    static String toMatchExpression(@Nullable String text, @Nullable String quoting) {
+        List<String> phrases = new ArrayList<>();
+        if (text != null) {
+            String[] parts = text.split("\"", -1);
+            for (int i = 0; i < parts.length; i++) {
+                // every other part is inside quotes (an unclosed quote just runs to the end)
+                if (i % 2 == 1) {
+                    addPhrase(phrases, parts[i]);
+                } else {
+                    for (String word : parts[i].split("\\s+")) {
+                        addPhrase(phrases, word);
+                    }
+                }
+            }
+        }
+        if (quoting != null) {
+            // quotes start with a "Whoever posted:" header
+            addPhrase(phrases, quoting + " posted");
+        }
+        if (phrases.isEmpty()) {
+            return null;
+        }
+        StringBuilder expression = new StringBuilder(phrases.get(0));
+        for (int i = 1; i < phrases.size(); i++) {
+            expression.append(' ').append(phrases.get(i));
+        }
+        return expression.toString();
+    }
+
+    private static void addPhrase(List<String> phrases, String text) {
+        // the tokenizer ignores punctuation anyway, so there's no point keeping any
+        String words = text.replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+        if (!words.isEmpty()) {
+            phrases.add("\"" + words + "\"");
+        }
+    }
+
+
+    /**
+     * Parse a post's date, as stored in {@link AwfulPost#DATE}.
+     *
+     * @return the time in epoch millis, or null if it couldn't be parsed
+     */
+    @Nullable
+    static Long parsePostDate(@Nullable String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return new SimpleDateFormat(POST_DATE_FORMAT, Locale.US).parse(date.trim()).getTime();
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Adds posts to the index, replacing any existing entries. Like {@link BulkWriter} this doesn't
+     * handle transactions, and it should be closed after use.
+     */
+    static class Writer implements Closeable {
+
+        private final SQLiteStatement delete;
+        private final SQLiteStatement deleteDisplaced;
+        private final SQLiteStatement insert;
+        private int indexed = 0;
+
+        Writer(@NonNull SQLiteDatabase db) {
+            delete = db.compileStatement("DELETE FROM " + TABLE_POST_SEARCH + " WHERE docid=?");
+            deleteDisplaced = db.compileStatement("DELETE FROM " + TABLE_POST_SEARCH + " WHERE docid IN" +
+                    " (SELECT " + AwfulPost.ID + " FROM " + TABLE_POSTS + " WHERE " + AwfulPost.THREAD_ID + "=?" +
+                    " AND " + AwfulPost.POST_INDEX + "=? AND " + AwfulPost.ID + "<>?)");
+            insert = db.compileStatement("INSERT INTO " + TABLE_POST_SEARCH +
+                    " (docid, " + BODY + ", " + USERNAME + ", " + POST_TIME + ") VALUES (?, ?, ?, ?)");
+        }
+
+        /**
+         * Index a post, if it has any {@link AwfulPost#SEARCH_TEXT} - posts without it are
+         * unchanged versions of ones that are already indexed.
+         */
+        void index(@NonNull ContentValues post) {
+            String text = post.getAsString(AwfulPost.SEARCH_TEXT);
+            Long postId = post.getAsLong(AwfulPost.ID);
+            if (text == null || postId == null) {
+                return;
+            }
+            delete.bindLong(1, postId);
+            delete.executeUpdateDelete();
+
+            insert.clearBindings();
+            insert.bindLong(1, postId);
+            insert.bindString(2, text);
+            String username = post.getAsString(AwfulPost.USERNAME);
+            if (username != null) {
+                insert.bindString(3, username);
+            }
+            // if the date can't be parsed, the post will just be missed by date filters
+            Long postTime = parsePostDate(post.getAsString(AwfulPost.DATE));
+            if (postTime != null) {
+                insert.bindLong(4, postTime);
+            }
+            insert.executeInsert();
+            indexed++;
+        }
+
+        /**
+         * Remove the search entry for whatever other post is stored at this post's thread position.
+         * <p>
+         * This has to happen before the post is written: the INSERT OR REPLACE deletes the post it
+         * displaces without firing the delete trigger, which would leave its entry orphaned.
+         */
+        void removeDisplaced(@NonNull ContentValues post) {
+            Long postId = post.getAsLong(AwfulPost.ID);
+            Long threadId = post.getAsLong(AwfulPost.THREAD_ID);
+            Long position = post.getAsLong(AwfulPost.POST_INDEX);
+            if (postId == null || threadId == null || position == null) {
+                return;
+            }
+            deleteDisplaced.bindLong(1, threadId);
+            deleteDisplaced.bindLong(2, position);
+            deleteDisplaced.bindLong(3, postId);
+            deleteDisplaced.executeUpdateDelete();
+        }
+
+        int getIndexed() {
+            return indexed;
+        }
+
+        @Override
+        public void close() {
+            delete.close();
+            deleteDisplaced.close();
+            insert.close();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.text.TextUtils;
+import androidx.annotation.NonNull;
+
+import com.ferg.awfulapp.thread.AwfulPost;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_POSTS;
+
+/**
+ * The cached posts - see {@link AwfulDatabase}.
+ */
+public final class PostStore {
+
+    /** the same page query the posts loader runs through the provider, see {@link AwfulPost#PAGE_SELECTION} */
+    private static final String SELECT_RANGE = "SELECT * FROM " + TABLE_POSTS + " WHERE " + AwfulPost.THREAD_ID + "=? AND " +
+            AwfulPost.PAGE_SELECTION + " ORDER BY " + AwfulPost.PAGE_SORT_ORDER;
+    private static final String SELECT_FINGERPRINTS = "SELECT " + AwfulPost.ID + "," + AwfulPost.FINGERPRINT + " FROM " + TABLE_POSTS +
+            " WHERE " + AwfulPost.THREAD_ID + "=? AND " + AwfulPost.FINGERPRINT + " IS NOT NULL";
+
+    private final AwfulDatabase database;
+
+
+    PostStore(@NonNull AwfulDatabase database) {
+        this.database = database;
+    }
+
+
+    /**
+     * Get a run of posts from a thread, in order.
+     *
+     * @param firstIndex the thread position of the first post, starting from 1
+     * @param count      the most posts to return
+     */
+    @NonNull
+    public List<AwfulPost> getPosts(int threadId, int firstIndex, int count) {
+        try (Cursor cursor = database.helper.getReadableDatabase().rawQuery(SELECT_RANGE,
+                AwfulProvider.int2StrArray(threadId, firstIndex, firstIndex + count))) {
+            return new AwfulPost.Mapper().readAll(cursor);
+        }
+    }
+
+
+    /**
+     * Get the stored fingerprints for all the posts we have for a thread, see {@link com.ferg.awfulapp.thread.PostFingerprint}.
+     *
+     * @return a map of post IDs to their fingerprints - posts without one aren't included
+     */
+    @NonNull
+    public Map<Integer, Long> getFingerprints(int threadId) {
+        Map<Integer, Long> fingerprints = new HashMap<>();
+        try (Cursor cursor = database.helper.getReadableDatabase().rawQuery(SELECT_FINGERPRINTS, AwfulProvider.int2StrArray(threadId))) {
+            while (cursor.moveToNext()) {
+                fingerprints.put(cursor.getInt(0), cursor.getLong(1));
+            }
+        }
+        return fingerprints;
+    }
+
+
+    /**
+     * Store a set of posts in a single write, replacing whatever was at their positions. They're
+     * added to the search index in the same transaction.
+     *
+     * @return the number of posts stored
+     */
+    public int storePosts(@NonNull ContentValues[] posts) {
+        return database.insertAll(TABLE_POSTS, posts,
+                AwfulDatabase.getParentUris(posts, AwfulPost.THREAD_ID, AwfulPost.CONTENT_URI_THREAD, AwfulPost.CONTENT_URI));
+    }
+
+
+    /**
+     * Mark some of a thread's posts as up to date without rewriting them, so they don't get trimmed
+     * from the cache - for posts that haven't changed since they were stored.
+     *
+     * @param updateTime the new {@link DatabaseHelper#UPDATED_TIMESTAMP}
+     * @param postIds    the posts to touch
+     * @return the number of posts updated
+     */
+    public int touchPosts(int threadId, @NonNull String updateTime, @NonNull List<String> postIds) {
+        if (postIds.isEmpty()) {
+            return 0;
+        }
+        ContentValues touch = new ContentValues();
+        touch.put(DatabaseHelper.UPDATED_TIMESTAMP, updateTime);
+        String[] whereArgs = new String[postIds.size() + 1];
+        whereArgs[0] = Integer.toString(threadId);
+        for (int i = 0; i < postIds.size(); i++) {
+            whereArgs[i + 1] = postIds.get(i);
+        }
+        String placeholders = TextUtils.join(",", Collections.nCopies(postIds.size(), "?"));
+        return database.update(TABLE_POSTS, touch, AwfulPost.THREAD_ID + "=? AND " + AwfulPost.ID + " IN (" + placeholders + ")",
+                whereArgs, Collections.singletonList(AwfulPost.getThreadUri(threadId)));
+    }
+
+
+    /**
+     * Watch for changes to a thread's posts.
+     */
+    @NonNull
+    public AwfulDatabase.Subscription observeThread(int threadId, @NonNull AwfulDatabase.ChangeListener listener) {
+        return database.observe(AwfulPost.getThreadUri(threadId), listener);
+    }
+}
@@ -0,0 +1,103 @@
+package com.ferg.awfulapp.provider;
+
+import android.database.Cursor;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads cursor rows into objects, looking up each column's index once per cursor instead of by
+ * name on every row. Binding list items does that for every item scrolled onto the screen, so it
+ * adds up.
+ * <p>
+ * Subclasses register the columns they read with {@link #column(String)} when they're created,
+ * and use the slots it returns to find each column's index in {@link #map(Cursor, int[], Object)}:
+ * <pre>
+ * private final int title = column(TITLE);
+ *
+ * protected void map(Cursor row, int[] columns, AwfulThread thread) {
+ *     thread.title = row.getString(columns[title]);
+ * }</pre>
+ * A mapper remembers the last cursor it read from, so give each list or loader its own one, and
+ * don't share them between threads.
+ */
+public abstract class RowMapper<T> {
+
+    private final List<String> columnNames = new ArrayList<>();
+    @Nullable
+    private Cursor lastCursor = null;
+    private int[] columnIndexes = new int[0];
+
+
+    /**
+     * Register a column this mapper reads.
+     *
+     * @return the column's slot in the index array passed to {@link #map(Cursor, int[], Object)}
+     */
+    protected final int column(@NonNull String name) {
+        columnNames.add(name);
+        return columnNames.size() - 1;
+    }
+
+    /**
+     * Create an empty object to read a row into.
+     */
+    @NonNull
+    protected abstract T newHolder();
+
+    /**
+     * Read the current row into an object, overwriting all the fields this mapper handles.
+     *
+     * @param columns the index of each registered column in this cursor, by slot
+     */
+    protected abstract void map(@NonNull Cursor row, @NonNull int[] columns, @NonNull T into);
+
+
+    /**
+     * Read the cursor's current row into a new object.
+     */
+    @NonNull
+    public final T read(@NonNull Cursor row) {
+        return read(row, newHolder());
+    }
+
+    /**
+     * Read the cursor's current row into an existing object, e.g. one that's reused for every row
+     * while binding a list.
+     */
+    @NonNull
+    public final T read(@NonNull Cursor row, @NonNull T holder) {
+        map(row, getColumnIndexes(row), holder);
+        return holder;
+    }
+
+    /**
+     * Read every row in a cursor into new objects.
+     */
+    @NonNull
+    public final List<T> readAll(@NonNull Cursor cursor) {
+        List<T> results = new ArrayList<>(cursor.getCount());
+        if (cursor.moveToFirst()) {
+            do {
+                results.add(read(cursor));
+            } while (cursor.moveToNext());
+        }
+        return results;
+    }
+
+
+    @NonNull
+    private int[] getColumnIndexes(@NonNull Cursor cursor) {
+        if (cursor != lastCursor) {
+            int[] indexes = new int[columnNames.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = cursor.getColumnIndex(columnNames.get(i));
+            }
+            columnIndexes = indexes;
+            lastCursor = cursor;
+        }
+        return columnIndexes;
+    }
+}
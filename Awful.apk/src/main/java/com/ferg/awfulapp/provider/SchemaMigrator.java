@@ -0,0 +1,219 @@
+package com.ferg.awfulapp.provider;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Brings existing tables in line with their current definitions without throwing their rows away,
+ * so a new app version doesn't start with an empty cache and refetch everything at once.
+ * <p>
+ * A table that only needs new columns gets them with ALTER TABLE - they're null until the row is
+ * next synced, which fills them in. Anything else (columns removed or retyped, a change in which
+ * columns are unique) is a copy-transform: the new table is created alongside the old one, the
+ * columns they share are copied over, and it replaces the old one.
+ * <p>
+ * Copying a table drops its indexes and triggers, so recreate those afterwards.
+ */
+final class SchemaMigrator {
+
+    enum Plan {
+        /** the table already matches */
+        NONE,
+        /** the table doesn't exist yet */
+        CREATE,
+        /** the table just needs some new columns added */
+        ADD_COLUMNS,
+        /** the table has to be copied into a new one */
+        REBUILD
+    }
+
+    private static final String STAGING_SUFFIX = "_migrating";
+
+    private SchemaMigrator() {
+    }
+
+
+    /**
+     * Migrate a table to match a definition, keeping as much of its data as possible.
+     *
+     * @param columnDefinitions the parenthesised column list, as used in CREATE TABLE
+     * @return what had to be done
+     */
+    @NonNull
+    static Plan migrateTable(@NonNull SQLiteDatabase db, @NonNull String table, @NonNull String columnDefinitions) {
+        List<Column> existing = getSchema(db, table);
+        if (existing.isEmpty()) {
+            db.execSQL("CREATE TABLE " + table + " " + columnDefinitions + ";");
+            return Plan.CREATE;
+        }
+        // the easiest way to see what the definition means is to let SQLite build it
+        String staging = table + STAGING_SUFFIX;
+        db.execSQL("DROP TABLE IF EXISTS " + staging + ";");
+        db.execSQL("CREATE TABLE " + staging + " " + columnDefinitions + ";");
+        List<Column> target = getSchema(db, staging);
+
+        Plan plan = plan(existing, target);
+        if (plan != Plan.REBUILD) {
+            db.execSQL("DROP TABLE " + staging + ";");
+        }
+        if (plan == Plan.ADD_COLUMNS) {
+            for (Column column : missingColumns(existing, target)) {
+                db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column.name + " " + column.type + ";");
+            }
+        } else if (plan == Plan.REBUILD) {
+            String shared = TextUtils.join(",", sharedColumns(existing, target));
+            db.execSQL("INSERT OR REPLACE INTO " + staging + " (" + shared + ") SELECT " + shared + " FROM " + table + ";");
+            db.execSQL("DROP TABLE " + table + ";");
+            db.execSQL("ALTER TABLE " + staging + " RENAME TO " + table + ";");
+        }
+        return plan;
+    }
+
+
+    /**
+     * Work out how to get from one version of a table to another. Column order doesn't matter here,
+     * since everything goes by column name.
+     */
+    @NonNull
+    static Plan plan(@NonNull List<Column> existing, @NonNull List<Column> target) {
+        if (existing.isEmpty()) {
+            return Plan.CREATE;
+        }
+        if (!target.containsAll(existing)) {
+            // a column was removed or changed
+            return Plan.REBUILD;
+        }
+        List<Column> missing = missingColumns(existing, target);
+        if (missing.isEmpty()) {
+            return Plan.NONE;
+        }
+        // ALTER TABLE can't add constrained columns
+        for (Column column : missing) {
+            if (column.primaryKey || column.unique) {
+                return Plan.REBUILD;
+            }
+        }
+        return Plan.ADD_COLUMNS;
+    }
+
+    @NonNull
+    private static List<Column> missingColumns(@NonNull List<Column> existing, @NonNull List<Column> target) {
+        List<Column> missing = new ArrayList<>(target);
+        missing.removeAll(existing);
+        return missing;
+    }
+
+    /**
+     * The names of the columns that are in both versions of a table.
+     */
+    @NonNull
+    static List<String> sharedColumns(@NonNull List<Column> existing, @NonNull List<Column> target) {
+        Set<String> existingNames = new HashSet<>();
+        for (Column column : existing) {
+            existingNames.add(column.name.toLowerCase(Locale.US));
+        }
+        List<String> shared = new ArrayList<>();
+        for (Column column : target) {
+            if (existingNames.contains(column.name.toLowerCase(Locale.US))) {
+                shared.add(column.name);
+            }
+        }
+        return shared;
+    }
+
+
+    /**
+     * Get a table's columns, in order, or an empty list if it doesn't exist.
+     */
+    @NonNull
+    static List<Column> getSchema(@NonNull SQLiteDatabase db, @NonNull String table) {
+        Set<String> unique = getUniqueColumns(db, table);
+        List<Column> columns = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null)) {
+            int name = cursor.getColumnIndexOrThrow("name");
+            int type = cursor.getColumnIndexOrThrow("type");
+            int primaryKey = cursor.getColumnIndexOrThrow("pk");
+            while (cursor.moveToNext()) {
+                String columnName = cursor.getString(name);
+                columns.add(new Column(columnName, cursor.getString(type), cursor.getInt(primaryKey) > 0, unique.contains(columnName)));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Get the columns that have their own UNIQUE constraint - these are backed by automatic
+     * indexes, unlike the ones added with CREATE INDEX.
+     */
+    @NonNull
+    private static Set<String> getUniqueColumns(@NonNull SQLiteDatabase db, @NonNull String table) {
+        List<String> autoIndexes = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("PRAGMA index_list(" + table + ")", null)) {
+            int name = cursor.getColumnIndexOrThrow("name");
+            int unique = cursor.getColumnIndexOrThrow("unique");
+            while (cursor.moveToNext()) {
+                String indexName = cursor.getString(name);
+                if (cursor.getInt(unique) > 0 && indexName.startsWith("sqlite_autoindex_")) {
+                    autoIndexes.add(indexName);
+                }
+            }
+        }
+        Set<String> columns = new HashSet<>();
+        for (String index : autoIndexes) {
+            try (Cursor cursor = db.rawQuery("PRAGMA index_info(" + index + ")", null)) {
+                // multi-column constraints aren't used in this schema
+                if (cursor.getCount() == 1 && cursor.moveToFirst()) {
+                    columns.add(cursor.getString(cursor.getColumnIndexOrThrow("name")));
+                }
+            }
+        }
+        return columns;
+    }
+
+
+    /**
+     * The parts of a column's definition that decide how it can be migrated.
+     */
+    static final class Column {
+        @NonNull
+        final String name;
+        @NonNull
+        final String type;
+        final boolean primaryKey;
+        final boolean unique;
+
+        Column(@NonNull String name, @NonNull String type, boolean primaryKey, boolean unique) {
+            this.name = name;
+            this.type = type;
+            this.primaryKey = primaryKey;
+            this.unique = unique;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Column)) return false;
+            Column column = (Column) o;
+            return primaryKey == column.primaryKey && unique == column.unique
+                    && name.equalsIgnoreCase(column.name) && type.equalsIgnoreCase(column.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.toLowerCase(Locale.US).hashCode() * 31 + type.toUpperCase(Locale.US).hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + type + (primaryKey ? " PRIMARY KEY" : "") + (unique ? " UNIQUE" : "");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.ferg.awfulapp.provider;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ferg.awfulapp.thread.AwfulThread;
+
+import java.util.List;
+
+import static com.ferg.awfulapp.provider.DatabaseHelper.TABLE_THREADS;
+
+/**
+ * The cached threads - see {@link AwfulDatabase}.
+ */
+public final class ThreadStore {
+
+    private static final String SELECT_THREAD = "SELECT * FROM " + TABLE_THREADS + " WHERE " + AwfulThread.ID + "=?";
+    private static final String SELECT_FORUM_THREADS = "SELECT * FROM " + TABLE_THREADS + " WHERE " + AwfulThread.FORUM_ID +
+            "=? ORDER BY " + AwfulThread.INDEX;
+
+    private final AwfulDatabase database;
+
+
+    ThreadStore(@NonNull AwfulDatabase database) {
+        this.database = database;
+    }
+
+
+    /**
+     * Get a thread, if it's in the database.
+     */
+    @Nullable
+    public AwfulThread getThread(int threadId) {
+        try (Cursor cursor = database.helper.getReadableDatabase().rawQuery(SELECT_THREAD, AwfulProvider.int2StrArray(threadId))) {
+            return cursor.moveToFirst() ? new AwfulThread.Mapper().read(cursor) : null;
+        }
+    }
+
+    /**
+     * Get the stored threads listed in a forum, in the order they're listed.
+     */
+    @NonNull
+    public List<AwfulThread> getForumThreads(int forumId) {
+        try (Cursor cursor = database.helper.getReadableDatabase().rawQuery(SELECT_FORUM_THREADS, AwfulProvider.int2StrArray(forumId))) {
+            return new AwfulThread.Mapper().readAll(cursor);
+        }
+    }
+
+
+    /**
+     * Store a set of threads in a single write, replacing any that are already stored.
+     *
+     * @return the number of threads stored
+     */
+    public int storeThreads(@NonNull ContentValues[] threads) {
+        return database.insertAll(TABLE_THREADS, threads, AwfulDatabase.getStoredThreadUris(threads));
+    }
+
+    /**
+     * Update some of a thread's data.
+     *
+     * @return the number of threads updated - 0 if it isn't stored
+     */
+    public int updateThread(int threadId, @NonNull ContentValues values) {
+        return database.update(TABLE_THREADS, values, AwfulThread.ID + "=?", AwfulProvider.int2StrArray(threadId),
+                database.getThreadUris(threadId));
+    }
+
+
+    /**
+     * Watch for changes to a thread.
+     */
+    @NonNull
+    public AwfulDatabase.Subscription observeThread(int threadId, @NonNull AwfulDatabase.ChangeListener listener) {
+        return database.observe(ContentUris.withAppendedId(AwfulThread.CONTENT_URI, threadId), listener);
+    }
+
+    /**
+     * Watch for changes to the threads listed in a forum.
+     */
+    @NonNull
+    public AwfulDatabase.Subscription observeForum(int forumId, @NonNull AwfulDatabase.ChangeListener listener) {
+        return database.observe(AwfulThread.getForumUri(forumId), listener);
+    }
+}
@@ -0,0 +1,137 @@
+package com.ferg.awfulapp.search
+
+import android.database.Cursor
+import android.net.Uri
+import androidx.annotation.VisibleForTesting
+import com.ferg.awfulapp.constants.Constants
+import com.ferg.awfulapp.provider.PostSearchIndex
+import com.ferg.awfulapp.thread.AwfulPost
+import com.ferg.awfulapp.thread.AwfulSearch
+import org.apache.commons.lang3.StringEscapeUtils
+import java.text.ParseException
+import java.text.SimpleDateFormat
+import java.util.*
+
+/**
+ * A search of the posts cached on the device (see [PostSearchIndex]), built from the same query
+ * text as a search on the site - including the filters added with [SearchFilter].
+ *
+ * Filters the index can't handle are left in the search text, and dates that can't be read are
+ * ignored.
+ */
+class LocalSearch(query: String) {
+
+    /** the index's query parameters for this search, by name */
+    val params: Map<String, String>
+
+    init {
+        val found = mutableMapOf<String, String>()
+        val text = FILTER_REGEX.replace(query) { match ->
+            val keyword = match.groupValues[1].lowercase(Locale.US)
+            val value = match.groups[2]?.value ?: match.groupValues[3]
+            val param = FILTER_PARAMS[keyword]
+            when {
+                param == null -> match.value
+                keyword == "before" || keyword == "since" -> {
+                    parseDate(value)?.let { found[param] = it.toString() }
+                    " "
+                }
+                else -> {
+                    found[param] = value
+                    " "
+                }
+            }
+        }.trim().replace(WHITESPACE, " ")
+        if (text.isNotEmpty()) {
+            found[PostSearchIndex.PARAM_TEXT] = text
+        }
+        params = found
+    }
+
+    /** true if there's nothing to search for */
+    val isEmpty get() = params.isEmpty()
+
+    /** the Uri to query for this search's results */
+    val uri: Uri
+        get() = AwfulPost.CONTENT_URI_SEARCH.buildUpon()
+            .apply { params.forEach { (name, value) -> appendQueryParameter(name, value) } }
+            .build()
+
+
+    companion object {
+        private val FILTER_REGEX = Regex("""(\w+):(?:"([^"]*)"|(\S+))""")
+        private val WHITESPACE = Regex("""\s+""")
+
+        /** the site's search keywords (see [SearchFilter.FilterType]) and the index parameters they map to */
+        private val FILTER_PARAMS = mapOf(
+            "userid" to PostSearchIndex.PARAM_USER_ID,
+            "username" to PostSearchIndex.PARAM_USERNAME,
+            "quoting" to PostSearchIndex.PARAM_QUOTING,
+            "before" to PostSearchIndex.PARAM_BEFORE,
+            "since" to PostSearchIndex.PARAM_AFTER,
+            "threadid" to PostSearchIndex.PARAM_THREAD_ID,
+            "intitle" to PostSearchIndex.PARAM_TITLE
+        )
+
+        private val DATE_FORMATS = listOf("yyyy-MM-dd", "MMM d, yyyy", "MMM d yyyy", "d MMM yyyy", "M/d/yyyy")
+
+        /**
+         * Read a date filter's value, returning the start of that day in epoch millis, or null
+         * if it's not in a format we know.
+         */
+        internal fun parseDate(date: String): Long? = DATE_FORMATS.asSequence()
+            .mapNotNull { format ->
+                try {
+                    SimpleDateFormat(format, Locale.US).apply { isLenient = false }.parse(date.trim())
+                } catch (e: ParseException) {
+                    null
+                }
+            }
+            .firstOrNull()?.time
+
+        /**
+         * Turn a result's plain text snippet into HTML, with its matched terms in bold - like the
+         * site's search result blurbs.
+         */
+        @VisibleForTesting
+        @JvmStatic
+        fun snippetToHtml(snippet: String?): String? = snippet?.let {
+            StringEscapeUtils.escapeHtml4(it)
+                .replace(PostSearchIndex.MATCH_START.toString(), "<b>")
+                .replace(PostSearchIndex.MATCH_END.toString(), "</b>")
+        }
+
+        /**
+         * Read the results of a search into the same form as the site's search results.
+         */
+        fun readResults(cursor: Cursor): MutableList<AwfulSearch> {
+            val results = ArrayList<AwfulSearch>(cursor.count)
+            with(cursor) {
+                val idColumn = getColumnIndexOrThrow(AwfulPost.ID)
+                val threadIdColumn = getColumnIndexOrThrow(AwfulPost.THREAD_ID)
+                val usernameColumn = getColumnIndexOrThrow(AwfulPost.USERNAME)
+                val dateColumn = getColumnIndexOrThrow(AwfulPost.DATE)
+                val threadTitleColumn = getColumnIndexOrThrow(PostSearchIndex.THREAD_TITLE)
+                val forumIdColumn = getColumnIndexOrThrow(PostSearchIndex.FORUM_ID)
+                val forumTitleColumn = getColumnIndexOrThrow(PostSearchIndex.FORUM_TITLE)
+                val snippetColumn = getColumnIndexOrThrow(PostSearchIndex.SNIPPET)
+                moveToPosition(-1)
+                while (moveToNext()) {
+                    results.add(AwfulSearch().apply {
+                        resultNumber = (position + 1).toString()
+                        username = getString(usernameColumn)
+                        postDate = getString(dateColumn)
+                        // the thread might not be cached, e.g. if the post was only seen in a single-post view
+                        threadTitle = getString(threadTitleColumn) ?: "Thread ${getInt(threadIdColumn)}"
+                        threadLink = "/${Constants.PATH_THREAD}?${Constants.PARAM_GOTO}=${Constants.VALUE_POST}" +
+                                "&${Constants.PARAM_POST_ID}=${getLong(idColumn)}"
+                        forumId = getInt(forumIdColumn)
+                        forumTitle = getString(forumTitleColumn) ?: ""
+                        blurb = snippetToHtml(getString(snippetColumn))
+                    })
+                }
+            }
+            return results
+        }
+    }
+}
@@ -32,9 +32,13 @@
 package com.ferg.awfulapp.search
 
 import android.app.ProgressDialog
+import android.database.Cursor
 import android.os.Bundle
 import com.google.android.material.snackbar.Snackbar
 import androidx.fragment.app.DialogFragment
+import androidx.loader.app.LoaderManager
+import androidx.loader.content.CursorLoader
+import androidx.loader.content.Loader
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
 import android.text.Html
@@ -50,6 +54,7 @@ import com.ferg.awfulapp.constants.Constants
 import com.ferg.awfulapp.network.NetworkUtils
 import com.ferg.awfulapp.preferences.AwfulPreferences
 import com.ferg.awfulapp.provider.ColorProvider
+import com.ferg.awfulapp.provider.PostSearchIndex
 import com.ferg.awfulapp.task.AwfulRequest
 import com.ferg.awfulapp.task.SearchRequest
 import com.ferg.awfulapp.task.SearchResultPageRequest
@@ -82,6 +87,9 @@ class SearchFragment : AwfulFragment(), com.orangegangsters.github.swipyrefreshl
                 }
     }
     private var mSearchResults: MutableList<AwfulSearch> = mutableListOf()
+    /** true once the site's results have replaced any cached post results */
+    private var showingSiteResults = false
+    private val cachedPostsLoader = CachedPostsCallback()
 
     private val mSRL: SwipyRefreshLayout by lazy {
         (view!!.findViewById(R.id.search_srl) as SwipyRefreshLayout)
@@ -134,6 +142,8 @@ class SearchFragment : AwfulFragment(), com.orangegangsters.github.swipyrefreshl
 
 
     private fun search() {
+        // show any matching posts we have cached straight away, while the site search runs
+        searchCachedPosts()
         mDialog = ProgressDialog.show(activity, getString(R.string.search_forums_active_dialog_title), getString(R.string.search_forums_active_dialog_message), true, false)
         val searchForumsPrimitive = ArrayUtils.toPrimitive(searchForums.toTypedArray())
         NetworkUtils.queueRequest(SearchRequest(this.context!!, mSearchQuery.text.toString().toLowerCase(), searchForumsPrimitive)
@@ -142,6 +152,7 @@ class SearchFragment : AwfulFragment(), com.orangegangsters.github.swipyrefreshl
                         removeLoadingDialog()
                         with(result) {
                             if (resultsFound) {
+                                showingSiteResults = true
                                 mSearchResults = resultList
                                 mQueryPages = pages
                                 mQueryId = queryId
@@ -156,19 +167,30 @@ class SearchFragment : AwfulFragment(), com.orangegangsters.github.swipyrefreshl
 
                     override fun failure(error: VolleyError?) {
                         removeLoadingDialog()
-                        Snackbar.make(view!!, R.string.search_forums_failure_message, Snackbar.LENGTH_LONG).setAction("Retry") { search() }.show()
-                    }
-
-                    private fun removeLoadingDialog() {
-                        // since this is called from network callbacks, need to check the dialog is attached to the window - hopefully this works!
-                        mDialog?.run {
-                            if (ownerActivity?.isDestroyed != false) dismiss()
-                            mDialog = null
-                        }
+                        val message = if (mSearchResults.isEmpty()) R.string.search_forums_failure_message else R.string.search_forums_failure_showing_cached
+                        Snackbar.make(view!!, message, Snackbar.LENGTH_LONG).setAction("Retry") { search() }.show()
                     }
                 }))
     }
 
+    /**
+     * Search the posts cached on the device, which is instant and works offline - but only finds
+     * posts the user has already loaded.
+     */
+    private fun searchCachedPosts() {
+        showingSiteResults = false
+        if (LocalSearch(mSearchQuery.text.toString()).isEmpty) return
+        LoaderManager.getInstance(this).restartLoader(Constants.LOCAL_SEARCH_LOADER_ID, null, cachedPostsLoader)
+    }
+
+    private fun removeLoadingDialog() {
+        // since this is called from network callbacks, need to check the dialog is attached to the window - hopefully this works!
+        mDialog?.run {
+            if (ownerActivity?.isDestroyed != false) dismiss()
+            mDialog = null
+        }
+    }
+
     override fun onCreateOptionsMenu(menu: Menu, inflater: MenuInflater) {
         inflater!!.inflate(R.menu.search, menu)
         val filterMenu = menu?.findItem(R.id.search_terms)!!.subMenu
@@ -186,6 +208,7 @@ class SearchFragment : AwfulFragment(), com.orangegangsters.github.swipyrefreshl
 
         when (item.itemId) {
             R.id.search_submit -> search()
+            R.id.search_cached -> searchCachedPosts()
             R.id.select_forums ->
                 SearchForumsFragment(this)
                         .apply { setStyle(DialogFragment.STYLE_NO_TITLE, 0) }
@@ -238,6 +261,28 @@ class SearchFragment : AwfulFragment(), com.orangegangsters.github.swipyrefreshl
         }))
     }
 
+    private inner class CachedPostsCallback : LoaderManager.LoaderCallbacks<Cursor> {
+
+        override fun onCreateLoader(id: Int, args: Bundle?): Loader<Cursor> =
+            CursorLoader(activity!!, LocalSearch(mSearchQuery.text.toString()).uri, PostSearchIndex.COLUMNS, null, null, null)
+
+        override fun onLoadFinished(loader: Loader<Cursor>, data: Cursor?) {
+            // the site's results are more complete, so once we have them they stay
+            if (showingSiteResults || data == null) return
+            val results = LocalSearch.readResults(data)
+            Timber.d("Found %d cached posts", results.size)
+            if (results.isEmpty() && mSearchResults.isEmpty()) return
+            removeLoadingDialog()
+            mSearchResults = results
+            // cached results are all in one list, there's no paging
+            mQueryId = 0
+            mSRL.isEnabled = false
+            mSearchResultList.adapter?.notifyDataSetChanged()
+        }
+
+        override fun onLoaderReset(loader: Loader<Cursor>) {}
+    }
+
     private inner class SearchResultHolder internal constructor(internal val self: View) : RecyclerView.ViewHolder(self) {
         internal val threadName: TextView = itemView.findViewById(R.id.search_result_threadname)
         internal val hitInfo: TextView = itemView.findViewById(R.id.search_result_hit_info)
@@ -52,6 +52,24 @@ public class AwfulCursorAdapter extends CursorAdapter {
 	private LayoutInflater inf;
 	private int mId;
 	private Messenger msgCallback;
+
+	private static final int ROW_UNKNOWN = 0;
+	private static final int ROW_THREAD = 1;
+	private static final int ROW_FORUM = 2;
+	private static final int ROW_MESSAGE = 3;
+	private static final int ROW_EMOTE = 4;
+
+	/** the cursor {@link #rowType} was worked out for - it's the same for every row, so it's only checked once */
+	private Cursor typedCursor;
+	private int rowType = ROW_UNKNOWN;
+
+	// each item is bound from one of these, so scrolling doesn't create an object per row
+	private final AwfulThread.Mapper threadMapper = new AwfulThread.Mapper();
+	private final AwfulThread rowThread = new AwfulThread();
+	private final AwfulMessage.Mapper messageMapper = new AwfulMessage.Mapper();
+	private final AwfulMessage rowMessage = new AwfulMessage();
+	private final AwfulEmote.Mapper emoteMapper = new AwfulEmote.Mapper();
+	private final AwfulEmote rowEmote = new AwfulEmote();
 	
 	public AwfulCursorAdapter(AwfulActivity context, Cursor c, AwfulFragment fragment) {
 		this(context, c, 0, false, null, fragment);
@@ -70,18 +88,42 @@ public class AwfulCursorAdapter extends CursorAdapter {
 		mId = id;
 	}
 
+	/**
+	 * Work out what kind of data a cursor holds, from the columns that are unique to each type.
+	 */
+	private int getRowType(Cursor data) {
+		if (data != typedCursor) {
+			typedCursor = data;
+			if(data.getColumnIndex(AwfulThread.BOOKMARKED) >= 0){//unique to threads
+				rowType = ROW_THREAD;
+			}else if(data.getColumnIndex(AwfulForum.PARENT_ID) >= 0){//unique to forums
+				rowType = ROW_FORUM;
+			}else if(data.getColumnIndex(AwfulMessage.UNREAD) >= 0){
+				rowType = ROW_MESSAGE;
+			}else if(data.getColumnIndex(AwfulEmote.INDEX) >= 0){
+				rowType = ROW_EMOTE;
+			}else{
+				rowType = ROW_UNKNOWN;
+			}
+		}
+		return rowType;
+	}
+
 	@Override
 	public void bindView(View current, Context context, Cursor data) {
-		if(data.getColumnIndex(AwfulThread.BOOKMARKED) >= 0){//unique to threads
-			AwfulThread.setDataOnThreadListItem(current, mPrefs, data, mFragment);
-		}else if(data.getColumnIndex(AwfulForum.PARENT_ID) >= 0){//unique to forums
-			assert(false);
-//		}else if(data.getColumnIndex(AwfulPost.PREVIOUSLY_READ) >= 0){
-//			AwfulPost.getView(current, prefs, data, msgCallback);
-		}else if(data.getColumnIndex(AwfulMessage.DATE) >= 0){
-			AwfulMessage.getView(current, mPrefs, data, false);
-		}else if(data.getColumnIndex(AwfulEmote.INDEX) >= 0){
-			AwfulEmote.getView(current, mPrefs, data);
+		switch (getRowType(data)) {
+			case ROW_THREAD:
+				AwfulThread.setDataOnThreadListItem(current, mPrefs, threadMapper.read(data, rowThread), mFragment);
+				break;
+			case ROW_FORUM:
+				assert(false);
+				break;
+			case ROW_MESSAGE:
+				AwfulMessage.getView(current, mPrefs, messageMapper.read(data, rowMessage), false);
+				break;
+			case ROW_EMOTE:
+				AwfulEmote.getView(current, mPrefs, emoteMapper.read(data, rowEmote));
+				break;
 		}
 		mParent.setPreferredFont(current);
 	}
@@ -89,17 +131,21 @@ public class AwfulCursorAdapter extends CursorAdapter {
 	@Override
 	public View newView(Context context, Cursor data, ViewGroup parent) {
 		View row;
-		if(data.getColumnIndex(AwfulThread.BOOKMARKED) >= 0){//unique to threads
-			row = inf.inflate(R.layout.thread_item, parent, false);
-			AwfulThread.setDataOnThreadListItem(row, mPrefs, data, mFragment);
-		}else if(data.getColumnIndex(AwfulMessage.UNREAD) >= 0){
-			row = inf.inflate(R.layout.thread_item, parent, false);
-			AwfulMessage.getView(row, mPrefs, data, false);
-		}else if(data.getColumnIndex(AwfulEmote.INDEX) >= 0){
-			row = inf.inflate(R.layout.emote_grid_item, parent, false);
-			AwfulEmote.getView(row, mPrefs, data);
-		}else{
-			row = inf.inflate(R.layout.loading, parent, false);
+		switch (getRowType(data)) {
+			case ROW_THREAD:
+				row = inf.inflate(R.layout.thread_item, parent, false);
+				AwfulThread.setDataOnThreadListItem(row, mPrefs, threadMapper.read(data, rowThread), mFragment);
+				break;
+			case ROW_MESSAGE:
+				row = inf.inflate(R.layout.thread_item, parent, false);
+				AwfulMessage.getView(row, mPrefs, messageMapper.read(data, rowMessage), false);
+				break;
+			case ROW_EMOTE:
+				row = inf.inflate(R.layout.emote_grid_item, parent, false);
+				AwfulEmote.getView(row, mPrefs, emoteMapper.read(data, rowEmote));
+				break;
+			default:
+				row = inf.inflate(R.layout.loading, parent, false);
 		}
 		mParent.setPreferredFont(row);
 		return row;
@@ -131,8 +177,9 @@ public class AwfulCursorAdapter extends CursorAdapter {
 	public Cursor getRow(long id){
     	Cursor tmpcursor = getCursor();
     	if(tmpcursor != null && tmpcursor.moveToFirst()){
+    		int idColumn = tmpcursor.getColumnIndex(AwfulThread.ID);
     		do{
-    			if(tmpcursor.getLong(tmpcursor.getColumnIndex(AwfulThread.ID)) == id) {//contentprovider id tables are required to be _id
+    			if(tmpcursor.getLong(idColumn) == id) {//contentprovider id tables are required to be _id
 					return new UncloseableCursor(tmpcursor);
 				}
 			}while(tmpcursor.moveToNext());
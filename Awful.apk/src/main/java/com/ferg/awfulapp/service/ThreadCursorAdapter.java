@@ -46,6 +46,9 @@ public class ThreadCursorAdapter extends CursorAdapter {
 	private AwfulActivity mParent;
     private AwfulFragment mFragment;
 	private LayoutInflater inf;
+	private final AwfulThread.Mapper threadMapper = new AwfulThread.Mapper();
+	/** each item is bound from this, so scrolling doesn't create a thread object per row */
+	private final AwfulThread rowThread = new AwfulThread();
 
 	public ThreadCursorAdapter(AwfulActivity context, Cursor c, AwfulFragment fragment) {
 		super(context, c, 0);
@@ -57,14 +60,14 @@ public class ThreadCursorAdapter extends CursorAdapter {
 
 	@Override
 	public void bindView(View current, Context context, Cursor data) {
-        AwfulThread.setDataOnThreadListItem(current, mPrefs, data, mFragment);
+        AwfulThread.setDataOnThreadListItem(current, mPrefs, threadMapper.read(data, rowThread), mFragment);
 		mParent.setPreferredFont(current);
 	}
 
 	@Override
 	public View newView(Context context, Cursor data, ViewGroup parent) {
 		View row = inf.inflate(R.layout.thread_item, parent, false);
-        AwfulThread.setDataOnThreadListItem(row, mPrefs, data, mFragment);
+        AwfulThread.setDataOnThreadListItem(row, mPrefs, threadMapper.read(data, rowThread), mFragment);
 		mParent.setPreferredFont(row);
 		return row;
 	}
@@ -95,8 +98,9 @@ public class ThreadCursorAdapter extends CursorAdapter {
 	public Cursor getRow(long id){
     	Cursor tmpcursor = getCursor();
     	if(tmpcursor != null && tmpcursor.moveToFirst()){
+    		int idColumn = tmpcursor.getColumnIndex(AwfulThread.ID);
     		do{
-    			if(tmpcursor.getLong(tmpcursor.getColumnIndex(AwfulThread.ID)) == id) {//contentprovider id tables are required to be _id
+    			if(tmpcursor.getLong(idColumn) == id) {//contentprovider id tables are required to be _id
 					return new UncloseableCursor(tmpcursor);
 				}
 			}while(tmpcursor.moveToNext());
@@ -16,9 +16,9 @@ import com.ferg.awfulapp.messages.PmManager;
 import com.ferg.awfulapp.network.NetworkUtils;
 import com.ferg.awfulapp.preferences.AwfulPreferences;
 import com.ferg.awfulapp.preferences.Keys;
+import com.ferg.awfulapp.provider.ContentCache;
 import com.ferg.awfulapp.task.FeatureRequest;
 import com.ferg.awfulapp.task.RefreshUserProfileRequest;
-import com.ferg.awfulapp.util.AwfulUtils;
 
 import java.util.concurrent.TimeUnit;
 
@@ -75,7 +75,8 @@ public class SyncManager {
 
 
     private static void trimDatabase(@NonNull Context context) {
-        AwfulUtils.trimDbEntries(context.getContentResolver());
+        long budgetBytes = AwfulPreferences.getInstance(context).cacheSizeMb * 1024L * 1024L;
+        ContentCache.trim(context.getContentResolver(), budgetBytes);
     }
 
 
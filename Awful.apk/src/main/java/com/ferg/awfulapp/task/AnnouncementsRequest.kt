@@ -2,7 +2,6 @@ package com.ferg.awfulapp.task
 
 import android.content.Context
 import com.ferg.awfulapp.constants.Constants.FUNCTION_ANNOUNCEMENTS
-import com.ferg.awfulapp.preferences.AwfulPreferences
 import com.ferg.awfulapp.thread.AwfulPost
 import com.ferg.awfulapp.thread.AwfulPost.tryConvertToHttps
 import com.ferg.awfulapp.util.AwfulError
@@ -31,7 +30,6 @@ class AnnouncementsRequest(context: Context)
 
     private fun parseAnnouncement(aThread: Document): List<AwfulPost> {
         val results = ArrayList<AwfulPost>()
-        val prefs = AwfulPreferences.getInstance()
 
         // TODO: tidy up when there's an announcement to test against
         // grab all the main announcement sections - these contain *most* of the data we need :/
@@ -74,14 +72,8 @@ class AnnouncementsRequest(context: Context)
 
             val postBody = announcementSection.selectFirst(".postbody")
             if (postBody != null) {
-                // process videos, images and links and store the resulting post HTML
-                AwfulPost.convertVideos(postBody, prefs.inlineYoutube, prefs.inlineTiktoks)
-                for (image in postBody.getElementsByTag("img")) {
-                    AwfulPost.processPostImage(image, false, prefs)
-                }
-                for (link in postBody.getElementsByTag("a")) {
-                    tryConvertToHttps(link)
-                }
+                // store the canonical post HTML - it's rewritten according to the user's prefs when it's displayed
+                postBody.getElementsByClass("bbcode_video").forEach { AwfulPost.convertBbcodeVideo(it) }
                 announcement.content = postBody.html()
             }
             // I guess this is important...?
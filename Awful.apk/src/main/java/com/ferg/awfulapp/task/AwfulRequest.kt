@@ -17,8 +17,11 @@ import com.ferg.awfulapp.constants.Constants.SITE_HTML_ENCODING
 import com.ferg.awfulapp.network.CookieController
 import com.ferg.awfulapp.network.NetworkUtils
 import com.ferg.awfulapp.preferences.AwfulPreferences
+import com.ferg.awfulapp.provider.AwfulDatabase
 import com.ferg.awfulapp.task.AwfulRequest.Parameters.GetParams
 import com.ferg.awfulapp.task.AwfulRequest.Parameters.PostParams
+import com.ferg.awfulapp.thread.ParsePriority
+import com.ferg.awfulapp.thread.ParseScheduler
 import com.ferg.awfulapp.util.AwfulError
 import com.google.firebase.crashlytics.FirebaseCrashlytics
 import org.apache.http.HttpEntity
@@ -105,8 +108,15 @@ abstract class AwfulRequest<T>(protected val context: Context, private val baseU
 
     open val requestTag: Any get() = REQUEST_TAG
 
+    /**
+     * The priority any [com.ferg.awfulapp.thread.parse] calls made while handling the response
+     * will run with. Override this for requests nobody is actively waiting on.
+     */
+    protected open val parsePriority: ParsePriority get() = ParsePriority.FOREGROUND
+
     protected val preferences: AwfulPreferences get() = AwfulPreferences.getInstance(context)
     protected val contentResolver: ContentResolver get() = context.contentResolver
+    protected val database: AwfulDatabase get() = AwfulDatabase.getInstance(context)
 
 
     /**
@@ -254,7 +264,8 @@ abstract class AwfulRequest<T>(protected val context: Context, private val baseU
                     if (error.isCritical && !handleCriticalError(error, doc)) throw error
                 }
 
-                val result = handleResponseDocument(doc)
+                // a cancelled request drops any of its parse tasks still waiting in the queue
+                val result = ParseScheduler.runWith(parsePriority, ::isCanceled) { handleResponseDocument(doc) }
                 Timber.d("Successful parse: $url\nTook ${System.currentTimeMillis() - startTime}ms")
                 return Response.success(result, HttpHeaderParser.parseCacheHeaders(response))
             } catch (ae: AwfulError) {
@@ -1,5 +1,6 @@
 package com.ferg.awfulapp.task
 
+import android.content.ContentUris
 import android.content.ContentValues
 import android.content.Context
 import com.ferg.awfulapp.constants.Constants.*
@@ -29,7 +30,7 @@ class BookmarkRequest(context: Context, private val threadId: Int, private val a
         val id = arrayOf(threadId.toString())
 
         with(contentResolver) {
-            update(AwfulThread.CONTENT_URI, cv, "${AwfulThread.ID}=?", id)
+            update(ContentUris.withAppendedId(AwfulThread.CONTENT_URI, threadId.toLong()), cv, null, null)
             if (!add) delete(AwfulThread.CONTENT_URI_UCP, "${AwfulThread.ID}=?", id)
         }
         return null
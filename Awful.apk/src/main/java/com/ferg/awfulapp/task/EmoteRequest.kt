@@ -19,7 +19,7 @@ class EmoteRequest(context: Context) : AwfulRequest<Void?>(context, FUNCTION_MIS
     @Throws(AwfulError::class)
     override fun handleResponse(doc: Document): Void? {
         val emotes = AwfulEmote.parseEmotes(doc)
-        val inserted = contentResolver.bulkInsert(AwfulEmote.CONTENT_URI, emotes.toTypedArray())
+        val inserted = database.emotes().storeEmotes(emotes.toTypedArray())
         if (inserted < 0) throw AwfulError("Inserted $inserted emotes")
         return null
     }
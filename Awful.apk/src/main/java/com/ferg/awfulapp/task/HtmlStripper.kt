@@ -0,0 +1,342 @@
+package com.ferg.awfulapp.task
+
+import com.ferg.awfulapp.constants.Constants.SITE_HTML_ENCODING
+import java.io.InputStream
+import java.nio.charset.Charset
+
+/**
+ * Strips unwanted regions out of a raw HTML response, working directly on its bytes.
+ *
+ * A thread page with a lot of pages can have a huge `<select>` block (two of them in fact), and
+ * every page carries menus, footers, scripts etc. that make jsoup do a lot of work building
+ * elements nobody looks at. Instead of decoding the whole response into a String and running
+ * regexes over it (which means holding two or three full-size copies of the page at once) this
+ * scans the response bytes once for the regions described by a [StripProfile], pulls the selected
+ * and last page numbers out of the page selector, and then exposes the remaining bytes through
+ * [inputStream] so the parser can read them in place.
+ *
+ * The site's encoding is single-byte, so we can safely look for ASCII markup in the raw data.
+ */
+internal class HtmlStripper(private val data: ByteArray, private val profile: StripProfile) {
+
+    /** the selected page in the first page selector, if there was one */
+    var selectedPage: Int? = null
+        private set
+
+    /** the last page in the first page selector, if there was one */
+    var lastPage: Int? = null
+        private set
+
+    /** the stripped blocks, in order */
+    private val strippedRanges = ArrayList<Range>()
+
+    /** The number of bytes that were stripped out of the response */
+    val strippedBytes: Int
+        get() = strippedRanges.sumOf { it.end - it.start }
+
+    private val rawTextTags = profile.rawTextTags.map { it.toByteArray(Charsets.US_ASCII) }
+    private val elementRules = profile.elements.map { ByteRule(it) }
+    private val keepMarkers = profile.keep.map { it.toByteArray(Charsets.US_ASCII) }
+    private var foundPageSelector = false
+
+    init {
+        var pos = 0
+        while (true) {
+            val start = data.indexOf(LT, pos)
+            if (start < 0) break
+            pos = start + 1
+
+            // comments and raw text blocks are always skipped over, so we don't go matching markup inside them
+            val rawEnd = when {
+                data.startsWith(COMMENT_START, start) -> data.endOf(COMMENT_END, start + COMMENT_START.size)
+                    .also { if (it > 0 && profile.comments) strip(start, it) }
+                else -> rawTextEnd(start)
+            }
+            if (rawEnd != null) {
+                if (rawEnd < 0) break
+                pos = rawEnd
+                continue
+            }
+
+            val end = pageSelectorEnd(start) ?: elementEnd(start) ?: continue
+            strip(start, end)
+            pos = end
+        }
+    }
+
+    /**
+     * Get a stream of the response bytes with the stripped regions skipped.
+     */
+    fun inputStream(): InputStream = StrippedInputStream()
+
+
+    private fun strip(start: Int, end: Int) {
+        strippedRanges.add(Range(start, end))
+    }
+
+    /**
+     * If there's a raw text element (script etc.) at [start], get the offset just past its end
+     * (or -1 if it never ends), stripping it if the profile says so. Returns null if there's no raw
+     * text element here.
+     */
+    private fun rawTextEnd(start: Int): Int? {
+        val tag = RAW_TEXT_TAGS.firstOrNull { data.isTagAt(start + 1, it) } ?: return null
+        val end = data.endOfRawText(tag, start)
+        if (end > 0 && rawTextTags.any { it.contentEquals(tag) }) strip(start, end)
+        return end
+    }
+
+    /**
+     * If there's a page selector block at [start], read its page numbers (if it's the first one)
+     * and return the offset just past its end. Returns null if there's nothing to strip here.
+     */
+    private fun pageSelectorEnd(start: Int): Int? {
+        if (!profile.pageSelectors || !data.startsWith(SELECT_START, start)) return null
+        val urlStart = start + SELECT_START.size
+        val end = data.endOf(SELECT_END, urlStart)
+        if (end < 0 || !isPageSelectorUrl(urlStart)) return null
+        if (!foundPageSelector) {
+            // try and pull out the useful data before we throw the block away
+            readPageNumbers(start, end)
+            foundPageSelector = true
+        }
+        return end
+    }
+
+    /**
+     * Check the data-url attribute starting at [offset] is the kind a page selector uses,
+     * i.e. it has a ".php" in it before any whitespace.
+     */
+    private fun isPageSelectorUrl(offset: Int): Boolean {
+        var end = offset
+        while (end < data.size && !data[end].isWhitespace()) end++
+        return data.indexOf(PHP, offset, end) >= 0
+    }
+
+    private fun readPageNumbers(start: Int, end: Int) {
+        // select blocks are small enough that decoding one is no big deal
+        val selectBlock = String(data, start, end - start, SITE_CHARSET)
+        // separate matchers so one can fail without breaking the other
+        selectedPage = selectedPageRegex.find(selectBlock)?.groupValues?.get(1)?.toIntOrNull()
+        lastPage = lastPageRegex.find(selectBlock)?.groupValues?.get(1)?.toIntOrNull()
+    }
+
+    /**
+     * If there's an element at [start] that matches one of the profile's element rules, return the
+     * offset just past its closing tag. Returns null if there's no match, if the element doesn't
+     * close properly, or if it contains something we need to keep.
+     */
+    private fun elementEnd(start: Int): Int? {
+        if (elementRules.none { data.isTagAt(start + 1, it.tag) }) return null
+        val openTagEnd = data.openTagEnd(start)
+        if (openTagEnd < 0) return null
+        val rule = elementRules.firstOrNull { data.isTagAt(start + 1, it.tag) && it.matches(start, openTagEnd) } ?: return null
+        val end = closingTagEnd(rule.tag, openTagEnd) ?: return null
+        return end.takeIf { keepMarkers.none { marker -> data.indexOf(marker, start, end) >= 0 } }
+    }
+
+    /**
+     * Find the end of the element whose content begins at [contentStart], accounting for nested
+     * elements with the same [tag]. Returns null if it never closes.
+     */
+    private fun closingTagEnd(tag: ByteArray, contentStart: Int): Int? {
+        var depth = 1
+        var pos = contentStart
+        while (true) {
+            val next = data.indexOf(LT, pos)
+            if (next < 0) return null
+            pos = next + 1
+            when {
+                data.startsWith(COMMENT_START, next) -> pos = data.endOf(COMMENT_END, next)
+                next + 1 < data.size && data[next + 1] == SLASH && data.isTagAt(next + 2, tag) -> {
+                    pos = data.openTagEnd(next)
+                    if (--depth == 0) return pos.takeIf { it > 0 }
+                }
+                data.isTagAt(next + 1, tag) -> {
+                    pos = data.openTagEnd(next)
+                    if (pos > 0 && data[pos - 2] != SLASH) depth++
+                }
+                else -> RAW_TEXT_TAGS.firstOrNull { data.isTagAt(next + 1, it) }?.let { pos = data.endOfRawText(it, next) }
+            }
+            if (pos < 0) return null
+        }
+    }
+
+
+    /**
+     * An [StripProfile.ElementRule], converted for matching against raw bytes.
+     */
+    private inner class ByteRule(rule: StripProfile.ElementRule) {
+        val tag: ByteArray = rule.tag.toByteArray(Charsets.US_ASCII)
+        private val attribute = if (rule.id != null) "id" else "class"
+        private val value: String = rule.id ?: rule.cssClass!!
+        private val valueBytes = value.toByteArray(Charsets.US_ASCII)
+
+        /** check the opening tag between [start] and [end] has the attribute we're looking for */
+        fun matches(start: Int, end: Int): Boolean {
+            // quick check, so we only decode tags that might actually match
+            if (data.indexOf(valueBytes, start, end) < 0) return false
+            val attributes = String(data, start, end - start, SITE_CHARSET)
+            val attrValue = attributeRegex(attribute).find(attributes)?.groupValues?.get(1) ?: return false
+            return if (attribute == "id") attrValue == value else value in attrValue.split(WHITESPACE)
+        }
+    }
+
+
+    /**
+     * Reads through [data], jumping over each of the [strippedRanges].
+     */
+    private inner class StrippedInputStream : InputStream() {
+        private var position = 0
+        private var nextRange = 0
+
+        /** skip ahead if we're at the start of a stripped range, returning the number of bytes we can read before the next one */
+        private fun readable(): Int {
+            while (nextRange < strippedRanges.size && position >= strippedRanges[nextRange].start) {
+                position = maxOf(position, strippedRanges[nextRange].end)
+                nextRange++
+            }
+            val limit = if (nextRange < strippedRanges.size) strippedRanges[nextRange].start else data.size
+            return limit - position
+        }
+
+        override fun read(): Int {
+            if (readable() <= 0) return -1
+            return data[position++].toInt() and 0xFF
+        }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            if (len == 0) return 0
+            val count = minOf(len, readable())
+            if (count <= 0) return -1
+            System.arraycopy(data, position, b, off, count)
+            position += count
+            return count
+        }
+
+        override fun available(): Int = maxOf(readable(), 0)
+    }
+
+
+    /** A section of the data, from [start] up to (but not including) [end] */
+    private class Range(val start: Int, val end: Int)
+
+
+    companion object {
+        private val SITE_CHARSET = Charset.forName(SITE_HTML_ENCODING)
+
+        private val LT = '<'.code.toByte()
+        private val GT = '>'.code.toByte()
+        private val SLASH = '/'.code.toByte()
+
+        private val SELECT_START = """<select data-url="""".toByteArray(Charsets.US_ASCII)
+        private val SELECT_END = "</select>".toByteArray(Charsets.US_ASCII)
+        private val PHP = ".php".toByteArray(Charsets.US_ASCII)
+        private val COMMENT_START = "<!--".toByteArray(Charsets.US_ASCII)
+        private val COMMENT_END = "-->".toByteArray(Charsets.US_ASCII)
+        /** tags whose contents aren't markup, so we need to skip them while looking for tags */
+        private val RAW_TEXT_TAGS = listOf("script", "style", "noscript").map { it.toByteArray(Charsets.US_ASCII) }
+
+        private val WHITESPACE = Regex("""\s+""")
+        private val attributeRegexes = HashMap<String, Regex>()
+        private fun attributeRegex(name: String) = synchronized(attributeRegexes) {
+            attributeRegexes.getOrPut(name) { Regex("""\s$name\s*=\s*["']?([^"'>]*)""", RegexOption.IGNORE_CASE) }
+        }
+
+        // matches the "value" attribute of the <option> tag with a "selected" attribute
+        private val selectedPageRegex = Regex("""value="(\d*)"\s*selected""")
+        // matches the inner text of the last <option> tag
+        // (I can't safely get the contents of its "value" attr without the regex exploding over backtracking)
+        private val lastPageRegex = Regex(""">\s*(\d*)\s*</option>\s*</select>""")
+
+        private fun Byte.isWhitespace() = this == ' '.code.toByte() || this == '\t'.code.toByte() ||
+                this == '\n'.code.toByte() || this == '\r'.code.toByte() || this == '\u000C'.code.toByte()
+
+        private fun Byte.lowercase(): Byte = if (this in 'A'.code.toByte()..'Z'.code.toByte()) (this + 32).toByte() else this
+
+        /** true if the tag name at [offset] is [tag], ignoring case, and not just the start of a longer name */
+        private fun ByteArray.isTagAt(offset: Int, tag: ByteArray): Boolean {
+            val after = offset + tag.size
+            if (after >= size) return false
+            for (i in tag.indices) {
+                if (this[offset + i].lowercase() != tag[i]) return false
+            }
+            return this[after].isWhitespace() || this[after] == GT || this[after] == SLASH
+        }
+
+        private fun ByteArray.startsWith(prefix: ByteArray, offset: Int): Boolean {
+            if (offset + prefix.size > size) return false
+            for (i in prefix.indices) {
+                if (this[offset + i] != prefix[i]) return false
+            }
+            return true
+        }
+
+        /** Get the offset just past the end of the tag starting at [start], skipping over quoted attribute values. -1 if it doesn't end */
+        private fun ByteArray.openTagEnd(start: Int): Int {
+            var quote: Byte = 0
+            for (i in start + 1 until size) {
+                val b = this[i]
+                when {
+                    quote != 0.toByte() -> if (b == quote) quote = 0
+                    b == '"'.code.toByte() || b == '\''.code.toByte() -> quote = b
+                    b == GT -> return i + 1
+                }
+            }
+            return -1
+        }
+
+        /** Find the offset just past the next occurrence of [pattern] from [from], or -1 if there isn't one */
+        private fun ByteArray.endOf(pattern: ByteArray, from: Int): Int {
+            val found = indexOf(pattern, from)
+            if (found < 0) return -1
+            // for closing tags we need to find the actual end of the tag, e.g. </script >
+            return if (pattern[pattern.size - 1] == GT) found + pattern.size else openTagEnd(found)
+        }
+
+        /**
+         * Find the offset just past the closing tag of the raw text element [tag] that starts at
+         * [from], ignoring case (so </SCRIPT> closes a <script>). -1 if it doesn't close.
+         */
+        private fun ByteArray.endOfRawText(tag: ByteArray, from: Int): Int {
+            var pos = from + 1
+            while (true) {
+                val next = indexOf(LT, pos)
+                if (next < 0) return -1
+                if (next + 1 < size && this[next + 1] == SLASH && isTagAt(next + 2, tag)) return openTagEnd(next)
+                pos = next + 1
+            }
+        }
+
+        private fun ByteArray.indexOf(byte: Byte, from: Int): Int {
+            for (i in from until size) {
+                if (this[i] == byte) return i
+            }
+            return -1
+        }
+
+        /**
+         * Find the first occurrence of [pattern] in this array, starting at [from] and ending before
+         * [until], or -1 if there isn't one
+         */
+        private fun ByteArray.indexOf(pattern: ByteArray, from: Int, until: Int = size): Int {
+            val first = pattern[0]
+            val lastStart = until - pattern.size
+            var i = from
+            outer@ while (i <= lastStart) {
+                if (this[i] != first) {
+                    i++
+                    continue
+                }
+                for (j in 1 until pattern.size) {
+                    if (this[i + j] != pattern[j]) {
+                        i++
+                        continue@outer
+                    }
+                }
+                return i
+            }
+            return -1
+        }
+    }
+}
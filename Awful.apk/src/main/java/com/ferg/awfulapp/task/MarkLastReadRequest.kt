@@ -8,6 +8,7 @@ import com.ferg.awfulapp.constants.Constants.*
 import com.ferg.awfulapp.provider.AwfulProvider
 import com.ferg.awfulapp.thread.AwfulPost
 import com.ferg.awfulapp.thread.AwfulThread
+import com.ferg.awfulapp.thread.RenderedPageCache
 import com.ferg.awfulapp.util.AwfulError
 import com.ferg.awfulapp.util.toSqlBoolean
 import org.jsoup.nodes.Document
@@ -32,16 +33,18 @@ class MarkLastReadRequest(context: Context, private val threadId: Int, private v
         var cv = ContentValues()
         with(contentResolver) {
             fun where(greaterThan: Boolean) =
-                    "${AwfulPost.THREAD_ID}=? AND ${AwfulPost.POST_INDEX} ${if (greaterThan) ">" else "<="}?"
+                    "${AwfulPost.POST_INDEX} ${if (greaterThan) ">" else "<="}?"
 
-            val params = listOf(threadId, postIndex).map(Int::toString).toTypedArray()
+            val posts = AwfulPost.getThreadUri(threadId)
+            val params = arrayOf(postIndex.toString())
 
             // set later posts to unread, and this post (and all previous) to read
             cv.put(AwfulPost.PREVIOUSLY_READ, false.toSqlBoolean)
-            update(AwfulPost.CONTENT_URI, cv, where(greaterThan = true), params)
+            update(posts, cv, where(greaterThan = true), params)
 
             cv.put(AwfulPost.PREVIOUSLY_READ, true.toSqlBoolean)
-            update(AwfulPost.CONTENT_URI, cv, where(greaterThan = false), params)
+            update(posts, cv, where(greaterThan = false), params)
+            RenderedPageCache.instance.invalidateThread(threadId)
 
             // update the thread's unread count
             val threadData = query(ContentUris.withAppendedId(AwfulThread.CONTENT_URI, threadId.toLong()), AwfulProvider.ThreadProjection, null, null, null)
@@ -49,7 +52,7 @@ class MarkLastReadRequest(context: Context, private val threadId: Int, private v
                 if (cursor.moveToFirst()) {
                     val newPostCount = cursor.getInt(cursor.getColumnIndex(AwfulThread.POSTCOUNT)) - postIndex
                     cv = ContentValues().apply { put(AwfulThread.UNREADCOUNT, newPostCount) }
-                    update(AwfulThread.CONTENT_URI, cv, AwfulThread.ID + "=?", arrayOf(threadId.toString()))
+                    update(ContentUris.withAppendedId(AwfulThread.CONTENT_URI, threadId.toLong()), cv, null, null)
                 }
             }
         }
@@ -7,6 +7,7 @@ import com.android.volley.VolleyError
 import com.ferg.awfulapp.constants.Constants.*
 import com.ferg.awfulapp.thread.AwfulPost
 import com.ferg.awfulapp.thread.AwfulThread
+import com.ferg.awfulapp.thread.RenderedPageCache
 import com.ferg.awfulapp.util.AwfulError
 import com.ferg.awfulapp.util.toSqlBoolean
 import org.jsoup.nodes.Document
@@ -28,7 +29,8 @@ class MarkUnreadRequest(context: Context, private val threadId: Int)
         with (contentResolver) {
             // set all posts in the thread as unread
             val unreadPost = ContentValues().apply { put(AwfulPost.PREVIOUSLY_READ, false.toSqlBoolean) }
-            update(AwfulPost.CONTENT_URI, unreadPost, AwfulPost.THREAD_ID + "=?", arrayOf(threadId.toString()))
+            update(AwfulPost.getThreadUri(threadId), unreadPost, null, null)
+            RenderedPageCache.instance.invalidateThread(threadId)
 
             // update the thread data to reflect an unread state
             val unreadThread = ContentValues().apply {
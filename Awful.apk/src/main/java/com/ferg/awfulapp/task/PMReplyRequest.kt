@@ -1,6 +1,5 @@
 package com.ferg.awfulapp.task
 
-import android.content.ContentUris
 import android.content.ContentValues
 import android.content.Context
 import com.ferg.awfulapp.constants.Constants.*
@@ -34,13 +33,9 @@ class PMReplyRequest(context: Context, private val id: Int)
             remove(AwfulMessage.REPLY_CONTENT)
         }
 
-        // try and update the draft - if it fails, insert the full reply data
+        // try and update the draft - if it doesn't exist, insert the full reply data
         // (including title and message content) as a new draft
-        val currentDraft = ContentUris.withAppendedId(AwfulMessage.CONTENT_URI_REPLY, id.toLong())
-        if (contentResolver.update(currentDraft, updateDraft, null, null) < 1) {
-            // no update so the draft didn't exist
-            contentResolver.insert(AwfulMessage.CONTENT_URI_REPLY, newReply)
-        }
+        database.drafts().saveDraft(id, updateDraft, newReply)
         return null
     }
 
@@ -0,0 +1,76 @@
+package com.ferg.awfulapp.task
+
+/**
+ * Describes which parts of a page an [AwfulStrippedRequest] can cut out of the response before
+ * it's parsed. Anything removed here never becomes part of the jsoup DOM, so it's a cheap way to
+ * speed up parsing - just make sure nothing the request's parsing code looks for is in there!
+ *
+ * Requests declare one of these through [AwfulStrippedRequest.stripProfile]. As a safety net,
+ * any element region that contains one of the [keep] markers is left alone, so the things
+ * [com.ferg.awfulapp.util.AwfulError.checkPageErrors] (and the other page scrapers) need will
+ * survive even if the site moves them somewhere unexpected.
+ *
+ * @param pageSelectors strip the page selector `<select>` blocks (their values are still read)
+ * @param rawTextTags tags like `script` whose entire contents can be dropped
+ * @param comments strip HTML comments
+ * @param elements elements (and everything inside them) that can be dropped
+ * @param keep text that marks an element region as needed - regions containing any of these aren't stripped
+ */
+data class StripProfile(
+    val pageSelectors: Boolean = true,
+    val rawTextTags: List<String> = emptyList(),
+    val comments: Boolean = false,
+    val elements: List<ElementRule> = emptyList(),
+    val keep: List<String> = ALWAYS_KEEP
+) {
+
+    /**
+     * Matches an element by its [tag], and either its [id] or one of its classes.
+     */
+    data class ElementRule(val tag: String, val id: String? = null, val cssClass: String? = null) {
+        init {
+            require((id == null) != (cssClass == null)) { "ElementRule needs an id or a class (but not both)" }
+        }
+    }
+
+    companion object {
+        /** IDs the error checks look for - we never want to strip these, whatever the request */
+        private val ALWAYS_KEEP = listOf("notregistered", "closemsg", "probation_warn")
+
+        /** The site chrome that appears on every forums page, and that nothing in the app parses */
+        private val PAGE_FURNITURE = listOf(
+            ElementRule("div", id = "globalmenu"),
+            ElementRule("ul", id = "nav_purchase"),
+            ElementRule("div", id = "ad_banner_user"),
+            ElementRule("div", id = "copyright")
+        )
+
+        /** Just strip the page selectors - the original [AwfulStrippedRequest] behaviour */
+        @JvmField
+        val PAGE_SELECTORS = StripProfile()
+
+        /**
+         * For thread pages - the breadcrumbs are kept, since they're where the thread title
+         * and its forum come from.
+         */
+        @JvmField
+        val THREAD_PAGE = StripProfile(
+            rawTextTags = listOf("script", "noscript"),
+            comments = true,
+            elements = PAGE_FURNITURE,
+            keep = ALWAYS_KEEP + listOf("bclast", "thread_bookmark")
+        )
+
+        /**
+         * For forum and bookmark pages - only the thread list, announcements and PM notifications
+         * get parsed here, so the breadcrumbs can go too.
+         */
+        @JvmField
+        val THREAD_LIST = StripProfile(
+            rawTextTags = listOf("script", "noscript"),
+            comments = true,
+            elements = PAGE_FURNITURE + ElementRule("div", cssClass = "breadcrumbs"),
+            keep = ALWAYS_KEEP + listOf("private_messages", "announcement")
+        )
+    }
+}
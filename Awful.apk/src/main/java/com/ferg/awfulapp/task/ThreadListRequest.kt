@@ -6,6 +6,7 @@ import com.ferg.awfulapp.constants.Constants.*
 import com.ferg.awfulapp.messages.PmManager
 import com.ferg.awfulapp.thread.AwfulForum
 import com.ferg.awfulapp.thread.AwfulPagedItem
+import com.ferg.awfulapp.thread.ParsePriority
 import com.ferg.awfulapp.util.AwfulError
 import org.jsoup.nodes.Document
 
@@ -17,9 +18,16 @@ import org.jsoup.nodes.Document
  *
  * This request also hands the page off to other parsers, e.g. for announcements
  * and private messages, to scrape any updated information the page contains.
+ *
+ * Pages loaded in the background (e.g. during a sync) can pass a lower [priority] so their parsing
+ * doesn't hold up whatever the user is looking at.
  */
-class ThreadListRequest(context: Context, private val forumId: Int, private val page: Int)
-    : AwfulStrippedRequest<Void?>(context, when {
+class ThreadListRequest @JvmOverloads constructor(
+    context: Context,
+    private val forumId: Int,
+    private val page: Int,
+    private val priority: ParsePriority = ParsePriority.FOREGROUND
+) : AwfulStrippedRequest<Void?>(context, when {
         forumId != USERCP_ID -> FUNCTION_FORUM
         page == 1 -> FUNCTION_USERCP
         else -> FUNCTION_BOOKMARK
@@ -29,6 +37,12 @@ class ThreadListRequest(context: Context, private val forumId: Int, private val
     override val requestTag: Any
         get() = REQUEST_TAG
 
+    override val stripProfile: StripProfile
+        get() = StripProfile.THREAD_LIST
+
+    override val parsePriority: ParsePriority
+        get() = priority
+
 
     init {
         with(parameters) {
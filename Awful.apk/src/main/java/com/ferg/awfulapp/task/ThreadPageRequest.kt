@@ -16,14 +16,26 @@ import org.jsoup.nodes.Document
  * with that user's posts, depending on how many there are. This is only a problem when viewing the
  * cached data (since usually the page will be reloaded and rewritten when you view it) but it's
  * something to be aware of.
+ *
+ * If [firstPostsStored] is supplied, the posts around the unread marker are stored before the rest
+ * of the page is parsed, and it's called (on the parsing thread) once they're in the database, so
+ * they can be displayed early. The request's result callback still fires once the whole page is done.
  */
-class ThreadPageRequest(context: Context, private val threadId: Int, private val page: Int, private val userId: Int = 0)
-    : AwfulStrippedRequest<Void?>(context, FUNCTION_THREAD) {
+class ThreadPageRequest @JvmOverloads constructor(
+    context: Context,
+    private val threadId: Int,
+    private val page: Int,
+    private val userId: Int = 0,
+    private val firstPostsStored: Runnable? = null
+) : AwfulStrippedRequest<Void?>(context, FUNCTION_THREAD) {
 
 
     override val requestTag: Any
         get() = REQUEST_TAG
 
+    override val stripProfile: StripProfile
+        get() = StripProfile.THREAD_PAGE
+
     init {
         with(parameters) {
             add(PARAM_THREAD_ID, threadId.toString())
@@ -34,14 +46,14 @@ class ThreadPageRequest(context: Context, private val threadId: Int, private val
     }
 
     override fun handleResponse(doc: Document): Void? {
-        AwfulThread.parseThreadPage(contentResolver, doc, threadId, page, -1, preferences.postPerPage, preferences, userId)
+        AwfulThread.parseThreadPage(database, doc, threadId, page, -1, preferences.postPerPage, userId)
         return null
     }
 
     public override fun handleStrippedResponse(document: Document, currentPage: Int?, totalPages: Int?): Void? {
         // TODO: this is all kinda janky, best to use the passed data from the response, right? Instead of relying on 'page' from the request
         val lastPage = totalPages ?: page
-        AwfulThread.parseThreadPage(contentResolver, document, threadId, page, lastPage, preferences.postPerPage, preferences, userId)
+        AwfulThread.parseThreadPage(database, document, threadId, page, lastPage, preferences.postPerPage, userId, firstPostsStored)
         return null
     }
 
@@ -32,6 +32,7 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.util.Log;
 import android.view.View;
+import androidx.annotation.NonNull;
 import android.widget.TextView;
 
 import com.android.volley.toolbox.NetworkImageView;
@@ -40,6 +41,7 @@ import com.ferg.awfulapp.constants.Constants;
 import com.ferg.awfulapp.network.NetworkUtils;
 import com.ferg.awfulapp.preferences.AwfulPreferences;
 import com.ferg.awfulapp.provider.DatabaseHelper;
+import com.ferg.awfulapp.provider.RowMapper;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -61,13 +63,37 @@ public class AwfulEmote {
 	public static final String INDEX = "emote_index";
 	
 	public static Pattern fileName_regex = Pattern.compile("/([^/]+)$");
-	
-	public static void getView(View current, AwfulPreferences aPref, Cursor data) {
+
+	public String text;
+	public String url;
+
+
+	/**
+	 * Reads the emote list's rows.
+	 */
+	public static final class Mapper extends RowMapper<AwfulEmote> {
+		private final int text = column(TEXT);
+		private final int url = column(URL);
+
+		@NonNull
+		@Override
+		protected AwfulEmote newHolder() {
+			return new AwfulEmote();
+		}
+
+		@Override
+		protected void map(@NonNull Cursor row, @NonNull int[] columns, @NonNull AwfulEmote emote) {
+			emote.text = row.getString(columns[text]);
+			emote.url = row.getString(columns[url]);
+		}
+	}
+
+	public static void getView(View current, AwfulPreferences aPref, AwfulEmote emote) {
 		TextView emoteText = (TextView) current.findViewById(R.id.emote_text);
-		emoteText.setText(data.getString(data.getColumnIndex(TEXT)));
+		emoteText.setText(emote.text);
 		emoteText.setTextColor(current.getResources().getColor(R.color.default_post_font));
 		NetworkImageView emoteImage = (NetworkImageView) current.findViewById(R.id.emote_icon);
-		emoteImage.setImageUrl(data.getString(data.getColumnIndex(URL)), NetworkUtils.getImageLoader());
+		emoteImage.setImageUrl(emote.url, NetworkUtils.getImageLoader());
 	}
 
 	
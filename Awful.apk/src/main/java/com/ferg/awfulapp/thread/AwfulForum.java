@@ -30,6 +30,7 @@ package com.ferg.awfulapp.thread;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.database.Cursor;
 import android.net.Uri;
 import androidx.annotation.NonNull;
 import android.util.Log;
@@ -38,6 +39,7 @@ import com.ferg.awfulapp.constants.Constants;
 import com.ferg.awfulapp.forums.ForumRepository;
 import com.ferg.awfulapp.provider.AwfulProvider;
 import com.ferg.awfulapp.provider.DatabaseHelper;
+import com.ferg.awfulapp.provider.RowMapper;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -63,6 +65,42 @@ public class AwfulForum extends AwfulPagedItem {
 	private static final String TAG = "AwfulForum";
 	private static final Pattern forumId_regex = Pattern.compile("forumid=(\\d+)");
 
+	public int id;
+	public int parentId;
+	public String title;
+	public String subtext;
+	public int pageCount;
+	public String tagUrl;
+
+
+	/**
+	 * Reads rows from the forums table.
+	 */
+	public static final class Mapper extends RowMapper<AwfulForum> {
+		private final int id = column(ID);
+		private final int parentId = column(PARENT_ID);
+		private final int title = column(TITLE);
+		private final int subtext = column(SUBTEXT);
+		private final int pageCount = column(PAGE_COUNT);
+		private final int tagUrl = column(TAG_URL);
+
+		@NonNull
+		@Override
+		protected AwfulForum newHolder() {
+			return new AwfulForum();
+		}
+
+		@Override
+		protected void map(@NonNull Cursor row, @NonNull int[] columns, @NonNull AwfulForum forum) {
+			forum.id = row.getInt(columns[id]);
+			forum.parentId = row.getInt(columns[parentId]);
+			forum.title = row.getString(columns[title]);
+			forum.subtext = row.getString(columns[subtext]);
+			forum.pageCount = row.getInt(columns[pageCount]);
+			forum.tagUrl = row.getString(columns[tagUrl]);
+		}
+	}
+
 	public static void processForumIcons(Document response, ContentResolver contentInterface){
 		Elements forumIcons = response.getElementById("forums").getElementsByClass("icon");
 		for (Element node : forumIcons) {
@@ -4,6 +4,7 @@ import android.Manifest;
 import android.content.pm.PackageManager;
 import android.os.Environment;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.core.content.ContextCompat;
 import androidx.collection.ArrayMap;
 import android.widget.Toast;
@@ -11,18 +12,15 @@ import android.widget.Toast;
 import com.ferg.awfulapp.preferences.AwfulPreferences;
 import com.ferg.awfulapp.provider.AwfulTheme;
 import com.ferg.awfulapp.util.AwfulUtils;
-import com.samskivert.mustache.Mustache;
 import com.samskivert.mustache.MustacheException;
 import com.samskivert.mustache.Template;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Created by baka kaba on 04/06/2017.
@@ -145,7 +143,27 @@ public abstract class AwfulHtmlPage {
      * @return the generated content, ready for insertion into the template
      */
     public static String getThreadHtml(List<AwfulPost> aPosts, AwfulPreferences aPrefs, int page, int lastPage) {
-        StringBuilder buffer = new StringBuilder(1024);
+        return getThreadHtml(aPosts, getPostsHtml(aPosts, aPrefs), aPrefs, page, lastPage);
+    }
+
+
+    /**
+     * Generates post content HTML for a list of posts, wrapping HTML that's already been generated
+     * for the posts themselves.
+     * <p>
+     * Producing the posts' HTML is the expensive part, so this lets it happen on a worker thread,
+     * leaving the parts that depend on the state of the thread display (like which page is the last
+     * one) until the page is actually shown.
+     *
+     * @param aPosts    the list of posts to generate HTML for
+     * @param postsHtml the HTML for those posts, as produced by {@link #getPostsHtml(List, AwfulPreferences)}
+     * @param aPrefs    used to customise the post content to the user's preferences
+     * @param page      the number of the page this represents
+     * @param lastPage  the number of the last page in this thread
+     * @return the generated content, ready for insertion into the template
+     */
+    public static String getThreadHtml(List<AwfulPost> aPosts, String postsHtml, AwfulPreferences aPrefs, int page, int lastPage) {
+        StringBuilder buffer = new StringBuilder(postsHtml.length() + 512);
         buffer.append("<div class='content'>\n");
 
         // if we're hiding read posts, work out how many are read and add the 'show old posts' link
@@ -168,7 +186,7 @@ public abstract class AwfulHtmlPage {
         }
 
         // add the actual posts
-        buffer.append(getPostsHtml(aPosts, aPrefs));
+        buffer.append(postsHtml);
 
         if (page == lastPage) {
             buffer.append("<div class='unread' ></div>\n");
@@ -180,28 +198,88 @@ public abstract class AwfulHtmlPage {
 
 
     /**
-     * Generates HTML for a list of posts using the appropriate Mustache layout.
+     * Get a hash of all the preferences that affect the HTML {@link #getThreadHtml(List, AwfulPreferences, int, int)}
+     * produces, so pages rendered with one set of preferences aren't reused with another.
      * <p>
-     * This method generates HTML for the actual posts, taking user preferences into account.
+     * This is stable across app restarts, so it can be used to identify pages stored on disk.
      *
-     * @return a HTML string representing all the posts
+     * @see RenderedPageCache
      */
-    private static String getPostsHtml(List<AwfulPost> aPosts, AwfulPreferences aPrefs) {
-        StringBuilder buffer = new StringBuilder();
+    public static int getRenderSettingsHash(AwfulPreferences aPrefs) {
+        // a custom layout file can be edited, so it's identified by its current state too
+        long layoutModified = 0;
+        long layoutLength = 0;
+        if (!"default".equals(aPrefs.layout)) {
+            File template = new File(Environment.getExternalStorageDirectory() + "/awful/" + aPrefs.layout);
+            layoutModified = template.lastModified();
+            layoutLength = template.length();
+        }
+        return Objects.hash(
+                aPrefs.layout, layoutModified, layoutLength,
+                aPrefs.isOnProbation(),
+                aPrefs.hideOldPosts,
+                aPrefs.highlightOP,
+                aPrefs.hideIgnoredPosts,
+                aPrefs.highlightSelf,
+                aPrefs.username,
+                aPrefs.markedUsers,
+                aPrefs.canLoadAvatars(),
+                aPrefs.blockedAvatarUrls,
+                PostContentRenderer.RenderSettings.from(aPrefs));
+    }
+
+
+    /**
+     * Generates the HTML for a list of posts, using the appropriate Mustache layout.
+     * <p>
+     * This is where each post's content gets rendered (see {@link PostContentRenderer}), so avoid
+     * calling it on the main thread.
+     */
+    @WorkerThread
+    public static String getPostsHtml(List<AwfulPost> aPosts, AwfulPreferences aPrefs) {
+        StringBuilder buffer = new StringBuilder(estimateHtmlLength(aPosts));
+        appendPostsHtml(aPosts, aPrefs, buffer);
+        return buffer.toString();
+    }
+
+
+    /**
+     * Roughly how long a page of these posts will be once it's rendered, so the buffer can be
+     * sized once instead of growing (and copying itself) as each post gets added.
+     */
+    private static int estimateHtmlLength(List<AwfulPost> aPosts) {
+        // the post template adds around 2KB of markup on top of the content
+        int length = 1024;
+        for (AwfulPost post : aPosts) {
+            String content = post.getContent();
+            length += 2048 + (content == null ? 0 : content.length());
+        }
+        return length;
+    }
+
+
+    /**
+     * Generates HTML for a list of posts using the appropriate Mustache layout, adding it to the
+     * end of a buffer.
+     * <p>
+     * This method generates HTML for the actual posts, taking user preferences into account.
+     */
+    private static void appendPostsHtml(List<AwfulPost> aPosts, AwfulPreferences aPrefs, StringBuilder buffer) {
         Template postTemplate;
 
         try {
             postTemplate = getPostTemplate(aPrefs);
         } catch (IOException e) {
             e.printStackTrace();
-            return "";
+            return;
         }
 
         // should be fine to re-use this since we rewrite every mapping each time
         Map<String, String> postData = new ArrayMap<>();
         postData.put("notOnProbation", (aPrefs.isOnProbation()) ? null : "notOnProbation");
+        PostContentRenderer.RenderSettings renderSettings = PostContentRenderer.RenderSettings.from(aPrefs);
 
-        // run each post's data through the template, and combine into a final HTML string
+        // run each post's data through the template, straight into the buffer
         for (AwfulPost post : aPosts) {
             String username = post.getUsername();
             String avatar = post.getAvatar();
@@ -224,29 +302,29 @@ public abstract class AwfulHtmlPage {
             postData.put("avatarText", post.getAvatarText());
             postData.put("lastReadUrl", post.getLastReadUrl());
             postData.put("editable", post.isEditable() ? "editable" : null);
-            postData.put("postcontent", post.getContent());
+            postData.put("postcontent", PostContentRenderer.render(post.getContent(), post.isPreviouslyRead(), aPrefs, renderSettings));
             postData.put("hideAvatar", aPrefs.isBlockedAvatar(avatar) ? "blockedAvatar" : null);
 
             try {
-                buffer.append(postTemplate.execute(postData));
+                MustacheTemplates.render(postTemplate, postData, buffer);
             } catch (MustacheException e) {
                 e.printStackTrace();
             }
         }
-        return buffer.toString();
     }
 
     /**
      * Get a Mustache template for posts, according to the user's preferences.
      * <p>
-     * Falls back to the default template if a custom layout can't be accessed.
+     * Falls back to the default template if a custom layout can't be accessed. Templates are only
+     * compiled the first time they're needed, or when a custom layout file has been changed - see
+     * {@link MustacheTemplates}.
      *
      * @param aPrefs used to check if a custom layout is selected
      * @throws IOException if the default template can't be read
      */
     private static Template getPostTemplate(AwfulPreferences aPrefs) throws IOException {
-        Template postTemplate;
-        Reader templateReader = null;
+        File customTemplate = null;
 
         // user has a custom template selected (nobody uses this I bet)
         if (!"default".equals(aPrefs.layout)) {
@@ -256,7 +334,7 @@ public abstract class AwfulHtmlPage {
                 if (permissionCheck == PackageManager.PERMISSION_GRANTED) {
                     File template = new File(Environment.getExternalStorageDirectory() + "/awful/" + aPrefs.layout);
                     if (template.isFile() && template.canRead()) {
-                        templateReader = new FileReader(template);
+                        customTemplate = template;
                     }
                 } else {
                     Toast.makeText(aPrefs.getContext(), "Can't access custom layout because Awful lacks storage permissions. Reverting to default layout.", Toast.LENGTH_LONG).show();
@@ -264,18 +342,21 @@ public abstract class AwfulHtmlPage {
             } else {
                 File template = new File(Environment.getExternalStorageDirectory() + "/awful/" + aPrefs.layout);
                 if (template.isFile() && template.canRead()) {
-                    templateReader = new FileReader(template);
+                    customTemplate = template;
                 }
 
             }
         }
 
-        // use the default if necessary
-        if (templateReader == null) {
-            templateReader = new InputStreamReader(aPrefs.getResources().getAssets().open("mustache/post.mustache"));
+        if (customTemplate != null) {
+            try {
+                return MustacheTemplates.getFile(customTemplate);
+            } catch (IOException | MustacheException e) {
+                // it's been deleted since we checked, or it's broken - use the default
+                e.printStackTrace();
+            }
         }
-        postTemplate = Mustache.compiler().compile(templateReader);
-        return postTemplate;
+        return MustacheTemplates.getAsset(aPrefs.getResources().getAssets(), MustacheTemplates.POST);
     }
 
 }
@@ -32,6 +32,7 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
 import android.view.View;
+import androidx.annotation.NonNull;
 import android.widget.ImageView;
 import android.widget.TextView;
 
@@ -39,6 +40,7 @@ import com.ferg.awfulapp.R;
 import com.ferg.awfulapp.constants.Constants;
 import com.ferg.awfulapp.preferences.AwfulPreferences;
 import com.ferg.awfulapp.provider.ColorProvider;
+import com.ferg.awfulapp.provider.RowMapper;
 import com.ferg.awfulapp.util.AwfulError;
 
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -83,20 +85,90 @@ public class AwfulMessage extends AwfulPagedItem {
 	public static final int TYPE_QUOTE = 3;
 	public static final int TYPE_EDIT = 4;
 
+	public int id;
+	public String title;
+	public String author;
+	public String date;
+	public int unread;
+	public String icon;
+
+	// draft fields
+	public int type;
+	public String recipient;
+	public String replyContent;
+	public String replyIcon;
+
+
+	/**
+	 * Reads the PM list's rows.
+	 */
+	public static final class Mapper extends RowMapper<AwfulMessage> {
+		private final int id = column(ID);
+		private final int title = column(TITLE);
+		private final int author = column(AUTHOR);
+		private final int date = column(DATE);
+		private final int unread = column(UNREAD);
+		private final int icon = column(ICON);
+
+		@NonNull
+		@Override
+		protected AwfulMessage newHolder() {
+			return new AwfulMessage();
+		}
+
+		@Override
+		protected void map(@NonNull Cursor row, @NonNull int[] columns, @NonNull AwfulMessage message) {
+			message.id = row.getInt(columns[id]);
+			message.title = row.getString(columns[title]);
+			message.author = row.getString(columns[author]);
+			message.date = row.getString(columns[date]);
+			message.unread = row.getInt(columns[unread]);
+			message.icon = row.getString(columns[icon]);
+		}
+	}
+
+	/**
+	 * Reads the reply drafts' rows.
+	 */
+	public static final class DraftMapper extends RowMapper<AwfulMessage> {
+		private final int id = column(ID);
+		private final int type = column(TYPE);
+		private final int title = column(TITLE);
+		private final int recipient = column(RECIPIENT);
+		private final int replyContent = column(REPLY_CONTENT);
+		private final int replyIcon = column(REPLY_ICON);
+
+		@NonNull
+		@Override
+		protected AwfulMessage newHolder() {
+			return new AwfulMessage();
+		}
+
+		@Override
+		protected void map(@NonNull Cursor row, @NonNull int[] columns, @NonNull AwfulMessage draft) {
+			draft.id = row.getInt(columns[id]);
+			draft.type = row.getInt(columns[type]);
+			draft.title = row.getString(columns[title]);
+			draft.recipient = row.getString(columns[recipient]);
+			draft.replyContent = row.getString(columns[replyContent]);
+			draft.replyIcon = row.getString(columns[replyIcon]);
+		}
+	}
+
 	/**
 	 * Generates List view items for PM list.
 	 */
-	public static View getView(View current, AwfulPreferences aPref, Cursor data, boolean selected) {
+	public static View getView(View current, AwfulPreferences aPref, AwfulMessage message, boolean selected) {
 		TextView title = (TextView) current.findViewById(R.id.title);
-		String t = data.getString(data.getColumnIndex(TITLE));
+		String t = message.title;
 		current.findViewById(R.id.unread_count).setVisibility(View.GONE);
 		if(t != null){
 			title.setText(t);
 			title.setTextColor(ColorProvider.PRIMARY_TEXT.getColor());
 		}
 		TextView author = (TextView) current.findViewById(R.id.thread_info);
-		String auth = data.getString(data.getColumnIndex(AUTHOR));
-		String date = data.getString(data.getColumnIndex(DATE));
+		String auth = message.author;
+		String date = message.date;
 		if(auth != null && date != null){
 			author.setText(auth +" - "+date);
 			author.setTextColor(ColorProvider.ALT_TEXT.getColor());
@@ -108,7 +180,7 @@ public class AwfulMessage extends AwfulPagedItem {
 
 		unreadPM.setVisibility(View.VISIBLE);
 		int iconResource;
-		switch (data.getInt(data.getColumnIndex(UNREAD))){
+		switch (message.unread){
 			default:
 			case 0:
 				//unread
@@ -123,7 +195,7 @@ public class AwfulMessage extends AwfulPagedItem {
 				iconResource = R.drawable.ic_reply_dark;
 				break;
 		}
-		String icon = data.getString(data.getColumnIndex(ICON));
+		String icon = message.icon;
 		if(icon != null && !icon.isEmpty()){
 			String localFileName = "@drawable/"+icon.substring(icon.lastIndexOf('/') + 1,icon.lastIndexOf('.')).replace('-','_').toLowerCase();
 			int imageID = current.getResources().getIdentifier(localFileName, null, current.getContext().getPackageName());
@@ -27,16 +27,21 @@
 
 package com.ferg.awfulapp.thread;
 
-import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.ferg.awfulapp.constants.Constants;
-import com.ferg.awfulapp.network.NetworkUtils;
+import com.ferg.awfulapp.network.EmbedResolver;
 import com.ferg.awfulapp.preferences.AwfulPreferences;
+import com.ferg.awfulapp.provider.DatabaseHelper;
+import com.ferg.awfulapp.provider.PostStore;
+import com.ferg.awfulapp.provider.RowMapper;
+import com.ferg.awfulapp.util.ContentCompression;
 
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONException;
@@ -51,6 +56,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
@@ -63,6 +69,19 @@ public class AwfulPost {
 
     public static final String PATH     = "/post";
     public static final Uri CONTENT_URI = Uri.parse("content://" + Constants.AUTHORITY + PATH);
+    /** query this to search the cached posts - see {@link com.ferg.awfulapp.provider.PostSearchIndex} */
+    public static final Uri CONTENT_URI_SEARCH = Uri.parse("content://" + Constants.AUTHORITY + "/postsearch");
+    /** the posts in a particular thread - see {@link #getThreadUri(int)} */
+    public static final Uri CONTENT_URI_THREAD = Uri.withAppendedPath(CONTENT_URI, "thread");
+
+    /**
+     * Get the Uri for the posts in a thread. Query and update this instead of {@link #CONTENT_URI}
+     * where possible - changes to it only notify things watching that thread.
+     */
+    @NonNull
+    public static Uri getThreadUri(int threadId) {
+        return ContentUris.withAppendedId(CONTENT_URI_THREAD, threadId);
+    }
 
     private static final Pattern fixCharacters_regex = Pattern.compile("([\\r\\f])");
 	private static final Pattern youtubeId_regex = Pattern.compile("/v/([\\w_-]+)&?");
@@ -72,6 +91,9 @@ public class AwfulPost {
 	private static final Pattern vimeoId_regex = Pattern.compile("clip_id=(\\d+)&?");
     private static final Pattern userid_regex = Pattern.compile("userid=(\\d+)");
 
+    /** when syncing posts in batches, the number of posts around the unread marker that are stored first */
+    private static final int FIRST_BATCH_SIZE = 10;
+
     private static final List<String> HTTPS_SUPPORTED_DOMAINS =
             Collections.unmodifiableList(Arrays.asList("imgur.com", "somethingawful.com", "giphy.com"));
 
@@ -95,6 +117,19 @@ public class AwfulPost {
 	public static final String AVATAR_TEXT 			 = "avatar_text";
     public static final String CONTENT               = "content";
     public static final String EDITED                = "edited";
+    // see PostFingerprint - used to skip parsing posts that haven't changed
+    public static final String FINGERPRINT           = "fingerprint";
+    // the post's plain text, for the search index - this isn't stored in the posts table
+    public static final String SEARCH_TEXT           = "search_text";
+
+    /**
+     * Selects a page of posts from a thread's Uri (see {@link #getThreadUri(int)}), given the index of
+     * the first post and the one after the last. With the thread ID the Uri adds, this is a range
+     * scan over the posts table's (thread_id, post_index) index, which returns the rows already in
+     * {@link #PAGE_SORT_ORDER} - keep them matching the index, or every page load will sort.
+     */
+    public static final String PAGE_SELECTION = POST_INDEX + ">=? AND " + POST_INDEX + "<?";
+    public static final String PAGE_SORT_ORDER = POST_INDEX + " ASC";
 
 	public static final String FORM_KEY = "form_key";
 	public static final String FORM_COOKIE = "form_cookie";
@@ -118,6 +153,8 @@ public class AwfulPost {
     private String mAvatarSecond = "";
     private String mAvatarText = "";
     private String mContent = "";
+    /** the content as it came from the database, if it's compressed and hasn't been needed yet */
+    private byte[] mCompressedContent = null;
     private String mEdited = "";
 
     private boolean isIgnored = false;
@@ -137,7 +174,7 @@ public class AwfulPost {
         result.put("username", mUsername);
         result.put("avatar", mAvatar);
         result.put("avatar_second", mAvatarSecond);
-        result.put("content", mContent);
+        result.put("content", getContent());
         result.put("edited", mEdited);
         result.put("isIgnored", Boolean.toString(isIgnored()));
         result.put("previouslyRead", Boolean.toString(mPreviouslyRead));
@@ -231,68 +268,94 @@ public class AwfulPost {
     public void setAvatarSecond(String aAvatarSecond) { mAvatarSecond = aAvatarSecond; }
 
     public String getContent() {
+        if (mCompressedContent != null) {
+            mContent = ContentCompression.decompress(mCompressedContent);
+            mCompressedContent = null;
+        }
         return mContent;
     }
 
     public void setContent(String aContent) {
         mContent = aContent;
+        mCompressedContent = null;
+    }
+
+    /**
+     * Set the content as it's stored in the database - it's only decompressed (if necessary) when
+     * something calls {@link #getContent()}.
+     *
+     * @param stored a value from {@link ContentCompression#getStored(Cursor, int)}
+     */
+    public void setStoredContent(Object stored) {
+        if (stored instanceof byte[]) {
+            mCompressedContent = (byte[]) stored;
+        } else {
+            setContent((String) stored);
+        }
     }
 
     public static ArrayList<AwfulPost> fromCursor(Context aContext, Cursor aCursor) {
-        ArrayList<AwfulPost> result = new ArrayList<AwfulPost>();
-
-        if (aCursor.moveToFirst()) {
-            int idIndex = aCursor.getColumnIndex(ID);
-            int threadIdIndex = aCursor.getColumnIndex(THREAD_ID);
-            int postIndexIndex = aCursor.getColumnIndex(POST_INDEX);//ooh, meta
-            int dateIndex = aCursor.getColumnIndex(DATE);
-            int regdateIndex = aCursor.getColumnIndex(REGDATE);
-            int userIdIndex = aCursor.getColumnIndex(USER_ID);
-            int usernameIndex = aCursor.getColumnIndex(USERNAME);
-            int isIgnoredIndex = aCursor.getColumnIndex(IS_IGNORED);
-            int previouslyReadIndex = aCursor.getColumnIndex(PREVIOUSLY_READ);
-            int editableIndex = aCursor.getColumnIndex(EDITABLE);
-            int isOpIndex = aCursor.getColumnIndex(IS_OP);
-            int isPlatIndex = aCursor.getColumnIndex(IS_PLAT);
-            int roleIndex = aCursor.getColumnIndex(ROLE);
-            int avatarIndex = aCursor.getColumnIndex(AVATAR);
-            int avatarSecondIndex = aCursor.getColumnIndex(AVATAR_SECOND);
-            int avatarTextIndex = aCursor.getColumnIndex(AVATAR_TEXT);
-            int contentIndex = aCursor.getColumnIndex(CONTENT);
-            int editedIndex = aCursor.getColumnIndex(EDITED);
-
-            AwfulPost current;
-
-            do {
-                current = new AwfulPost();
-                current.setId(aCursor.getString(idIndex));
-                current.setThreadId(aCursor.getInt(threadIdIndex));
-                current.setDate(aCursor.getString(dateIndex));
-                current.setRegDate(aCursor.getString(regdateIndex));
-                current.setUserId(aCursor.getString(userIdIndex));
-                current.setUsername(aCursor.getString(usernameIndex));
-                current.setIsIgnored(aCursor.getInt(isIgnoredIndex) == 1);
-                current.setPreviouslyRead(aCursor.getInt(previouslyReadIndex) > 0);
-                current.setLastReadUrl(aCursor.getInt(postIndexIndex)+"");
-                current.setEditable(aCursor.getInt(editableIndex) == 1);
-                current.setIsOp(aCursor.getInt(isOpIndex) == 1);
-                current.setIsPlat(aCursor.getInt(isPlatIndex) > 0);
-                current.setRole(aCursor.getString(roleIndex));
-                current.setAvatar(aCursor.getString(avatarIndex));
-                current.setAvatarSecond(aCursor.getString(avatarSecondIndex));
-                current.setAvatarText(aCursor.getString(avatarTextIndex));
-                current.setContent(aCursor.getString(contentIndex));
-                current.setEdited(aCursor.getString(editedIndex));
-
-                result.add(current);
-            } while (aCursor.moveToNext());
-        }else{
+        ArrayList<AwfulPost> result = new ArrayList<>(new Mapper().readAll(aCursor));
+        if (result.isEmpty()) {
             Timber.i("No posts to convert.");
         }
         return result;
     }
 
 
+    /**
+     * Reads rows from the posts table.
+     */
+    public static final class Mapper extends RowMapper<AwfulPost> {
+        private final int id = column(ID);
+        private final int threadId = column(THREAD_ID);
+        private final int postIndex = column(POST_INDEX);
+        private final int date = column(DATE);
+        private final int regDate = column(REGDATE);
+        private final int userId = column(USER_ID);
+        private final int username = column(USERNAME);
+        private final int isIgnored = column(IS_IGNORED);
+        private final int previouslyRead = column(PREVIOUSLY_READ);
+        private final int editable = column(EDITABLE);
+        private final int isOp = column(IS_OP);
+        private final int isPlat = column(IS_PLAT);
+        private final int role = column(ROLE);
+        private final int avatar = column(AVATAR);
+        private final int avatarSecond = column(AVATAR_SECOND);
+        private final int avatarText = column(AVATAR_TEXT);
+        private final int content = column(CONTENT);
+        private final int edited = column(EDITED);
+
+        @NonNull
+        @Override
+        protected AwfulPost newHolder() {
+            return new AwfulPost();
+        }
+
+        @Override
+        protected void map(@NonNull Cursor row, @NonNull int[] columns, @NonNull AwfulPost post) {
+            post.setId(row.getString(columns[id]));
+            post.setThreadId(row.getInt(columns[threadId]));
+            post.setDate(row.getString(columns[date]));
+            post.setRegDate(row.getString(columns[regDate]));
+            post.setUserId(row.getString(columns[userId]));
+            post.setUsername(row.getString(columns[username]));
+            post.setIsIgnored(row.getInt(columns[isIgnored]) == 1);
+            post.setPreviouslyRead(row.getInt(columns[previouslyRead]) > 0);
+            post.setLastReadUrl(row.getInt(columns[postIndex]) + "");
+            post.setEditable(row.getInt(columns[editable]) == 1);
+            post.setIsOp(row.getInt(columns[isOp]) == 1);
+            post.setIsPlat(row.getInt(columns[isPlat]) > 0);
+            post.setRole(row.getString(columns[role]));
+            post.setAvatar(row.getString(columns[avatar]));
+            post.setAvatarSecond(row.getString(columns[avatarSecond]));
+            post.setAvatarText(row.getString(columns[avatarText]));
+            post.setStoredContent(ContentCompression.getStored(row, columns[content]));
+            post.setEdited(row.getString(columns[edited]));
+        }
+    }
+
+
     /**
      * Process any videos found within an Element's hierarchy.
      *
@@ -304,131 +367,154 @@ public class AwfulPost {
      * @param inlineTiktoks     whether TikTok videos should be displayed inline, or replaced with a link
      */
     public static void convertVideos(Element contentNode, boolean inlineYouTubes, boolean inlineTiktoks){
+        for (Element youTube : contentNode.getElementsByClass("youtube-player")) {
+            convertYouTube(youTube, inlineYouTubes, postElementIsNMWSOrSpoilered(youTube));
+        }
+        for (Element tiktok : contentNode.getElementsByClass("tiktok-player")) {
+            convertTiktok(tiktok, inlineTiktoks, postElementIsNMWSOrSpoilered(tiktok));
+        }
+        for (Element node : contentNode.getElementsByClass("bbcode_video")) {
+            convertBbcodeVideo(node);
+        }
+    }
 
-        Elements youtubeNodes = contentNode.getElementsByClass("youtube-player");
-
-        for (Element youTube : youtubeNodes) {
-            try {
-                String src = youTube.attr("src");
-                //int height = Integer.parseInt(youTube.attr("height"));
-                //int width = Integer.parseInt(youTube.attr("width"));
-                Matcher youtubeMatcher = youtubeHDId_regex.matcher(src);
-                if (youtubeMatcher.find()) {
-                    String videoId = youtubeMatcher.group(1);
-                    String link = "http://www.youtube.com/watch?v=" + videoId;
-                    String image = "http://img.youtube.com/vi/" + videoId + "/0.jpg";
-
-                    Element youtubeLink = new Element(Tag.valueOf("a"), "");
-                    youtubeLink.text(link);
-                    youtubeLink.attr("href", link);
-                    if (!inlineYouTubes || postElementIsNMWSOrSpoilered(youTube)) {
-                        youTube.replaceWith(youtubeLink);
-                    } else {
-                        youTube.after(youtubeLink);
-                        youtubeLink.before(new Element(Tag.valueOf("br"), ""));
-
-                        Element youtubeContainer = new Element(Tag.valueOf("div"), "");
-                        youtubeContainer.addClass("videoWrapper");
-                        youTube.before(youtubeContainer);
-                        youtubeContainer.appendChild(youTube);
-                        youTube.attr("sandbox", youTube.attr("sandbox") + " allow-top-navigation");
-                    }
-                }
 
-            } catch (Exception e) {
-                Timber.e(e, "Failed youtube conversion:");
-                continue; //if we fail to convert the video tag, we can still display the rest.
+    /**
+     * Rewrite a single YouTube embed (a .youtube-player element), adding a link to the video and
+     * wrapping the player for inline display, or replacing it with the link entirely.
+     *
+     * @param youTube       the embed element
+     * @param inline        whether the video should be displayed inline
+     * @param linkOnly      true if the video should never be displayed inline, e.g. in a NWS post or spoiler
+     * @return the link element that was added, or null if the element couldn't be converted
+     */
+    @Nullable
+    static Element convertYouTube(Element youTube, boolean inline, boolean linkOnly) {
+        try {
+            String src = youTube.attr("src");
+            Matcher youtubeMatcher = youtubeHDId_regex.matcher(src);
+            if (youtubeMatcher.find()) {
+                String videoId = youtubeMatcher.group(1);
+                String link = "http://www.youtube.com/watch?v=" + videoId;
+
+                Element youtubeLink = new Element(Tag.valueOf("a"), "");
+                youtubeLink.text(link);
+                youtubeLink.attr("href", link);
+                if (!inline || linkOnly) {
+                    youTube.replaceWith(youtubeLink);
+                } else {
+                    youTube.after(youtubeLink);
+                    youtubeLink.before(new Element(Tag.valueOf("br"), ""));
+
+                    Element youtubeContainer = new Element(Tag.valueOf("div"), "");
+                    youtubeContainer.addClass("videoWrapper");
+                    youTube.before(youtubeContainer);
+                    youtubeContainer.appendChild(youTube);
+                    youTube.attr("sandbox", youTube.attr("sandbox") + " allow-top-navigation");
+                }
+                return youtubeLink;
             }
+        } catch (Exception e) {
+            //if we fail to convert the video tag, we can still display the rest.
+            Timber.e(e, "Failed youtube conversion:");
         }
+        return null;
+    }
+
 
-        /*
-         * TikTok URL forms seem to be:
-         * https://www.tiktok.com/embed/[video id = \d+]
-         * https://www.tiktok.com/@[username]/video/[video id]
-         * there are more but they don't relate to embedding and don't appear to have video IDs associated
-        */
-        Elements tiktokNodes = contentNode.getElementsByClass("tiktok-player");
-
-        for (Element tiktok : tiktokNodes) {
-            try {
-                String src = tiktok.attr("src");
-                Matcher tiktokMatcher = tiktokId_regex.matcher(src);
-                if (tiktokMatcher.find()) {
-                    String videoId = tiktokMatcher.group(1);
-                    // usernames aren't included in the embed link format, thankfully they don't matter
-                    String linkURLPrefix = "https://www.tiktok.com/@/video/";
-                    String link = linkURLPrefix + videoId;
-
-                    Element tiktokLink = new Element(Tag.valueOf("a"), "");
-                    tiktokLink.text(link);
-                    tiktokLink.attr("href", link);
-                    if (!inlineTiktoks || postElementIsNMWSOrSpoilered(tiktok)) {
-                        tiktok.replaceWith(tiktokLink);
-                    } else {
-                        tiktok.after(tiktokLink);
-                        tiktokLink.before(new Element(Tag.valueOf("br"), ""));
-                    }
+    /**
+     * Rewrite a single TikTok embed (a .tiktok-player element), adding a link to the video or
+     * replacing the player with the link entirely.
+     *
+     * TikTok URL forms seem to be:
+     * https://www.tiktok.com/embed/[video id = \d+]
+     * https://www.tiktok.com/@[username]/video/[video id]
+     * there are more but they don't relate to embedding and don't appear to have video IDs associated
+     *
+     * @param tiktok        the embed element
+     * @param inline        whether the video should be displayed inline
+     * @param linkOnly      true if the video should never be displayed inline, e.g. in a NWS post or spoiler
+     * @return the link element that was added, or null if the element couldn't be converted
+     */
+    @Nullable
+    static Element convertTiktok(Element tiktok, boolean inline, boolean linkOnly) {
+        try {
+            String src = tiktok.attr("src");
+            Matcher tiktokMatcher = tiktokId_regex.matcher(src);
+            if (tiktokMatcher.find()) {
+                String videoId = tiktokMatcher.group(1);
+                // usernames aren't included in the embed link format, thankfully they don't matter
+                String linkURLPrefix = "https://www.tiktok.com/@/video/";
+                String link = linkURLPrefix + videoId;
+
+                Element tiktokLink = new Element(Tag.valueOf("a"), "");
+                tiktokLink.text(link);
+                tiktokLink.attr("href", link);
+                if (!inline || linkOnly) {
+                    tiktok.replaceWith(tiktokLink);
+                } else {
+                    tiktok.after(tiktokLink);
+                    tiktokLink.before(new Element(Tag.valueOf("br"), ""));
                 }
-            } catch (Exception e) {
-                Timber.e(e, "Failed TikTok conversion:");
-                continue;
+                return tiktokLink;
             }
+        } catch (Exception e) {
+            Timber.e(e, "Failed TikTok conversion:");
         }
+        return null;
+    }
 
-        Elements videoNodes = contentNode.getElementsByClass("bbcode_video");
-        for (Element node : videoNodes) {
-            try {
-                String src = null;
-                int height = 0;
-                int width = 0;
-                Elements object = node.getElementsByTag("object");
-                if (object.size() > 0) {
-                    height = Integer.parseInt(object.get(0).attr("height"));
-                    width = Integer.parseInt(object.get(0).attr("width"));
-                    Elements emb = object.get(0).getElementsByTag("embed");
-                    if (emb.size() > 0) {
-                        src = emb.get(0).attr("src");
-                    }
+
+    /**
+     * Replace a single .bbcode_video element (an old-style object/embed video) with a link to the video.
+     *
+     * @param node the video element
+     * @return the link element that replaced it, or null if the element was left alone
+     */
+    @Nullable
+    public static Element convertBbcodeVideo(Element node) {
+        try {
+            String src = null;
+            int height = 0;
+            int width = 0;
+            Elements object = node.getElementsByTag("object");
+            if (object.size() > 0) {
+                height = Integer.parseInt(object.get(0).attr("height"));
+                width = Integer.parseInt(object.get(0).attr("width"));
+                Elements emb = object.get(0).getElementsByTag("embed");
+                if (emb.size() > 0) {
+                    src = emb.get(0).attr("src");
                 }
-                if (src != null && height != 0 && width != 0) {
-                    String link = null, image = null;
-                    Matcher vimeo = vimeoId_regex.matcher(src);
-                    if (vimeo.find()) {
-                        String videoId = vimeo.group(1);
-                        Element vimeoXML;
-                        try {
-                            vimeoXML = NetworkUtils.get("http://vimeo.com/api/v2/video/" + videoId + ".xml");
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            continue;
-                        }
-                        if (vimeoXML.getElementsByTag("mobile_url").first() != null) {
-                            link = vimeoXML.getElementsByTag("mobile_url").first().text();
-                        } else {
-                            link = vimeoXML.getElementsByTag("url").first().text();
-                        }
-                        image = vimeoXML.getElementsByTag("thumbnail_large").first().text();
-                        src = link;
-                    } else {
-                        node.empty();
-                        Element ln = new Element(Tag.valueOf("a"), "");
-                        ln.attr("href", src);
-                        ln.text(src);
-                        node.replaceWith(ln);
-                        continue;
-                    }
-                    node.empty();
-                    Element ln = new Element(Tag.valueOf("a"), "");
-                    ln.attr("href", link);
-                    ln.text(link);
-                    node.replaceWith(ln);
+            }
+            if (src != null && height != 0 && width != 0) {
+                String link;
+                Matcher vimeo = vimeoId_regex.matcher(src);
+                String videoId = null;
+                if (vimeo.find()) {
+                    // link to the video page for now - the WebView gets the actual video url from EmbedResolver
+                    // when the post is displayed, so parsing never has to wait on the network
+                    videoId = vimeo.group(1);
+                    link = "https://vimeo.com/" + videoId;
+                } else {
+                    link = src;
                 }
-
-            } catch (Exception e) {
-                Timber.e(e, "Failed video conversion:");
-                continue;//if we fail to convert the video tag, we can still display the rest.
+                node.empty();
+                Element ln = new Element(Tag.valueOf("a"), "");
+                ln.attr("href", link);
+                ln.text(link);
+                if (videoId != null) {
+                    ln.addClass(EmbedResolver.PLACEHOLDER_CLASS)
+                            .attr("data-embed-provider", EmbedResolver.VIMEO)
+                            .attr("data-embed-id", videoId);
+                }
+                node.replaceWith(ln);
+                return ln;
             }
+        } catch (Exception e) {
+            //if we fail to convert the video tag, we can still display the rest.
+            Timber.e(e, "Failed video conversion:");
         }
+        return null;
     }
 
     /**
@@ -491,40 +577,119 @@ public class AwfulPost {
     /**
      * Parse a thread page to grab its post data.
      *
-     * @param content
+     * @param posts where the thread's posts are stored
      * @param aThread
      * @param aThreadId
      * @param unreadIndex
      * @param opId
-     * @param prefs
      * @param startIndex
      * @return the number of posts found on the page
      */
-    public static int syncPosts(ContentResolver content, Document aThread, int aThreadId, int unreadIndex, int opId, AwfulPreferences prefs, int startIndex){
-        List<ContentValues> result = AwfulPost.parsePosts(aThread, aThreadId, unreadIndex, opId, prefs, startIndex);
-        int resultCount = content.bulkInsert(CONTENT_URI, result.toArray(new ContentValues[result.size()]));
-        Timber.i("Inserted " + resultCount + " posts into DB, threadId:" + aThreadId + " unreadIndex: " + unreadIndex);
+    public static int syncPosts(PostStore posts, Document aThread, int aThreadId, int unreadIndex, int opId, int startIndex){
+        return syncPosts(posts, aThread, aThreadId, unreadIndex, opId, startIndex, null);
+    }
+
+
+    /**
+     * Parse a thread page to grab its post data, optionally storing the posts the user will see
+     * first before parsing the rest.
+     * <p>
+     * If a listener is supplied, the page is synced in two batches - the first {@link #FIRST_BATCH_SIZE}
+     * posts from the unread marker (or the top of the page, if there are no unread posts on it) are
+     * parsed and written to the database, and the listener is called, and <i>then</i> the rest of
+     * the page is parsed and written. That way the part of the page the display scrolls to can be
+     * shown without waiting for every post.
+     *
+     * @param firstPostsStored called (on this thread) once the first batch of posts has been stored, may be null
+     * @return the number of posts found on the page
+     */
+    public static int syncPosts(PostStore posts, Document aThread, int aThreadId, int unreadIndex, int opId, int startIndex,
+                                @Nullable Runnable firstPostsStored){
+        Map<Integer, Long> knownFingerprints = posts.getFingerprints(aThreadId);
+        List<Callable<ContentValues>> parseTasks = createParseTasks(aThread, aThreadId, unreadIndex, opId, startIndex, knownFingerprints);
+        if (firstPostsStored == null || parseTasks.size() <= FIRST_BATCH_SIZE) {
+            int result = storePosts(posts, parsePosts(parseTasks), aThreadId, unreadIndex);
+            if (firstPostsStored != null) {
+                firstPostsStored.run();
+            }
+            return result;
+        }
+
+        // the first unread post is where the page display will scroll to, so get that part ready first
+        int firstUnreadOnPage = Math.max(unreadIndex + 1 - startIndex, 0);
+        int firstBatchStart = firstUnreadOnPage < parseTasks.size() ? firstUnreadOnPage : 0;
+        int firstBatchEnd = Math.min(firstBatchStart + FIRST_BATCH_SIZE, parseTasks.size());
+        List<Callable<ContentValues>> firstBatch = parseTasks.subList(firstBatchStart, firstBatchEnd);
+        List<Callable<ContentValues>> remainder = new ArrayList<>(parseTasks.size() - firstBatch.size());
+        remainder.addAll(parseTasks.subList(0, firstBatchStart));
+        remainder.addAll(parseTasks.subList(firstBatchEnd, parseTasks.size()));
+
+        int resultCount = storePosts(posts, parsePosts(firstBatch), aThreadId, unreadIndex);
+        Timber.d("Stored first %d posts (from position %d on the page), notifying listener", firstBatch.size(), firstBatchStart);
+        firstPostsStored.run();
+        return resultCount + storePosts(posts, parsePosts(remainder), aThreadId, unreadIndex);
+    }
+
+
+    /**
+     * Write a set of parsed posts to the database.
+     *
+     * @return the number of posts that were stored or updated
+     */
+    private static int storePosts(PostStore posts, List<ContentValues> result, int aThreadId, int unreadIndex) {
+        if (result.isEmpty()) {
+            return 0;
+        }
+        // posts that haven't changed just need their timestamps updating, so they don't get trimmed from the DB
+        List<ContentValues> changedPosts = new ArrayList<>(result.size());
+        List<String> unchangedIds = new ArrayList<>();
+        for (ContentValues post : result) {
+            if (PostParseTask.isUnchanged(post)) {
+                unchangedIds.add(post.getAsString(ID));
+            } else {
+                changedPosts.add(post);
+            }
+        }
+        int resultCount = posts.storePosts(changedPosts.toArray(new ContentValues[changedPosts.size()]));
+        resultCount += posts.touchPosts(aThreadId, result.get(0).getAsString(DatabaseHelper.UPDATED_TIMESTAMP), unchangedIds);
+        // only the pages showing changed posts need rendering again
+        List<Integer> changedIndexes = new ArrayList<>(changedPosts.size());
+        for (ContentValues post : changedPosts) {
+            changedIndexes.add(post.getAsInteger(POST_INDEX));
+        }
+        RenderedPageCache.getInstance().invalidatePosts(aThreadId, changedIndexes);
+        Timber.i("Inserted %d posts into DB (%d unchanged), threadId: %d unreadIndex: %d", changedPosts.size(), unchangedIds.size(), aThreadId, unreadIndex);
         return resultCount;
     }
 
 
-    public static List<ContentValues> parsePosts(Document aThread, int aThreadId, int unreadIndex, int opId, AwfulPreferences prefs, int startIndex){
+    public static List<ContentValues> parsePosts(Document aThread, int aThreadId, int unreadIndex, int opId, int startIndex, Map<Integer, Long> knownFingerprints){
+        return parsePosts(createParseTasks(aThread, aThreadId, unreadIndex, opId, startIndex, knownFingerprints));
+    }
+
+
+    private static List<Callable<ContentValues>> createParseTasks(Document aThread, int aThreadId, int unreadIndex, int opId, int startIndex, Map<Integer, Long> knownFingerprints){
 		int index = startIndex;
         String updateTime = new Timestamp(System.currentTimeMillis()).toString();
+        long pageKey = PostFingerprint.pageKey(opId);
 
         Elements posts = aThread.getElementsByClass("post");
         List<Callable<ContentValues>> parseTasks = new ArrayList<>(posts.size());
         for(Element postData : posts){
-            parseTasks.add(new PostParseTask(postData, updateTime, index, unreadIndex, aThreadId, opId, prefs));
+            parseTasks.add(new PostParseTask(postData, updateTime, index, unreadIndex, aThreadId, opId, pageKey, knownFingerprints));
             index++;
         }
+        return parseTasks;
+    }
+
 
+    private static List<ContentValues> parsePosts(List<Callable<ContentValues>> parseTasks) {
         long startTime = System.currentTimeMillis();
         // parse posts using multithreading if possible - some of the Jsoup calls (#html in particular) are very slow
         // (#html should be a lot faster when jsoup updates to handle Windows-1252 encoding user their fast path for Entities#canEncode)
         List<ContentValues> result = ForumParsingKt.parse(parseTasks);
         float averageParseTime = (System.currentTimeMillis() - startTime) / (float) parseTasks.size();
-        Timber.i("%d posts found, %d posts parsed\nAverage parse time: %.3fms", posts.size(), result.size(), averageParseTime);
+        Timber.i("%d posts parsed\nAverage parse time: %.3fms", result.size(), averageParseTime);
         return result;
     }
 
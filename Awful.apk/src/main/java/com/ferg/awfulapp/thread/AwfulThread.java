@@ -27,7 +27,6 @@
 
 package com.ferg.awfulapp.thread;
 
-import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
@@ -51,8 +50,10 @@ import com.ferg.awfulapp.R;
 import com.ferg.awfulapp.constants.Constants;
 import com.ferg.awfulapp.network.NetworkUtils;
 import com.ferg.awfulapp.preferences.AwfulPreferences;
+import com.ferg.awfulapp.provider.AwfulDatabase;
 import com.ferg.awfulapp.provider.ColorProvider;
 import com.ferg.awfulapp.provider.DatabaseHelper;
+import com.ferg.awfulapp.provider.RowMapper;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -73,6 +74,8 @@ public class AwfulThread extends AwfulPagedItem  {
     public static final String UCP_PATH     = "/ucpthread";
     public static final Uri CONTENT_URI     = Uri.parse("content://" + Constants.AUTHORITY + PATH);
 	public static final Uri CONTENT_URI_UCP = Uri.parse("content://" + Constants.AUTHORITY + UCP_PATH);
+    /** the threads listed in a particular forum - see {@link #getForumUri(int)} */
+    public static final Uri CONTENT_URI_FORUM = Uri.withAppendedPath(CONTENT_URI, "forum");
 
     public static final String ID 		            = "_id";
     public static final String INDEX 		        = "thread_index";
@@ -127,43 +130,86 @@ public class AwfulThread extends AwfulPagedItem  {
     public int category;
 
 
+    /**
+     * Get the Uri for the threads listed in a forum. Query and update this instead of {@link #CONTENT_URI}
+     * where possible - changes to it only notify things watching that forum.
+     */
+    @NonNull
+    public static Uri getForumUri(int forumId) {
+        return ContentUris.withAppendedId(CONTENT_URI_FORUM, forumId);
+    }
+
+
     @Nullable
     public static AwfulThread fromCursorRow(@NonNull Cursor row) {
         if (row.isBeforeFirst() || row.isAfterLast()) {
             Timber.w("fromCursor: passed empty row");
             return null;
         }
-        AwfulThread thread = new AwfulThread();
-
-        thread.id = row.getInt(row.getColumnIndex(ID));
-        thread.index = row.getInt(row.getColumnIndex(INDEX));
-        thread.title = row.getString(row.getColumnIndex(TITLE));
-
-        thread.forumId = row.getInt(row.getColumnIndex(FORUM_ID));
-        // TODO: 03/06/2017 this column name is taken from the thread projection, but is it ever used?
-//        thread.forumTitle = row.getString(row.getColumnIndex(FORUM_TITLE));
-
-        thread.author = row.getString(row.getColumnIndex(AUTHOR));
-        thread.authorId = row.getInt(row.getColumnIndex(AUTHOR_ID));
-        thread.lastPoster = row.getString(row.getColumnIndex(LASTPOSTER));
-        thread.postCount = row.getInt(row.getColumnIndex(POSTCOUNT));
-        thread.unreadCount = row.getInt(row.getColumnIndex(UNREADCOUNT));
-
-        thread.rating = row.getInt(row.getColumnIndex(RATING));
-        thread.bookmarkType = row.getInt(row.getColumnIndex(BOOKMARKED));
+        return new Mapper().read(row);
+    }
 
-        thread.isLocked = row.getInt(row.getColumnIndex(LOCKED)) > 0;
-        thread.archived = row.getInt(row.getColumnIndex(ARCHIVED)) > 0;
-        thread.isSticky = row.getInt(row.getColumnIndex(STICKY)) > 0;
-        thread.canOpenClose = row.getInt(row.getColumnIndex(CAN_OPEN_CLOSE)) > 0;
-        thread.hasBeenViewed = row.getInt(row.getColumnIndex(HAS_VIEWED_THREAD)) == 1;
 
-        thread.tagUrl = row.getString(row.getColumnIndex(TAG_URL));
-        thread.tagCacheFile = row.getString(row.getColumnIndex(TAG_CACHEFILE));
-        thread.tagExtra = row.getInt(row.getColumnIndex(TAG_EXTRA));
-        thread.category = row.getInt(row.getColumnIndex(CATEGORY));
+    /**
+     * Reads thread rows, from the threads table or the bookmarks.
+     */
+    public static final class Mapper extends RowMapper<AwfulThread> {
+        private final int id = column(ID);
+        private final int index = column(INDEX);
+        private final int title = column(TITLE);
+        private final int forumId = column(FORUM_ID);
+        private final int author = column(AUTHOR);
+        private final int authorId = column(AUTHOR_ID);
+        private final int lastPoster = column(LASTPOSTER);
+        private final int postCount = column(POSTCOUNT);
+        private final int unreadCount = column(UNREADCOUNT);
+        private final int rating = column(RATING);
+        private final int bookmarkType = column(BOOKMARKED);
+        private final int locked = column(LOCKED);
+        private final int archived = column(ARCHIVED);
+        private final int sticky = column(STICKY);
+        private final int canOpenClose = column(CAN_OPEN_CLOSE);
+        private final int hasBeenViewed = column(HAS_VIEWED_THREAD);
+        private final int tagUrl = column(TAG_URL);
+        private final int tagCacheFile = column(TAG_CACHEFILE);
+        private final int tagExtra = column(TAG_EXTRA);
+        private final int category = column(CATEGORY);
+
+        @NonNull
+        @Override
+        protected AwfulThread newHolder() {
+            return new AwfulThread();
+        }
 
-        return thread;
+        @Override
+        protected void map(@NonNull Cursor row, @NonNull int[] columns, @NonNull AwfulThread thread) {
+            thread.id = row.getInt(columns[id]);
+            thread.index = row.getInt(columns[index]);
+            thread.title = row.getString(columns[title]);
+
+            thread.forumId = row.getInt(columns[forumId]);
+            // TODO: 03/06/2017 FORUM_TITLE is in the thread projection, but is it ever used?
+
+            thread.author = row.getString(columns[author]);
+            thread.authorId = row.getInt(columns[authorId]);
+            thread.lastPoster = row.getString(columns[lastPoster]);
+            thread.postCount = row.getInt(columns[postCount]);
+            thread.unreadCount = row.getInt(columns[unreadCount]);
+
+            thread.rating = row.getInt(columns[rating]);
+            thread.bookmarkType = row.getInt(columns[bookmarkType]);
+
+            thread.isLocked = row.getInt(columns[locked]) > 0;
+            thread.archived = row.getInt(columns[archived]) > 0;
+            thread.isSticky = row.getInt(columns[sticky]) > 0;
+            thread.canOpenClose = row.getInt(columns[canOpenClose]) > 0;
+            thread.hasBeenViewed = row.getInt(columns[hasBeenViewed]) == 1;
+
+            thread.tagUrl = row.getString(columns[tagUrl]);
+            thread.tagCacheFile = row.getString(columns[tagCacheFile]);
+            thread.tagExtra = row.getInt(columns[tagExtra]);
+            thread.category = row.getInt(columns[category]);
+        }
     }
 
 
@@ -256,16 +302,27 @@ public class AwfulThread extends AwfulPagedItem  {
      * <p>
      * Also stores/updates the rest of the thread metadata - title, locked status etc., and passes
      * the page to {@link AwfulPost} for parsing and syncing.
-     *  @param resolver     a ContentResolver used to access the database
+     *  @param database     the database to load and store the thread's data in
      * @param page         the thread page's HTML document
      * @param threadId     the ID of this thread
      * @param pageNumber   which page of the thread this document represents
      * @param lastPageNumber the number of the last page in this thread
      * @param postsPerPage used to calculate post counts
-     * @param prefs        a preferences instance
      * @param filterUserId if this page is for a thread filtered by user, this should be set to the user's ID, otherwise 0
      */
-    public static void parseThreadPage(ContentResolver resolver, Document page, int threadId, int pageNumber, int lastPageNumber, int postsPerPage, AwfulPreferences prefs, int filterUserId) {
+    public static void parseThreadPage(AwfulDatabase database, Document page, int threadId, int pageNumber, int lastPageNumber, int postsPerPage, int filterUserId) {
+        parseThreadPage(database, page, threadId, pageNumber, lastPageNumber, postsPerPage, filterUserId, null);
+    }
+
+
+    /**
+     * Parse a page from a thread, as {@link #parseThreadPage(AwfulDatabase, Document, int, int, int, int, int)},
+     * storing the posts around the unread marker first so they can be displayed early.
+     *
+     * @param firstPostsStored called on this thread once the first batch of posts has been stored, may be null
+     */
+    public static void parseThreadPage(AwfulDatabase database, Document page, int threadId, int pageNumber, int lastPageNumber, int postsPerPage, int filterUserId,
+                                       @Nullable Runnable firstPostsStored) {
         long startTime = System.currentTimeMillis();
         // TODO: 03/06/2017 see issue #503 on GitHub - filtering by user means the thread data gets overwritten by the pages from this new, shorter thread containing their posts
         final int BLANK_USER_ID = 0;
@@ -273,26 +330,24 @@ public class AwfulThread extends AwfulPagedItem  {
         final boolean filteringOnUserId = filterUserId > BLANK_USER_ID;
 
         // finally write new thread data to the database
-        ContentValues cv = new ThreadPageParseTask(resolver, page, threadId, pageNumber, lastPageNumber, postsPerPage, prefs).call();
-        // TODO: 04/06/2017 this should be handled in the database-management classes
+        ContentValues cv = new ThreadPageParseTask(database, page, threadId, pageNumber, lastPageNumber, postsPerPage, firstPostsStored).call();
         String update_time = new Timestamp(startTime).toString();
         cv.put(DatabaseHelper.UPDATED_TIMESTAMP, update_time);
-        if (resolver.update(ContentUris.withAppendedId(CONTENT_URI, threadId), cv, null, null) < 1) {
-            resolver.insert(CONTENT_URI, cv);
+        if (database.threads().updateThread(threadId, cv) < 1) {
+            database.threads().storeThreads(new ContentValues[]{cv});
         }
 
         Timber.i("Thread parse time: %dms", System.currentTimeMillis() - startTime);
     }
 
 
+    /**
+     * Display a thread in a thread list item.
+     *
+     * @param thread the thread's data, read from the list's cursor with a {@link Mapper}
+     */
     @SuppressWarnings("deprecation")
-	public static void setDataOnThreadListItem(View item, AwfulPreferences prefs, Cursor data, AwfulFragment parent) {
-        AwfulThread thread = fromCursorRow(data);
-        if (thread == null) {
-            Timber.w("setDataOnThreadView: unable to get data for thread!");
-            return;
-        }
-
+	public static void setDataOnThreadListItem(View item, AwfulPreferences prefs, @NonNull AwfulThread thread, AwfulFragment parent) {
         Resources resources = item.getResources();
         Context context = item.getContext();
         // get the forum ID for getting themed resources
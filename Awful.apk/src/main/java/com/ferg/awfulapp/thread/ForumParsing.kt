@@ -1,13 +1,10 @@
 package com.ferg.awfulapp.thread
 
-import android.content.ContentResolver
-import android.content.ContentUris
 import android.content.ContentValues
-import android.net.Uri
+import androidx.annotation.VisibleForTesting
 import com.ferg.awfulapp.constants.Constants
 import com.ferg.awfulapp.network.NetworkUtils
-import com.ferg.awfulapp.preferences.AwfulPreferences
-import com.ferg.awfulapp.provider.AwfulProvider
+import com.ferg.awfulapp.provider.AwfulDatabase
 import com.ferg.awfulapp.provider.DatabaseHelper
 import com.ferg.awfulapp.thread.AwfulPost.*
 import com.ferg.awfulapp.thread.AwfulThread.*
@@ -25,29 +22,38 @@ import java.util.regex.Pattern
  *
  * Different types of parsing (posts on a thread page, threads on a forum page etc.) have their own
  * tasks - you can either #call these yourself, or use one of the #parse functions to run the tasks
- * on the dedicated parsing threads. Generally you should call [parse] which attempts to run tasks
+ * on the shared parsing threads (see [ParseScheduler]). Generally you should call [parse] which attempts to run tasks
  * in parallel if possible, and handles errors and fallback to running on the calling thread.
  */
 
-private val parseTaskExecutor: ExecutorService by lazy { Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()) }
-
 @Throws(Exception::class)
 fun <T> parseSingleThreaded(parseTasks: Collection<Callable<T>>) = parseTasks.map(Callable<T>::call)
 
-@Throws(InterruptedException::class, ExecutionException::class)
-fun <T> parseMultiThreaded(parseTasks: Collection<Callable<T>>) =
-    parseTaskExecutor.invokeAll(parseTasks).map(Future<T>::get)
+@Throws(ExecutionException::class)
+fun <T> parseMultiThreaded(
+    parseTasks: Collection<Callable<T>>,
+    priority: ParsePriority = ParseScheduler.currentPriority,
+    isCancelled: () -> Boolean = ParseScheduler.currentCancelCheck
+) = ParseScheduler.invokeAll(parseTasks, priority, isCancelled)
 
 /**
  * Run a set of parse tasks in parallel, retrying on the current thread if there's a failure.
  *
+ * Tasks are scheduled by [ParseScheduler] with the given [priority], which defaults to whatever's
+ * been set for the current thread (e.g. by the request handling the page). If the parse is
+ * cancelled, or the calling thread is interrupted, this throws a [CancellationException] rather
+ * than falling back to the calling thread - nobody wants the results anymore.
+ *
  * This function blocks until all results are available.
  */
-fun <T> parse(parseTasks: Collection<Callable<T>>): List<T> {
+@JvmOverloads
+fun <T> parse(
+    parseTasks: Collection<Callable<T>>,
+    priority: ParsePriority = ParseScheduler.currentPriority,
+    isCancelled: () -> Boolean = ParseScheduler.currentCancelCheck
+): List<T> {
     try {
-        return parseMultiThreaded(parseTasks)
-    } catch (e: InterruptedException) {
-        Timber.w(e, "parse: parallel parse failed - attempting on main thread")
+        return parseMultiThreaded(parseTasks, priority, isCancelled)
     } catch (e: ExecutionException) {
         Timber.w(e, "parse: parallel parse failed - attempting on main thread")
     }
@@ -71,12 +77,18 @@ fun <T> parse(parseTasks: Collection<Callable<T>>): List<T> {
  *
  * Don't use this for parsing previews! Use [PostPreviewParseTask] instead.
  *
+ * If the post's [PostFingerprint] matches the one in [knownFingerprints], it hasn't changed since
+ * it was stored, so it isn't parsed again - the task just returns its ID and the new [updateTime].
+ * Use [isUnchanged] to tell these results apart from fully parsed posts.
+ *
  * @param[postData]         an Element containing a post structure
  * @param[updateTime]       a parsing timestamp, which should be the same for each parsing task in a page load
  * @param[index]            the index of this post in the thread
  * @param[lastReadIndex]    the index of the last-read post, used to mark this post as seen or unseen
  * @param[threadId]         the ID of this post's thread
  * @param[opId]             the user ID of the person who created the thread
+ * @param[pageKey]          the [PostFingerprint.pageKey] for this page
+ * @param[knownFingerprints] the stored fingerprints for this thread's posts, by post ID
  * @returns the post data represented as a ContentValues (see [AwfulPost])
  */
 class PostParseTask(
@@ -86,24 +98,60 @@ class PostParseTask(
     private val lastReadIndex: Int,
     private val threadId: Int,
     private val opId: Int,
-    private val prefs: AwfulPreferences
+    private val pageKey: Long,
+    private val knownFingerprints: Map<Int, Long>
 ) : Callable<ContentValues> {
 
     companion object {
         private val USER_ID_REGEX = Pattern.compile("userid=(\\d+)")
         private val POST_ID_GARBAGE = "\\D".toRegex()
         private val POST_TIMESTAMP_GARBAGE = "[^\\w\\s:,]".toRegex()
+
+        /**
+         * Returns true if these values came from a post that matched its stored fingerprint, and
+         * only hold its ID and update timestamp.
+         */
+        @JvmStatic
+        fun isUnchanged(values: ContentValues) = !values.containsKey(CONTENT)
     }
 
     @Throws(Exception::class)
-    override fun call(): ContentValues {
-        return ContentValues().apply {
+    override fun call(): ContentValues = ContentValues().apply {
+        parseValues().forEach { (key, value) ->
+            when (value) {
+                is Int -> put(key, value)
+                is Long -> put(key, value)
+                is String -> put(key, value)
+                else -> throw IllegalArgumentException("Unexpected value for $key: $value")
+            }
+        }
+    }
+
+    /**
+     * Parse the post into the values [call] returns, in a plain map so they can be checked
+     * without Android's ContentValues.
+     */
+    @VisibleForTesting
+    fun parseValues(): Map<String, Any> {
+        //post id is formatted "post1234567", so we strip out the "post" prefix.
+        val postId = postData.id().replace(POST_ID_GARBAGE, "").toInt()
+        val fingerprint = PostFingerprint.of(postData, index, index <= lastReadIndex, pageKey)
+        if (knownFingerprints[postId] == fingerprint) {
+            return linkedMapOf(
+                AwfulPost.ID to postId,
+                DatabaseHelper.UPDATED_TIMESTAMP to updateTime
+            )
+        }
+
+        // walk the post once to find everything we need, instead of running a separate search for each field
+        val post = PostParseVisitor().also { postData.traverse(it) }
+
+        return LinkedHashMap<String, Any>().apply {
             //timestamp for DB trimming after a week
             put(DatabaseHelper.UPDATED_TIMESTAMP, updateTime)
             put(THREAD_ID, threadId)
-
-            //post id is formatted "post1234567", so we strip out the "post" prefix.
-            put(AwfulPost.ID, postData.id().replace(POST_ID_GARBAGE, "").toInt())
+            put(AwfulPost.ID, postId)
+            put(FINGERPRINT, fingerprint)
             //we calculate this beforehand, but now can pull this from the post (thanks cooch!)
             //wait actually no, FYAD doesn't support this. ~FYAD Privilege~
             put(
@@ -114,66 +162,42 @@ class PostParseTask(
             put(IS_IGNORED, postData.hasClass("ignored").sqlBool)
 
             // Check for "class=seenX", or just rely on unread index
-            val markedSeen = postData.selectFirst("[class^=seen]") != null
-            val postHasBeenRead = markedSeen || index <= lastReadIndex
+            val postHasBeenRead = post.markedSeen || index <= lastReadIndex
             put(PREVIOUSLY_READ, postHasBeenRead.sqlBool)
 
-            put(USERNAME, textForClass("author"))
-            put(REGDATE, textForClass("registered"))
-            put(IS_PLAT, postData.hasDescendantWithClass("platinum").sqlBool)
-            put(ROLE, getRole())
+            put(USERNAME, post.author?.text() ?: "")
+            put(REGDATE, post.registered?.text() ?: "")
+            put(IS_PLAT, post.isPlat.sqlBool)
+            put(ROLE, post.author?.classNames()?.find { it.startsWith("role-") }?.substring(5) ?: "")
 
             // grab the custom title, and also avatar and alternate avatar if there are any
-            postData.selectFirst(".title")
-                ?.also { put(AVATAR_TEXT, it.text() ?: "") }
-                ?.select("img")
-                ?.take(2)
-                ?.forEachIndexed { index, image ->
-                    image.let {
-                        tryConvertToHttps(it)
-                        put(
-                            if (index == 0) { AVATAR } else { AVATAR_SECOND },
-                            it.attr("src")
-                        )
-                    }
-                }
-
-            // FYAD has its post contents inside the .complete_shit element, so we just grab that instead of the full .postbody
-            val postBody = postData.selectFirst(".postbody")
-            val fyadPostBody = postBody!!.selectFirst(".complete_shit")
-            (fyadPostBody ?: postBody).apply {
-                convertVideos(this, prefs.inlineYoutube, prefs.inlineTiktoks)
-                getElementsByTag("img").forEach { processPostImage(it, postHasBeenRead, prefs) }
-                getElementsByTag("a").forEach(::tryConvertToHttps)
-                if (this == fyadPostBody) {
-                    // FYAD sigs are currently a sibling div alongside .complete_shit, so we need to stick them at the end of the content
-                    postBody.selectFirst("> .signature")?.appendTo(this)
-                }
-                put(CONTENT, html())
+            post.title?.let { put(AVATAR_TEXT, it.text() ?: "") }
+            post.avatars.forEachIndexed { index, image ->
+                tryConvertToHttps(image)
+                put(
+                    if (index == 0) { AVATAR } else { AVATAR_SECOND },
+                    image.attr("src")
+                )
             }
 
+            // FYAD has its post contents inside the .complete_shit element, so we grab that instead of the full .postbody
+            // this is stored in its canonical form - preference-dependent rewriting happens when it's displayed
+            val content = post.canonicalContent()!!
+            put(CONTENT, content.html())
+            // the search index only needs the text, and it's cheaper to get it here than from the stored HTML
+            put(SEARCH_TEXT, content.text())
+
             // extract and clean up post timestamp
-            NetworkUtils.unencodeHtml(textForClass("postdate"))
+            NetworkUtils.unencodeHtml(post.postDate?.text() ?: "")
                 .replace(POST_TIMESTAMP_GARBAGE, "").trim()
                 .let { put(DATE, it) }
 
 
             // parse user ID - fall back to the profile link if necessary
-            var userId = postData.getElementsByClass("userinfo")
-                .flatMap(Element::classNames)
-                .map { it.substringAfter("userid-", "") }
-                .firstOrNull(String::isNotEmpty)
-                ?.toInt()
-
-            if (userId == null) {
-                postData.selectFirst(".profilelinks [href*='userid=']")?.let {
-                    with(USER_ID_REGEX.matcher(it.attr("href"))) {
-                        if (find()) {
-                            userId = group(1).toInt()
-                        }
-                    }
-                }
-            }
+            val userId = post.userInfoId ?: post.profileLink
+                ?.let { USER_ID_REGEX.matcher(it.attr("href")) }
+                ?.takeIf(Matcher::find)
+                ?.group(1)?.toInt()
 
             if (userId != null) {
                 put(USER_ID, userId)
@@ -183,26 +207,14 @@ class PostParseTask(
                 Timber.w("Failed to parse UID!")
             }
 
-            postData.getElementsByClass("editedBy")
-                .mapNotNull { it.children().first() }
-                .firstOrNull()
-                ?.let { put(EDITED, "<i>${it.text()}</i>") }
+            post.editedBy?.let { put(EDITED, "<i>${it.text()}</i>") }
 
-            put(EDITABLE, postData.getElementsByAttributeValue("alt", "Edit").isNotEmpty().sqlBool)
+            put(EDITABLE, post.editable.sqlBool)
         }
     }
 
     private val Boolean.sqlBool: Int
         get() = if (this) 1 else 0
-
-    private fun textForClass(cssClass: String): String =
-        postData.selectFirst(".$cssClass")?.text() ?: ""
-
-    private fun getRole(): String =
-        postData.selectFirst(".author")?.classNames()?.find { it.startsWith("role-") }?.substring(5) ?: ""
-
-    private fun Element.hasDescendantWithClass(cssClass: String): Boolean =
-        this.selectFirst(".$cssClass") != null
 }
 
 
@@ -242,6 +254,7 @@ class ForumParseTask(
 
     companion object {
         private val THREAD_URL_ID_REGEX = Pattern.compile("([^#]+)#(\\d+)$")
+        private val USER_ID_REGEX = Pattern.compile("userid=(\\d+)")
     }
 
     override fun call(): ContentValues {
@@ -256,9 +269,9 @@ class ForumParseTask(
             threadElement.selectFirst(".author")?.let {
                 author = it.text()
                 it.selectFirst("a[href*='userid']")
-                    ?.attr("href")
-                    ?.let { Uri.parse(it).getQueryParameter("userid") }
-                    ?.let { authorId = it.toInt() }
+                    ?.let { USER_ID_REGEX.matcher(it.attr("href")) }
+                    ?.takeIf(Matcher::find)
+                    ?.let { authorId = it.group(1).toInt() }
             }
             canOpenClose = author == username
 
@@ -331,21 +344,23 @@ class ForumParseTask(
  * A task that parses thread data from a thread page and returns it as a [ContentValues],
  * as defined in [AwfulThread].
  *
- * @param resolver used to load current data for this thread
+ * @param database used to load current data for this thread, and to store its posts
  * @param page a Document representing a page from a thread
  * @param threadId the ID of the thread this page is from
  * @param pageNumber this page's number in the thread when it was fetched
  * @param postsPerPage the posts-per-page setting used while fetching this page
+ * @param firstPostsStored if supplied, the page's posts are stored in two batches, and this is called
+ * once the first batch (around the unread marker) is in the database - see [AwfulPost.syncPosts]
  * @returns new or updated data for this thread, represented as a ContentValues (see [AwfulThread])
  */
-class ThreadPageParseTask(
-        private val resolver: ContentResolver,
+class ThreadPageParseTask @JvmOverloads constructor(
+        private val database: AwfulDatabase,
         private val page: Document,
         private val threadId: Int,
         private val pageNumber: Int,
         private val lastPageNumber: Int,
         private val postsPerPage: Int,
-        private val prefs: AwfulPreferences
+        private val firstPostsStored: Runnable? = null
 ) : Callable<ContentValues> {
 
     companion object {
@@ -354,10 +369,7 @@ class ThreadPageParseTask(
 
     override fun call(): ContentValues {
         // try and load the current thread data from the DB, otherwise create a new AwfulThread
-        val uri = ContentUris.withAppendedId(AwfulThread.CONTENT_URI, threadId.toLong())
-        val thread = resolver.query(uri, AwfulProvider.ThreadProjection, null, null, null).use {
-            it?.apply { moveToFirst() }?.let(::fromCursorRow) ?: AwfulThread()
-        }
+        val thread = database.threads().getThread(threadId) ?: AwfulThread()
 
         with(thread) {
             id = threadId
@@ -392,13 +404,13 @@ class ThreadPageParseTask(
             // hand off the page for post parsing, and get back the number of posts it found
             // TODO: 02/06/2017 sort out the ignored posts issue, the post parser doesn't put them in the DB (if you have 'always hide' on in the settings) and it messes up the numbers
             val postsOnThisPage = syncPosts(
-                resolver,
+                database.posts(),
                 page,
                 threadId,
                 firstUnreadIndex,
                 authorId,
-                prefs,
-                firstPostOnPageIndex
+                firstPostOnPageIndex,
+                firstPostsStored
             )
             val postsOnPreviousPages = (pageNumber - 1) * postsPerPage
             val minimumPostsRead = postsOnPreviousPages + postsOnThisPage
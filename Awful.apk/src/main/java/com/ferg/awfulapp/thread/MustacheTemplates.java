@@ -0,0 +1,147 @@
+package com.ferg.awfulapp.thread;
+
+import android.content.res.AssetManager;
+import androidx.annotation.NonNull;
+
+import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.MustacheException;
+import com.samskivert.mustache.Template;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled Mustache templates, so each one is compiled once instead of on every render.
+ * <p>
+ * Templates in the app's assets can't change, so they're kept for as long as the app is running.
+ * Templates from files (like custom post layouts) are checked each time they're requested, and
+ * recompiled if the file's been modified. Which template to use is up to the caller, so changing
+ * a preference that picks a different one just means a different one gets requested.
+ * <p>
+ * Compiled templates are immutable, so they can be rendered on any thread.
+ */
+public final class MustacheTemplates {
+
+    public static final String POST = "mustache/post.mustache";
+    public static final String LEPERS_COLONY = "mustache/lepers_colony.mustache";
+
+    private static final Mustache.Compiler COMPILER = Mustache.compiler();
+    private static final Map<String, Template> assetTemplates = new ConcurrentHashMap<>();
+    private static final Map<String, FileTemplate> fileTemplates = new ConcurrentHashMap<>();
+
+
+    private MustacheTemplates() {
+    }
+
+
+    /**
+     * Get a compiled template from the app's assets.
+     *
+     * @param path the template's path in the assets folder, e.g. {@link #POST}
+     * @throws IOException if the template hasn't been compiled yet, and can't be read
+     */
+    @NonNull
+    public static Template getAsset(@NonNull AssetManager assets, @NonNull String path) throws IOException {
+        Template template = assetTemplates.get(path);
+        if (template == null) {
+            try (Reader reader = new InputStreamReader(assets.open(path), StandardCharsets.UTF_8)) {
+                template = COMPILER.compile(reader);
+            }
+            assetTemplates.put(path, template);
+        }
+        return template;
+    }
+
+    /**
+     * Get a compiled template from a file, recompiling it if the file has changed since it was
+     * last compiled.
+     *
+     * @throws IOException if the file needs compiling and can't be read
+     */
+    @NonNull
+    public static Template getFile(@NonNull File file) throws IOException {
+        String key = file.getAbsolutePath();
+        long modified = file.lastModified();
+        long length = file.length();
+        FileTemplate cached = fileTemplates.get(key);
+        if (cached != null && cached.modified == modified && cached.length == length) {
+            return cached.template;
+        }
+        Template template;
+        try (Reader reader = new FileReader(file)) {
+            template = COMPILER.compile(reader);
+        }
+        fileTemplates.put(key, new FileTemplate(template, modified, length));
+        return template;
+    }
+
+
+    /**
+     * Render a template straight into a buffer, instead of into a new String that then has to be
+     * copied into it.
+     *
+     * @throws MustacheException if the template can't be rendered with this data
+     */
+    public static void render(@NonNull Template template, @NonNull Object data, @NonNull Appendable out) {
+        template.execute(data, new AppendableWriter(out));
+    }
+
+
+    private static class FileTemplate {
+        final Template template;
+        final long modified;
+        final long length;
+
+        FileTemplate(Template template, long modified, long length) {
+            this.template = template;
+            this.modified = modified;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Adapts an Appendable to the Writer that templates render into.
+     */
+    private static class AppendableWriter extends Writer {
+        private final Appendable out;
+
+        AppendableWriter(Appendable out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(@NonNull char[] chars, int offset, int length) throws IOException {
+            if (out instanceof StringBuilder) {
+                ((StringBuilder) out).append(chars, offset, length);
+            } else {
+                out.append(CharBuffer.wrap(chars, offset, length));
+            }
+        }
+
+        @Override
+        public void write(@NonNull String str, int offset, int length) throws IOException {
+            out.append(str, offset, offset + length);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            out.append((char) c);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
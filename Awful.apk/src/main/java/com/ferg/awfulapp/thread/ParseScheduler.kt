@@ -0,0 +1,252 @@
+package com.ferg.awfulapp.thread
+
+import androidx.annotation.VisibleForTesting
+import timber.log.Timber
+import java.util.EnumMap
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * The priority lanes parse work can be scheduled in.
+ *
+ * Queued jobs are always picked up in lane order, so [FOREGROUND] work (the page the user is
+ * actually looking at) jumps ahead of anything queued in the lower lanes. Jobs that are already
+ * running aren't interrupted though - parse tasks are short, so that's never a long wait.
+ */
+enum class ParsePriority {
+    /** parsing something the user is waiting to see */
+    FOREGROUND,
+    /** parsing something the user will probably want to see soon */
+    PREFETCH,
+    /** housekeeping and sync work nobody is waiting on */
+    BACKGROUND
+}
+
+
+/**
+ * Runs parse tasks on a shared pool of worker threads, in [ParsePriority] order.
+ *
+ * Each lane has a limited queue - if a lane is full, extra tasks are run on the calling thread
+ * instead, so a big burst of background work can't build up an unbounded backlog.
+ *
+ * You generally don't need to use this directly - call [parse] and it will schedule the tasks using
+ * the priority set up for the current thread by [runWith] (e.g. by an AwfulRequest while it handles
+ * its response), defaulting to [ParsePriority.FOREGROUND]. All the app's parsing shares one
+ * scheduler, through the companion's functions - separate instances are only made for testing.
+ *
+ * @param poolSize the number of worker threads
+ */
+class ParseScheduler @VisibleForTesting internal constructor(private val poolSize: Int) {
+
+    companion object {
+        /** the max number of tasks each lane can have queued up */
+        private const val LANE_CAPACITY = 256
+
+        /** how often a blocked caller checks whether it's been cancelled */
+        private const val CANCEL_CHECK_MILLIS = 50L
+
+        private val shared by lazy { ParseScheduler(Runtime.getRuntime().availableProcessors()) }
+
+        private val currentContext = ThreadLocal<ParseContext>()
+
+        /** the priority and cancellation check set for the current thread by [runWith] */
+        private class ParseContext(val priority: ParsePriority, val isCancelled: () -> Boolean)
+
+
+        /**
+         * Run some code on the current thread, with any parsing it does scheduled with this [priority].
+         *
+         * If [isCancelled] becomes true while the code is waiting for parse results, the outstanding
+         * tasks are dropped and [parse] throws a [CancellationException].
+         */
+        fun <R> runWith(priority: ParsePriority, isCancelled: () -> Boolean = { false }, block: () -> R): R {
+            val previous = currentContext.get()
+            currentContext.set(ParseContext(priority, isCancelled))
+            try {
+                return block()
+            } finally {
+                if (previous == null) currentContext.remove() else currentContext.set(previous)
+            }
+        }
+
+        /** The priority for parse tasks started on this thread */
+        val currentPriority: ParsePriority
+            get() = currentContext.get()?.priority ?: ParsePriority.FOREGROUND
+
+        /** The cancellation check for parse tasks started on this thread */
+        val currentCancelCheck: () -> Boolean
+            get() = currentContext.get()?.isCancelled ?: { false }
+
+        /**
+         * Run a set of tasks on the shared scheduler - see the instance [invokeAll].
+         */
+        @Throws(ExecutionException::class)
+        fun <T> invokeAll(
+            tasks: Collection<Callable<T>>,
+            priority: ParsePriority,
+            isCancelled: () -> Boolean = { false }
+        ): List<T> = shared.invokeAll(tasks, priority, isCancelled)
+
+        /** Log the shared scheduler's current [laneStats] */
+        fun logLaneStats() = shared.logLaneStats()
+    }
+
+    private val sequence = AtomicLong()
+    private val lanes = EnumMap<ParsePriority, Lane>(ParsePriority::class.java).apply {
+        ParsePriority.values().forEach { put(it, Lane()) }
+    }
+
+    private val executor: ThreadPoolExecutor by lazy {
+        val threadCount = AtomicInteger()
+        ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, PriorityBlockingQueue()) { r ->
+            Thread(r, "Parser ${threadCount.incrementAndGet()}")
+        }
+    }
+
+    /**
+     * Run a set of tasks in the given [priority] lane, blocking until they're all complete.
+     *
+     * If the caller is interrupted, or [isCancelled] returns true while it's waiting, any tasks
+     * that haven't started yet are removed from the queue and this throws a [CancellationException].
+     * If a task fails, its [ExecutionException] is thrown.
+     */
+    @Throws(ExecutionException::class)
+    fun <T> invokeAll(
+        tasks: Collection<Callable<T>>,
+        priority: ParsePriority,
+        isCancelled: () -> Boolean = { false }
+    ): List<T> {
+        val lane = lanes.getValue(priority)
+        var overflowed = false
+        val jobs = tasks.map { task ->
+            val queued = lane.tryEnqueue()
+            ParseJob(task, priority, sequence.getAndIncrement(), lane, queued).also { job ->
+                if (queued) executor.execute(job) else job.run().also { overflowed = true }
+            }
+        }
+        if (overflowed) {
+            Timber.w("Parse lane %s is full - ran tasks on the calling thread", priority)
+            logLaneStats()
+        }
+        try {
+            return jobs.map { awaitResult(it, isCancelled) }
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw CancellationException("Parse interrupted").apply { initCause(e) }
+        } finally {
+            // anything still queued is abandoned - this does nothing if the jobs completed
+            jobs.forEach(::abandon)
+        }
+    }
+
+    private fun <T> awaitResult(job: ParseJob<T>, isCancelled: () -> Boolean): T {
+        while (true) {
+            if (isCancelled()) throw CancellationException("Parse cancelled")
+            try {
+                return job.get(CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS)
+            } catch (e: TimeoutException) {
+                // still running, go round again
+            }
+        }
+    }
+
+    private fun abandon(job: ParseJob<*>) {
+        if (!job.isDone && executor.remove(job)) {
+            job.lane.dequeued()
+        }
+        job.cancel(false)
+    }
+
+
+    /**
+     * Get a snapshot of each lane's current queue depth and wait times, for diagnostics.
+     */
+    fun laneStats(): Map<ParsePriority, LaneStats> =
+        lanes.mapValues { (_, lane) -> lane.snapshot() }
+
+    /** Log the current [laneStats] */
+    fun logLaneStats() {
+        laneStats().forEach { (priority, stats) -> Timber.d("Parse lane %s: %s", priority, stats) }
+    }
+
+
+    /**
+     * Diagnostic data for a lane.
+     *
+     * @param queued the number of tasks currently waiting to run
+     * @param started the total number of tasks that have been started from the queue
+     * @param ranOnCaller the number of tasks that had to run on the caller's thread because the lane was full
+     * @param averageWaitMillis the average time tasks have spent queued
+     * @param maxWaitMillis the longest time a task has spent queued
+     */
+    data class LaneStats(
+        val queued: Int,
+        val started: Long,
+        val ranOnCaller: Long,
+        val averageWaitMillis: Double,
+        val maxWaitMillis: Double
+    )
+
+    /** Tracks a lane's queue, and the time tasks spend waiting in it */
+    internal class Lane {
+        private val queued = AtomicInteger()
+        private val started = AtomicLong()
+        private val ranOnCaller = AtomicLong()
+        private val totalWaitNanos = AtomicLong()
+        private val maxWaitNanos = AtomicLong()
+
+        /** reserve a place in the queue - returns false if it's full */
+        fun tryEnqueue(): Boolean {
+            while (true) {
+                val current = queued.get()
+                if (current >= LANE_CAPACITY) {
+                    ranOnCaller.incrementAndGet()
+                    return false
+                }
+                if (queued.compareAndSet(current, current + 1)) return true
+            }
+        }
+
+        fun dequeued() {
+            queued.decrementAndGet()
+        }
+
+        fun started(waitNanos: Long) {
+            queued.decrementAndGet()
+            started.incrementAndGet()
+            totalWaitNanos.addAndGet(waitNanos)
+            maxWaitNanos.accumulateAndGet(waitNanos) { a, b -> maxOf(a, b) }
+        }
+
+        fun snapshot(): LaneStats {
+            val startedCount = started.get()
+            val averageWait = if (startedCount == 0L) 0.0 else totalWaitNanos.get() / startedCount.toDouble()
+            return LaneStats(queued.get(), startedCount, ranOnCaller.get(), averageWait / 1_000_000, maxWaitNanos.get() / 1_000_000.0)
+        }
+    }
+
+
+    /**
+     * A parse task in the queue, ordered by lane and then by the order it was added.
+     */
+    private class ParseJob<T>(
+        task: Callable<T>,
+        private val priority: ParsePriority,
+        private val sequenceNumber: Long,
+        val lane: Lane,
+        private val queued: Boolean
+    ) : FutureTask<T>(task), Comparable<ParseJob<*>> {
+
+        private val queuedAt = System.nanoTime()
+
+        override fun run() {
+            // tasks that were rejected from a full lane run directly, and were never counted as queued
+            if (queued) lane.started(System.nanoTime() - queuedAt)
+            super.run()
+        }
+
+        override fun compareTo(other: ParseJob<*>): Int =
+            compareValuesBy(this, other, { it.priority }, { it.sequenceNumber })
+    }
+}
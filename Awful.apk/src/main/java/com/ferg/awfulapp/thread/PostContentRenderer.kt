@@ -0,0 +1,138 @@
+package com.ferg.awfulapp.thread
+
+import androidx.collection.LruCache
+import com.ferg.awfulapp.constants.Constants
+import com.ferg.awfulapp.preferences.AwfulPreferences
+import org.jsoup.Jsoup
+import org.jsoup.nodes.Element
+import org.jsoup.nodes.Node
+import org.jsoup.select.NodeVisitor
+
+/**
+ * Applies the user's preferences to stored post content, right before it's displayed.
+ *
+ * Posts are stored in their canonical form (see [PostParseVisitor.canonicalContent]), so things
+ * like inline videos, image thumbnailing and smilies are handled here instead. That way we only
+ * pay for rewriting the posts that actually get shown, and changing one of those preferences just
+ * means rendering the post again - no need to fetch and parse the page again.
+ *
+ * Rendered content is cached, keyed on the content and the relevant settings, so redisplaying a
+ * page (or a post that appears on it again after a refresh) is basically free.
+ */
+object PostContentRenderer {
+
+    /** max size of the render cache, in chars (of both the canonical and rendered content) */
+    private const val CACHE_SIZE_CHARS = 2 * 1024 * 1024
+
+    private val cache = object : LruCache<RenderKey, String>(CACHE_SIZE_CHARS) {
+        override fun sizeOf(key: RenderKey, value: String) = key.content.length + value.length
+    }
+
+
+    /**
+     * Render some stored post content according to the user's preferences.
+     *
+     * @param content       the canonical post content, as stored in the database
+     * @param isOldPost     whether this post has been read before (old images may be hidden)
+     * @param prefs         used to make decisions about how to display things
+     * @param settings      the [RenderSettings] taken from [prefs] - pass this in when rendering a
+     *                      batch of posts to avoid reading the prefs for every one
+     * @return the post content, ready for display
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun render(
+        content: String,
+        isOldPost: Boolean,
+        prefs: AwfulPreferences,
+        settings: RenderSettings = RenderSettings.from(prefs)
+    ): String {
+        // the old/new distinction only matters when we're hiding old images, so don't cache two copies if we don't have to
+        val key = RenderKey(content, isOldPost && settings.hideOldImages, settings)
+        cache[key]?.let { return it }
+
+        val body = Jsoup.parseBodyFragment(content, Constants.BASE_URL).body()
+        val visitor = ContentVisitor().also { body.traverse(it) }
+        visitor.rewrite(isOldPost, prefs)
+        return body.html().also { cache.put(key, it) }
+    }
+
+    /** Throw away all the rendered content */
+    @JvmStatic
+    fun clearCache() = cache.evictAll()
+
+
+    /**
+     * The preferences that affect how post content is rendered.
+     */
+    data class RenderSettings(
+        val inlineYoutube: Boolean,
+        val inlineTiktoks: Boolean,
+        val showSmilies: Boolean,
+        val hideOldImages: Boolean,
+        val canLoadImages: Boolean,
+        val disableGifs: Boolean,
+        val disableTimgs: Boolean,
+        val imgurThumbnails: String?
+    ) {
+        companion object {
+            @JvmStatic
+            fun from(prefs: AwfulPreferences) = with(prefs) {
+                RenderSettings(inlineYoutube, inlineTiktoks, showSmilies, hideOldImages, canLoadImages(),
+                    disableGifs, disableTimgs, imgurThumbnails)
+            }
+        }
+    }
+
+    private data class RenderKey(val content: String, val isOldPost: Boolean, val settings: RenderSettings)
+
+
+    /**
+     * Finds the elements in post content that need rewriting. Like [PostParseVisitor], the actual
+     * rewriting happens after the traversal, in [rewrite].
+     */
+    private class ContentVisitor : NodeVisitor {
+        private var hasNwsTag = false
+        private val youTubes = ArrayList<Element>()
+        private val tiktoks = ArrayList<Element>()
+        private val images = ArrayList<Element>()
+        private val links = ArrayList<Element>()
+
+        override fun head(node: Node, depth: Int) {
+            if (node !is Element) return
+            when (node.normalName()) {
+                "img" -> {
+                    val title = node.attr("title")
+                    if (title == ":nws:" || title == ":nms:") hasNwsTag = true
+                    images.add(node)
+                }
+                "a" -> links.add(node)
+            }
+            when {
+                node.hasClass("youtube-player") -> youTubes.add(node)
+                node.hasClass("tiktok-player") -> tiktoks.add(node)
+            }
+        }
+
+        override fun tail(node: Node, depth: Int) {}
+
+        /**
+         * Rewrite the content, in the same order [AwfulPost.convertVideos], [AwfulPost.processPostImage]
+         * and [AwfulPost.tryConvertToHttps] have always been applied in.
+         */
+        fun rewrite(isOldPost: Boolean, prefs: AwfulPreferences) {
+            val newLinks = ArrayList<Element>()
+            youTubes.forEach {
+                AwfulPost.convertYouTube(it, prefs.inlineYoutube, isSpoileredOrNws(it))?.let(newLinks::add)
+            }
+            tiktoks.forEach {
+                AwfulPost.convertTiktok(it, prefs.inlineTiktoks, isSpoileredOrNws(it))?.let(newLinks::add)
+            }
+            images.forEach { AwfulPost.processPostImage(it, isOldPost, prefs) }
+            links.forEach(AwfulPost::tryConvertToHttps)
+            newLinks.forEach(AwfulPost::tryConvertToHttps)
+        }
+
+        private fun isSpoileredOrNws(video: Element) = hasNwsTag || video.parent()?.hasClass("bbc-spoiler") == true
+    }
+}
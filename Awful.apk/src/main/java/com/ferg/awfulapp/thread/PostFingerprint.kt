@@ -0,0 +1,91 @@
+package com.ferg.awfulapp.thread
+
+import org.jsoup.nodes.DataNode
+import org.jsoup.nodes.Element
+import org.jsoup.nodes.Node
+import org.jsoup.nodes.TextNode
+import org.jsoup.select.NodeVisitor
+
+/**
+ * Fingerprints the raw HTML of posts on a thread page, so we can tell which ones have changed
+ * since they were last parsed and stored.
+ *
+ * A fingerprint covers the post's whole HTML region - which includes its ID and its "edited by"
+ * marker - plus everything else [PostParseTask] uses to build the stored post: its index in the
+ * thread, whether it counts as read, and the thread's OP. If any of those change, so does the
+ * fingerprint, and the post gets parsed again. (The user's display preferences don't matter here,
+ * since they're applied when posts are displayed - see [PostContentRenderer].)
+ *
+ * Hashing the nodes directly is much cheaper than serialising the post with `html()`, which is
+ * the slow part of post parsing.
+ */
+object PostFingerprint {
+
+    private const val FNV_OFFSET_BASIS = -0x340d631b7bdddcdbL
+    private const val FNV_PRIME = 0x100000001b3L
+
+    /**
+     * Generate a fingerprint for a post.
+     *
+     * @param postData      the element wrapping the post, as passed to [PostParseTask]
+     * @param index         the index of this post in the thread
+     * @param readByIndex   whether the post counts as read because it's before the last-read index
+     * @param pageKey       the key for this page's parse settings, from [pageKey]
+     */
+    fun of(postData: Element, index: Int, readByIndex: Boolean, pageKey: Long): Long {
+        val hasher = Hasher()
+        hasher.add(pageKey).add(index.toLong()).add(if (readByIndex) 1L else 0L)
+        postData.traverse(hasher)
+        return hasher.hash
+    }
+
+    /**
+     * Generate a key representing the settings that apply to every post parsed on a page, i.e.
+     * the thread's OP.
+     */
+    @JvmStatic
+    fun pageKey(opId: Int): Long = Hasher().add(opId.toLong()).hash
+
+    /**
+     * 64-bit FNV-1a over the post's tags, attributes and text, in document order.
+     */
+    private class Hasher : NodeVisitor {
+        var hash = FNV_OFFSET_BASIS
+            private set
+
+        override fun head(node: Node, depth: Int) {
+            when (node) {
+                is Element -> {
+                    add(node.normalName())
+                    node.attributes().forEach { add(it.key).add(it.value) }
+                }
+                is TextNode -> add(node.wholeText)
+                is DataNode -> add(node.wholeData)
+            }
+        }
+
+        override fun tail(node: Node, depth: Int) {
+            // mark the end of elements, so moving text in or out of them changes the hash
+            if (node is Element) addByte(0)
+        }
+
+        fun add(value: String?): Hasher {
+            value?.forEach { char ->
+                addByte(char.code and 0xFF)
+                addByte(char.code ushr 8)
+            }
+            // separator, so "ab" + "c" and "a" + "bc" hash differently
+            addByte(0xFF)
+            return this
+        }
+
+        fun add(value: Long): Hasher {
+            for (shift in 0 until 64 step 8) addByte((value ushr shift).toInt() and 0xFF)
+            return this
+        }
+
+        private fun addByte(byte: Int) {
+            hash = (hash xor byte.toLong()) * FNV_PRIME
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.ferg.awfulapp.thread
+
+import org.jsoup.nodes.Element
+import org.jsoup.nodes.Node
+import org.jsoup.select.NodeVisitor
+
+/**
+ * Collects everything [PostParseTask] needs from a single post in one depth-first traversal.
+ *
+ * Pass this to [Element.traverse] on the post's root element, and then read the collected fields.
+ * Each field holds the *first* match in document order, same as a `selectFirst` call would.
+ *
+ * The post body's embedded videos are only recorded during the traversal - restructuring the tree
+ * while jsoup is walking it isn't safe, so call [canonicalContent] once the traversal is done to
+ * apply those changes.
+ */
+internal class PostParseVisitor : NodeVisitor {
+
+    /** true if the post (or anything in it) has a class beginning with "seen" */
+    var markedSeen = false
+        private set
+    var author: Element? = null
+        private set
+    var registered: Element? = null
+        private set
+    var postDate: Element? = null
+        private set
+    var isPlat = false
+        private set
+    /** the custom title block, and the first two images inside it (the avatars) */
+    var title: Element? = null
+        private set
+    val avatars = ArrayList<Element>(2)
+    var postBody: Element? = null
+        private set
+    /** FYAD's .complete_shit element, which holds the actual post content on those pages */
+    var fyadBody: Element? = null
+        private set
+    var signature: Element? = null
+        private set
+    var userInfoId: Int? = null
+        private set
+    var profileLink: Element? = null
+        private set
+    var editedBy: Element? = null
+        private set
+    var editable = false
+        private set
+
+    // videos to convert - anything inside .complete_shit is kept separately, since that replaces the body on FYAD pages
+    private val bodyVideos = ArrayList<Element>()
+    private val fyadVideos = ArrayList<Element>()
+
+    // the element we're currently inside for each of these, so we know when we've left it in #tail
+    private var inBody = false
+    private var inFyadBody = false
+    private var inTitle = false
+    private var profileLinksDepth = 0
+    private var currentVideo: Element? = null
+
+    override fun head(node: Node, depth: Int) {
+        if (node !is Element) return
+
+        val className = node.className()
+        if (!markedSeen && className.startsWith("seen", ignoreCase = true)) markedSeen = true
+        if (editedBy == null && node.hasClass("editedBy")) editedBy = node.children().first()
+        if (!editable && node.attr("alt").trim().equals("Edit", ignoreCase = true)) editable = true
+        if (profileLinksDepth > 0 && profileLink == null && node.attr("href").contains("userid=", ignoreCase = true)) profileLink = node
+
+        if (className.isNotEmpty()) {
+            if (author == null && node.hasClass("author")) author = node
+            if (registered == null && node.hasClass("registered")) registered = node
+            if (postDate == null && node.hasClass("postdate")) postDate = node
+            if (!isPlat && node.hasClass("platinum")) isPlat = true
+            if (userInfoId == null && node.hasClass("userinfo")) {
+                userInfoId = node.classNames()
+                    .map { it.substringAfter("userid-", "") }
+                    .firstOrNull(String::isNotEmpty)
+                    ?.toIntOrNull()
+            }
+            if (node.hasClass("profilelinks")) profileLinksDepth++
+            if (title == null && node.hasClass("title")) {
+                title = node
+                inTitle = true
+            }
+        }
+
+        if (inTitle && avatars.size < 2 && node.normalName() == "img") avatars.add(node)
+
+        if (postBody == null && node.hasClass("postbody")) {
+            postBody = node
+            inBody = true
+            return
+        }
+        if (inBody) visitBodyNode(node)
+    }
+
+    private fun visitBodyNode(element: Element) {
+        if (fyadBody == null && element.hasClass("complete_shit")) {
+            fyadBody = element
+            inFyadBody = true
+        }
+        if (signature == null && element.parent() === postBody && element.hasClass("signature")) signature = element
+
+        if (currentVideo == null && element.hasClass("bbcode_video")) {
+            (if (inFyadBody) fyadVideos else bodyVideos).add(element)
+            currentVideo = element
+        }
+    }
+
+    override fun tail(node: Node, depth: Int) {
+        if (node !is Element) return
+        if (node === postBody) inBody = false
+        if (node === fyadBody) inFyadBody = false
+        if (node === title) inTitle = false
+        if (node === currentVideo) currentVideo = null
+        if (profileLinksDepth > 0 && node.hasClass("profilelinks")) profileLinksDepth--
+    }
+
+
+    /**
+     * Get the post's content in the canonical form we store in the database.
+     *
+     * Anything that depends on the user's preferences (inline videos, image handling etc.) is left
+     * for [PostContentRenderer] to do when the post is displayed - this just converts the site's
+     * bbcode video embeds into links, and moves FYAD signatures into the content element.
+     * Only call this after the traversal!
+     *
+     * @return the element holding the post's content, or null if there was no post body
+     */
+    fun canonicalContent(): Element? {
+        val body = postBody ?: return null
+        val fyad = fyadBody
+        (if (fyad != null) fyadVideos else bodyVideos).forEach(AwfulPost::convertBbcodeVideo)
+
+        if (fyad != null) {
+            // FYAD sigs are currently a sibling div alongside .complete_shit, so we need to stick them at the end of the content
+            signature?.appendTo(fyad)
+        }
+        return fyad ?: body
+    }
+}
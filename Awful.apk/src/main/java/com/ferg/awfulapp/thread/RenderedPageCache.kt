@@ -0,0 +1,243 @@
+package com.ferg.awfulapp.thread
+
+import android.content.Context
+import androidx.annotation.WorkerThread
+import androidx.collection.LruCache
+import timber.log.Timber
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
+/**
+ * Rendered thread pages, as produced by [AwfulHtmlPage.getThreadHtml], so a page that's shown
+ * again (going back through the thread back stack, returning to it in the pager, a reload that
+ * didn't change any posts) can be displayed without reading the posts and running them through
+ * the templates again.
+ *
+ * Pages are kept in memory, and on disk so they survive the app being killed. Each one is keyed on
+ * the range of posts it shows and the settings it was rendered with (see [PageKey]), and it's
+ * thrown away when any of the posts in that range are rewritten - anything that writes posts needs
+ * to call [invalidatePosts] or [invalidateThread] once the write is done.
+ *
+ * Rendering can race with those writes, and a page rendered from posts that were read just before
+ * they changed shouldn't be cached. So each thread has a content version that changes with every
+ * invalidation - get it with [getVersion] *before* reading the posts, and pass it to [put], which
+ * ignores the page if the thread has changed since.
+ *
+ * Only [getCached] is safe to call on the main thread - everything that touches the disk either
+ * runs in the background or should be called from a worker thread.
+ */
+class RenderedPageCache @JvmOverloads constructor(
+    memorySizeChars: Int = MEMORY_SIZE_CHARS,
+    private val diskSizeBytes: Long = DISK_SIZE_BYTES,
+    private val diskExecutor: Executor = Executors.newSingleThreadExecutor { Thread(it, "AwfulPageCache") }
+) {
+
+    companion object {
+        /** max size of the in-memory cache, in chars - a full page is usually 50-150K */
+        private const val MEMORY_SIZE_CHARS = 2 * 1024 * 1024
+        /** max size of the on-disk cache - the least recently used pages are removed past this */
+        private const val DISK_SIZE_BYTES = 10L * 1024 * 1024
+        private const val DIRECTORY_NAME = "rendered_pages"
+        private const val TEMP_SUFFIX = ".tmp"
+
+        @JvmStatic
+        val instance = RenderedPageCache()
+
+        /**
+         * Set up the app's page cache, so it can store pages on disk.
+         */
+        @JvmStatic
+        fun init(context: Context) {
+            instance.directory = File(context.cacheDir, DIRECTORY_NAME)
+        }
+    }
+
+    /** where pages are stored on disk - if this is null they're only kept in memory */
+    @Volatile
+    var directory: File? = null
+
+    private val memory = object : LruCache<PageKey, String>(memorySizeChars) {
+        override fun sizeOf(key: PageKey, value: String) = value.length
+    }
+    /** the content version for each thread that's been invalidated - everything else is at 0 */
+    private val versions = HashMap<Int, Int>()
+    /**
+     * held while changing the versions, and while checking them against anything being stored -
+     * never hold this during file I/O, or the main thread can end up waiting on the disk
+     */
+    private val lock = Any()
+
+
+    /**
+     * Get a thread's current content version - read this before reading the posts to render.
+     */
+    fun getVersion(threadId: Int): Int = synchronized(lock) { versions[threadId] ?: 0 }
+
+    /**
+     * Get a rendered page from memory, if there's one for this key that's still valid. This never
+     * touches the disk, so it's safe to call on the main thread.
+     */
+    fun getCached(key: PageKey): String? = memory[key]
+
+    /**
+     * Get a rendered page from memory or disk, if there's one for this key that's still valid.
+     */
+    @WorkerThread
+    fun get(key: PageKey): String? {
+        memory[key]?.let { return it }
+        val file = directory?.let { File(it, key.fileName) } ?: return null
+        val version = getVersion(key.threadId)
+        val html = try {
+            file.takeIf(File::isFile)?.readText() ?: return null
+        } catch (e: IOException) {
+            Timber.w(e, "Couldn't read cached page %s", file.name)
+            return null
+        }
+        // the page might have been invalidated while we were reading it
+        synchronized(lock) {
+            if (getVersion(key.threadId) != version) return null
+            memory.put(key, html)
+        }
+        // the disk cache is trimmed by last use
+        file.setLastModified(System.currentTimeMillis())
+        return html
+    }
+
+    /**
+     * Cache a rendered page - the disk copy is written in the background.
+     *
+     * @param version the thread's content version from before the posts were read - if it's changed
+     * since, the posts might have too, so this page won't be cached
+     */
+    fun put(key: PageKey, version: Int, html: String) {
+        synchronized(lock) {
+            if (getVersion(key.threadId) != version) {
+                Timber.d("Thread %d changed while rendering, not caching page", key.threadId)
+                return
+            }
+            memory.put(key, html)
+        }
+        val dir = directory ?: return
+        diskExecutor.execute {
+            if (getVersion(key.threadId) != version) return@execute
+            val file = File(dir, key.fileName)
+            try {
+                dir.mkdirs()
+                // write the whole page before it appears under its real name, so it's never read half-written
+                val temp = File(dir, key.fileName + TEMP_SUFFIX)
+                temp.writeText(html)
+                if (!temp.renameTo(file)) {
+                    temp.delete()
+                    return@execute
+                }
+            } catch (e: IOException) {
+                Timber.w(e, "Couldn't write cached page %s", key.fileName)
+                return@execute
+            }
+            // if the thread was invalidated while we were writing, its file cleanup might have missed this one
+            if (getVersion(key.threadId) != version) {
+                file.delete()
+            }
+            trimDisk(dir)
+        }
+    }
+
+
+    /**
+     * Throw away any pages that show these posts - call this after they've been written.
+     *
+     * @param postIndexes the thread positions of the posts that were written, starting from 1
+     */
+    fun invalidatePosts(threadId: Int, postIndexes: Collection<Int>) {
+        if (postIndexes.isNotEmpty()) {
+            invalidate(threadId) { page -> postIndexes.any { it in page.firstIndex until page.firstIndex + page.count } }
+        }
+    }
+
+    /**
+     * Throw away all the pages for a thread, e.g. after changing the read state of all its posts.
+     */
+    fun invalidateThread(threadId: Int) = invalidate(threadId) { true }
+
+    private inline fun invalidate(threadId: Int, affects: (PageKey) -> Boolean) {
+        synchronized(lock) {
+            versions[threadId] = getVersion(threadId) + 1
+            memory.snapshot().keys
+                .filter { it.threadId == threadId && affects(it) }
+                .forEach { memory.remove(it) }
+        }
+        // anything that's still being read or written sees the new version and throws its page away
+        directory?.listFiles()?.forEach { file ->
+            val page = PageKey.fromFileName(file.name)
+            if (page != null && page.threadId == threadId && affects(page)) {
+                file.delete()
+            }
+        }
+    }
+
+    /**
+     * Get the space the pages saved on disk are using.
+     */
+    @WorkerThread
+    fun getDiskUsage(): Long = directory?.listFiles()?.sumOf(File::length) ?: 0L
+
+    /**
+     * Trim the pages on disk to fit in [maxBytes], if that's less than the cache's own limit. The
+     * files are removed in the background.
+     *
+     * @return the most space the pages will be using once they're trimmed
+     */
+    @WorkerThread
+    fun trimDisk(maxBytes: Long): Long {
+        val dir = directory ?: return 0L
+        val limit = minOf(maxBytes, diskSizeBytes)
+        diskExecutor.execute { trimDisk(dir, limit) }
+        return minOf(getDiskUsage(), limit)
+    }
+
+    /**
+     * Remove the least recently used pages from the disk cache until it's within a size limit.
+     */
+    private fun trimDisk(dir: File, limit: Long = diskSizeBytes) {
+        val files = dir.listFiles() ?: return
+        var size = files.sumOf(File::length)
+        if (size <= limit) return
+        for (file in files.sortedBy(File::lastModified)) {
+            val length = file.length()
+            if (file.delete()) {
+                size -= length
+            }
+            if (size <= limit) break
+        }
+    }
+
+
+    /**
+     * Identifies a rendered page.
+     *
+     * @param firstIndex the thread position of the page's first post, starting from 1
+     * @param count the number of posts the page can hold (the posts-per-page setting)
+     * @param isLastPage whether this was the thread's last page, which gets some extra markup
+     * @param settingsHash identifies the preferences the page was rendered with - see [AwfulHtmlPage.getRenderSettingsHash]
+     */
+    data class PageKey(
+        val threadId: Int,
+        val firstIndex: Int,
+        val count: Int,
+        val isLastPage: Boolean,
+        val settingsHash: Int
+    ) {
+        val fileName: String
+            get() = "${threadId}_${firstIndex}_${count}_${if (isLastPage) 1 else 0}_${Integer.toHexString(settingsHash)}.html"
+
+        companion object {
+            private val FILE_NAME = Regex("""(\d+)_(\d+)_(\d+)_([01])_([0-9a-f]+)\.html""")
+
+            fun fromFileName(name: String): PageKey? = FILE_NAME.matchEntire(name)?.destructured?.let { (thread, first, count, last, hash) ->
+                PageKey(thread.toInt(), first.toInt(), count.toInt(), last == "1", java.lang.Long.parseLong(hash, 16).toInt())
+            }
+        }
+    }
+}
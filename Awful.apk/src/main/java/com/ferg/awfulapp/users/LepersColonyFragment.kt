@@ -22,6 +22,7 @@ import com.ferg.awfulapp.task.AwfulRequest
 import com.ferg.awfulapp.task.LepersColonyRequest
 import com.ferg.awfulapp.thread.AwfulHtmlPage
 import com.ferg.awfulapp.thread.AwfulURL
+import com.ferg.awfulapp.thread.MustacheTemplates
 import com.ferg.awfulapp.util.bind
 import com.ferg.awfulapp.util.tryGetInt
 import com.ferg.awfulapp.webview.AwfulWebView
@@ -32,7 +33,6 @@ import com.orangegangsters.github.swipyrefreshlayout.library.SwipyRefreshLayout
 import com.orangegangsters.github.swipyrefreshlayout.library.SwipyRefreshLayoutDirection
 import com.orangegangsters.github.swipyrefreshlayout.library.SwipyRefreshLayoutDirection.BOTH
 import com.orangegangsters.github.swipyrefreshlayout.library.SwipyRefreshLayoutDirection.TOP
-import com.samskivert.mustache.Mustache
 
 /**
  * Created by baka kaba on 29/10/2018.
@@ -211,11 +211,8 @@ class LepersColonyFragment : AwfulFragment(), SwipyRefreshLayout.OnRefreshListen
      */
     private fun showData(punishments: List<Punishment>) {
         activity?.run {
-            val mustacheFile = assets.open("mustache/lepers_colony.mustache").reader()
-            val template = Mustache.compiler().compile(mustacheFile)
-            punishments.asSequence()
-                    .map(template::execute)
-                    .fold(StringBuilder(), StringBuilder::append)
+            val template = MustacheTemplates.getAsset(assets, MustacheTemplates.LEPERS_COLONY)
+            punishments.fold(StringBuilder()) { html, punishment -> html.apply { MustacheTemplates.render(template, punishment, this) } }
                     .toString()
                     .run(webView::setBodyHtml)
         }
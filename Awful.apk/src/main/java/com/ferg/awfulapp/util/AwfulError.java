@@ -131,11 +131,12 @@ public class AwfulError extends VolleyError {
      * (Method moved from AwfulPagedItem)
      *
      * @param page  Full HTML page to check.
-     * @param prefs An AwfulPreference object to reference or update preferences.
+     * @param prefs An AwfulPreference object to reference or update preferences - if this is null,
+     *              probation status is still detected but not stored.
      * @return AwfulError object if an error is detected, null otherwise.
      */
     @SuppressWarnings("SpellCheckingInspection")
-    public static AwfulError checkPageErrors(Document page, AwfulPreferences prefs) {
+    public static AwfulError checkPageErrors(Document page, @Nullable AwfulPreferences prefs) {
         // not logged in
         if (null != page.getElementById("notregistered")) {
             Timber.w("!!!Page says not registered - You are now LOGGED OUT");
@@ -161,11 +162,13 @@ public class AwfulError extends VolleyError {
         Element probation = page.getElementById("probation_warn");
         if (probation == null) {
             // clear any probation
-            prefs.setPreference(Keys.PROBATION_TIME, 0L);
+            if (prefs != null) {
+                prefs.setPreference(Keys.PROBATION_TIME, 0L);
+            }
         } else {
             // try to get the user ID (for the link to the Leper's Colony)
             Element userLink = probation.getElementsByTag("a").first();
-            if (userLink != null) {
+            if (userLink != null && prefs != null) {
                 String userId = StringUtils.substringAfterLast(userLink.attr("href"), "=");
                 prefs.setPreference(Keys.USER_ID, Integer.parseInt(userId));
             }
@@ -188,7 +191,9 @@ public class AwfulError extends VolleyError {
                 Timber.w("checkPageErrors: couldn't find expected probation date text!\nFull text: %s", probation.text());
             }
 
-            prefs.setPreference(Keys.PROBATION_TIME, probTimestamp);
+            if (prefs != null) {
+                prefs.setPreference(Keys.PROBATION_TIME, probTimestamp);
+            }
             return new AwfulError(ERROR_PROBATION);
         }
         return null;
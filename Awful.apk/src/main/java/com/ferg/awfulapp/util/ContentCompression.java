@@ -0,0 +1,181 @@
+package com.ferg.awfulapp.util;
+
+import android.database.Cursor;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import timber.log.Timber;
+
+/**
+ * Compression for the large HTML columns in the database (post and PM content).
+ * <p>
+ * Content is deflated with a preset dictionary of the markup that turns up in nearly every post -
+ * quote blocks, smilies, image and link attributes - so even short posts shrink, and quote chains
+ * shrink a lot. Anything shorter than {@link #MIN_COMPRESSED_LENGTH} is left as plain text, since
+ * it's not worth the overhead.
+ * <p>
+ * Compressed content is stored as a BLOB, and plain content as TEXT, so both can live in the same
+ * column - use {@link #getString(Cursor, int)} to read it, or {@link #getStored(Cursor, int)} and
+ * {@link #toText(Object)} to put off decompressing until the content is actually needed.
+ */
+public final class ContentCompression {
+
+    /** content shorter than this (in chars) is stored as plain text */
+    static final int MIN_COMPRESSED_LENGTH = 256;
+
+    /** the first byte of the stored data, so the format can be changed later without breaking old rows */
+    private static final byte FORMAT_DEFLATE_DICTIONARY_1 = 1;
+
+    /**
+     * Markup that's common in posts. Deflate can refer back to any of this from the start of the
+     * content, and references to the end of the dictionary are the cheapest, so the most common
+     * fragments go last.
+     */
+    private static final byte[] DICTIONARY = (
+            "<div class=\"bbc-spoiler\"><span class=\"bbc-spoiler\">" +
+            "<span class=\"bbc-spoiler\" aria-role=\"button\" tabindex=\"0\">" +
+            "<div class=\"code\"><h5>code:</h5><pre>" +
+            "<ul><li></li></ul><ol><li></li></ol><b></b><i></i><u></u><s></s><sub></sub><sup></sup>" +
+            "<iframe class=\"youtube-player\" type=\"text/html\" width=\"640\" height=\"385\" src=\"https://www.youtube.com/embed/" +
+            "?autoplay=0\" frameborder=\"0\" allowfullscreen></iframe>" +
+            "<p class=\"editedby\"><span>" +
+            " fucked around with this message at " +
+            "<p class=\"signature\">" +
+            "<a href=\"https://i.imgur.com/\" rel=\"nofollow\" target=\"_blank\">" +
+            "<img src=\"https://i.imgur.com/" +
+            ".jpg\" alt=\"\" class=\"timg\" border=\"0\">" +
+            ".png\" alt=\"\" class=\"timg\" border=\"0\">" +
+            ".gif\" alt=\"\" class=\"img\" border=\"0\">" +
+            "<img src=\"https://fi.somethingawful.com/images/smilies/emot-" +
+            "<img src=\"https://i.somethingawful.com/forumsystem/emoticons/emot-" +
+            ".gif\" alt=\"\" title=\":" +
+            ":\" border=\"0\">" +
+            "<a href=\"https://forums.somethingawful.com/showthread.php?threadid=" +
+            "<a href=\"https://twitter.com/" +
+            "<a href=\"https://www.youtube.com/watch?v=" +
+            "\" rel=\"nofollow\">https://" +
+            "</a>\n" +
+            "</blockquote></div>\n" +
+            "<div class=\"bbc-block\"><h4>" +
+            "<div class=\"bbc-block\"><h4><a class=\"quote_link\" href=\"/showthread.php?goto=post&amp;postid=" +
+            "\" rel=\"nofollow\"> posted:</a></h4><blockquote>\n" +
+            "<br>\n"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    /** Deflaters and Inflaters hold native buffers, so keep one per thread instead of making new ones each time */
+    private static final ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_COMPRESSION);
+        }
+    };
+    private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private ContentCompression() {
+    }
+
+
+    /**
+     * Get the form some content should be stored in - a compressed byte array, or the original
+     * string if it's short.
+     */
+    @Nullable
+    public static Object forStorage(@Nullable String content) {
+        if (content == null || content.length() < MIN_COMPRESSED_LENGTH) {
+            return content;
+        }
+        return compress(content);
+    }
+
+    @NonNull
+    public static byte[] compress(@NonNull String content) {
+        byte[] input = content.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(input);
+        deflater.finish();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 3 + 16);
+        output.write(FORMAT_DEFLATE_DICTIONARY_1);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            output.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Decompress some content made by {@link #compress(String)}.
+     *
+     * @return the content, or an empty string if the data is corrupt
+     */
+    @NonNull
+    public static String decompress(@NonNull byte[] data) {
+        if (data.length == 0 || data[0] != FORMAT_DEFLATE_DICTIONARY_1) {
+            Timber.w("Unknown compressed content format");
+            return "";
+        }
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(data, 1, data.length - 1);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+        byte[] buffer = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished()) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else if (inflater.needsInput()) {
+                        throw new DataFormatException("compressed content is truncated");
+                    }
+                }
+                output.write(buffer, 0, length);
+            }
+        } catch (DataFormatException e) {
+            Timber.w(e, "Couldn't decompress content");
+            return "";
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Read a content column, decompressing it if necessary.
+     */
+    @Nullable
+    public static String getString(@NonNull Cursor cursor, int column) {
+        return toText(getStored(cursor, column));
+    }
+
+    /**
+     * Read a content column as it's stored - a String, a compressed byte array, or null.
+     */
+    @Nullable
+    public static Object getStored(@NonNull Cursor cursor, int column) {
+        return cursor.getType(column) == Cursor.FIELD_TYPE_BLOB ? cursor.getBlob(column) : cursor.getString(column);
+    }
+
+    /**
+     * Get the text for some stored content, decompressing it if necessary.
+     *
+     * @param stored a value from {@link #getStored(Cursor, int)} or {@link #forStorage(String)}
+     */
+    @Nullable
+    public static String toText(@Nullable Object stored) {
+        return stored instanceof byte[] ? decompress((byte[]) stored) : (String) stored;
+    }
+}
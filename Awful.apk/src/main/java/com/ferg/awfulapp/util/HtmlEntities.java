@@ -0,0 +1,304 @@
+package com.ferg.awfulapp.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Single-pass HTML entity decoding and encoding, for the text we pull out of pages and send back
+ * to the site.
+ * <p>
+ * {@link #decode(String)} handles the HTML 4 named entities, and decimal and hex character
+ * references. References in the 128-159 range are read as Windows-1252 characters (e.g. &amp;#150;
+ * is an en dash) which is how browsers treat them, and what the site means by them. Strings without
+ * an ampersand are returned as-is, and entity names are matched in place, so the only allocation is
+ * the result.
+ * <p>
+ * {@link #encode(String)} turns every non-ASCII character into a decimal character reference, which
+ * is what the site expects in form data.
+ */
+public final class HtmlEntities {
+
+    /** the characters for references in the 128-159 range, as Windows-1252 defines them (gaps map to themselves) */
+    private static final char[] WINDOWS_1252 = {
+            '\u20AC', '\u0081', '\u201A', '\u0192', '\u201E', '\u2026', '\u2020', '\u2021',
+            '\u02C6', '\u2030', '\u0160', '\u2039', '\u0152', '\u008D', '\u017D', '\u008F',
+            '\u0090', '\u2018', '\u2019', '\u201C', '\u201D', '\u2022', '\u2013', '\u2014',
+            '\u02DC', '\u2122', '\u0161', '\u203A', '\u0153', '\u009D', '\u017E', '\u0178'
+    };
+
+    /** the HTML 4 named entities, as pairs of names and the characters they represent */
+    private static final String[] ENTITIES = {
+            "quot", "\"", "amp", "&", "lt", "<", "gt", ">",
+            "nbsp", "\u00A0", "iexcl", "\u00A1", "cent", "\u00A2", "pound", "\u00A3",
+            "curren", "\u00A4", "yen", "\u00A5", "brvbar", "\u00A6", "sect", "\u00A7",
+            "uml", "\u00A8", "copy", "\u00A9", "ordf", "\u00AA", "laquo", "\u00AB",
+            "not", "\u00AC", "shy", "\u00AD", "reg", "\u00AE", "macr", "\u00AF",
+            "deg", "\u00B0", "plusmn", "\u00B1", "sup2", "\u00B2", "sup3", "\u00B3",
+            "acute", "\u00B4", "micro", "\u00B5", "para", "\u00B6", "middot", "\u00B7",
+            "cedil", "\u00B8", "sup1", "\u00B9", "ordm", "\u00BA", "raquo", "\u00BB",
+            "frac14", "\u00BC", "frac12", "\u00BD", "frac34", "\u00BE", "iquest", "\u00BF",
+            "Agrave", "\u00C0", "Aacute", "\u00C1", "Acirc", "\u00C2", "Atilde", "\u00C3",
+            "Auml", "\u00C4", "Aring", "\u00C5", "AElig", "\u00C6", "Ccedil", "\u00C7",
+            "Egrave", "\u00C8", "Eacute", "\u00C9", "Ecirc", "\u00CA", "Euml", "\u00CB",
+            "Igrave", "\u00CC", "Iacute", "\u00CD", "Icirc", "\u00CE", "Iuml", "\u00CF",
+            "ETH", "\u00D0", "Ntilde", "\u00D1", "Ograve", "\u00D2", "Oacute", "\u00D3",
+            "Ocirc", "\u00D4", "Otilde", "\u00D5", "Ouml", "\u00D6", "times", "\u00D7",
+            "Oslash", "\u00D8", "Ugrave", "\u00D9", "Uacute", "\u00DA", "Ucirc", "\u00DB",
+            "Uuml", "\u00DC", "Yacute", "\u00DD", "THORN", "\u00DE", "szlig", "\u00DF",
+            "agrave", "\u00E0", "aacute", "\u00E1", "acirc", "\u00E2", "atilde", "\u00E3",
+            "auml", "\u00E4", "aring", "\u00E5", "aelig", "\u00E6", "ccedil", "\u00E7",
+            "egrave", "\u00E8", "eacute", "\u00E9", "ecirc", "\u00EA", "euml", "\u00EB",
+            "igrave", "\u00EC", "iacute", "\u00ED", "icirc", "\u00EE", "iuml", "\u00EF",
+            "eth", "\u00F0", "ntilde", "\u00F1", "ograve", "\u00F2", "oacute", "\u00F3",
+            "ocirc", "\u00F4", "otilde", "\u00F5", "ouml", "\u00F6", "divide", "\u00F7",
+            "oslash", "\u00F8", "ugrave", "\u00F9", "uacute", "\u00FA", "ucirc", "\u00FB",
+            "uuml", "\u00FC", "yacute", "\u00FD", "thorn", "\u00FE", "yuml", "\u00FF",
+            "OElig", "\u0152", "oelig", "\u0153", "Scaron", "\u0160", "scaron", "\u0161",
+            "Yuml", "\u0178", "fnof", "\u0192", "circ", "\u02C6", "tilde", "\u02DC",
+            "Alpha", "\u0391", "Beta", "\u0392", "Gamma", "\u0393", "Delta", "\u0394",
+            "Epsilon", "\u0395", "Zeta", "\u0396", "Eta", "\u0397", "Theta", "\u0398",
+            "Iota", "\u0399", "Kappa", "\u039A", "Lambda", "\u039B", "Mu", "\u039C",
+            "Nu", "\u039D", "Xi", "\u039E", "Omicron", "\u039F", "Pi", "\u03A0",
+            "Rho", "\u03A1", "Sigma", "\u03A3", "Tau", "\u03A4", "Upsilon", "\u03A5",
+            "Phi", "\u03A6", "Chi", "\u03A7", "Psi", "\u03A8", "Omega", "\u03A9",
+            "alpha", "\u03B1", "beta", "\u03B2", "gamma", "\u03B3", "delta", "\u03B4",
+            "epsilon", "\u03B5", "zeta", "\u03B6", "eta", "\u03B7", "theta", "\u03B8",
+            "iota", "\u03B9", "kappa", "\u03BA", "lambda", "\u03BB", "mu", "\u03BC",
+            "nu", "\u03BD", "xi", "\u03BE", "omicron", "\u03BF", "pi", "\u03C0",
+            "rho", "\u03C1", "sigmaf", "\u03C2", "sigma", "\u03C3", "tau", "\u03C4",
+            "upsilon", "\u03C5", "phi", "\u03C6", "chi", "\u03C7", "psi", "\u03C8",
+            "omega", "\u03C9", "thetasym", "\u03D1", "upsih", "\u03D2", "piv", "\u03D6",
+            "ensp", "\u2002", "emsp", "\u2003", "thinsp", "\u2009", "zwnj", "\u200C",
+            "zwj", "\u200D", "lrm", "\u200E", "rlm", "\u200F", "ndash", "\u2013",
+            "mdash", "\u2014", "lsquo", "\u2018", "rsquo", "\u2019", "sbquo", "\u201A",
+            "ldquo", "\u201C", "rdquo", "\u201D", "bdquo", "\u201E", "dagger", "\u2020",
+            "Dagger", "\u2021", "bull", "\u2022", "hellip", "\u2026", "permil", "\u2030",
+            "prime", "\u2032", "Prime", "\u2033", "lsaquo", "\u2039", "rsaquo", "\u203A",
+            "oline", "\u203E", "frasl", "\u2044", "euro", "\u20AC", "image", "\u2111",
+            "weierp", "\u2118", "real", "\u211C", "trade", "\u2122", "alefsym", "\u2135",
+            "larr", "\u2190", "uarr", "\u2191", "rarr", "\u2192", "darr", "\u2193",
+            "harr", "\u2194", "crarr", "\u21B5", "lArr", "\u21D0", "uArr", "\u21D1",
+            "rArr", "\u21D2", "dArr", "\u21D3", "hArr", "\u21D4", "forall", "\u2200",
+            "part", "\u2202", "exist", "\u2203", "empty", "\u2205", "nabla", "\u2207",
+            "isin", "\u2208", "notin", "\u2209", "ni", "\u220B", "prod", "\u220F",
+            "sum", "\u2211", "minus", "\u2212", "lowast", "\u2217", "radic", "\u221A",
+            "prop", "\u221D", "infin", "\u221E", "ang", "\u2220", "and", "\u2227",
+            "or", "\u2228", "cap", "\u2229", "cup", "\u222A", "int", "\u222B",
+            "there4", "\u2234", "sim", "\u223C", "cong", "\u2245", "asymp", "\u2248",
+            "ne", "\u2260", "equiv", "\u2261", "le", "\u2264", "ge", "\u2265",
+            "sub", "\u2282", "sup", "\u2283", "nsub", "\u2284", "sube", "\u2286",
+            "supe", "\u2287", "oplus", "\u2295", "otimes", "\u2297", "perp", "\u22A5",
+            "sdot", "\u22C5", "lceil", "\u2308", "rceil", "\u2309", "lfloor", "\u230A",
+            "rfloor", "\u230B", "lang", "\u2329", "rang", "\u232A", "loz", "\u25CA",
+            "spades", "\u2660", "clubs", "\u2663", "hearts", "\u2665", "diams", "\u2666"
+    };
+
+    /** open-addressed hash table of entity names (without the & and ;) and the characters they represent */
+    private static final int TABLE_SIZE = 1024;
+    private static final String[] NAMES = new String[TABLE_SIZE];
+    private static final char[] VALUES = new char[TABLE_SIZE];
+    private static final int MAX_NAME_LENGTH;
+
+    static {
+        int maxLength = 0;
+        for (int i = 0; i < ENTITIES.length; i += 2) {
+            String name = ENTITIES[i];
+            int slot = hash(name, 0, name.length());
+            while (NAMES[slot] != null) {
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            }
+            NAMES[slot] = name;
+            VALUES[slot] = ENTITIES[i + 1].charAt(0);
+            maxLength = Math.max(maxLength, name.length());
+        }
+        MAX_NAME_LENGTH = maxLength;
+    }
+
+    private HtmlEntities() {
+    }
+
+
+    /**
+     * Replace all the character entities in some HTML text with the characters they represent.
+     * Does not handle html tags.
+     * <p>
+     * Anything that isn't a complete, valid entity (including a missing semicolon) is left as it is.
+     * A decimal reference that's been escaped twice (e.g. &amp;amp;#39;) is decoded all the way, as
+     * {@link com.ferg.awfulapp.network.NetworkUtils#unencodeHtml(String)} always has.
+     *
+     * @param html the text to decode - null is treated as an empty string
+     * @return the decoded text
+     */
+    @NonNull
+    public static String decode(@Nullable String html) {
+        if (html == null) {
+            return "";
+        }
+        int next = html.indexOf('&');
+        if (next < 0) {
+            return html;
+        }
+
+        StringBuilder out = new StringBuilder(html.length());
+        int pos = 0;
+        while (next >= 0) {
+            out.append(html, pos, next);
+            int end = appendEntity(html, next, out);
+            if (end < 0) {
+                // not an entity, so keep the ampersand and carry on from the next character
+                out.append('&');
+                pos = next + 1;
+            } else if (out.charAt(out.length() - 1) == '&') {
+                pos = appendDoubleEscaped(html, end, out);
+            } else {
+                pos = end;
+            }
+            next = html.indexOf('&', pos);
+        }
+        out.append(html, pos, html.length());
+        return out.toString();
+    }
+
+
+    /**
+     * Replace every non-ASCII character in some text with its decimal character reference.
+     * Does not handle html tags, or escape any ASCII characters.
+     *
+     * @param str the text to encode
+     * @return the encoded text
+     */
+    @NonNull
+    public static String encode(@NonNull String str) {
+        int length = str.length();
+        int pos = 0;
+        while (pos < length && str.charAt(pos) < 0x80) {
+            pos++;
+        }
+        if (pos == length) {
+            return str;
+        }
+
+        StringBuilder out = new StringBuilder(length + 16);
+        out.append(str, 0, pos);
+        while (pos < length) {
+            int codePoint = str.codePointAt(pos);
+            if (codePoint < 0x80) {
+                out.append((char) codePoint);
+            } else {
+                out.append("&#").append(codePoint).append(';');
+            }
+            pos += Character.charCount(codePoint);
+        }
+        return out.toString();
+    }
+
+
+    /**
+     * Decode the entity starting with the ampersand at {@code start}, adding it to {@code out}.
+     *
+     * @return the position after the entity, or -1 if there isn't a valid entity here (and nothing was added)
+     */
+    private static int appendEntity(String html, int start, StringBuilder out) {
+        int pos = start + 1;
+        if (pos < html.length() && html.charAt(pos) == '#') {
+            pos++;
+            if (pos < html.length() && (html.charAt(pos) == 'x' || html.charAt(pos) == 'X')) {
+                return appendReference(html, pos + 1, 16, out);
+            }
+            return appendReference(html, pos, 10, out);
+        }
+
+        int nameEnd = pos;
+        int limit = Math.min(html.length(), pos + MAX_NAME_LENGTH);
+        while (nameEnd < limit && isAsciiLetterOrDigit(html.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd == pos || nameEnd >= html.length() || html.charAt(nameEnd) != ';') {
+            return -1;
+        }
+        int nameLength = nameEnd - pos;
+        for (int slot = hash(html, pos, nameEnd); NAMES[slot] != null; slot = (slot + 1) & (TABLE_SIZE - 1)) {
+            String name = NAMES[slot];
+            if (name.length() == nameLength && html.regionMatches(pos, name, 0, nameLength)) {
+                out.append(VALUES[slot]);
+                return nameEnd + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * If an entity that decoded to an ampersand (at the end of {@code out}) is followed by a decimal
+     * reference, e.g. &amp;amp;#39;, it's been escaped twice - so decode the reference too, replacing
+     * the ampersand.
+     *
+     * @param pos the position after the ampersand's entity
+     * @return the position after the reference, or {@code pos} if there isn't one
+     */
+    private static int appendDoubleEscaped(String html, int pos, StringBuilder out) {
+        if (pos >= html.length() || html.charAt(pos) != '#') {
+            return pos;
+        }
+        int ampersand = out.length() - 1;
+        int end = appendReference(html, pos + 1, 10, out);
+        if (end < 0) {
+            return pos;
+        }
+        out.deleteCharAt(ampersand);
+        return end;
+    }
+
+    /**
+     * Parse a character reference's digits, starting at {@code pos}, and add the character if it's
+     * a valid one.
+     *
+     * @return the position after the reference's semicolon, or -1 if it wasn't valid (and nothing was added)
+     */
+    private static int appendReference(String html, int pos, int radix, StringBuilder out) {
+        int codePoint = 0;
+        int end = pos;
+        for (; end < html.length(); end++) {
+            int digit = digitValue(html.charAt(end), radix);
+            if (digit < 0) {
+                break;
+            }
+            codePoint = codePoint * radix + digit;
+            if (codePoint > Character.MAX_CODE_POINT) {
+                return -1;
+            }
+        }
+        if (end == pos || end >= html.length() || html.charAt(end) != ';') {
+            return -1;
+        }
+        if (codePoint >= 0x80 && codePoint <= 0x9F) {
+            out.append(WINDOWS_1252[codePoint - 0x80]);
+        } else {
+            out.appendCodePoint(codePoint);
+        }
+        return end + 1;
+    }
+
+    /** the value of an ASCII digit (including a-f and A-F for hex), or -1 if it isn't one */
+    private static int digitValue(char c, int radix) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (radix == 16 && c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (radix == 16 && c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static int hash(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        return (hash ^ (hash >>> 10)) & (TABLE_SIZE - 1);
+    }
+}
@@ -12,6 +12,12 @@ import com.ferg.awfulapp.constants.Constants;
 import com.ferg.awfulapp.preferences.AwfulPreferences;
 import com.ferg.awfulapp.thread.AwfulHtmlPage;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
 import timber.log.Timber;
 
 import static com.ferg.awfulapp.constants.Constants.DEBUG;
@@ -177,21 +183,52 @@ public class AwfulWebView extends WebView {
     /**
      * Set and display the current HTML for the container body.
      * <p>
-     * Call this to update the WebView with new HTML content, calling {@link #refreshPageContents()}
-     * to display it. Does nothing if the passed HTML is unchanged from the currently added HTML,
-     * or if {@link #setJavascriptHandler(WebViewJsInterface)} hasn't been called yet.
+     * Call this to update the WebView with new HTML content. Does nothing if the passed HTML is
+     * unchanged from the currently added HTML, or if {@link #setJavascriptHandler(WebViewJsInterface)}
+     * hasn't been called yet.
+     * <p>
+     * If the only differences from the current HTML are changed posts, or new posts added after
+     * existing ones (like refreshing the last page of a thread), just those posts are sent to the
+     * page and patched in - everything else on the page is left as it is, and the scroll position
+     * is kept. Otherwise this calls {@link #refreshPageContents()} to redisplay the whole thing.
      */
     public void setBodyHtml(@Nullable String html) {
         if (jsInterface == null) {
             Timber.w("Attempted to set html with no JS interface handler added");
             return;
         }
-        if (html != null && html.hashCode() == jsInterface.getBodyHtml().hashCode()) {
+        String oldHtml = jsInterface.getBodyHtml();
+        if (html != null && html.hashCode() == oldHtml.hashCode()) {
             Timber.d("New HTML appears to match the current HTML, not updating");
             return;
         }
+        List<PageDiff.Change> changes = (html == null || oldHtml.isEmpty()) ? null : PageDiff.diff(oldHtml, html);
         jsInterface.setBodyHtml(html);
-        refreshPageContents();
+        if (changes == null) {
+            jsInterface.clearPagePatches();
+            refreshPageContents();
+        } else if (!changes.isEmpty()) {
+            Timber.d("Patching %d changed posts into the page", changes.size());
+            jsInterface.addPagePatch(toJson(changes));
+            runJavascript("applyPagePatch()");
+        }
+    }
+
+    @NonNull
+    private static String toJson(@NonNull List<PageDiff.Change> changes) {
+        JSONArray patch = new JSONArray();
+        try {
+            for (PageDiff.Change change : changes) {
+                patch.put(new JSONObject()
+                        .put("id", change.id)
+                        .put("html", change.html)
+                        .putOpt("after", change.after));
+            }
+        } catch (JSONException e) {
+            // only thrown for non-finite numbers
+            throw new IllegalStateException(e);
+        }
+        return patch.toString();
     }
 
 }
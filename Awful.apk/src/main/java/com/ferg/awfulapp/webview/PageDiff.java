@@ -0,0 +1,172 @@
+package com.ferg.awfulapp.webview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out how a page's body HTML has changed, post by post, so the WebView can patch the posts
+ * that changed instead of rebuilding the whole page.
+ * <p>
+ * Posts are the top-level &lt;article&gt; elements with an ID, like the ones produced by
+ * {@link com.ferg.awfulapp.thread.AwfulHtmlPage#getThreadHtml(List, com.ferg.awfulapp.preferences.AwfulPreferences, int, int)}.
+ * A page can be patched if the only differences are changed posts, and new posts that come after
+ * an existing one - anything else (posts removed or reordered, the rest of the page changing,
+ * HTML that can't be split into posts) needs a full reload.
+ */
+final class PageDiff {
+
+    private static final String ARTICLE_START = "<article";
+    private static final String ARTICLE_END = "</article>";
+    private static final Pattern ID_ATTRIBUTE = Pattern.compile("\\sid\\s*=\\s*[\"']([^\"']+)[\"']");
+
+    private PageDiff() {
+    }
+
+
+    /**
+     * A post that needs adding to the page, or replacing if it's already there.
+     */
+    static final class Change {
+        @NonNull
+        final String id;
+        @NonNull
+        final String html;
+        /** the post this one goes after, if it's new */
+        @Nullable
+        final String after;
+
+        Change(@NonNull String id, @NonNull String html, @Nullable String after) {
+            this.id = id;
+            this.html = html;
+            this.after = after;
+        }
+    }
+
+
+    /**
+     * Get the changes needed to turn one page into another.
+     *
+     * @return the posts to add or replace, in page order, or null if the page needs a full reload
+     */
+    @Nullable
+    static List<Change> diff(@NonNull String oldHtml, @NonNull String newHtml) {
+        List<Block> oldBlocks = split(oldHtml);
+        List<Block> newBlocks = split(newHtml);
+        if (oldBlocks == null || newBlocks == null || !getFrame(oldBlocks).equals(getFrame(newBlocks))) {
+            return null;
+        }
+
+        Map<String, String> oldPosts = new HashMap<>();
+        List<String> oldOrder = new ArrayList<>();
+        for (Block block : oldBlocks) {
+            if (block.id != null) {
+                if (oldPosts.put(block.id, block.html) != null) {
+                    return null;
+                }
+                oldOrder.add(block.id);
+            }
+        }
+
+        List<Change> changes = new ArrayList<>();
+        List<String> keptOrder = new ArrayList<>(oldOrder.size());
+        String previousId = null;
+        for (Block block : newBlocks) {
+            if (block.id == null) {
+                continue;
+            }
+            String oldPost = oldPosts.get(block.id);
+            if (oldPost == null) {
+                // new posts need an existing post to go after
+                if (previousId == null) {
+                    return null;
+                }
+                changes.add(new Change(block.id, block.html, previousId));
+            } else {
+                keptOrder.add(block.id);
+                if (!oldPost.equals(block.html)) {
+                    changes.add(new Change(block.id, block.html, null));
+                }
+            }
+            previousId = block.id;
+        }
+        // every old post has to still be there, in the same order
+        return keptOrder.equals(oldOrder) ? changes : null;
+    }
+
+
+    /**
+     * A piece of a page - either a post, which has an ID, or some of the HTML in between.
+     */
+    private static final class Block {
+        @Nullable
+        final String id;
+        @NonNull
+        final String html;
+
+        Block(@Nullable String id, @NonNull String html) {
+            this.id = id;
+            this.html = html;
+        }
+    }
+
+    /**
+     * Split a page into posts and the HTML around them.
+     *
+     * @return the page's blocks, or null if it can't be split up
+     */
+    @Nullable
+    private static List<Block> split(@NonNull String html) {
+        List<Block> blocks = new ArrayList<>();
+        int position = 0;
+        int start;
+        while ((start = html.indexOf(ARTICLE_START, position)) != -1) {
+            if (start > position) {
+                blocks.add(new Block(null, html.substring(position, start)));
+            }
+            int end = html.indexOf(ARTICLE_END, start);
+            int nested = html.indexOf(ARTICLE_START, start + ARTICLE_START.length());
+            if (end == -1 || (nested != -1 && nested < end)) {
+                return null;
+            }
+            end += ARTICLE_END.length();
+            String article = html.substring(start, end);
+            blocks.add(new Block(getId(article), article));
+            position = end;
+        }
+        if (position < html.length()) {
+            blocks.add(new Block(null, html.substring(position)));
+        }
+        return blocks;
+    }
+
+    /**
+     * Get the ID from an article's opening tag, if it has one.
+     */
+    @Nullable
+    private static String getId(@NonNull String article) {
+        int tagEnd = article.indexOf('>');
+        Matcher matcher = ID_ATTRIBUTE.matcher(tagEnd == -1 ? article : article.substring(0, tagEnd));
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Get everything on the page that isn't a post, ignoring the whitespace between them.
+     */
+    @NonNull
+    private static List<String> getFrame(@NonNull List<Block> blocks) {
+        List<String> frame = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.id == null && !block.html.trim().isEmpty()) {
+                frame.add(block.html.trim());
+            }
+        }
+        return frame;
+    }
+}
@@ -8,7 +8,9 @@ import com.ferg.awfulapp.preferences.AwfulPreferences;
 import com.ferg.awfulapp.preferences.Keys;
 
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import timber.log.Timber;
 
@@ -28,6 +30,9 @@ public class WebViewJsInterface {
     @NonNull
     private volatile String bodyHtml = "";
 
+    /** changes to the body HTML waiting to be applied by the page, as JSON */
+    private final Queue<String> pagePatches = new ConcurrentLinkedQueue<>();
+
     public WebViewJsInterface() {
         updatePreferences();
     }
@@ -77,6 +82,29 @@ public class WebViewJsInterface {
         bodyHtml = (html == null) ? "" : html;
     }
 
+    /**
+     * Get the next set of changes to apply to the displayed page, if there are any - see
+     * {@link AwfulWebView#setBodyHtml(String)}.
+     */
+    @Nullable
+    @JavascriptInterface
+    public final String getPagePatch() {
+        return pagePatches.poll();
+    }
+
+    final void addPagePatch(@NonNull String patch) {
+        pagePatches.add(patch);
+    }
+
+    /**
+     * Drop any patches that haven't been applied yet, e.g. because the whole page is being reloaded.
+     * The page calls this itself whenever it loads the body HTML, however the reload was started.
+     */
+    @JavascriptInterface
+    public final void clearPagePatches() {
+        pagePatches.clear();
+    }
+
     @JavascriptInterface
     public String getPreference(String preference) {
         return preferences.get(preference);
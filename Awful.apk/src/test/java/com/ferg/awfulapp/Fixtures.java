@@ -0,0 +1,52 @@
+package com.ferg.awfulapp;
+
+import com.ferg.awfulapp.constants.Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Loads the site pages in the test resources' fixtures folder.
+ * <p>
+ * These aren't captures - they're built to follow the site's markup for each kind of page (a thread
+ * page, a FYAD thread page, a page of quote-heavy posts, the bookmarks page, a forum's thread list
+ * and the main forum index), with made-up users and content. Anonymised captures can replace them
+ * under the same names.
+ */
+public final class Fixtures {
+
+    /** all the fixture pages */
+    public static final String[] ALL = {
+            "thread_40_posts.html", "thread_fyad.html", "thread_quotes.html", "bookmarks.html", "forum_display.html", "forum_index.html"
+    };
+
+    private Fixtures() {
+    }
+
+    /**
+     * Get the raw bytes of a fixture page, as they'd arrive in a response.
+     */
+    public static byte[] load(String name) throws IOException {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IOException("Missing fixture: " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Get a fixture page's text, decoded with the site's encoding.
+     */
+    public static String loadText(String name) throws IOException {
+        return new String(load(name), Charset.forName(Constants.SITE_HTML_ENCODING));
+    }
+}
@@ -0,0 +1,47 @@
+package com.ferg.awfulapp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Shared settings and output for the benchmarks.
+ * <p>
+ * Benchmarks are skipped unless the awful.benchmark property is true. Results are printed, and
+ * written as tab-separated values to build/reports/benchmarks, labelled with awful.benchmark.label
+ * so runs on different commits can be told apart and diffed.
+ */
+final class BenchmarkReport {
+
+    static final boolean ENABLED = Boolean.getBoolean("awful.benchmark");
+    static final int WARMUP = Integer.getInteger("awful.benchmark.warmup", 50);
+    static final int ITERATIONS = Integer.getInteger("awful.benchmark.iterations", 200);
+    static final String LABEL = System.getProperty("awful.benchmark.label", "current");
+
+    private static final String OUTPUT_DIR = "build/reports/benchmarks";
+
+    private BenchmarkReport() {
+    }
+
+    /**
+     * Print some result rows and write them to a file in the reports folder.
+     *
+     * @param fileName the name of the file to write
+     * @param header   the header row
+     * @param rows     the result rows, which should start with the label
+     */
+    static void write(String fileName, String header, List<String> rows) throws IOException {
+        System.out.println(header);
+        rows.forEach(System.out::println);
+
+        File output = new File(OUTPUT_DIR, fileName);
+        //noinspection ResultOfMethodCallIgnored
+        output.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(output, "UTF-8")) {
+            writer.println(header);
+            rows.forEach(writer::println);
+        }
+        System.out.println("Benchmark results written to " + output.getAbsolutePath());
+    }
+}
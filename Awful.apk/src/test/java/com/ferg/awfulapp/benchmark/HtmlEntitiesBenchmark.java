@@ -0,0 +1,138 @@
+package com.ferg.awfulapp.benchmark;
+
+import com.ferg.awfulapp.Fixtures;
+import com.ferg.awfulapp.util.HtmlEntities;
+import com.ferg.awfulapp.util.LegacyHtmlEntities;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares {@link HtmlEntities} with the old regex-based decoding and encoding it replaced, over
+ * post dates, short bits of text with entities in, and every line of the fixture pages.
+ * <p>
+ * Like {@link ParserBenchmark} this only runs with -Dawful.benchmark=true - results go to
+ * build/reports/benchmarks/html-entities.tsv.
+ */
+public class HtmlEntitiesBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final String[] POST_DATES = {
+            "Oct 17, 2026 22:41", "Jan 1, 2026 00:00", "Mar 3, 2004 13:37", "Dec 31, 2025 23:59"
+    };
+
+    private static final String[] SHORT_TEXT = {
+            "Tom &amp; Jerry &mdash; the &quot;classic&quot;",
+            "caf&eacute; &#8217;curly&#8216; &amp;#39;double&amp;#39;",
+            "&#91;?&#93; edited &raquo; &laquo; &hellip;",
+            "AT&T and Q&A &lt;b&gt;",
+    };
+
+    private static final String[] ENCODE_TEXT = {
+            "plain ascii reply text with nothing to encode at all",
+            "café “curly quotes” – dashes — and an emoji 💩",
+            "日本語のテキスト",
+    };
+
+    private static final List<String> rows = new ArrayList<>();
+
+    /** somewhere to put results so the JIT can't decide they're unused */
+    private static volatile Object sink;
+
+
+    @BeforeClass
+    public static void checkEnabled() {
+        assumeTrue("Benchmarks are disabled - run with -Dawful.benchmark=true", BenchmarkReport.ENABLED);
+        assumeTrue("This JVM can't measure allocations", THREADS.isThreadAllocatedMemorySupported());
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @AfterClass
+    public static void report() throws IOException {
+        if (!rows.isEmpty()) {
+            BenchmarkReport.write("html-entities.tsv", "label\tinput\timplementation\tns_per_string\tp99_ns_per_string\tbytes_per_string", rows);
+        }
+    }
+
+
+    @Test
+    public void decodePostDates() {
+        compare("post dates", POST_DATES, LegacyHtmlEntities::unencodeHtml, HtmlEntities::decode);
+    }
+
+    @Test
+    public void decodeShortText() {
+        compare("short text", SHORT_TEXT, LegacyHtmlEntities::unencodeHtml, HtmlEntities::decode);
+    }
+
+    @Test
+    public void decodeFixtureLines() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String fixture : Fixtures.ALL) {
+            lines.addAll(Arrays.asList(Fixtures.loadText(fixture).split("\n")));
+        }
+        compare("fixture lines", lines.toArray(new String[0]), LegacyHtmlEntities::unencodeHtml, HtmlEntities::decode);
+    }
+
+    @Test
+    public void encodeText() {
+        compare("encode text", ENCODE_TEXT, LegacyHtmlEntities::encodeHtml, HtmlEntities::encode);
+    }
+
+
+    private static void compare(String input, String[] strings, UnaryOperator<String> legacy, UnaryOperator<String> current) {
+        rows.add(run(input, "legacy", strings, legacy));
+        rows.add(run(input, "HtmlEntities", strings, current));
+    }
+
+    /**
+     * Time each pass over the input strings, and report the per-string average and p99 (of the
+     * per-pass averages) plus the allocation.
+     */
+    private static String run(String input, String implementation, String[] strings, UnaryOperator<String> function) {
+        for (int i = 0; i < BenchmarkReport.WARMUP; i++) {
+            runPass(strings, function);
+        }
+        long[] passNanos = new long[BenchmarkReport.ITERATIONS];
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < passNanos.length; i++) {
+            long start = System.nanoTime();
+            runPass(strings, function);
+            passNanos[i] = System.nanoTime() - start;
+        }
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        long total = 0;
+        for (long nanos : passNanos) {
+            total += nanos;
+        }
+        Arrays.sort(passNanos);
+        long p99 = passNanos[Math.max((int) Math.ceil(0.99 * passNanos.length) - 1, 0)];
+        double operations = (double) passNanos.length * strings.length;
+        return String.format(Locale.US, "%s\t%s\t%s\t%.1f\t%.1f\t%.1f",
+                BenchmarkReport.LABEL, input, implementation,
+                total / operations,
+                p99 / (double) strings.length,
+                allocated / operations);
+    }
+
+    private static void runPass(String[] strings, UnaryOperator<String> function) {
+        for (String string : strings) {
+            sink = function.apply(string);
+        }
+    }
+}
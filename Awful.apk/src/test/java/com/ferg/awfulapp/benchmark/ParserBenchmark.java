@@ -0,0 +1,277 @@
+package com.ferg.awfulapp.benchmark;
+
+import android.content.ContentValues;
+
+import com.ferg.awfulapp.Fixtures;
+import com.ferg.awfulapp.constants.Constants;
+import com.ferg.awfulapp.forums.CrawlerTask;
+import com.ferg.awfulapp.task.HtmlStripper;
+import com.ferg.awfulapp.task.StripProfile;
+import com.ferg.awfulapp.thread.AwfulPost;
+import com.ferg.awfulapp.thread.ForumParseTask;
+import com.ferg.awfulapp.thread.ForumParsingKt;
+import com.ferg.awfulapp.thread.PostFingerprint;
+import com.ferg.awfulapp.thread.PostParseTask;
+import com.ferg.awfulapp.util.AwfulError;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Benchmarks the forum parsers against a fixed corpus of pages (in the test resources' fixtures
+ * folder), reporting the throughput, allocation and tail latency of each parsing stage.
+ * <p>
+ * This is skipped in normal test runs - enable it with the awful.benchmark property:
+ * <pre>./gradlew testDebugUnitTest --tests '*ParserBenchmark' -Dawful.benchmark=true</pre>
+ * The warmup and measured iteration counts can be changed with awful.benchmark.warmup and
+ * awful.benchmark.iterations. Results go to build/reports/benchmarks/parsers.tsv, labelled with
+ * awful.benchmark.label - run it on two commits with the same settings and diff the files.
+ * <p>
+ * Allocation is counted across all threads, so it includes work handed off to the parse pool.
+ * Every stage apart from parsePosts runs on the calling thread, so their timings aren't affected
+ * by how busy the pool is. Storing the parsed posts needs the app's database, so it isn't covered
+ * here - see the RepositoryBenchmark instrumented test.
+ */
+public class ParserBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** results for each fixture and stage, in the order they were run */
+    private static final Map<String, StageResult> results = new LinkedHashMap<>();
+
+    /** somewhere to put results so the JIT can't decide they're unused */
+    private static volatile Object sink;
+
+
+    @BeforeClass
+    public static void checkEnabled() {
+        assumeTrue("Parser benchmarks are disabled - run with -Dawful.benchmark=true", BenchmarkReport.ENABLED);
+        assumeTrue("This JVM can't measure allocations", THREADS.isThreadAllocatedMemorySupported());
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @AfterClass
+    public static void report() throws IOException {
+        if (results.isEmpty()) {
+            return;
+        }
+        List<String> rows = new ArrayList<>();
+        for (StageResult result : results.values()) {
+            rows.add(result.toRow());
+        }
+        BenchmarkReport.write("parsers.tsv", "label\tfixture\tstage\tmean_ms\tp50_ms\tp99_ms\tpages_per_sec\tkb_per_page", rows);
+    }
+
+
+    @Test
+    public void fortyPostThreadPage() throws Exception {
+        benchmarkThreadPage("thread_40_posts.html", 3812345);
+    }
+
+    @Test
+    public void fyadThreadPage() throws Exception {
+        benchmarkThreadPage("thread_fyad.html", 3923456);
+    }
+
+    @Test
+    public void quoteHeavyThreadPage() throws Exception {
+        benchmarkThreadPage("thread_quotes.html", 3987654);
+    }
+
+    @Test
+    public void bookmarksPage() throws Exception {
+        benchmarkThreadList("bookmarks.html", Constants.USERCP_ID);
+    }
+
+    @Test
+    public void forumDisplayPage() throws Exception {
+        benchmarkThreadList("forum_display.html", 202);
+    }
+
+    @Test
+    public void forumIndexPage() throws Exception {
+        String fixture = "forum_index.html";
+        byte[] data = Fixtures.load(fixture);
+
+        for (int i = 0; i < BenchmarkReport.WARMUP + BenchmarkReport.ITERATIONS; i++) {
+            boolean record = i >= BenchmarkReport.WARMUP;
+            // the forum structure update requests aren't stripped
+            Document page = measure(record, fixture, "parse", () ->
+                    Jsoup.parse(new ByteArrayInputStream(data), Constants.SITE_HTML_ENCODING, Constants.BASE_URL));
+            measure(record, fixture, "checkPageErrors", () -> AwfulError.checkPageErrors(page, null));
+            List<CrawlerTask.ForumLink> sections = measure(record, fixture, "parseSectionLinks", () -> CrawlerTask.parseSectionLinks(page));
+            assertThat(sections.size(), greaterThan(0));
+        }
+    }
+
+
+    private void benchmarkThreadPage(String fixture, int threadId) throws Exception {
+        byte[] data = Fixtures.load(fixture);
+        HtmlStripper pageInfo = new HtmlStripper(data, StripProfile.THREAD_PAGE);
+        int pageNumber = pageInfo.getSelectedPage();
+        int firstIndex = (pageNumber - 1) * 40 + 1;
+        long pageKey = PostFingerprint.pageKey(0);
+        Map<Integer, Long> noFingerprints = Collections.emptyMap();
+
+        for (int i = 0; i < BenchmarkReport.WARMUP + BenchmarkReport.ITERATIONS; i++) {
+            boolean record = i >= BenchmarkReport.WARMUP;
+            Document page = measure(record, fixture, "parseAsHtml", () -> parseAsHtml(data, StripProfile.THREAD_PAGE));
+            measure(record, fixture, "checkPageErrors", () -> AwfulError.checkPageErrors(page, null));
+
+            String updateTime = new Timestamp(System.currentTimeMillis()).toString();
+            List<Callable<ContentValues>> tasks = new ArrayList<>();
+            int index = firstIndex;
+            for (Element post : page.getElementsByClass("post")) {
+                tasks.add(new PostParseTask(post, updateTime, index++, firstIndex, threadId, 0, pageKey, noFingerprints));
+            }
+            assertThat(tasks.size(), greaterThan(0));
+            measure(record, fixture, "PostParseTask", () -> ForumParsingKt.parseSingleThreaded(tasks));
+
+            // post parsing changes the page a little, so the pooled parse gets a fresh copy
+            Document freshPage = parseAsHtml(data, StripProfile.THREAD_PAGE);
+            measure(record, fixture, "parsePosts",
+                    () -> AwfulPost.parsePosts(freshPage, threadId, firstIndex, 0, firstIndex, noFingerprints));
+        }
+    }
+
+
+    private void benchmarkThreadList(String fixture, int forumId) throws Exception {
+        byte[] data = Fixtures.load(fixture);
+
+        for (int i = 0; i < BenchmarkReport.WARMUP + BenchmarkReport.ITERATIONS; i++) {
+            boolean record = i >= BenchmarkReport.WARMUP;
+            Document page = measure(record, fixture, "parseAsHtml", () -> parseAsHtml(data, StripProfile.THREAD_LIST));
+            measure(record, fixture, "checkPageErrors", () -> AwfulError.checkPageErrors(page, null));
+
+            String updateTime = new Timestamp(System.currentTimeMillis()).toString();
+            List<Callable<ContentValues>> tasks = new ArrayList<>();
+            int index = 1;
+            for (Element thread : page.select("#forum .thread")) {
+                if (!thread.id().isEmpty()) {
+                    tasks.add(new ForumParseTask(thread, forumId, index++, "Mr. Wiggles", updateTime));
+                }
+            }
+            assertThat(tasks.size(), greaterThan(0));
+            measure(record, fixture, "ForumParseTask", () -> ForumParsingKt.parseSingleThreaded(tasks));
+        }
+    }
+
+
+    /**
+     * The same strip-and-parse that AwfulStrippedRequest#parseAsHtml does with a response.
+     */
+    private static Document parseAsHtml(byte[] data, StripProfile profile) throws IOException {
+        HtmlStripper stripper = new HtmlStripper(data, profile);
+        return Jsoup.parse(stripper.inputStream(), Constants.SITE_HTML_ENCODING, Constants.BASE_URL);
+    }
+
+    /**
+     * Run a stage, recording its time and allocations if this is a measured iteration.
+     */
+    private static <T> T measure(boolean record, String fixture, String stage, Callable<T> work) throws Exception {
+        if (!record) {
+            T result = work.call();
+            sink = result;
+            return result;
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        T result = work.call();
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        sink = result;
+
+        String key = fixture + "/" + stage;
+        StageResult stageResult = results.get(key);
+        if (stageResult == null) {
+            stageResult = new StageResult(fixture, stage);
+            results.put(key, stageResult);
+        }
+        stageResult.add(elapsed, allocated);
+        return result;
+    }
+
+    /**
+     * The total bytes allocated by all live threads - threads that have died aren't included,
+     * but the parse pool's threads stick around once they've started.
+     */
+    private static long allocatedBytes() {
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+
+    /**
+     * The measurements for one stage of parsing one fixture.
+     */
+    private static class StageResult {
+        private final String fixture;
+        private final String stage;
+        private long[] nanos = new long[BenchmarkReport.ITERATIONS];
+        private int count = 0;
+        private long allocatedBytes = 0;
+
+        StageResult(String fixture, String stage) {
+            this.fixture = fixture;
+            this.stage = stage;
+        }
+
+        void add(long elapsedNanos, long allocated) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = elapsedNanos;
+            allocatedBytes += Math.max(allocated, 0);
+        }
+
+        String toRow() {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long sample : sorted) {
+                total += sample;
+            }
+            double meanMillis = total / (double) count / 1_000_000;
+            return String.format(Locale.US, "%s\t%s\t%s\t%.3f\t%.3f\t%.3f\t%.1f\t%.1f",
+                    BenchmarkReport.LABEL, fixture, stage,
+                    meanMillis,
+                    percentile(sorted, 0.50) / 1_000_000.0,
+                    percentile(sorted, 0.99) / 1_000_000.0,
+                    1000 / meanMillis,
+                    allocatedBytes / (double) count / 1024);
+        }
+
+        /** nearest-rank percentile of some sorted samples */
+        private static long percentile(long[] sorted, double percentile) {
+            int rank = (int) Math.ceil(percentile * sorted.length);
+            return sorted[Math.max(rank - 1, 0)];
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.ferg.awfulapp.network;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Runs the embed resolver against a local server standing in for the Vimeo API.
+ */
+public class EmbedResolverTest {
+
+    private HttpServer server;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final Map<String, String> cacheData = new HashMap<>();
+    private EmbedResolver resolver;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/video/", exchange -> {
+            requestCount.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            String body;
+            if (path.endsWith("/123.xml")) {
+                body = "<videos><video><id>123</id><url>https://vimeo.com/123</url><mobile_url>https://vimeo.com/m/123</mobile_url></video></videos>";
+            } else if (path.endsWith("/456.xml")) {
+                body = "<videos><video><id>456</id><url>https://vimeo.com/456</url></video></videos>";
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+
+        EmbedResolver.Cache cache = new EmbedResolver.Cache() {
+            @Override
+            public String get(String key) {
+                synchronized (cacheData) {
+                    return cacheData.get(key);
+                }
+            }
+
+            @Override
+            public void put(String key, String value) {
+                synchronized (cacheData) {
+                    cacheData.put(key, value);
+                }
+            }
+        };
+        String apiBase = "http://localhost:" + server.getAddress().getPort() + "/video/";
+        resolver = new EmbedResolver(cache, Executors.newSingleThreadExecutor(), apiBase);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+
+    @Test
+    public void prefersTheMobileUrl() throws Exception {
+        assertThat(resolver.resolveBlocking(EmbedResolver.VIMEO, "123"), is("https://vimeo.com/m/123"));
+    }
+
+    @Test
+    public void fallsBackToTheStandardUrl() throws Exception {
+        assertThat(resolver.resolveBlocking(EmbedResolver.VIMEO, "456"), is("https://vimeo.com/456"));
+    }
+
+    @Test
+    public void cachesResultsSoEachVideoIsOnlyFetchedOnce() throws Exception {
+        resolver.resolveBlocking(EmbedResolver.VIMEO, "123");
+        resolver.resolveBlocking(EmbedResolver.VIMEO, "123");
+
+        assertThat(requestCount.get(), is(1));
+        assertThat(resolver.cached(EmbedResolver.VIMEO, "123"), is("https://vimeo.com/m/123"));
+    }
+
+    @Test
+    public void unknownProvidersAreNotResolved() throws Exception {
+        assertThat(resolver.resolveBlocking("dailymotion", "123"), is(nullValue()));
+        assertThat(requestCount.get(), is(0));
+    }
+
+    @Test
+    public void asyncLookupsPassFailuresBackAsNull() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<String> result = new AtomicReference<>("not called");
+        resolver.resolve(EmbedResolver.VIMEO, "789", url -> {
+            result.set(url);
+            done.countDown();
+        });
+
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(result.get(), is(nullValue()));
+        assertThat(resolver.cached(EmbedResolver.VIMEO, "789"), is(nullValue()));
+    }
+
+    @Test
+    public void asyncLookupsShareOneRequest() throws Exception {
+        CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            resolver.resolve(EmbedResolver.VIMEO, "456", url -> {
+                if ("https://vimeo.com/456".equals(url)) {
+                    done.countDown();
+                }
+            });
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(requestCount.get(), is(1));
+    }
+}
@@ -0,0 +1,211 @@
+package com.ferg.awfulapp.provider;
+
+import android.database.sqlite.SQLiteConstraintException;
+
+import androidx.annotation.NonNull;
+
+import com.ferg.awfulapp.util.ContentCompression;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Checks rows are bound to the writer's compiled statements correctly, whatever keys and value
+ * types each row has, and that a row that fails to write doesn't take the rest of the batch with it.
+ */
+public class BulkWriterTest {
+
+    private static final String[] COLUMNS = {"id", "name", "score", "data"};
+
+    private final List<FakeStatement> compiled = new ArrayList<>();
+
+
+    @Test
+    public void everyValueTypeIsBound() {
+        byte[] blob = {1, 2, 3};
+        try (BulkWriter writer = writer(null, null)) {
+            writer.writeAll(rows(
+                    row("id", 1, "name", "int", "score", (short) 2, "data", (byte) 3),
+                    row("id", 2L, "name", true, "score", 1.5f, "data", 2.5),
+                    row("id", 3, "name", null, "score", false, "data", blob)
+            ));
+        }
+        List<Object[]> inserts = replace().executed;
+        assertThat(inserts.get(0), is(new Object[]{1L, "int", 2L, 3L}));
+        assertThat(inserts.get(1), is(new Object[]{2L, 1L, 1.5, 2.5}));
+        assertThat(inserts.get(2)[1], is(nullValue()));
+        assertThat(inserts.get(2)[2], is(0L));
+        assertThat(inserts.get(2)[3], is(blob));
+    }
+
+    @Test
+    public void oneStatementIsReusedForRowsWithDifferentKeys() {
+        try (BulkWriter writer = writer(null, null)) {
+            assertThat(writer.writeAll(rows(
+                    row("id", 1, "name", "first", "score", 10, "data", "x"),
+                    row("id", 2, "name", "second"),
+                    row("score", 30, "not_a_column", "ignored")
+            )), is(3));
+        }
+        assertThat(compiled.size(), is(1));
+        assertThat(replace().sql, is("INSERT OR REPLACE INTO things (id,name,score,data) VALUES (?,?,?,?)"));
+        // values from earlier rows never leak into columns a later row doesn't have
+        assertThat(replace().executed, contains(
+                new Object[]{1L, "first", 10L, "x"},
+                new Object[]{2L, "second", null, null},
+                new Object[]{null, null, 30L, null}
+        ));
+        assertThat(replace().closed, is(true));
+    }
+
+    @Test
+    public void failingRowsAreSkipped() {
+        try (BulkWriter writer = writer(null, null)) {
+            assertThat(writer.writeAll(rows(
+                    row("id", 1, "name", "ok"),
+                    row("id", 2, "name", FakeStatement.FAIL),
+                    row("id", 3, "name", "also ok")
+            )), is(2));
+            assertThat(writer.getRowsWritten(), is(2));
+        }
+        assertThat(replace().executed, contains(
+                new Object[]{1L, "ok", null, null},
+                new Object[]{3L, "also ok", null, null}
+        ));
+    }
+
+    @Test
+    public void rowsAreDeletedByKeyFirst() {
+        try (BulkWriter writer = writer("name", null)) {
+            writer.writeAll(rows(row("id", 1, "name", ":v:"), row("id", 2, "name", ":o:")));
+        }
+        assertThat(compiled.size(), is(2));
+        FakeStatement delete = compiled.get(1);
+        assertThat(delete.sql, is("DELETE FROM things WHERE name=?"));
+        assertThat(delete.executed, contains(new Object[]{":v:"}, new Object[]{":o:"}));
+        assertThat(delete.closed, is(true));
+    }
+
+    @Test
+    public void theContentColumnIsCompressed() {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            longText.append("a post long enough to be worth compressing. ");
+        }
+        try (BulkWriter writer = writer(null, "data")) {
+            writer.writeAll(rows(row("id", 1, "name", longText.toString(), "data", longText.toString())));
+        }
+        Object[] insert = replace().executed.get(0);
+        assertThat(insert[1], is(longText.toString()));
+        assertThat(insert[3], instanceOf(byte[].class));
+        assertThat(ContentCompression.decompress((byte[]) insert[3]), is(longText.toString()));
+    }
+
+
+    private BulkWriter writer(String deleteKey, String compressedColumn) {
+        return new BulkWriter(sql -> {
+            FakeStatement statement = new FakeStatement(sql);
+            compiled.add(statement);
+            return statement;
+        }, "things", COLUMNS, deleteKey, compressedColumn);
+    }
+
+    private FakeStatement replace() {
+        return compiled.get(0);
+    }
+
+    private static BulkWriter.Row[] rows(BulkWriter.Row... rows) {
+        return rows;
+    }
+
+    /**
+     * Build a row from alternating keys and values.
+     */
+    private static BulkWriter.Row row(Object... keysAndValues) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            values.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return values::get;
+    }
+
+
+    /**
+     * Records the values bound each time it's executed.
+     */
+    private static class FakeStatement implements BulkWriter.Statement {
+
+        /** a value that makes the statement fail, like a constraint violation would */
+        static final String FAIL = "fail";
+
+        final String sql;
+        final List<Object[]> executed = new ArrayList<>();
+        private final Object[] bound;
+        boolean closed = false;
+
+        FakeStatement(String sql) {
+            this.sql = sql;
+            bound = new Object[sql.length() - sql.replace("?", "").length()];
+        }
+
+        @Override
+        public void bindNull(int index) {
+            bound[index - 1] = null;
+        }
+
+        @Override
+        public void bindLong(int index, long value) {
+            bound[index - 1] = value;
+        }
+
+        @Override
+        public void bindDouble(int index, double value) {
+            bound[index - 1] = value;
+        }
+
+        @Override
+        public void bindString(int index, @NonNull String value) {
+            bound[index - 1] = value;
+        }
+
+        @Override
+        public void bindBlob(int index, @NonNull byte[] value) {
+            bound[index - 1] = value;
+        }
+
+        @Override
+        public long executeInsert() {
+            execute();
+            return executed.size();
+        }
+
+        @Override
+        public int executeUpdateDelete() {
+            execute();
+            return 1;
+        }
+
+        private void execute() {
+            if (Arrays.asList(bound).contains(FAIL)) {
+                throw new SQLiteConstraintException("UNIQUE constraint failed");
+            }
+            executed.add(bound.clone());
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.ferg.awfulapp.provider;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Checks a batch of pending notifications only sends what's needed - a Uri is dropped when one of
+ * its ancestors is also being notified, since that already reaches everything under it. Listeners
+ * get the same changes a ContentObserver watching descendants would.
+ */
+public class ChangeNotifierTest {
+
+    private static final String POST = "content://com.ferg.awfulapp.provider/post";
+    private static final String THREAD = "content://com.ferg.awfulapp.provider/thread";
+
+    @Test
+    public void unrelatedUrisAreAllSent() {
+        Set<String> pending = set(POST + "/thread/1", POST + "/thread/2", THREAD + "/forum/3");
+        assertThat(ChangeNotifier.removeCovered(pending),
+                contains(POST + "/thread/1", POST + "/thread/2", THREAD + "/forum/3"));
+    }
+
+    @Test
+    public void urisUnderAPendingAncestorAreDropped() {
+        Set<String> pending = set(POST + "/thread/1", THREAD + "/5", POST, THREAD + "/forum/3");
+        assertThat(ChangeNotifier.removeCovered(pending), contains(THREAD + "/5", POST, THREAD + "/forum/3"));
+    }
+
+    @Test
+    public void sharedPrefixesAreNotAncestors() {
+        // thread/1 is not the parent of thread/12
+        Set<String> pending = set(THREAD + "/1", THREAD + "/12");
+        assertThat(ChangeNotifier.removeCovered(pending), contains(THREAD + "/1", THREAD + "/12"));
+    }
+
+    @Test
+    public void listenersSeeChangesAboveAndBelowTheirUri() {
+        String watched = POST + "/thread/1";
+        assertThat(ChangeNotifier.affects(watched, watched), is(true));
+        assertThat(ChangeNotifier.affects(POST, watched), is(true));
+        assertThat(ChangeNotifier.affects(watched + "/5", watched), is(true));
+        assertThat(ChangeNotifier.affects(POST + "/thread/12", watched), is(false));
+        assertThat(ChangeNotifier.affects(THREAD + "/1", watched), is(false));
+    }
+
+
+    private static Set<String> set(String... uris) {
+        return new LinkedHashSet<>(Arrays.asList(uris));
+    }
+}
@@ -0,0 +1,55 @@
+package com.ferg.awfulapp.provider;
+
+import com.ferg.awfulapp.provider.ContentCache.ThreadUsage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Checks the cache picks the right threads to evict - least recently read first, never anything
+ * bookmarked or just read, and only as many as it takes to get within the budget.
+ */
+public class ContentCacheTest {
+
+    private static final long NOW = 1_000_000;
+
+    /** threads in the order the usage query returns them, least recently read first */
+    private static final List<ThreadUsage> USAGE = Arrays.asList(
+            new ThreadUsage(1, 10, 100, 0, false),
+            new ThreadUsage(2, 10, 100, 100, true),
+            new ThreadUsage(3, 10, 100, 200, false),
+            new ThreadUsage(4, 10, 100, 300, false),
+            new ThreadUsage(5, 10, 100, NOW, false)
+    );
+
+    @Test
+    public void nothingIsEvictedWithinBudget() {
+        assertThat(ContentCache.selectForEviction(USAGE, 500, NOW), is(empty()));
+        assertThat(ContentCache.selectForEviction(USAGE, 1000, NOW), is(empty()));
+    }
+
+    @Test
+    public void leastRecentlyReadThreadsAreEvictedFirst() {
+        assertThat(ContentCache.selectForEviction(USAGE, 400, NOW), contains(1L));
+        assertThat(ContentCache.selectForEviction(USAGE, 399, NOW), contains(1L, 3L));
+    }
+
+    @Test
+    public void bookmarkedThreadsAreNeverEvicted() {
+        assertThat(ContentCache.selectForEviction(USAGE, 0, NOW), contains(1L, 3L, 4L));
+    }
+
+    @Test
+    public void recentlyReadThreadsAreNeverEvicted() {
+        // thread 5 was read at NOW, so it's kept even when the cache is over budget
+        assertThat(ContentCache.selectForEviction(USAGE, 150, NOW), contains(1L, 3L, 4L));
+        assertThat(ContentCache.selectForEviction(USAGE, 150, NOW + 1), contains(1L, 3L, 4L, 5L));
+    }
+}
@@ -0,0 +1,235 @@
+package com.ferg.awfulapp.provider;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Checks queued writes are batched into shared transactions, that a failing write only rolls back
+ * its own changes without anything in the batch being run twice, and that nothing is notified
+ * until the transaction it was written in has committed.
+ */
+public class DatabaseWriterTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    /** everything that happened to the database and the notifier, in order */
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private DatabaseWriter<String> writer;
+
+
+    @Before
+    public void setUp() {
+        writer = new DatabaseWriter<>(new FakeTransactions(), uri -> events.add("notify " + uri));
+    }
+
+
+    @Test
+    public void queuedWritesShareATransaction() throws InterruptedException {
+        CountDownLatch release = blockWriter();
+        writer.writeAsync(record("a"), "a");
+        writer.writeAsync(record("b"), "b");
+        writer.writeAsync(record("c"), null);
+        release.countDown();
+        writer.write(record("d"), Collections.singletonList("d"));
+
+        // the blocking write has its own transaction, then everything that queued behind it shares the next one
+        List<List<String>> batches = new ArrayList<>();
+        for (String event : events) {
+            if (event.equals("begin")) {
+                batches.add(new ArrayList<>());
+            } else if (event.startsWith("write ")) {
+                batches.get(batches.size() - 1).add(event);
+            }
+        }
+        assertThat(batches.get(0).isEmpty(), is(true));
+        assertThat(batches.get(1).subList(0, 3), contains("write a", "write b", "write c"));
+        assertThat(count("commit"), is((long) batches.size()));
+    }
+
+    @Test
+    public void aFailingWriteOnlyRollsBackItself() throws InterruptedException {
+        AtomicInteger eviction = new AtomicInteger();
+        CountDownLatch release = blockWriter();
+        writer.writeAsync(record("a"), "a");
+        // like an eviction step, this queues its next step - running it twice would queue two of them
+        writer.writeAsync(db -> {
+            events.add("write step " + eviction.incrementAndGet());
+            if (eviction.get() < 3) {
+                writer.writeAsync(record("next step"), null);
+            }
+            return null;
+        }, "step");
+        writer.writeAsync(db -> {
+            events.add("write broken");
+            throw new IllegalStateException("broken");
+        }, "broken");
+        release.countDown();
+
+        IllegalStateException failure = null;
+        try {
+            writer.write(db -> {
+                throw new IllegalStateException("also broken");
+            }, Collections.singletonList("also broken"));
+        } catch (IllegalStateException e) {
+            failure = e;
+        }
+        assertThat(failure.getMessage(), is("also broken"));
+        assertThat(writer.write(record("e"), Collections.singletonList("e")), is("e"));
+
+        assertThat(count("write a"), is(1L));
+        assertThat(count("write step 1"), is(1L));
+        assertThat(count("write next step"), is(1L));
+        assertThat(count("write broken"), is(1L));
+        assertThat(count("rollback"), is(2L));
+        assertThat(events.stream().filter(e -> e.startsWith("notify ")).toArray(),
+                is(new Object[]{"notify a", "notify step", "notify e"}));
+    }
+
+    @Test
+    public void nestedWritesNotifyAfterTheOuterCommit() {
+        writer.write(db -> {
+            writer.write(record("inner"), Collections.singletonList("inner"));
+            // a nested write that fails is rolled back alone, and never notifies
+            try {
+                writer.write(db2 -> {
+                    throw new IllegalStateException("broken");
+                }, Collections.singletonList("broken"));
+            } catch (IllegalStateException ignored) {
+            }
+            events.add("outer done");
+            return null;
+        }, Collections.singletonList("outer"));
+
+        assertThat(events, contains(
+                "begin", "savepoint",
+                "savepoint", "write inner", "release",
+                "savepoint", "rollback",
+                "outer done", "release",
+                "commit", "notify outer", "notify inner"));
+    }
+
+    @Test
+    public void committedActionsRunAfterTheCommit() {
+        writer.writeAsync(record("a"), "a", result -> events.add("committed " + result));
+        writer.writeAsync(db -> {
+            throw new IllegalStateException("broken");
+        }, null, result -> events.add("committed broken"));
+        // everything queued before this has been committed by the time it returns
+        writer.write(record("b"), Collections.singletonList("b"));
+
+        assertThat(events.contains("committed broken"), is(false));
+        int committed = events.indexOf("committed a");
+        assertThat(events.get(committed - 1), is("commit"));
+        assertThat(events.indexOf("notify a"), is(committed + 1));
+    }
+
+    @Test
+    public void aFailedCommitFailsTheWholeBatch() {
+        FakeTransactions transactions = new FakeTransactions();
+        transactions.failCommit = true;
+        writer = new DatabaseWriter<>(transactions, uri -> events.add("notify " + uri));
+        RuntimeException failure = null;
+        try {
+            writer.write(record("a"), Collections.singletonList("a"));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        assertThat(failure.getMessage(), is("disk I/O error"));
+        assertThat(events.stream().anyMatch(e -> e.startsWith("notify ")), is(false));
+    }
+
+
+    /**
+     * Queue a write that holds up the writer thread, so the writes after it queue up together.
+     *
+     * @return a latch to count down to let the writer carry on
+     */
+    private CountDownLatch blockWriter() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        writer.writeAsync(db -> {
+            started.countDown();
+            try {
+                return release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }, null);
+        assertThat(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), is(true));
+        return release;
+    }
+
+    private DatabaseWriter.Work<String> record(String name) {
+        return db -> {
+            events.add("write " + name);
+            return name;
+        };
+    }
+
+    private long count(String event) {
+        return events.stream().filter(event::equals).count();
+    }
+
+
+    /**
+     * Records what happens to each transaction, without a real database.
+     */
+    private class FakeTransactions implements DatabaseWriter.Transactions {
+
+        boolean failCommit = false;
+        private boolean successful;
+
+        @Override
+        public SQLiteDatabase getDatabase() {
+            return null;
+        }
+
+        @Override
+        public void begin() {
+            successful = false;
+            events.add("begin");
+        }
+
+        @Override
+        public void setSuccessful() {
+            successful = true;
+        }
+
+        @Override
+        public void end() {
+            if (successful && failCommit) {
+                events.add("failed commit");
+                throw new IllegalStateException("disk I/O error");
+            }
+            events.add(successful ? "commit" : "abort");
+        }
+
+        @Override
+        public void savepoint() {
+            events.add("savepoint");
+        }
+
+        @Override
+        public void release() {
+            events.add("release");
+        }
+
+        @Override
+        public void rollback() {
+            events.add("rollback");
+        }
+    }
+}
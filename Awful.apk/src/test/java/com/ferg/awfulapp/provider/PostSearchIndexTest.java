@@ -0,0 +1,62 @@
+package com.ferg.awfulapp.provider;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Checks search text is turned into safe full-text match expressions, and post dates are read
+ * for the date filters.
+ */
+public class PostSearchIndexTest {
+
+    @Test
+    public void wordsAreMatchedSeparately() {
+        assertThat(PostSearchIndex.toMatchExpression("cats  dogs", null), is("\"cats\" \"dogs\""));
+    }
+
+    @Test
+    public void quotedPhrasesAreKeptTogether() {
+        assertThat(PostSearchIndex.toMatchExpression("big \"fat cat\" sat", null), is("\"big\" \"fat cat\" \"sat\""));
+        // an unclosed quote runs to the end
+        assertThat(PostSearchIndex.toMatchExpression("big \"fat cat", null), is("\"big\" \"fat cat\""));
+    }
+
+    @Test
+    public void matchSyntaxIsTreatedAsText() {
+        assertThat(PostSearchIndex.toMatchExpression("cats OR dog* -fish NEAR/3 (birds)", null),
+                is("\"cats\" \"OR\" \"dog\" \"fish\" \"NEAR 3\" \"birds\""));
+        assertThat(PostSearchIndex.toMatchExpression("body:cats", null), is("\"body cats\""));
+    }
+
+    @Test
+    public void nothingToMatchGivesNull() {
+        assertThat(PostSearchIndex.toMatchExpression(null, null), is(nullValue()));
+        assertThat(PostSearchIndex.toMatchExpression("  \"\" - * ", null), is(nullValue()));
+    }
+
+    @Test
+    public void quotingMatchesTheQuoteHeader() {
+        assertThat(PostSearchIndex.toMatchExpression("cats", "Mr. Wiggles"), is("\"cats\" \"Mr Wiggles posted\""));
+        assertThat(PostSearchIndex.toMatchExpression(null, "Mr. Wiggles"), is("\"Mr Wiggles posted\""));
+    }
+
+    @Test
+    public void postDatesAreParsed() throws Exception {
+        long expected = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US).parse("2026-10-17 22:41").getTime();
+        assertThat(PostSearchIndex.parsePostDate("Oct 17, 2026 22:41"), is(expected));
+        assertThat(PostSearchIndex.parsePostDate(" Oct 17, 2026 22:41 "), is(expected));
+    }
+
+    @Test
+    public void unreadableDatesGiveNull() {
+        assertThat(PostSearchIndex.parsePostDate(null), is(nullValue()));
+        assertThat(PostSearchIndex.parsePostDate(""), is(nullValue()));
+        assertThat(PostSearchIndex.parsePostDate("yesterday"), is(nullValue()));
+    }
+}
@@ -0,0 +1,70 @@
+package com.ferg.awfulapp.provider;
+
+import com.ferg.awfulapp.provider.SchemaMigrator.Column;
+import com.ferg.awfulapp.provider.SchemaMigrator.Plan;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Checks tables are migrated the cheapest way that keeps their data - new plain columns are added
+ * in place, and anything else means copying the table.
+ */
+public class SchemaMigratorTest {
+
+    private static final Column ID = new Column("_id", "INTEGER", false, true);
+    private static final Column TITLE = new Column("title", "VARCHAR", false, false);
+    private static final Column FINGERPRINT = new Column("fingerprint", "INTEGER", false, false);
+    private static final Column TIMESTAMP = new Column("timestamp_row_update", "DATETIME", false, false);
+
+    private static final List<Column> CURRENT = Arrays.asList(ID, TITLE, FINGERPRINT, TIMESTAMP);
+
+    @Test
+    public void missingTablesAreCreated() {
+        assertThat(SchemaMigrator.plan(Collections.<Column>emptyList(), CURRENT), is(Plan.CREATE));
+    }
+
+    @Test
+    public void matchingTablesAreLeftAlone() {
+        assertThat(SchemaMigrator.plan(CURRENT, CURRENT), is(Plan.NONE));
+        // column names are case-insensitive in SQLite
+        List<Column> shouted = Arrays.asList(ID, new Column("TITLE", "varchar", false, false), FINGERPRINT, TIMESTAMP);
+        assertThat(SchemaMigrator.plan(shouted, CURRENT), is(Plan.NONE));
+    }
+
+    @Test
+    public void newColumnsAreAddedInPlace() {
+        // new columns go in before the timestamp, so this can't depend on column order
+        assertThat(SchemaMigrator.plan(Arrays.asList(ID, TITLE, TIMESTAMP), CURRENT), is(Plan.ADD_COLUMNS));
+    }
+
+    @Test
+    public void newConstrainedColumnsNeedARebuild() {
+        Column uniqueTitle = new Column("title", "VARCHAR", false, true);
+        assertThat(SchemaMigrator.plan(Arrays.asList(ID, TIMESTAMP), Arrays.asList(ID, uniqueTitle, TIMESTAMP)), is(Plan.REBUILD));
+    }
+
+    @Test
+    public void removedOrChangedColumnsNeedARebuild() {
+        Column oldColumn = new Column("old_column", "VARCHAR", false, false);
+        assertThat(SchemaMigrator.plan(Arrays.asList(ID, TITLE, oldColumn, FINGERPRINT, TIMESTAMP), CURRENT), is(Plan.REBUILD));
+        Column textFingerprint = new Column("fingerprint", "VARCHAR", false, false);
+        assertThat(SchemaMigrator.plan(Arrays.asList(ID, TITLE, textFingerprint, TIMESTAMP), CURRENT), is(Plan.REBUILD));
+        Column notUniqueId = new Column("_id", "INTEGER", false, false);
+        assertThat(SchemaMigrator.plan(Arrays.asList(notUniqueId, TITLE, FINGERPRINT, TIMESTAMP), CURRENT), is(Plan.REBUILD));
+    }
+
+    @Test
+    public void rebuildsCopyTheSharedColumns() {
+        Column oldColumn = new Column("old_column", "VARCHAR", false, false);
+        assertThat(SchemaMigrator.sharedColumns(Arrays.asList(ID, oldColumn, TITLE, TIMESTAMP), CURRENT),
+                contains("_id", "title", "timestamp_row_update"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.ferg.awfulapp.search;
+
+import com.ferg.awfulapp.provider.PostSearchIndex;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Checks site search queries, including the filters {@link SearchFilter} adds, are turned into
+ * the right cached post search parameters.
+ */
+public class LocalSearchTest {
+
+    @Test
+    public void plainTextIsSearchedFor() {
+        assertThat(new LocalSearch("  cats   and dogs ").getParams(), is(params(PostSearchIndex.PARAM_TEXT, "cats and dogs")));
+    }
+
+    @Test
+    public void filtersBecomeParameters() {
+        String query = "cats " + new SearchFilter(SearchFilter.FilterType.Username, "Mr. Wiggles") +
+                " " + new SearchFilter(SearchFilter.FilterType.ThreadId, "3812345") +
+                " " + new SearchFilter(SearchFilter.FilterType.UserId, "12") +
+                " dogs " + new SearchFilter(SearchFilter.FilterType.Quoting, "Some Goon") +
+                new SearchFilter(SearchFilter.FilterType.InTitle, "the thread");
+        assertThat(new LocalSearch(query).getParams(), is(params(
+                PostSearchIndex.PARAM_TEXT, "cats dogs",
+                PostSearchIndex.PARAM_USERNAME, "Mr. Wiggles",
+                PostSearchIndex.PARAM_THREAD_ID, "3812345",
+                PostSearchIndex.PARAM_USER_ID, "12",
+                PostSearchIndex.PARAM_QUOTING, "Some Goon",
+                PostSearchIndex.PARAM_TITLE, "the thread")));
+    }
+
+    @Test
+    public void dateFiltersBecomeTimestamps() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        String query = new SearchFilter(SearchFilter.FilterType.After, "2026-01-31") + " " +
+                new SearchFilter(SearchFilter.FilterType.Before, "Oct 17, 2026");
+        assertThat(new LocalSearch(query).getParams(), is(params(
+                PostSearchIndex.PARAM_AFTER, String.valueOf(format.parse("2026-01-31").getTime()),
+                PostSearchIndex.PARAM_BEFORE, String.valueOf(format.parse("2026-10-17").getTime()))));
+    }
+
+    @Test
+    public void unreadableDatesAreIgnored() {
+        String query = "cats " + new SearchFilter(SearchFilter.FilterType.Before, "last tuesday");
+        assertThat(new LocalSearch(query).getParams(), is(params(PostSearchIndex.PARAM_TEXT, "cats")));
+    }
+
+    @Test
+    public void unknownKeywordsStayInTheText() {
+        assertThat(new LocalSearch("time: 12:30 forumid:5").getParams(),
+                is(params(PostSearchIndex.PARAM_TEXT, "time: 12:30 forumid:5")));
+    }
+
+    @Test
+    public void emptyQueriesAreEmpty() {
+        assertThat(new LocalSearch("   ").isEmpty(), is(true));
+        assertThat(new LocalSearch("cats").isEmpty(), is(false));
+    }
+
+    @Test
+    public void snippetsAreEscapedAroundTheMatches() {
+        String snippet = "if (a < b && c > d) " + PostSearchIndex.MATCH_START + "<script>" + PostSearchIndex.MATCH_END +
+                " \"quoted\" <b>not bold</b>\u2026";
+        assertThat(LocalSearch.snippetToHtml(snippet),
+                is("if (a &lt; b &amp;&amp; c &gt; d) <b>&lt;script&gt;</b> &quot;quoted&quot; &lt;b&gt;not bold&lt;/b&gt;&hellip;"));
+        assertThat(LocalSearch.snippetToHtml(null), is(nullValue()));
+    }
+
+
+    private static Map<String, String> params(String... namesAndValues) {
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            params.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return params;
+    }
+}
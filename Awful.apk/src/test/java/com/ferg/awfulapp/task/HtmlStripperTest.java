@@ -0,0 +1,100 @@
+package com.ferg.awfulapp.task;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Checks the byte-level stripping matches what the old page selector regex did, and that strip
+ * profiles only remove the regions they describe.
+ */
+public class HtmlStripperTest {
+
+    private static final Charset CHARSET = Charset.forName("CP1252");
+
+    private static final String SELECTOR = "<select data-url=\"showthread.php?threadid=123&amp;perpage=40\">" +
+            "<option value=\"1\">1</option><option value=\"2\" selected>2</option><option value=\"3\">3</option></select>";
+
+    @Test
+    public void stripsBothSelectorsAndReadsPageNumbers() throws IOException {
+        String page = "<div class=\"pages top\">" + SELECTOR + "</div><p>café</p><div class=\"pages bottom\">" + SELECTOR + "</div>";
+        HtmlStripper stripper = new HtmlStripper(page.getBytes(CHARSET), StripProfile.PAGE_SELECTORS);
+
+        assertThat(stripped(stripper), is("<div class=\"pages top\"></div><p>café</p><div class=\"pages bottom\"></div>"));
+        assertThat(stripper.getSelectedPage(), is(2));
+        assertThat(stripper.getLastPage(), is(3));
+        assertThat(stripper.getStrippedBytes(), is(SELECTOR.length() * 2));
+    }
+
+    @Test
+    public void leavesOtherSelectsAlone() throws IOException {
+        String page = "<select data-url=\"nothing here\"><option>1</option></select><select name=\"x\"></select>";
+        HtmlStripper stripper = new HtmlStripper(page.getBytes(CHARSET), StripProfile.PAGE_SELECTORS);
+
+        assertThat(stripped(stripper), is(page));
+        assertThat(stripper.getSelectedPage(), is(nullValue()));
+        assertThat(stripper.getLastPage(), is(nullValue()));
+    }
+
+    @Test
+    public void handlesPagesWithNoSelectors() throws IOException {
+        String page = "<html><body>one page thread</body></html>";
+        assertThat(stripped(new HtmlStripper(page.getBytes(CHARSET), StripProfile.PAGE_SELECTORS)), is(page));
+    }
+
+
+    @Test
+    public void threadListProfileStripsNestedRegionsAndScripts() throws IOException {
+        String page = "<body><div id=\"globalmenu\"><div><div>menu</div></div><!-- </div> --></div>" +
+                "<script>var s = '<div id=\"copyright\">';</script>" +
+                "<div class=\"breadcrumbs top\">crumbs</div>" +
+                "<div id=\"forum\">" + SELECTOR + "<table><tr class=\"thread\"></tr></table></div>" +
+                "<div id=\"copyright\">footer</div></body>";
+        HtmlStripper stripper = new HtmlStripper(page.getBytes(CHARSET), StripProfile.THREAD_LIST);
+
+        assertThat(stripped(stripper), is("<body><div id=\"forum\"><table><tr class=\"thread\"></tr></table></div></body>"));
+        assertThat(stripper.getLastPage(), is(3));
+    }
+
+    @Test
+    public void regionsWithKeepMarkersAreNotStripped() throws IOException {
+        String page = "<div id=\"globalmenu\"><div id=\"probation_warn\">you are on probation</div></div><div id=\"copyright\">footer</div>";
+        HtmlStripper stripper = new HtmlStripper(page.getBytes(CHARSET), StripProfile.THREAD_PAGE);
+
+        assertThat(stripped(stripper), is("<div id=\"globalmenu\"><div id=\"probation_warn\">you are on probation</div></div>"));
+    }
+
+    @Test
+    public void rawTextClosingTagsAreMatchedIgnoringCase() throws IOException {
+        String page = "<SCRIPT>var s = '</scripts>';</Script ><p>post</p><style>p {}</STYLE><div id=\"copyright\">footer</div>";
+        HtmlStripper stripper = new HtmlStripper(page.getBytes(CHARSET), StripProfile.THREAD_PAGE);
+
+        assertThat(stripped(stripper), is("<p>post</p><style>p {}</STYLE>"));
+    }
+
+    @Test
+    public void unclosedRegionsAreNotStripped() throws IOException {
+        String page = "<div id=\"copyright\"><div>footer</div><p>the rest of the page";
+        assertThat(stripped(new HtmlStripper(page.getBytes(CHARSET), StripProfile.THREAD_PAGE)), is(page));
+    }
+
+
+    private static String stripped(HtmlStripper stripper) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7]; // small buffer so reads cross the stripped blocks
+        try (InputStream in = stripper.inputStream()) {
+            int count;
+            while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        }
+        return new String(out.toByteArray(), CHARSET);
+    }
+}
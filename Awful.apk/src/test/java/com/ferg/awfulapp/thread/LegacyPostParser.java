@@ -0,0 +1,128 @@
+package com.ferg.awfulapp.thread;
+
+import com.ferg.awfulapp.network.NetworkUtils;
+import com.ferg.awfulapp.provider.DatabaseHelper;
+
+import org.jsoup.nodes.Element;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The old PostParseTask, which ran a separate search of the post for each field, kept as a
+ * reference for the golden tests of {@link PostParseVisitor}.
+ * <p>
+ * The preference-dependent content rewriting it used to do has since moved to
+ * {@link PostContentRenderer}, so this produces the content in the same canonical form the
+ * current parser stores - only the way each field is found is the old one.
+ */
+final class LegacyPostParser {
+
+    private static final Pattern USER_ID_REGEX = Pattern.compile("userid=(\\d+)");
+
+    private LegacyPostParser() {
+    }
+
+    static Map<String, Object> parse(Element postData, String updateTime, int index, int lastReadIndex, int threadId, int opId) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put(DatabaseHelper.UPDATED_TIMESTAMP, updateTime);
+        values.put(AwfulPost.THREAD_ID, threadId);
+        values.put(AwfulPost.ID, Integer.parseInt(postData.id().replaceAll("\\D", "")));
+        String dataIndex = postData.attr("data-idx").replaceAll("\\D", "");
+        values.put(AwfulPost.POST_INDEX, dataIndex.isEmpty() ? index : Integer.parseInt(dataIndex));
+        values.put(AwfulPost.IS_IGNORED, sqlBool(postData.hasClass("ignored")));
+
+        boolean markedSeen = postData.selectFirst("[class^=seen]") != null;
+        values.put(AwfulPost.PREVIOUSLY_READ, sqlBool(markedSeen || index <= lastReadIndex));
+
+        values.put(AwfulPost.USERNAME, textForClass(postData, "author"));
+        values.put(AwfulPost.REGDATE, textForClass(postData, "registered"));
+        values.put(AwfulPost.IS_PLAT, sqlBool(postData.selectFirst(".platinum") != null));
+        String role = "";
+        Element author = postData.selectFirst(".author");
+        if (author != null) {
+            for (String className : author.classNames()) {
+                if (className.startsWith("role-")) {
+                    role = className.substring(5);
+                    break;
+                }
+            }
+        }
+        values.put(AwfulPost.ROLE, role);
+
+        Element title = postData.selectFirst(".title");
+        if (title != null) {
+            values.put(AwfulPost.AVATAR_TEXT, title.text());
+            int avatarCount = 0;
+            for (Element image : title.select("img")) {
+                if (avatarCount == 2) {
+                    break;
+                }
+                AwfulPost.tryConvertToHttps(image);
+                values.put(avatarCount++ == 0 ? AwfulPost.AVATAR : AwfulPost.AVATAR_SECOND, image.attr("src"));
+            }
+        }
+
+        Element postBody = postData.selectFirst(".postbody");
+        Element fyadPostBody = postBody.selectFirst(".complete_shit");
+        Element content = fyadPostBody != null ? fyadPostBody : postBody;
+        for (Element video : content.select(".bbcode_video")) {
+            AwfulPost.convertBbcodeVideo(video);
+        }
+        if (fyadPostBody != null) {
+            Element signature = postBody.selectFirst("> .signature");
+            if (signature != null) {
+                signature.appendTo(fyadPostBody);
+            }
+        }
+        values.put(AwfulPost.CONTENT, content.html());
+        values.put(AwfulPost.SEARCH_TEXT, content.text());
+
+        values.put(AwfulPost.DATE, NetworkUtils.unencodeHtml(textForClass(postData, "postdate"))
+                .replaceAll("[^\\w\\s:,]", "").trim());
+
+        Integer userId = null;
+        for (Element userInfo : postData.getElementsByClass("userinfo")) {
+            for (String className : userInfo.classNames()) {
+                if (userId == null && className.startsWith("userid-") && className.length() > 7) {
+                    userId = Integer.parseInt(className.substring(7));
+                }
+            }
+        }
+        if (userId == null) {
+            Element profileLink = postData.selectFirst(".profilelinks [href*='userid=']");
+            if (profileLink != null) {
+                Matcher matcher = USER_ID_REGEX.matcher(profileLink.attr("href"));
+                if (matcher.find()) {
+                    userId = Integer.parseInt(matcher.group(1));
+                }
+            }
+        }
+        if (userId != null) {
+            values.put(AwfulPost.USER_ID, userId);
+            values.put(AwfulPost.IS_OP, sqlBool(opId == userId));
+        }
+
+        for (Element editedBy : postData.getElementsByClass("editedBy")) {
+            Element first = editedBy.children().first();
+            if (first != null) {
+                values.put(AwfulPost.EDITED, "<i>" + first.text() + "</i>");
+                break;
+            }
+        }
+
+        values.put(AwfulPost.EDITABLE, sqlBool(!postData.getElementsByAttributeValue("alt", "Edit").isEmpty()));
+        return values;
+    }
+
+    private static String textForClass(Element postData, String cssClass) {
+        Element element = postData.selectFirst("." + cssClass);
+        return element == null ? "" : element.text();
+    }
+
+    private static int sqlBool(boolean value) {
+        return value ? 1 : 0;
+    }
+}
@@ -0,0 +1,63 @@
+package com.ferg.awfulapp.thread;
+
+import com.samskivert.mustache.Template;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+
+public class MustacheTemplatesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void unchangedFilesAreOnlyCompiledOnce() throws IOException {
+        File file = write(folder.newFile("layout.mustache"), "<p>{{name}}</p>");
+        Template template = MustacheTemplates.getFile(file);
+        assertThat(MustacheTemplates.getFile(file), sameInstance(template));
+    }
+
+    @Test
+    public void changedFilesAreRecompiled() throws IOException {
+        File file = write(folder.newFile("layout.mustache"), "<p>{{name}}</p>");
+        Template original = MustacheTemplates.getFile(file);
+
+        write(file, "<div>{{name}}</div>");
+        // make sure the change shows up even on filesystems with coarse timestamps
+        file.setLastModified(file.lastModified() + 2000);
+        Template changed = MustacheTemplates.getFile(file);
+
+        assertThat(changed, not(sameInstance(original)));
+        assertThat(changed.execute(Collections.singletonMap("name", "Fred")), is("<div>Fred</div>"));
+    }
+
+    @Test
+    public void renderingAppendsToTheBuffer() throws IOException {
+        Template template = MustacheTemplates.getFile(write(folder.newFile("post.mustache"), "<p>{{name}}</p>"));
+        StringBuilder buffer = new StringBuilder("<div>");
+        MustacheTemplates.render(template, Collections.singletonMap("name", "Fred"), buffer);
+        MustacheTemplates.render(template, Collections.singletonMap("name", "Barney"), buffer);
+        assertThat(buffer.toString(), is("<div><p>Fred</p><p>Barney</p>"));
+    }
+
+
+    private static File write(File file, String contents) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(contents);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,170 @@
+package com.ferg.awfulapp.thread;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Checks queued parse work is picked up in lane order, and that cancelled callers drop their
+ * queued tasks without leaving the lanes' queue counts out of step.
+ * <p>
+ * Each test uses a scheduler with a single worker, which is kept busy by a blocking task while the
+ * work under test is queued up behind it.
+ */
+public class ParseSchedulerTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private ParseScheduler scheduler;
+    private final CountDownLatch blockerStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseBlocker = new CountDownLatch(1);
+    private final List<Thread> callers = new ArrayList<>();
+
+
+    @Before
+    public void setUp() throws InterruptedException {
+        scheduler = new ParseScheduler(1);
+        // occupy the only worker, so everything after this has to queue
+        call(ParsePriority.BACKGROUND, Collections.singletonList(() -> {
+            blockerStarted.countDown();
+            return releaseBlocker.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }), () -> false, null);
+        assertThat(blockerStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), is(true));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        releaseBlocker.countDown();
+        for (Thread caller : callers) {
+            caller.join(TIMEOUT_MILLIS);
+        }
+    }
+
+
+    @Test
+    public void foregroundWorkJumpsAheadOfQueuedLowerLanes() throws InterruptedException {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        call(ParsePriority.BACKGROUND, Arrays.asList(record(order, "background 1"), record(order, "background 2")), () -> false, null);
+        awaitQueued(ParsePriority.BACKGROUND, 2);
+        call(ParsePriority.PREFETCH, Collections.singletonList(record(order, "prefetch")), () -> false, null);
+        awaitQueued(ParsePriority.PREFETCH, 1);
+        call(ParsePriority.FOREGROUND, Collections.singletonList(record(order, "foreground")), () -> false, null);
+        awaitQueued(ParsePriority.FOREGROUND, 1);
+
+        releaseBlocker.countDown();
+        for (Thread caller : callers) {
+            caller.join(TIMEOUT_MILLIS);
+        }
+        assertThat(order, contains("foreground", "prefetch", "background 1", "background 2"));
+        assertThat(scheduler.laneStats().get(ParsePriority.FOREGROUND).getStarted(), is(1L));
+    }
+
+    @Test
+    public void cancelledCallersDropTheirQueuedTasks() throws InterruptedException {
+        AtomicInteger ran = new AtomicInteger();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread caller = call(ParsePriority.PREFETCH, Arrays.asList(count(ran), count(ran), count(ran)), cancelled::get, error);
+        awaitQueued(ParsePriority.PREFETCH, 3);
+
+        cancelled.set(true);
+        caller.join(TIMEOUT_MILLIS);
+        assertThat(error.get(), instanceOf(CancellationException.class));
+        assertThat(scheduler.laneStats().get(ParsePriority.PREFETCH).getQueued(), is(0));
+
+        // once the worker is free, later work runs and the dropped tasks never do
+        releaseBlocker.countDown();
+        assertThat(scheduler.invokeAll(Collections.singletonList(() -> "after"), ParsePriority.PREFETCH, () -> false),
+                contains("after"));
+        assertThat(ran.get(), is(0));
+        assertThat(scheduler.laneStats().get(ParsePriority.PREFETCH).getQueued(), is(0));
+    }
+
+    @Test
+    public void interruptedCallersDropTheirQueuedTasks() throws InterruptedException {
+        AtomicInteger ran = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicBoolean stillInterrupted = new AtomicBoolean();
+        Thread caller = new Thread(() -> {
+            try {
+                scheduler.invokeAll(Arrays.asList(count(ran), count(ran)), ParsePriority.FOREGROUND, () -> false);
+            } catch (Throwable e) {
+                error.set(e);
+                stillInterrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        caller.start();
+        awaitQueued(ParsePriority.FOREGROUND, 2);
+
+        caller.interrupt();
+        caller.join(TIMEOUT_MILLIS);
+        assertThat(error.get(), instanceOf(CancellationException.class));
+        assertThat(stillInterrupted.get(), is(true));
+        assertThat(scheduler.laneStats().get(ParsePriority.FOREGROUND).getQueued(), is(0));
+
+        releaseBlocker.countDown();
+        scheduler.invokeAll(Collections.singletonList(() -> "after"), ParsePriority.FOREGROUND, () -> false);
+        assertThat(ran.get(), is(0));
+    }
+
+
+    /**
+     * Run some tasks on another thread, since invokeAll blocks until they're done.
+     *
+     * @param error where to put anything the call throws, or null if it shouldn't throw
+     */
+    private <T> Thread call(ParsePriority priority, List<Callable<T>> tasks, kotlin.jvm.functions.Function0<Boolean> isCancelled,
+                            AtomicReference<Throwable> error) {
+        Thread caller = new Thread(() -> {
+            try {
+                scheduler.invokeAll(tasks, priority, isCancelled);
+            } catch (Throwable e) {
+                if (error == null) {
+                    throw new AssertionError(e);
+                }
+                error.set(e);
+            }
+        });
+        callers.add(caller);
+        caller.start();
+        return caller;
+    }
+
+    private void awaitQueued(ParsePriority priority, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (scheduler.laneStats().get(priority).getQueued() != count) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for " + count + " queued " + priority + " tasks");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static Callable<String> record(List<String> order, String name) {
+        return () -> {
+            order.add(name);
+            return name;
+        };
+    }
+
+    private static Callable<Integer> count(AtomicInteger counter) {
+        return counter::incrementAndGet;
+    }
+}
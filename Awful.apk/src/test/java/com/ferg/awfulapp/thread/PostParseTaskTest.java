@@ -0,0 +1,184 @@
+package com.ferg.awfulapp.thread;
+
+import com.ferg.awfulapp.Fixtures;
+
+import org.hamcrest.Matcher;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Golden tests comparing the single-traversal post parser (see {@link PostParseVisitor}) with the
+ * per-field searches it replaced (see {@link LegacyPostParser}), field for field, plus the
+ * awkward cases the fixtures don't cover.
+ */
+public class PostParseTaskTest {
+
+    private static final String UPDATE_TIME = "2026-10-18 12:00:00.0";
+    private static final int THREAD_ID = 3_500_000;
+    private static final int OP_ID = 120886;
+    private static final long PAGE_KEY = PostFingerprint.pageKey(OP_ID);
+
+    @Test
+    public void threadPagesMatchTheOldParser() throws IOException {
+        Map<String, Integer> seen = compareFixture("thread_40_posts.html");
+        assertThat(seen.get(AwfulPost.ROLE), greaterThan(0));
+        assertThat(seen.get(AwfulPost.EDITED), greaterThan(0));
+        assertThat(seen.get(AwfulPost.AVATAR), greaterThan(0));
+    }
+
+    @Test
+    public void fyadPagesMatchTheOldParser() throws IOException {
+        Map<String, Integer> seen = compareFixture("thread_fyad.html");
+        assertThat(seen.get(AwfulPost.EDITED), greaterThan(0));
+    }
+
+    @Test
+    public void quotePagesMatchTheOldParser() throws IOException {
+        compareFixture("thread_quotes.html");
+    }
+
+
+    @Test
+    public void secondAvatarAndRoleAreRead() {
+        String post = post("userinfo userid-5", "author role-mod",
+                "<dd class=\"title\">custom title<img src=\"http://i.somethingawful.com/a.gif\"><br><img src=\"http://i.imgur.com/b.png\"><img src=\"c.png\"></dd>",
+                "", "<p>body</p>");
+        Map<String, Object> values = compare(post, 1, 0);
+        assertThat(values, entry(AwfulPost.ROLE, "mod"));
+        assertThat(values, entry(AwfulPost.AVATAR, "https://i.somethingawful.com/a.gif"));
+        assertThat(values, entry(AwfulPost.AVATAR_SECOND, "https://i.imgur.com/b.png"));
+        assertThat(values, entry(AwfulPost.AVATAR_TEXT, "custom title"));
+    }
+
+    @Test
+    public void fyadContentComesFromCompleteShitWithTheSignature() {
+        String post = post("userinfo userid-5", "author", "",
+                "", "<div class=\"complete_shit funbox\"><p>fyad post</p></div><p class=\"signature\">sig</p>");
+        Map<String, Object> values = compare(post, 1, 0);
+        assertThat(values, entry(AwfulPost.CONTENT, "<p>fyad post</p>\n<p class=\"signature\">sig</p>"));
+        assertThat(values, entry(AwfulPost.SEARCH_TEXT, "fyad post sig"));
+    }
+
+    @Test
+    public void seenClassesMarkPostsRead() {
+        Map<String, Object> marked = compare(post("userinfo userid-5", "author", "", "seen2", "<p>body</p>"), 10, 1);
+        assertThat(marked, entry(AwfulPost.PREVIOUSLY_READ, 1));
+        Map<String, Object> unmarked = compare(post("userinfo userid-5", "author", "", "", "<p>body</p>"), 10, 1);
+        assertThat(unmarked, entry(AwfulPost.PREVIOUSLY_READ, 0));
+        Map<String, Object> readByIndex = compare(post("userinfo userid-5", "author", "", "", "<p>body</p>"), 1, 10);
+        assertThat(readByIndex, entry(AwfulPost.PREVIOUSLY_READ, 1));
+    }
+
+    @Test
+    public void userInfoIdsBeatTheProfileLink() {
+        Map<String, Object> values = compare(post("userinfo userid-" + OP_ID, "author", "", "", "<p>body</p>"), 1, 0);
+        assertThat(values, entry(AwfulPost.USER_ID, OP_ID));
+        assertThat(values, entry(AwfulPost.IS_OP, 1));
+    }
+
+    @Test
+    public void theProfileLinkIsUsedWithoutAUserInfoId() {
+        Map<String, Object> values = compare(post("userinfo", "author", "", "", "<p>body</p>"), 1, 0);
+        assertThat(values, entry(AwfulPost.USER_ID, 42));
+        assertThat(values, entry(AwfulPost.IS_OP, 0));
+
+        String noLinks = post("userinfo", "author", "", "", "<p>body</p>").replace("userid=42", "nothing");
+        assertThat(compare(noLinks, 1, 0), not(hasKey(AwfulPost.USER_ID)));
+    }
+
+    @Test
+    public void editedByUsesTheFirstChild() {
+        String post = post("userinfo userid-5", "author", "", "",
+                "<p>body</p><p class=\"editedby\"><span>Fucked around with this message at 12:00</span> <span>again</span></p>");
+        Map<String, Object> values = compare(post, 1, 0);
+        assertThat(values, entry(AwfulPost.EDITED, "<i>Fucked around with this message at 12:00</i>"));
+    }
+
+
+    /**
+     * Parse every post in a fixture with both parsers, checking they match.
+     *
+     * @return the number of posts that had each field
+     */
+    private static Map<String, Integer> compareFixture(String fixture) throws IOException {
+        String html = Fixtures.loadText(fixture);
+        // both parsers change the page a little, so each gets its own copy
+        Elements posts = Jsoup.parse(html).getElementsByClass("post");
+        Elements legacyPosts = Jsoup.parse(html).getElementsByClass("post");
+        assertThat(posts.size(), greaterThan(0));
+
+        Map<String, Integer> seen = new HashMap<>();
+        int firstIndex = 441;
+        for (int i = 0; i < posts.size(); i++) {
+            int index = firstIndex + i;
+            // some posts are read by index, the rest depend on their seen markers
+            int lastReadIndex = firstIndex + 10;
+            Map<String, Object> values = parse(posts.get(i), index, lastReadIndex);
+            assertThat(fixture + " post " + i, values,
+                    is(LegacyPostParser.parse(legacyPosts.get(i), UPDATE_TIME, index, lastReadIndex, THREAD_ID, OP_ID)));
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                if (!"".equals(entry.getValue())) {
+                    seen.merge(entry.getKey(), 1, Integer::sum);
+                }
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * Parse a single post with both parsers, checking they match.
+     */
+    private static Map<String, Object> compare(String postHtml, int index, int lastReadIndex) {
+        Map<String, Object> values = parse(single(postHtml), index, lastReadIndex);
+        assertThat(values, is(LegacyPostParser.parse(single(postHtml), UPDATE_TIME, index, lastReadIndex, THREAD_ID, OP_ID)));
+        return values;
+    }
+
+    private static Map<String, Object> parse(Element post, int index, int lastReadIndex) {
+        Map<String, Object> values = new HashMap<>(new PostParseTask(post, UPDATE_TIME, index, lastReadIndex, THREAD_ID, OP_ID,
+                PAGE_KEY, Collections.emptyMap()).parseValues());
+        // the old parser didn't fingerprint posts
+        assertThat(values, hasKey(AwfulPost.FINGERPRINT));
+        values.remove(AwfulPost.FINGERPRINT);
+        return values;
+    }
+
+    /** hasEntry, typed to match the parsed values */
+    private static Matcher<Map<? extends String, ?>> entry(String key, Object value) {
+        return hasEntry(key, value);
+    }
+
+    private static Element single(String postHtml) {
+        Document page = Jsoup.parse(postHtml);
+        return page.selectFirst(".post");
+    }
+
+    /**
+     * Build a post in the site's markup.
+     */
+    private static String post(String userInfoClass, String authorClass, String title, String rowClass, String body) {
+        return "<table class=\"post\" id=\"post9001\" data-idx=\"7\"><tbody>" +
+                "<tr class=\"" + rowClass + "\"><td class=\"" + userInfoClass + "\">" +
+                "<dl class=\"userinfo\"><dt class=\"" + authorClass + "\">Some Goon</dt><dd class=\"registered\">Jul 12, 2023</dd>" + title + "</dl>" +
+                "<ul class=\"profilelinks\"><li><a href=\"member.php?action=getinfo&amp;userid=42\">Profile</a></li></ul></td>" +
+                "<td class=\"postbody\">" + body + "</td></tr>" +
+                "<tr><td class=\"postdate\"><a href=\"#post9001\">#</a> Oct 7, 2026 16:39</td>" +
+                "<td class=\"postlinks\"><ul class=\"postbuttons\"><li><img src=\"edit.gif\" alt=\"Edit\"></li></ul></td></tr>" +
+                "</tbody></table>";
+    }
+}
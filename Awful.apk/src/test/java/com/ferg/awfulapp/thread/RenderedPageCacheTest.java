@@ -0,0 +1,115 @@
+package com.ferg.awfulapp.thread;
+
+import com.ferg.awfulapp.thread.RenderedPageCache.PageKey;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+public class RenderedPageCacheTest {
+
+    private static final int THREAD = 3_500_000;
+    private static final PageKey PAGE_1 = new PageKey(THREAD, 1, 40, false, 0xabcdef);
+    private static final PageKey PAGE_2 = new PageKey(THREAD, 41, 40, true, 0xabcdef);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RenderedPageCache cache;
+
+
+    @Before
+    public void setUp() {
+        // write to disk immediately, so the tests can check what's there
+        cache = new RenderedPageCache(1024 * 1024, 1024 * 1024, Runnable::run);
+        cache.setDirectory(folder.getRoot());
+    }
+
+
+    @Test
+    public void onlyPagesShowingWrittenPostsAreInvalidated() {
+        cache.put(PAGE_1, cache.getVersion(THREAD), "page 1");
+        cache.put(PAGE_2, cache.getVersion(THREAD), "page 2");
+
+        cache.invalidatePosts(THREAD, Arrays.asList(41, 42));
+
+        assertThat(cache.get(PAGE_1), is("page 1"));
+        assertThat(cache.get(PAGE_2), nullValue());
+        assertThat(new File(folder.getRoot(), PAGE_2.getFileName()).exists(), is(false));
+    }
+
+    @Test
+    public void pagesRenderedBeforeAWriteAreNotCached() {
+        int version = cache.getVersion(THREAD);
+        cache.invalidatePosts(THREAD, Collections.singletonList(1));
+        cache.put(PAGE_1, version, "stale page 1");
+
+        assertThat(cache.get(PAGE_1), nullValue());
+    }
+
+    @Test
+    public void writingNoPostsChangesNothing() {
+        int version = cache.getVersion(THREAD);
+        cache.invalidatePosts(THREAD, Collections.emptyList());
+        cache.put(PAGE_1, version, "page 1");
+
+        assertThat(cache.get(PAGE_1), is("page 1"));
+    }
+
+    @Test
+    public void pagesSurviveOnDisk() {
+        cache.put(PAGE_2, cache.getVersion(THREAD), "page 2");
+
+        RenderedPageCache restarted = new RenderedPageCache(1024 * 1024, 1024 * 1024, Runnable::run);
+        restarted.setDirectory(folder.getRoot());
+        // only a worker thread's get reads the disk - after that the page is in memory
+        assertThat(restarted.getCached(PAGE_2), nullValue());
+        assertThat(restarted.get(PAGE_2), is("page 2"));
+        assertThat(restarted.getCached(PAGE_2), is("page 2"));
+
+        restarted.invalidateThread(THREAD);
+        assertThat(folder.getRoot().list().length, is(0));
+    }
+
+    @Test
+    public void pageKeysRoundTripThroughFileNames() {
+        PageKey negativeHash = new PageKey(THREAD, 81, 40, false, -12345);
+        assertThat(PageKey.Companion.fromFileName(negativeHash.getFileName()), is(negativeHash));
+        assertThat(PageKey.Companion.fromFileName(PAGE_2.getFileName()), is(PAGE_2));
+        assertThat(PageKey.Companion.fromFileName("something-else.html"), nullValue());
+    }
+
+    @Test
+    public void theDiskCacheIsTrimmedToSize() {
+        RenderedPageCache small = new RenderedPageCache(1024 * 1024, 10, Runnable::run);
+        small.setDirectory(folder.getRoot());
+        small.put(PAGE_1, 0, "page 1 ");
+        small.put(PAGE_2, 0, "page 2 ");
+        assertThat(folder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void theDiskCacheCanBeTrimmedToABudget() {
+        cache.put(PAGE_1, 0, "page 1 ");
+        cache.put(PAGE_2, 0, "page 2 ");
+        assertThat(cache.getDiskUsage(), is(14L));
+
+        // a budget bigger than what's there leaves it alone
+        assertThat(cache.trimDisk(100), is(14L));
+        assertThat(folder.getRoot().list().length, is(2));
+
+        assertThat(cache.trimDisk(10), is(7L));
+        assertThat(cache.getDiskUsage(), is(7L));
+        // the trimmed pages are still in memory though
+        assertThat(cache.get(PAGE_1), is("page 1 "));
+    }
+}
@@ -0,0 +1,74 @@
+package com.ferg.awfulapp.util;
+
+import com.ferg.awfulapp.Fixtures;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+
+public class ContentCompressionTest {
+
+    private static final Pattern POST_BODY = Pattern.compile("<td class=\"postbody\">(.*?)</td>", Pattern.DOTALL);
+
+
+    @Test
+    public void fixturePostsRoundTrip() throws IOException {
+        long original = 0;
+        long compressed = 0;
+        for (String fixture : Fixtures.ALL) {
+            Matcher matcher = POST_BODY.matcher(Fixtures.loadText(fixture));
+            while (matcher.find()) {
+                String content = matcher.group(1);
+                byte[] data = ContentCompression.compress(content);
+                assertThat(ContentCompression.decompress(data), is(content));
+                original += content.length();
+                compressed += data.length;
+            }
+        }
+        // post markup is very repetitive, this should manage a lot better than half
+        assertThat(compressed * 2, lessThan(original));
+    }
+
+    @Test
+    public void nonAsciiTextRoundTrips() {
+        String content = "café “curly” 日本語 💩 <br>\n";
+        assertThat(ContentCompression.decompress(ContentCompression.compress(content)), is(content));
+        assertThat(ContentCompression.decompress(ContentCompression.compress("")), is(""));
+    }
+
+    @Test
+    public void shortContentIsStoredAsText() {
+        String content = "lol<br>";
+        assertThat(ContentCompression.forStorage(content), is(sameInstance((Object) content)));
+        assertThat(ContentCompression.forStorage(null), is((Object) null));
+    }
+
+    @Test
+    public void longContentIsStoredCompressed() {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < ContentCompression.MIN_COMPRESSED_LENGTH) {
+            content.append("<img src=\"https://i.imgur.com/abc.jpg\" alt=\"\" class=\"timg\" border=\"0\"><br>\n");
+        }
+        Object stored = ContentCompression.forStorage(content.toString());
+        assertThat(stored, instanceOf(byte[].class));
+        assertThat(ContentCompression.toText(stored), is(content.toString()));
+    }
+
+    @Test
+    public void corruptDataGivesAnEmptyString() {
+        byte[] data = ContentCompression.compress("some content that will be truncated, some content that will be truncated");
+        byte[] truncated = new byte[data.length / 2];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        assertThat(ContentCompression.decompress(truncated), is(""));
+        assertThat(ContentCompression.decompress(new byte[]{99, 1, 2, 3}), is(""));
+        assertThat(ContentCompression.decompress(new byte[0]), is(""));
+    }
+}
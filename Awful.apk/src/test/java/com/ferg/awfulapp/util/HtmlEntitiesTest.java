@@ -0,0 +1,130 @@
+package com.ferg.awfulapp.util;
+
+import com.ferg.awfulapp.Fixtures;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Golden tests comparing {@link HtmlEntities} with the old regex-based implementation it replaced
+ * (see {@link LegacyHtmlEntities}), plus the cases where they deliberately differ.
+ */
+public class HtmlEntitiesTest {
+
+    private static final String[] DECODE_CASES = {
+            "",
+            "no entities here",
+            "Oct 17, 2026 22:41",
+            "Tom &amp; Jerry",
+            "&lt;b&gt;not bold&lt;/b&gt;",
+            "&quot;quoted&quot; &nbsp;spaced",
+            "caf&eacute; &Eacute;cole na&iuml;ve",
+            "&hearts;&spades;&clubs;&diams; &euro;100 &mdash; &hellip;",
+            "&#39;single&#39; &#039;padded&#039; &#x27;hex&#x27; &#X27;HEX&#X27;",
+            "&#8217;curly&#8216; &#x201C;double&#x201D;",
+            "&#128169; and &#x1F4A9;",
+            "&#55357;&#56489; split surrogates",
+            "&amp;#39; double escaped",
+            "&amp;amp; only escaped twice",
+            "&amp;#x27; double escaped hex stays",
+            "&#38;#39; numeric ampersand",
+            "AT&T and Q&A",
+            "dangling &",
+            "&",
+            "&&&amp;&&",
+            "&amp no semicolon",
+            "&#39 no semicolon",
+            "&#; &#x; &#xyz; &# ",
+            "&notanentity; &AMP; &Amp;",
+            "&thetasym; &thetasyms;",
+            "&#0000000039;",
+            "[?] Mr. Wiggles fucked around with this message at Oct 16, 2026 around 21:05",
+            "&#91;?&#93; edited &raquo; &laquo;",
+    };
+
+    private static final String[] ENCODE_CASES = {
+            "",
+            "plain ascii <b>tags</b> & ampersands",
+            "café naïve",
+            "“curly quotes” – dashes —",
+            "emoji 💩 here",
+            "lone surrogate \uD83D here",
+            "\u0000 control \u007F chars \u0080",
+            "日本語のテキスト",
+    };
+
+
+    @Test
+    public void decodingMatchesTheOldImplementation() {
+        for (String input : DECODE_CASES) {
+            assertThat(input, HtmlEntities.decode(input), is(LegacyHtmlEntities.unencodeHtml(input)));
+        }
+    }
+
+    @Test
+    public void decodingMatchesTheOldImplementationOnFixturePages() throws IOException {
+        for (String fixture : Fixtures.ALL) {
+            for (String line : Fixtures.loadText(fixture).split("\n")) {
+                assertThat(fixture, HtmlEntities.decode(line), is(LegacyHtmlEntities.unencodeHtml(line)));
+            }
+        }
+    }
+
+    @Test
+    public void encodingMatchesTheOldImplementation() {
+        for (String input : ENCODE_CASES) {
+            assertThat(input, HtmlEntities.encode(input), is(LegacyHtmlEntities.encodeHtml(input)));
+        }
+    }
+
+    @Test
+    public void encodingRoundTrips() {
+        for (String input : ENCODE_CASES) {
+            // lone surrogates can't survive being turned into a code point and back, and C1 controls come back as Windows-1252
+            if (!input.contains("lone surrogate") && !input.contains("control")) {
+                assertThat(input, HtmlEntities.decode(HtmlEntities.encode(input)), is(input));
+            }
+        }
+    }
+
+
+    @Test
+    public void textWithNothingToChangeIsReturnedAsIs() {
+        String date = "Oct 17, 2026 22:41";
+        assertThat(HtmlEntities.decode(date), is(sameInstance(date)));
+        assertThat(HtmlEntities.encode(date), is(sameInstance(date)));
+    }
+
+    @Test
+    public void nullDecodesToAnEmptyString() {
+        assertThat(HtmlEntities.decode(null), is(""));
+        assertThat(LegacyHtmlEntities.unencodeHtml(null), is(""));
+    }
+
+    @Test
+    public void referencesInTheWindows1252RangeAreReadAsWindows1252() {
+        // the old implementation turned these into C1 control characters
+        assertThat(HtmlEntities.decode("a &#150; b &#x93;quoted&#x94; &#128;5"), is("a – b “quoted” €5"));
+        assertThat(HtmlEntities.decode("&amp;#146;"), is("’"));
+        // the undefined ones stay as they are
+        assertThat(HtmlEntities.decode("&#129;&#157;"), is("\u0081\u009D"));
+    }
+
+    @Test
+    public void invalidCodePointsAreLeftAlone() {
+        // the old implementation threw on these
+        assertThat(HtmlEntities.decode("&#1114112; &#x110000;"), is("&#1114112; &#x110000;"));
+        assertThat(HtmlEntities.decode("&#99999999999999999999;"), is("&#99999999999999999999;"));
+    }
+
+    @Test
+    public void doubleEscapedDollarsAndBackslashesDecode() {
+        // the old implementation used these as regex replacement strings, and threw
+        assertThat(HtmlEntities.decode("&amp;#36;5 &amp;#92;n"), is("$5 \\n"));
+    }
+}
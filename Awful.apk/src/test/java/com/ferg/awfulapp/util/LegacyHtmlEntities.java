@@ -0,0 +1,43 @@
+package com.ferg.awfulapp.util;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The old regex-based NetworkUtils#unencodeHtml and NetworkUtils#encodeHtml, kept as a reference
+ * for the golden tests and benchmarks of {@link HtmlEntities}.
+ */
+public final class LegacyHtmlEntities {
+
+    private static final Pattern unencodeCharactersPattern = Pattern.compile("&#(\\d+);");
+    private static final Pattern encodeCharactersPattern = Pattern.compile("([^\\x00-\\x7F])");
+
+    private LegacyHtmlEntities() {
+    }
+
+    public static String unencodeHtml(String html) {
+        if (html == null) {
+            return "";
+        }
+        String processed = StringEscapeUtils.unescapeHtml4(html);
+        StringBuffer unencodedContent = new StringBuffer(processed.length());
+        Matcher fixCharMatch = unencodeCharactersPattern.matcher(processed);
+        while (fixCharMatch.find()) {
+            fixCharMatch.appendReplacement(unencodedContent, Character.toString((char) Integer.parseInt(fixCharMatch.group(1))));
+        }
+        fixCharMatch.appendTail(unencodedContent);
+        return unencodedContent.toString();
+    }
+
+    public static String encodeHtml(String str) {
+        StringBuffer unencodedContent = new StringBuffer(str.length());
+        Matcher fixCharMatch = encodeCharactersPattern.matcher(str);
+        while (fixCharMatch.find()) {
+            fixCharMatch.appendReplacement(unencodedContent, "&#" + fixCharMatch.group(1).codePointAt(0) + ";");
+        }
+        fixCharMatch.appendTail(unencodedContent);
+        return unencodedContent.toString();
+    }
+}
@@ -0,0 +1,81 @@
+package com.ferg.awfulapp.webview;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+public class PageDiffTest {
+
+    private static final String UNREAD_MARKER = "<div class='unread' ></div>\n";
+
+
+    @Test
+    public void newPostsOnTheLastPageAreAppended() {
+        String oldPage = page(post(1, "first"), post(2, "second"));
+        String newPage = page(post(1, "first"), post(2, "second"), post(3, "third"));
+
+        List<PageDiff.Change> changes = PageDiff.diff(oldPage, newPage);
+        assertThat(changes.size(), is(1));
+        assertThat(changes.get(0).id, is("post3"));
+        assertThat(changes.get(0).html, is(post(3, "third")));
+        assertThat(changes.get(0).after, is("post2"));
+    }
+
+    @Test
+    public void changedPostsAreReplaced() {
+        String oldPage = page(post(1, "first"), post(2, "second"));
+        String newPage = page(post(1, "first"), post(2, "second (edited)"));
+
+        List<PageDiff.Change> changes = PageDiff.diff(oldPage, newPage);
+        assertThat(changes.size(), is(1));
+        assertThat(changes.get(0).id, is("post2"));
+        assertThat(changes.get(0).after, nullValue());
+    }
+
+    @Test
+    public void whitespaceBetweenPostsIsIgnored() {
+        String oldPage = "<div class='content'>\n" + post(1, "first") + "\n\n" + post(2, "second") + "</div>\n";
+        String newPage = "<div class='content'>\n" + post(1, "first") + post(2, "second") + "\n</div>\n";
+        assertThat(PageDiff.diff(oldPage, newPage), is(empty()));
+    }
+
+    @Test
+    public void removedOrReorderedPostsNeedAReload() {
+        String oldPage = page(post(1, "first"), post(2, "second"));
+        assertThat(PageDiff.diff(oldPage, page(post(1, "first"))), nullValue());
+        assertThat(PageDiff.diff(oldPage, page(post(2, "second"), post(1, "first"))), nullValue());
+    }
+
+    @Test
+    public void newPostsBeforeAnyExistingOnesNeedAReload() {
+        String oldPage = page(post(2, "second"));
+        assertThat(PageDiff.diff(oldPage, page(post(1, "first"), post(2, "second"))), nullValue());
+    }
+
+    @Test
+    public void changesOutsideThePostsNeedAReload() {
+        String oldPage = page(post(1, "first"));
+        String newPage = "<div class='content'>\n" + post(1, "first") + UNREAD_MARKER + "</div>\n";
+        assertThat(PageDiff.diff(oldPage, newPage), nullValue());
+    }
+
+    @Test
+    public void pagesThatArentMadeOfPostsNeedAReload() {
+        assertThat(PageDiff.diff("<p>one</p>", "<p>two</p>"), nullValue());
+        assertThat(PageDiff.diff(page(post(1, "first")), page("<article id=\"post1\"><article>nested</article></article>")), nullValue());
+    }
+
+
+    private static String page(String... posts) {
+        return "<div class='content'>\n" + String.join("", posts) + "</div>\n";
+    }
+
+    private static String post(int id, String content) {
+        return "<article class=\"post unread\"  id=\"post" + id + "\">\n\t<section class=\"postcontent\">" + content + "</section>\n</article>";
+    }
+}